@@ -0,0 +1,58 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.mule.modules.as400.command.CommandResult;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Command calls through the connector processor. The stand-in host completes every command, so this measures the
+ * connector's per call overhead, including job setup it should only do once per job.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandCallBenchmark {
+
+	private static final String COMMAND = "CRTDTAQ DTAQ(BENCH/ORDERS) MAXLEN(256)";
+
+	@Benchmark
+	public void commandCall(ConnectorState state) throws Exception {
+		state.connector.commandCall(COMMAND, false, true);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void commandCallConcurrent(ConnectorState state) throws Exception {
+		state.connector.commandCall(COMMAND, false, true);
+	}
+
+	// One flow thread starting a command per async I/O thread and waiting for all of them
+	@Benchmark
+	public Object commandCallAsync(ConnectorState state) throws Exception {
+		List<Future<CommandResult>> results = new ArrayList<Future<CommandResult>>(ConnectorState.ASYNC_THREADS);
+		for (int i = 0; i < ConnectorState.ASYNC_THREADS; i++) {
+			results.add(state.connector.commandCallAsync(COMMAND, false, true));
+		}
+		return state.connector.awaitAsyncResult(results, -1);
+	}
+
+}
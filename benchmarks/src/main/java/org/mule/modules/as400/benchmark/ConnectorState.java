@@ -0,0 +1,75 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.benchmark;
+
+import org.mule.api.ConnectionException;
+import org.mule.modules.as400.AS400Connector;
+import org.mule.modules.as400.strategy.AS400ConnectionStrategy;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.ibm.as400.access.CharConverter;
+
+/**
+ * Connector wired to an {@link InMemoryHost}, shared by all benchmark threads like a connector config in Mule
+ */
+@State(Scope.Benchmark)
+public class ConnectorState {
+
+	public static final String LIBRARY = "BENCH";
+	public static final String QUEUE = "ORDERS";
+	public static final String KEYED_QUEUE = "ORDERSK";
+	public static final String KEY = "ORDER1";
+	public static final int KEY_LENGTH = 10;
+	public static final String ENTRY = "ORDER1    0000012345CUSTOMER01SHIPPED   2017-03-01-12.00.00.000000";
+	// Position of the producer timestamp in the entry, for reads with entry info
+	public static final int TIMESTAMP_POSITION = 41;
+	// Threads of the async operations, the defaults of the connector configuration only apply inside Mule
+	public static final int ASYNC_THREADS = 4;
+
+	public InMemoryHost host;
+	public AS400Connector connector;
+
+	@Setup
+	public void connect() throws ConnectionException {
+		host = new InMemoryHost(KEY_LENGTH);
+		AS400ConnectionStrategy strategy = new AS400ConnectionStrategy();
+		strategy.setTransport(host);
+		strategy.setAsyncThreads(ASYNC_THREADS);
+		strategy.setAsyncQueueSize(100);
+		strategy.connect("bench.local", "BENCH", "BENCH", null);
+		connector = new AS400Connector();
+		connector.setConnectionStrategy(strategy);
+	}
+
+	@TearDown
+	public void disconnect() {
+		connector.getConnectionStrategy().disconnect();
+	}
+
+	// Entries handed out whenever the queues are empty, so reads never wait
+	public void feedQueues() throws Exception {
+		CharConverter converter = new CharConverter(37);
+		byte[] data = converter.stringToByteArray(ENTRY);
+		host.getQueue(path(QUEUE)).feed(null, data);
+		host.getQueue(path(KEYED_QUEUE)).feed(converter.stringToByteArray(padKey(KEY)), data);
+	}
+
+	public static String path(String queue) {
+		return "/QSYS.LIB/" + LIBRARY + ".LIB/" + queue + ".DTAQ";
+	}
+
+	private static String padKey(String key) {
+		StringBuilder padded = new StringBuilder(key);
+		while (padded.length() < KEY_LENGTH) {
+			padded.append(' ');
+		}
+		return padded.toString();
+	}
+
+}
@@ -0,0 +1,89 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.benchmark;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.mule.modules.as400.SearchType;
+import org.mule.modules.as400.dataqueue.DataQueueMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Data queue reads through the connector processors. The stand-in queues always have an entry, so every read
+ * measures the connector's own work: connection checks, queue lookup, entry conversion and result building.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataQueueReadBenchmark {
+
+	private static final int BATCH_SIZE = 100;
+
+	@Setup
+	public void feed(ConnectorState state) throws Exception {
+		state.feedQueues();
+	}
+
+	@Benchmark
+	public String read(ConnectorState state) throws Exception {
+		return state.connector.readDataQueueProcessor(new HashMap<String, Object>(), ConnectorState.QUEUE, ConnectorState.LIBRARY, null, null, 0, false, false, null);
+	}
+
+	@Benchmark
+	public Object readBytes(ConnectorState state) throws Exception {
+		return state.connector.readDataQueueBytesProcessor(new HashMap<String, Object>(), ConnectorState.QUEUE, ConnectorState.LIBRARY, null, null, 0, false, null, false, false, null);
+	}
+
+	@Benchmark
+	public Map<String, Object> readKeyed(ConnectorState state) throws Exception {
+		Map<String, Object> headers = new HashMap<String, Object>();
+		state.connector.readDataQueueProcessor(headers, ConnectorState.KEYED_QUEUE, ConnectorState.LIBRARY, ConnectorState.KEY, SearchType.EQUAL, 0, false, false, null);
+		return headers;
+	}
+
+	@Benchmark
+	public Map<String, Object> readKeyedEntryInfo(ConnectorState state) throws Exception {
+		Map<String, Object> headers = new HashMap<String, Object>();
+		state.connector.readDataQueueProcessor(headers, ConnectorState.KEYED_QUEUE, ConnectorState.LIBRARY, ConnectorState.KEY, SearchType.EQUAL, 0, false, true, ConnectorState.TIMESTAMP_POSITION);
+		return headers;
+	}
+
+	@Benchmark
+	public List<DataQueueMessage> readBatch(ConnectorState state) throws Exception {
+		return state.connector.readDataQueueBatchProcessor(ConnectorState.QUEUE, ConnectorState.LIBRARY, null, null, 0, BATCH_SIZE, 0);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public String readConcurrent(ConnectorState state) throws Exception {
+		return state.connector.readDataQueueProcessor(new HashMap<String, Object>(), ConnectorState.QUEUE, ConnectorState.LIBRARY, null, null, 0, false, false, null);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Map<String, Object> readKeyedConcurrent(ConnectorState state) throws Exception {
+		Map<String, Object> headers = new HashMap<String, Object>();
+		state.connector.readDataQueueProcessor(headers, ConnectorState.KEYED_QUEUE, ConnectorState.LIBRARY, ConnectorState.KEY, SearchType.EQUAL, 0, false, false, null);
+		return headers;
+	}
+
+}
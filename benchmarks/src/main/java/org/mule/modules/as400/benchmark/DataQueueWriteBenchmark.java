@@ -0,0 +1,95 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.mule.modules.as400.dataqueue.DataQueueWriteResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.as400.access.CharConverter;
+
+/**
+ * Data queue writes through the connector processors, keyed and non-keyed, with string and byte payloads. The
+ * stand-in queues drop their oldest entries when full.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataQueueWriteBenchmark {
+
+	private static final int BULK_SIZE = 100;
+
+	private byte[] entryBytes;
+	private List<String> bulkEntries;
+
+	@Setup
+	public void prepare() throws Exception {
+		entryBytes = new CharConverter(37).stringToByteArray(ConnectorState.ENTRY);
+		bulkEntries = new ArrayList<String>(BULK_SIZE);
+		for (int i = 0; i < BULK_SIZE; i++) {
+			bulkEntries.add(ConnectorState.ENTRY);
+		}
+	}
+
+	@Benchmark
+	public void write(ConnectorState state) throws Exception {
+		state.connector.writeDataQueue(ConnectorState.QUEUE, ConnectorState.LIBRARY, ConnectorState.ENTRY, null, false);
+	}
+
+	@Benchmark
+	public void writeKeyed(ConnectorState state) throws Exception {
+		state.connector.writeDataQueue(ConnectorState.KEYED_QUEUE, ConnectorState.LIBRARY, ConnectorState.ENTRY, ConnectorState.KEY, false);
+	}
+
+	@Benchmark
+	public void writeBytes(ConnectorState state) throws Exception {
+		state.connector.writeDataQueueBytes(ConnectorState.QUEUE, ConnectorState.LIBRARY, entryBytes, null, null);
+	}
+
+	@Benchmark
+	public void writeBytesKeyed(ConnectorState state) throws Exception {
+		state.connector.writeDataQueueBytes(ConnectorState.KEYED_QUEUE, ConnectorState.LIBRARY, entryBytes, ConnectorState.KEY, null);
+	}
+
+	@Benchmark
+	public void writeStringAsBytes(ConnectorState state) throws Exception {
+		state.connector.writeDataQueueBytes(ConnectorState.QUEUE, ConnectorState.LIBRARY, ConnectorState.ENTRY, null, 37);
+	}
+
+	@Benchmark
+	public List<DataQueueWriteResult> writeBulk(ConnectorState state) throws Exception {
+		return state.connector.writeDataQueueBulk(ConnectorState.QUEUE, ConnectorState.LIBRARY, bulkEntries, null);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void writeConcurrent(ConnectorState state) throws Exception {
+		state.connector.writeDataQueue(ConnectorState.QUEUE, ConnectorState.LIBRARY, ConnectorState.ENTRY, null, false);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void writeKeyedConcurrent(ConnectorState state) throws Exception {
+		state.connector.writeDataQueue(ConnectorState.KEYED_QUEUE, ConnectorState.LIBRARY, ConnectorState.ENTRY, ConnectorState.KEY, false);
+	}
+
+}
@@ -0,0 +1,41 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.benchmark;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ibm.as400.access.AS400;
+import com.ibm.as400.access.AS400Message;
+import com.ibm.as400.access.CommandCall;
+
+/**
+ * Command call that completes every command successfully without messages and counts the commands run
+ */
+public class InMemoryCommandCall extends CommandCall {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final AS400Message[] NO_MESSAGES = new AS400Message[0];
+
+	private final transient AtomicLong commands;
+
+	public InMemoryCommandCall(AS400 system, AtomicLong commands) {
+		super(system);
+		this.commands = commands;
+	}
+
+	@Override
+	public boolean run(String command) {
+		commands.incrementAndGet();
+		return true;
+	}
+
+	@Override
+	public AS400Message[] getMessageList() {
+		return NO_MESSAGES;
+	}
+
+}
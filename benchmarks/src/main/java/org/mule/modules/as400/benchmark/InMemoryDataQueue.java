@@ -0,0 +1,58 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.benchmark;
+
+import org.mule.modules.as400.dataqueue.HostDataQueue;
+import org.mule.modules.as400.dataqueue.HostDataQueueEntry;
+
+import com.ibm.as400.access.AS400;
+import com.ibm.as400.access.CharConverter;
+
+/**
+ * Data queue backed by an {@link InMemoryQueueStore} instead of the data queue host server
+ */
+public class InMemoryDataQueue implements HostDataQueue {
+
+	// Queues of the stand-in host don't keep sender information
+	private static final String NO_SENDER = "";
+
+	private final AS400 system;
+	private final InMemoryQueueStore store;
+
+	public InMemoryDataQueue(AS400 system, InMemoryQueueStore store) {
+		this.system = system;
+		this.store = store;
+	}
+
+	public AS400 getSystem() {
+		return system;
+	}
+
+	public HostDataQueueEntry read(int wait) throws InterruptedException {
+		return toEntry(store.read(null, null, wait, false));
+	}
+
+	public HostDataQueueEntry peek(int wait) throws InterruptedException {
+		return toEntry(store.read(null, null, wait, true));
+	}
+
+	public void write(byte[] data) {
+		store.write(null, data.clone());
+	}
+
+	public void write(String data) throws Exception {
+		store.write(null, new CharConverter(system.getCcsid()).stringToByteArray(data));
+	}
+
+	public boolean isFIFO() {
+		return true;
+	}
+
+	private static HostDataQueueEntry toEntry(byte[][] entry) {
+		return entry == null ? null : new HostDataQueueEntry(null, entry[1], NO_SENDER);
+	}
+
+}
@@ -0,0 +1,70 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.benchmark;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mule.modules.as400.dataqueue.HostDataQueue;
+import org.mule.modules.as400.dataqueue.HostKeyedDataQueue;
+import org.mule.modules.as400.strategy.AS400Transport;
+
+import com.ibm.as400.access.AS400;
+import com.ibm.as400.access.CommandCall;
+
+/**
+ * In-process stand-in for an IBM i host, plugged into the connection strategy as its transport. Data queues are
+ * kept in memory by IFS path and shared by all connections, commands always succeed.
+ */
+public class InMemoryHost implements AS400Transport {
+
+	private static int QUEUE_CAPACITY = 10000;
+
+	private final int keyLength;
+	private final ConcurrentMap<String, InMemoryQueueStore> queues = new ConcurrentHashMap<String, InMemoryQueueStore>();
+	private final AtomicLong commands = new AtomicLong();
+
+	/**
+	 * @param keyLength key length of all keyed data queues
+	 */
+	public InMemoryHost(int keyLength) {
+		this.keyLength = keyLength;
+	}
+
+	public AS400 createSystem(String endpoint, String userid, String password) {
+		return new InMemorySystem(endpoint, userid, password);
+	}
+
+	public HostDataQueue createDataQueue(AS400 system, String path) {
+		return new InMemoryDataQueue(system, getQueue(path));
+	}
+
+	public HostKeyedDataQueue createKeyedDataQueue(AS400 system, String path) {
+		return new InMemoryKeyedDataQueue(system, getQueue(path), keyLength);
+	}
+
+	public CommandCall createCommandCall(AS400 system) {
+		return new InMemoryCommandCall(system, commands);
+	}
+
+	public InMemoryQueueStore getQueue(String path) {
+		InMemoryQueueStore queue = queues.get(path);
+		if (queue == null) {
+			queue = new InMemoryQueueStore(QUEUE_CAPACITY);
+			InMemoryQueueStore existing = queues.putIfAbsent(path, queue);
+			if (existing != null) {
+				queue = existing;
+			}
+		}
+		return queue;
+	}
+
+	public long getCommands() {
+		return commands.get();
+	}
+
+}
@@ -0,0 +1,59 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.benchmark;
+
+import org.mule.modules.as400.dataqueue.HostDataQueueEntry;
+import org.mule.modules.as400.dataqueue.HostKeyedDataQueue;
+
+import com.ibm.as400.access.AS400;
+
+/**
+ * Keyed data queue backed by an {@link InMemoryQueueStore} instead of the data queue host server
+ */
+public class InMemoryKeyedDataQueue implements HostKeyedDataQueue {
+
+	// Queues of the stand-in host don't keep sender information
+	private static final String NO_SENDER = "";
+
+	private final AS400 system;
+	private final InMemoryQueueStore store;
+	private final int keyLength;
+
+	public InMemoryKeyedDataQueue(AS400 system, InMemoryQueueStore store, int keyLength) {
+		this.system = system;
+		this.store = store;
+		this.keyLength = keyLength;
+	}
+
+	public AS400 getSystem() {
+		return system;
+	}
+
+	public int getKeyLength() {
+		return keyLength;
+	}
+
+	public HostDataQueueEntry read(byte[] key, int wait, String searchType) throws InterruptedException {
+		return toEntry(store.read(key, searchType, wait, false));
+	}
+
+	public HostDataQueueEntry peek(byte[] key, int wait, String searchType) throws InterruptedException {
+		return toEntry(store.read(key, searchType, wait, true));
+	}
+
+	public void write(byte[] key, byte[] data) {
+		store.write(key.clone(), data.clone());
+	}
+
+	public boolean isFIFO() {
+		return true;
+	}
+
+	private static HostDataQueueEntry toEntry(byte[][] entry) {
+		return entry == null ? null : new HostDataQueueEntry(entry[0], entry[1], NO_SENDER);
+	}
+
+}
@@ -0,0 +1,120 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.benchmark;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * Entries of one stand-in data queue. Writes beyond the capacity drop the oldest entry, so write benchmarks run in
+ * constant memory. A feed entry, if set, is handed out whenever no written entry matches, so read benchmarks never
+ * run dry.
+ */
+public class InMemoryQueueStore {
+
+	private final int capacity;
+	private final Deque<byte[][]> entries = new ArrayDeque<byte[][]>();
+	private byte[][] feed;
+	private long writes;
+
+	public InMemoryQueueStore(int capacity) {
+		this.capacity = capacity;
+	}
+
+	public synchronized void feed(byte[] key, byte[] data) {
+		feed = new byte[][] { key, data };
+		notifyAll();
+	}
+
+	public synchronized void write(byte[] key, byte[] data) {
+		if (entries.size() >= capacity) {
+			entries.removeFirst();
+		}
+		entries.addLast(new byte[][] { key, data });
+		writes++;
+		notifyAll();
+	}
+
+	/**
+	 * Take or look at the first entry whose key matches, waiting up to wait seconds (-1 forever).
+	 *
+	 * @return key and data of the entry, null if none matched in time
+	 */
+	public synchronized byte[][] read(byte[] key, String searchType, int wait, boolean peek) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + wait * 1000L;
+		while (true) {
+			Iterator<byte[][]> iterator = entries.iterator();
+			while (iterator.hasNext()) {
+				byte[][] entry = iterator.next();
+				if (matches(entry[0], key, searchType)) {
+					if (!peek) {
+						iterator.remove();
+					}
+					return entry;
+				}
+			}
+			if (feed != null && matches(feed[0], key, searchType)) {
+				return feed;
+			}
+			long remaining = deadline - System.currentTimeMillis();
+			if (wait >= 0 && remaining <= 0) {
+				return null;
+			}
+			wait(wait < 0 ? 0 : remaining);
+		}
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getWrites() {
+		return writes;
+	}
+
+	// Keys compare like host keys, as unsigned bytes
+	private static boolean matches(byte[] entryKey, byte[] key, String searchType) {
+		if (key == null) {
+			return true;
+		}
+		if (entryKey == null) {
+			return false;
+		}
+		int compare = compare(entryKey, key);
+		if ("EQ".equals(searchType)) {
+			return compare == 0;
+		}
+		if ("NE".equals(searchType)) {
+			return compare != 0;
+		}
+		if ("LT".equals(searchType)) {
+			return compare < 0;
+		}
+		if ("LE".equals(searchType)) {
+			return compare <= 0;
+		}
+		if ("GT".equals(searchType)) {
+			return compare > 0;
+		}
+		if ("GE".equals(searchType)) {
+			return compare >= 0;
+		}
+		throw new IllegalArgumentException("Unsupported search type: " + searchType);
+	}
+
+	private static int compare(byte[] left, byte[] right) {
+		int length = Math.min(left.length, right.length);
+		for (int i = 0; i < length; i++) {
+			int difference = (left[i] & 0xFF) - (right[i] & 0xFF);
+			if (difference != 0) {
+				return difference;
+			}
+		}
+		return left.length - right.length;
+	}
+
+}
@@ -0,0 +1,62 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.benchmark;
+
+import com.ibm.as400.access.AS400;
+
+/**
+ * System object that never opens a socket. It reports itself as a connected IBM i 7.1 host with CCSID 37.
+ */
+public class InMemorySystem extends AS400 {
+
+	private static final long serialVersionUID = 1L;
+
+	private volatile boolean connected = true;
+
+	public InMemorySystem(String endpoint, String userid, String password) {
+		super(endpoint, userid, password);
+	}
+
+	@Override
+	public int getCcsid() {
+		return 37;
+	}
+
+	@Override
+	public int getVersion() {
+		return 7;
+	}
+
+	@Override
+	public int getRelease() {
+		return 1;
+	}
+
+	@Override
+	public boolean isConnected() {
+		return connected;
+	}
+
+	@Override
+	public boolean isConnected(int service) {
+		return connected;
+	}
+
+	@Override
+	public boolean isConnectionAlive() {
+		return connected;
+	}
+
+	@Override
+	public void disconnectService(int service) {
+	}
+
+	@Override
+	public void disconnectAllServices() {
+		connected = false;
+	}
+
+}
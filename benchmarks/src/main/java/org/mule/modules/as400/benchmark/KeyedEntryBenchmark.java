@@ -0,0 +1,106 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.mule.modules.as400.SearchType;
+import org.mule.modules.as400.dataqueue.DataQueueCache.KeyedDataQueueHandle;
+import org.mule.modules.as400.dataqueue.DataQueueReadResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.as400.access.AS400;
+import com.ibm.as400.access.CharConverter;
+
+/**
+ * Per entry work around keyed data queue entries. Run with the GC profiler to compare allocations per operation:
+ * <pre>
+ * java -jar target/benchmarks.jar KeyedEntryBenchmark -prof gc
+ * </pre>
+ * The legacy benchmarks repeat how keys and results were handled before the typed read result and the padded key
+ * cache, String.format padding, key conversion on every call and a result and property map per entry, next to the
+ * current handling of the same key and entry.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyedEntryBenchmark {
+
+	private static final String KEY_PROPERTY = "as400.dataqueue.key";
+
+	private CharConverter converter;
+	private KeyedDataQueueHandle handle;
+	private byte[] entryBytes;
+
+	@Setup
+	public void prepare(ConnectorState state) throws Exception {
+		state.feedQueues();
+		converter = new CharConverter(37);
+		AS400 system = state.host.createSystem("bench.local", "BENCH", "BENCH");
+		InMemoryQueueStore store = new InMemoryQueueStore(1);
+		handle = new KeyedDataQueueHandle(new InMemoryKeyedDataQueue(system, store, ConnectorState.KEY_LENGTH), ConnectorState.KEY_LENGTH);
+		entryBytes = converter.stringToByteArray(ConnectorState.ENTRY);
+	}
+
+	@Benchmark
+	public byte[] legacyKeyPadding() {
+		String padded = String.format("%1$-" + ConnectorState.KEY_LENGTH + "s", ConnectorState.KEY);
+		if (padded.length() > ConnectorState.KEY_LENGTH) {
+			padded = padded.substring(0, ConnectorState.KEY_LENGTH);
+		}
+		return converter.stringToByteArray(padded);
+	}
+
+	@Benchmark
+	public byte[] keyPadding() throws Exception {
+		return handle.getPaddedKey(ConnectorState.KEY);
+	}
+
+	@Benchmark
+	public Map<String, Object> legacyReadResult() {
+		Map<String, Object> result = new HashMap<String, Object>();
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put(KEY_PROPERTY, ConnectorState.KEY);
+		result.put("readMessage", entryBytes);
+		result.put("properties", properties);
+		return result;
+	}
+
+	@Benchmark
+	public DataQueueReadResult readResult() {
+		return DataQueueReadResult.of(entryBytes, ConnectorState.KEY);
+	}
+
+	@Benchmark
+	public Object readKeyedBytes(ConnectorState state) throws Exception {
+		return state.connector.readDataQueueBytesProcessor(new HashMap<String, Object>(), ConnectorState.KEYED_QUEUE, ConnectorState.LIBRARY, ConnectorState.KEY, SearchType.EQUAL, 0, false, null, false, false, null);
+	}
+
+	@Benchmark
+	public Object readKeyedBytesRawKey(ConnectorState state) throws Exception {
+		return state.connector.readDataQueueBytesProcessor(new HashMap<String, Object>(), ConnectorState.KEYED_QUEUE, ConnectorState.LIBRARY, ConnectorState.KEY, SearchType.EQUAL, 0, false, null, true, false, null);
+	}
+
+	@Benchmark
+	public void writeKeyedBytes(ConnectorState state) throws Exception {
+		state.connector.writeDataQueueBytes(ConnectorState.KEYED_QUEUE, ConnectorState.LIBRARY, entryBytes, ConnectorState.KEY, null);
+	}
+
+}
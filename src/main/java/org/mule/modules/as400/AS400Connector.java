@@ -5,10 +5,33 @@
 
 package org.mule.modules.as400;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-
-import javax.validation.constraints.NotNull;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.mule.api.annotations.ConnectionStrategy;
 import org.mule.api.annotations.Connector;
@@ -24,22 +47,65 @@ import org.mule.api.annotations.param.Default;
 import org.mule.api.annotations.param.Optional;
 import org.mule.api.annotations.param.OutboundHeaders;
 import org.mule.api.callback.SourceCallback;
+import org.mule.modules.as400.command.CommandMessage;
+import org.mule.modules.as400.command.CommandResult;
+import org.mule.modules.as400.command.MessageHelpCache;
+import org.mule.modules.as400.dataqueue.AdaptivePollWait;
+import org.mule.modules.as400.dataqueue.ConsumerGroup;
+import org.mule.modules.as400.dataqueue.DataQueueCache;
+import org.mule.modules.as400.dataqueue.DataQueueCache.KeyedDataQueueHandle;
+import org.mule.modules.as400.dataqueue.DataQueueEntryInfo;
+import org.mule.modules.as400.dataqueue.DataQueueMessage;
+import org.mule.modules.as400.dataqueue.DataQueueReadResult;
+import org.mule.modules.as400.dataqueue.DataQueueWriteResult;
+import org.mule.modules.as400.dataqueue.DedupLog;
+import org.mule.modules.as400.dataqueue.FanInSchedule;
+import org.mule.modules.as400.dataqueue.HostDataQueue;
+import org.mule.modules.as400.dataqueue.HostDataQueueEntry;
+import org.mule.modules.as400.dataqueue.HostKeyedDataQueue;
+import org.mule.modules.as400.dataqueue.KeyPartitionSchedule;
+import org.mule.modules.as400.dataqueue.WriteBehindJournal;
+import org.mule.modules.as400.exception.AS400AsyncException;
 import org.mule.modules.as400.exception.AS400CommandCallException;
+import org.mule.modules.as400.exception.AS400ConnectorException;
 import org.mule.modules.as400.exception.AS400DataQueueReadException;
 import org.mule.modules.as400.exception.AS400DataQueueWriteException;
+import org.mule.modules.as400.exception.AS400FileReadException;
+import org.mule.modules.as400.exception.AS400IfsException;
+import org.mule.modules.as400.exception.AS400ProgramCallException;
+import org.mule.modules.as400.exception.AS400SpoolException;
 import org.mule.modules.as400.exception.AS400TransportException;
+import org.mule.modules.as400.ifs.IfsFileInfo;
+import org.mule.modules.as400.ifs.NewFileWatermark;
+import org.mule.modules.as400.metrics.CommandMetrics;
+import org.mule.modules.as400.metrics.DataQueueMetrics;
+import org.mule.modules.as400.program.ProgramSignature;
+import org.mule.modules.as400.record.RecordConverter;
+import org.mule.modules.as400.record.RecordConverterCache;
+import org.mule.modules.as400.record.RecordFileReader;
+import org.mule.modules.as400.spool.SpoolCheckpoint;
+import org.mule.modules.as400.spool.SpooledFileFormat;
+import org.mule.modules.as400.spool.SpooledFileInfo;
+import org.mule.modules.as400.spool.SpooledFileIterator;
 import org.mule.modules.as400.strategy.AS400ConnectionStrategy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.ibm.as400.access.AS400;
 import com.ibm.as400.access.AS400Message;
+import com.ibm.as400.access.CharConverter;
 import com.ibm.as400.access.CommandCall;
 import com.ibm.as400.access.ConnectionDroppedException;
-import com.ibm.as400.access.DataQueue;
-import com.ibm.as400.access.DataQueueEntry;
-import com.ibm.as400.access.KeyedDataQueue;
-import com.ibm.as400.access.KeyedDataQueueEntry;
+import com.ibm.as400.access.IFSFile;
+import com.ibm.as400.access.IFSFileInputStream;
+import com.ibm.as400.access.IFSFileOutputStream;
+import com.ibm.as400.access.PrintObject;
+import com.ibm.as400.access.PrintParameterList;
+import com.ibm.as400.access.ProgramCall;
+import com.ibm.as400.access.ProgramParameter;
+import com.ibm.as400.access.RecordFormat;
+import com.ibm.as400.access.SpooledFile;
+import com.ibm.as400.access.SpooledFileList;
 
 /**
  * AS400 Connector
@@ -53,23 +119,55 @@ public class AS400Connector {
     private static String LIBRARY_BASE_PATH = "/QSYS.LIB/"; 
     private static int MAX_DQ_WAIT_TIME = 30; // seconds!
     private static long RECONNECT_WAIT_TIME = 10000;
-    private static int MAX_PROCESSOR_RETRIES = 3;
-    private static int MAX_SOURCE_RETRIES = -1;
+    private static long SOURCE_RECONNECT_WAIT = MAX_DQ_WAIT_TIME * 1000L;
+    private static String DATAQUEUE_KEY_PROPERTY = "as400.dataqueue.key";
+    private static String DATAQUEUE_NAME_PROPERTY = "as400.dataqueue.name";
+    private static String DATAQUEUE_LIBRARY_PROPERTY = "as400.dataqueue.library";
+    private static int LISTENER_LANE_CAPACITY = 100;
+    private static long ACKNOWLEDGE_RETRY_WAIT = 1000;
+    private static int PARTITION_TURN = 100;
+    private static String IFS_PATH_PROPERTY = "as400.ifs.path";
+    private static String SPOOLED_FILE_PROPERTY = "as400.spool.id";
+    private static String DEFAULT_WSCST = "/QSYS.LIB/QWPDEFAULT.WSCST";
 
 	
 	@ConnectionStrategy
 	AS400ConnectionStrategy connectionStrategy;
+
+	private final RecordConverterCache recordConverters = new RecordConverterCache();
+	private final ConcurrentMap<String, ProgramSignature> programSignatures = new ConcurrentHashMap<String, ProgramSignature>();
+	private final MessageHelpCache messageHelp = new MessageHelpCache();
+	// Read wait of each polling source, by source type, queue, key and waits
+	private final ConcurrentMap<String, AdaptivePollWait> pollWaits = new ConcurrentHashMap<String, AdaptivePollWait>();
+	// Dedup logs of the sources removing entries after processing, by file
+	private final ConcurrentMap<String, DedupLog> dedupLogs = new ConcurrentHashMap<String, DedupLog>();
+	// Set while polling sources find the connection unavailable, so an outage is logged once and not on every poll
+	private final AtomicBoolean pollingOutage = new AtomicBoolean();
+	// Queue order of the data queues of these sources, by queue
+	private final ConcurrentMap<String, Boolean> fifoQueues = new ConcurrentHashMap<String, Boolean>();
+	// Watermarks of the new IFS file sources, by file
+	private final ConcurrentMap<String, NewFileWatermark> ifsWatermarks = new ConcurrentHashMap<String, NewFileWatermark>();
+	// Checkpoints of the new spooled file sources, by file
+	private final ConcurrentMap<String, SpoolCheckpoint> spoolCheckpoints = new ConcurrentHashMap<String, SpoolCheckpoint>();
 	
 	@Source(sourceStrategy = SourceStrategy.POLLING, pollingPeriod = 1)
-	public void readDataQueue(final SourceCallback callback, @Placement (order=1) @FriendlyName("Data Queue") String dtaq,@Placement (order=2) String library, @Placement (order=3)@FriendlyName("Key")@Summary("Only for keyed data queues. If not specified, the data queue is not keyed.") @Optional String dtaqKey, @Placement (order=4)@FriendlyName("Key Search Type")@Summary("GE (Greater or Equal), GT (Greater Than), LE (Lesser or equal), LT, EQ (Equal), NE (Not Equal) Required if key is specified") @Optional SearchType dtaqKeySearchType,  @Placement (order=5) @FriendlyName("Keep messages in Queue") @Default("false") Boolean peek) throws AS400DataQueueReadException, AS400TransportException {	
+	public void readDataQueue(final SourceCallback callback, @Placement (order=1) @FriendlyName("Data Queue") String dtaq,@Placement (order=2) String library, @Placement (order=3)@FriendlyName("Key")@Summary("Only for keyed data queues. If not specified, the data queue is not keyed.") @Optional String dtaqKey, @Placement (order=4)@FriendlyName("Key Search Type")@Summary("GE (Greater or Equal), GT (Greater Than), LE (Lesser or equal), LT, EQ (Equal), NE (Not Equal) Required if key is specified") @Optional SearchType dtaqKeySearchType,  @Placement (order=5) @FriendlyName("Keep messages in Queue") @Default("false") Boolean peek, @Placement (order=6) @FriendlyName("Min Wait Time")@Summary("Seconds a read waits while entries are flowing. Defaults to 0 (read back to back without waiting).") @Default("0") int minWait, @Placement (order=7) @FriendlyName("Max Wait Time")@Summary("Seconds a read waits on an idle queue. Every read that comes back empty doubles the wait, up to this.") @Default("30") int maxWait, @Placement (order=8) @FriendlyName("Entry Info")@Summary("Adds the sender job, user and job number (for data queues created with SENDERID(*YES)), the read time and, if known, the enqueue time of the entry as message properties") @Default("false") boolean entryInfo, @Placement (order=9) @FriendlyName("Enqueue Timestamp Position")@Summary("Only with Entry Info. Position (starting at 1) of a timestamp (YYYY-MM-DD-HH.MM.SS.NNNNNN) the producer writes into the entry, used as the enqueue time and for the queue lag metric") @Optional Integer enqueueTimestampPosition, @Placement (order=10) @FriendlyName("Remove after Processing")@Summary("Entries are only removed from the queue once the flow has processed them, an entry the flow fails on is read again. Processed entries are kept in a dedup log until they are removed, so they are not processed twice. FIFO data queues only, not used if messages are kept in the queue.") @Default("false") boolean acknowledge) throws AS400DataQueueReadException, AS400TransportException {	
 
-		Map<String,Object> result = connectAndRead(dtaq, library, dtaqKey, dtaqKeySearchType, MAX_DQ_WAIT_TIME, peek, MAX_SOURCE_RETRIES);
+		boolean acknowledged = acknowledge && !peek;
+		if (acknowledged && !checkFifo(dtaq, library, dtaqKey)) {
+			return;
+		}
+		DataQueueReadResult result = pollDataQueue(dtaq, library, dtaqKey, dtaqKeySearchType, peek || acknowledged, false, null, false, entryInfo, enqueueTimestampPosition, "read", minWait, maxWait);
 		try{
-			if (result.containsKey("properties")) {
-				callback.process(result.get("readMessage"), (Map<String,Object>) result.get("properties"));
-			}else if (result.containsKey("readMessage")){
-				callback.process(result.get("readMessage"));
+			if (acknowledged && result.isFound()) {
+				processAcknowledged(callback, result.getData(), result.hasProperties() ? entryProperties(result) : null, result, dtaq, library, getDedupLog(dtaq, library, dtaqKey), null);
+			}else if (result.hasProperties()) {
+				callback.process(result.getData(), entryProperties(result));
+			}else if (result.isFound()){
+				callback.process(result.getData());
 			}
+		}catch (AS400TransportException e){
+			throw e;
 		}catch (Exception e){
 			if (e instanceof AS400DataQueueReadException){
 				throw (AS400DataQueueReadException) e;
@@ -80,41 +178,719 @@ public class AS400Connector {
 		
 	}
 	
-	private Map<String, Object> connectAndRead(String dtaq, String library,
+	@Source(sourceStrategy = SourceStrategy.POLLING, pollingPeriod = 1)
+	public void readDataQueueBytes(final SourceCallback callback, @Placement (order=1) @FriendlyName("Data Queue") String dtaq,@Placement (order=2) String library, @Placement (order=3)@FriendlyName("Key")@Summary("Only for keyed data queues. If not specified, the data queue is not keyed.") @Optional String dtaqKey, @Placement (order=4)@FriendlyName("Key Search Type")@Summary("GE (Greater or Equal), GT (Greater Than), LE (Lesser or equal), LT, EQ (Equal), NE (Not Equal) Required if key is specified") @Optional SearchType dtaqKeySearchType,  @Placement (order=5) @FriendlyName("Keep messages in Queue") @Default("false") Boolean peek, @Placement (order=6) @FriendlyName("CCSID")@Summary("If specified, entries are converted to text with this CCSID (without trimming) instead of being passed on as bytes") @Optional Integer ccsid, @Placement (order=7) @FriendlyName("Min Wait Time")@Summary("Seconds a read waits while entries are flowing. Defaults to 0 (read back to back without waiting).") @Default("0") int minWait, @Placement (order=8) @FriendlyName("Max Wait Time")@Summary("Seconds a read waits on an idle queue. Every read that comes back empty doubles the wait, up to this.") @Default("30") int maxWait, @Placement (order=9) @FriendlyName("Raw Key")@Summary("Only for keyed data queues. Passes the entry key on as the bytes read from the queue, without conversion or trimming.") @Default("false") boolean rawKey, @Placement (order=10) @FriendlyName("Entry Info")@Summary("Adds the sender job, user and job number (for data queues created with SENDERID(*YES)), the read time and, if known, the enqueue time of the entry as message properties") @Default("false") boolean entryInfo, @Placement (order=11) @FriendlyName("Enqueue Timestamp Position")@Summary("Only with Entry Info. Position (starting at 1) of a timestamp (YYYY-MM-DD-HH.MM.SS.NNNNNN) the producer writes into the entry, used as the enqueue time and for the queue lag metric") @Optional Integer enqueueTimestampPosition, @Placement (order=12) @FriendlyName("Remove after Processing")@Summary("Entries are only removed from the queue once the flow has processed them, an entry the flow fails on is read again. Processed entries are kept in a dedup log until they are removed, so they are not processed twice. FIFO data queues only, not used if messages are kept in the queue.") @Default("false") boolean acknowledge) throws AS400DataQueueReadException, AS400TransportException {
+
+		boolean acknowledged = acknowledge && !peek;
+		if (acknowledged && !checkFifo(dtaq, library, dtaqKey)) {
+			return;
+		}
+		DataQueueReadResult result = pollDataQueue(dtaq, library, dtaqKey, dtaqKeySearchType, peek || acknowledged, true, ccsid, rawKey, entryInfo, enqueueTimestampPosition, "bytes", minWait, maxWait);
+		try{
+			if (acknowledged && result.isFound()) {
+				processAcknowledged(callback, result.getData(), result.hasProperties() ? entryProperties(result) : null, result, dtaq, library, getDedupLog(dtaq, library, dtaqKey), null);
+			}else if (result.hasProperties()) {
+				callback.process(result.getData(), entryProperties(result));
+			}else if (result.isFound()){
+				callback.process(result.getData());
+			}
+		}catch (AS400TransportException e){
+			throw e;
+		}catch (Exception e){
+			throw new AS400DataQueueReadException("DataQueueRead error: ", e);
+		}
+	}
+
+	@Source(sourceStrategy = SourceStrategy.POLLING, pollingPeriod = 1)
+	public void readDataQueueRecord(final SourceCallback callback, @Placement (order=1) @FriendlyName("Data Queue") String dtaq,@Placement (order=2) String library, @Placement (order=3)@FriendlyName("Key")@Summary("Only for keyed data queues. If not specified, the data queue is not keyed.") @Optional String dtaqKey, @Placement (order=4)@FriendlyName("Key Search Type")@Summary("GE (Greater or Equal), GT (Greater Than), LE (Lesser or equal), LT, EQ (Equal), NE (Not Equal) Required if key is specified") @Optional SearchType dtaqKeySearchType,  @Placement (order=5) @FriendlyName("Keep messages in Queue") @Default("false") Boolean peek, @Placement (order=6) @FriendlyName("Record Format")@Summary("Inline record format, e.g. ORDER:CHAR(10);AMOUNT:PACKED(9,2);QTY:ZONED(5,0);LINE:BIN4") @Optional String recordFormat, @Placement (order=7) @FriendlyName("Record Format File")@Summary("LIBRARY/FILE whose record format describes the entries, used if no inline record format is given") @Optional String recordFormatFile, @Placement (order=8) @FriendlyName("Min Wait Time")@Summary("Seconds a read waits while entries are flowing. Defaults to 0 (read back to back without waiting).") @Default("0") int minWait, @Placement (order=9) @FriendlyName("Max Wait Time")@Summary("Seconds a read waits on an idle queue. Every read that comes back empty doubles the wait, up to this.") @Default("30") int maxWait, @Placement (order=10) @FriendlyName("Raw Key")@Summary("Only for keyed data queues. Passes the entry key on as the bytes read from the queue, without conversion or trimming.") @Default("false") boolean rawKey, @Placement (order=11) @FriendlyName("Entry Info")@Summary("Adds the sender job, user and job number (for data queues created with SENDERID(*YES)), the read time and, if known, the enqueue time of the entry as message properties") @Default("false") boolean entryInfo, @Placement (order=12) @FriendlyName("Enqueue Timestamp Position")@Summary("Only with Entry Info. Position (starting at 1) of a timestamp (YYYY-MM-DD-HH.MM.SS.NNNNNN) the producer writes into the entry, used as the enqueue time and for the queue lag metric") @Optional Integer enqueueTimestampPosition, @Placement (order=13) @FriendlyName("Remove after Processing")@Summary("Entries are only removed from the queue once the flow has processed them, an entry the flow fails on is read again. Processed entries are kept in a dedup log until they are removed, so they are not processed twice. FIFO data queues only, not used if messages are kept in the queue.") @Default("false") boolean acknowledge) throws AS400DataQueueReadException, AS400TransportException {
+
+		RecordConverter converter;
+		try {
+			converter = getRecordConverter(recordFormat, recordFormatFile);
+		} catch (AS400TransportException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new AS400DataQueueReadException("Record format error: ", e);
+		}
+		boolean acknowledged = acknowledge && !peek;
+		if (acknowledged && !checkFifo(dtaq, library, dtaqKey)) {
+			return;
+		}
+		DataQueueReadResult result = pollDataQueue(dtaq, library, dtaqKey, dtaqKeySearchType, peek || acknowledged, true, null, rawKey, entryInfo, enqueueTimestampPosition, "record", minWait, maxWait);
+		try{
+			if (acknowledged && result.isFound()) {
+				processAcknowledged(callback, converter.decode((byte[]) result.getData()), result.hasProperties() ? entryProperties(result) : null, result, dtaq, library, getDedupLog(dtaq, library, dtaqKey), null);
+			}else if (result.hasProperties()) {
+				callback.process(converter.decode((byte[]) result.getData()), entryProperties(result));
+			}else if (result.isFound()){
+				callback.process(converter.decode((byte[]) result.getData()));
+			}
+		}catch (AS400TransportException e){
+			throw e;
+		}catch (Exception e){
+			throw new AS400DataQueueReadException("DataQueueRead error: ", e);
+		}
+	}
+
+	// No Remove after Processing, a peek only sees the first entry so a batch can't be read without removing it
+	@Source(sourceStrategy = SourceStrategy.POLLING, pollingPeriod = 1)
+	public void readDataQueueBatch(final SourceCallback callback, @Placement (order=1) @FriendlyName("Data Queue") String dtaq,@Placement (order=2) String library, @Placement (order=3)@FriendlyName("Key")@Summary("Only for keyed data queues. If not specified, the data queue is not keyed.") @Optional String dtaqKey, @Placement (order=4)@FriendlyName("Key Search Type")@Summary("GE (Greater or Equal), GT (Greater Than), LE (Lesser or equal), LT, EQ (Equal), NE (Not Equal) Required if key is specified") @Optional SearchType dtaqKeySearchType, @Placement (order=5) @FriendlyName("Max Entries")@Summary("Maximum number of entries handed to the flow in one message") @Default("100") int maxEntries, @Placement (order=6) @FriendlyName("Max Batch Wait Time")@Summary("Seconds to keep waiting for more entries once the first entry of a batch is read. Defaults to 0 (only take entries already in the queue).") @Default("0") int maxBatchWait, @Placement (order=7) @FriendlyName("Min Wait Time")@Summary("Seconds a read waits while entries are flowing. Defaults to 0 (read back to back without waiting).") @Default("0") int minWait, @Placement (order=8) @FriendlyName("Max Wait Time")@Summary("Seconds a read waits on an idle queue. Every read that comes back empty doubles the wait, up to this.") @Default("30") int maxWait) throws AS400DataQueueReadException, AS400TransportException {
+
+		AdaptivePollWait pollWait = getPollWait("batch", dtaq, library, dtaqKey, minWait, maxWait);
+		List<DataQueueMessage> batch = connectAndReadBatch(dtaq, library, dtaqKey, dtaqKeySearchType, pollWait.getWait(), maxEntries, maxBatchWait, true);
+		pollWait.update(!batch.isEmpty());
+		try{
+			if (!batch.isEmpty()) {
+				callback.process(batch);
+			}
+		}catch (Exception e){
+			throw new AS400DataQueueReadException("DataQueueRead error: ", e);
+		}
+	}
+
+	// No Remove after Processing, consumers reading the same queue in parallel would all peek the same first entry
+	@Source(sourceStrategy = SourceStrategy.NONE)
+	public void listenDataQueue(final SourceCallback callback, @Placement (order=1) @FriendlyName("Data Queue") final String dtaq,@Placement (order=2) final String library, @Placement (order=3)@FriendlyName("Key")@Summary("Only for keyed data queues. If not specified, the data queue is not keyed.") @Optional final String dtaqKey, @Placement (order=4)@FriendlyName("Key Search Type")@Summary("GE (Greater or Equal), GT (Greater Than), LE (Lesser or equal), LT, EQ (Equal), NE (Not Equal) Required if key is specified") @Optional final SearchType dtaqKeySearchType, @Placement (order=5) @FriendlyName("Consumers")@Summary("Number of consumer threads, each reading the queue over its own host connection") @Default("4") int consumers, @Placement (order=6) @FriendlyName("Keep Order per Key")@Summary("Only for keyed data queues. A single reader dispatches entries to the consumer threads by key, entries with the same key are processed in queue order.") @Default("false") boolean orderedByKey, @Placement (order=7) @FriendlyName("Entry Info")@Summary("Adds the sender job, user and job number (for data queues created with SENDERID(*YES)), the read time and, if known, the enqueue time of the entry as message properties") @Default("false") final boolean entryInfo, @Placement (order=8) @FriendlyName("Enqueue Timestamp Position")@Summary("Only with Entry Info. Position (starting at 1) of a timestamp (YYYY-MM-DD-HH.MM.SS.NNNNNN) the producer writes into the entry, used as the enqueue time and for the queue lag metric") @Optional final Integer enqueueTimestampPosition) {
+
+		final ConsumerGroup group = new ConsumerGroup("as400-dtaq-" + dtaq, connectionStrategy);
+		consumers = Math.max(consumers, 1);
+		if (orderedByKey) {
+			final List<BlockingQueue<DataQueueReadResult>> lanes = new ArrayList<BlockingQueue<DataQueueReadResult>>(consumers);
+			for (int i = 0; i < consumers; i++) {
+				final BlockingQueue<DataQueueReadResult> lane = new ArrayBlockingQueue<DataQueueReadResult>(LISTENER_LANE_CAPACITY);
+				lanes.add(lane);
+				group.start(new Runnable() {
+					public void run() {
+						try {
+							while (group.isRunning()) {
+								DataQueueReadResult result = lane.poll(1, TimeUnit.SECONDS);
+								if (result != null) {
+									dispatchEntry(callback, result, dtaq);
+								}
+							}
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					}
+				});
+			}
+			// Blocks while the lane is full, so the reader never gets ahead of the consumers
+			final DataQueueEntryHandler dispatcher = new DataQueueEntryHandler() {
+				public void handle(DataQueueReadResult result) throws InterruptedException {
+					Object key = result.getKey();
+					int lane = key == null ? 0 : (key.hashCode() & Integer.MAX_VALUE) % lanes.size();
+					lanes.get(lane).put(result);
+				}
+			};
+			group.start(new Runnable() {
+				public void run() {
+					consumeDataQueue(group, dtaq, library, dtaqKey, dtaqKeySearchType, entryInfo, enqueueTimestampPosition, dispatcher);
+				}
+			});
+		} else {
+			final DataQueueEntryHandler processor = new DataQueueEntryHandler() {
+				public void handle(DataQueueReadResult result) {
+					dispatchEntry(callback, result, dtaq);
+				}
+			};
+			for (int i = 0; i < consumers; i++) {
+				group.start(new Runnable() {
+					public void run() {
+						consumeDataQueue(group, dtaq, library, dtaqKey, dtaqKeySearchType, entryInfo, enqueueTimestampPosition, processor);
+					}
+				});
+			}
+		}
+		group.awaitStop();
+	}
+
+	@Source(sourceStrategy = SourceStrategy.NONE)
+	public void listenDataQueues(final SourceCallback callback, @Placement (order=1) @FriendlyName("Data Queues")@Summary("Comma separated list of LIBRARY/DTAQ, in priority order") String dtaqs, @Placement (order=2) @FriendlyName("Readers")@Summary("Number of reader threads, each reading its share of the queues over its own host connection") @Default("1") int readers, @Placement (order=3) @FriendlyName("Prioritized")@Summary("Read a queue only when all queues listed before it are empty, instead of taking turns") @Default("false") final boolean prioritized, @Placement (order=4) @FriendlyName("Max Idle Wait")@Summary("Milliseconds a reader waits at most on one of its queues once all of them are empty. Also the longest delay before a new entry on another idle queue is picked up, lower values pick entries up sooner at the cost of more reads on the host.") @Default("30000") final long maxIdleWait, @Placement (order=5) @FriendlyName("Entry Info")@Summary("Adds the sender job, user and job number (for data queues created with SENDERID(*YES)), the read time and, if known, the enqueue time of the entry as message properties") @Default("false") final boolean entryInfo, @Placement (order=6) @FriendlyName("Remove after Processing")@Summary("Entries are only removed from the queue once the flow has processed them, an entry the flow fails on is read again. Processed entries are kept in a dedup log until they are removed, so they are not processed twice. FIFO data queues only.") @Default("false") final boolean acknowledge) throws AS400DataQueueReadException, AS400TransportException {
+
+		final ConsumerGroup group = new ConsumerGroup("as400-dtaqs", connectionStrategy);
+		List<FanInSchedule.Queue> queues;
+		List<List<FanInSchedule.Queue>> shares;
+		try {
+			queues = FanInSchedule.parse(dtaqs);
+			shares = FanInSchedule.split(queues, readers);
+		} catch (IllegalArgumentException e) {
+			throw new AS400DataQueueReadException("DataQueue list error: ", e);
+		}
+		if (acknowledge) {
+			AS400 system = borrowDataQueueSystem(true);
+			try {
+				for (FanInSchedule.Queue queue : queues) {
+					checkFifo(system, queue.getName(), queue.getLibrary(), false);
+				}
+			} finally {
+				connectionStrategy.releaseSystem(system);
+			}
+		}
+		for (List<FanInSchedule.Queue> share : shares) {
+			final FanInSchedule schedule = new FanInSchedule(share, prioritized, maxIdleWait);
+			group.start(new Runnable() {
+				public void run() {
+					consumeDataQueues(group, schedule, entryInfo, acknowledge, callback);
+				}
+			});
+		}
+		group.awaitStop();
+	}
+
+	@Source(sourceStrategy = SourceStrategy.NONE)
+	public void listenKeyedDataQueue(final SourceCallback callback, @Placement (order=1) @FriendlyName("Data Queue") final String dtaq,@Placement (order=2) final String library, @Placement (order=3) @FriendlyName("Keys")@Summary("Comma separated list of keys, each read as its own partition") @Optional String keys, @Placement (order=4) @FriendlyName("Key Split Points")@Summary("Comma separated keys in ascending key order of the host, splitting the key space into ranges read as partitions, e.g. G,N,T for ..G, G..N, N..T and T... Used if no keys are given.") @Optional String keySplitPoints, @Placement (order=5) @FriendlyName("Consumers")@Summary("Number of consumer threads, each reading over its own host connection. A consumer reads one partition at a time, moving on to the busiest partitions.") @Default("4") int consumers, @Placement (order=6) @FriendlyName("Max Idle Wait")@Summary("Milliseconds an empty partition sits out at most before it is read again. Also the longest delay before a new entry on an idle partition is picked up.") @Default("1000") final long maxIdleWait, @Placement (order=7) @FriendlyName("Entry Info")@Summary("Adds the sender job, user and job number (for data queues created with SENDERID(*YES)), the read time and, if known, the enqueue time of the entry as message properties") @Default("false") final boolean entryInfo, @Placement (order=8) @FriendlyName("Remove after Processing")@Summary("Entries are only removed from the queue once the flow has processed them, an entry the flow fails on is read again. Processed entries are kept in a dedup log until they are removed, so they are not processed twice. FIFO data queues only.") @Default("false") final boolean acknowledge) throws AS400DataQueueReadException, AS400TransportException {
+
+		final ConsumerGroup group = new ConsumerGroup("as400-dtaq-" + dtaq, connectionStrategy);
+		final KeyPartitionSchedule schedule;
+		try {
+			if (keys != null) {
+				schedule = new KeyPartitionSchedule(KeyPartitionSchedule.keys(keys), maxIdleWait);
+			} else if (keySplitPoints != null) {
+				schedule = new KeyPartitionSchedule(KeyPartitionSchedule.ranges(keySplitPoints), maxIdleWait);
+			} else {
+				throw new IllegalArgumentException("Keys or key split points are required");
+			}
+		} catch (IllegalArgumentException e) {
+			throw new AS400DataQueueReadException("DataQueue key partition error: ", e);
+		}
+		if (keys == null) {
+			checkSplitPoints(dtaq, library, schedule);
+		}
+		if (acknowledge) {
+			AS400 system = borrowDataQueueSystem(true);
+			try {
+				checkFifo(system, dtaq, library, true);
+			} finally {
+				connectionStrategy.releaseSystem(system);
+			}
+		}
+		consumers = Math.max(Math.min(consumers, schedule.getPartitions().size()), 1);
+		for (int i = 0; i < consumers; i++) {
+			group.start(new Runnable() {
+				public void run() {
+					consumeKeyPartitions(group, schedule, dtaq, library, entryInfo, acknowledge, callback);
+				}
+			});
+		}
+		group.awaitStop();
+	}
+
+	// Blocking read loop of a single listener consumer over its own connection
+	private void consumeDataQueue(ConsumerGroup group, String dtaq, String library, String dtaqKey, SearchType dtaqKeySearchType, boolean entryInfo, Integer enqueueTimestampPosition, DataQueueEntryHandler handler) {
+		AS400 system = null;
+		while (group.isRunning()) {
+			try {
+				if (system == null) {
+					system = group.openConnection();
+				}
+				DataQueueReadResult result = readDataQueue(system, dtaq, library, dtaqKey, dtaqKeySearchType, MAX_DQ_WAIT_TIME, false, false, null, false, entryInfo, enqueueTimestampPosition);
+				if (result.isFound()) {
+					handler.handle(result);
+				}
+			} catch (AS400TransportException e) {
+				if (!group.isRunning()) {
+					break;
+				}
+				logger.warn("DataQueue consumer connection issue ", e);
+				group.closeConnection(system);
+				system = null;
+				if (!group.pause(RECONNECT_WAIT_TIME)) {
+					break;
+				}
+			} catch (AS400DataQueueReadException e) {
+				logger.warn("DataQueue consumer read error ", e);
+				if (!group.pause(RECONNECT_WAIT_TIME)) {
+					break;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		group.closeConnection(system);
+	}
+
+	// Entry is already removed from the queue, so a failing flow is logged and the consumer carries on
+	private void dispatchEntry(SourceCallback callback, DataQueueReadResult result, String dtaq) {
+		try {
+			if (result.hasProperties()) {
+				callback.process(result.getData(), entryProperties(result));
+			} else {
+				callback.process(result.getData());
+			}
+		} catch (Exception e) {
+			logger.error("DataQueue listener failed to process entry from " + dtaq, e);
+		}
+	}
+
+	// Reads the queues of one fan-in reader without waiting, in the order of its schedule, over a single connection
+	// Once all queues are empty one read waits on the host, sub-second waits are slept instead
+	// Each queue is read by a single reader, so the entry it peeks is the one it removes once processed
+	private void consumeDataQueues(ConsumerGroup group, FanInSchedule schedule, boolean entryInfo, boolean acknowledged, SourceCallback callback) {
+		AS400 system = null;
+		long idleWait = 0;
+		while (group.isRunning()) {
+			FanInSchedule.Queue queue = schedule.next();
+			int readWait = (int) Math.min(idleWait / 1000, MAX_DQ_WAIT_TIME);
+			try {
+				if (system == null) {
+					system = group.openConnection();
+				}
+				if (readWait == 0 && idleWait > 0 && !group.pause(idleWait)) {
+					break;
+				}
+				DataQueueReadResult result = readDataQueue(system, queue.getName(), queue.getLibrary(), null, null, readWait, acknowledged, false, null, false, entryInfo, null);
+				if (result.isFound() && acknowledged) {
+					dispatchAcknowledged(callback, fanInProperties(result, queue), result, queue.getName(), queue.getLibrary(), getDedupLog(queue.getName(), queue.getLibrary(), null), system);
+				} else if (result.isFound()) {
+					dispatchFanInEntry(callback, result, queue);
+				}
+				idleWait = schedule.update(result.isFound());
+			} catch (AS400TransportException e) {
+				if (!group.isRunning()) {
+					break;
+				}
+				logger.warn("DataQueue fan-in reader connection issue ", e);
+				group.closeConnection(system);
+				system = null;
+				if (!group.pause(RECONNECT_WAIT_TIME)) {
+					break;
+				}
+			} catch (AS400DataQueueReadException e) {
+				// Move on, a queue that can't be read doesn't hold up the others. A failed waiting read still waits, so
+				// queues that all fail are not read back to back.
+				logger.warn("DataQueue fan-in read error on " + queue, e);
+				if (readWait > 0 && !group.pause(idleWait)) {
+					break;
+				}
+				idleWait = schedule.update(false);
+			}
+		}
+		group.closeConnection(system);
+	}
+
+	// Reads the claimed partition without waiting until it is empty or its turn is up, then moves on to the next partition
+	// A partition is read by one consumer at a time, so the entry it peeks is the one it removes once processed
+	private void consumeKeyPartitions(ConsumerGroup group, KeyPartitionSchedule schedule, String dtaq, String library, boolean entryInfo, boolean acknowledged, SourceCallback callback) {
+		AS400 system = null;
+		while (group.isRunning()) {
+			KeyPartitionSchedule.Partition partition;
+			try {
+				partition = schedule.claim(RECONNECT_WAIT_TIME);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+			if (partition == null) {
+				continue;
+			}
+			boolean found = false;
+			try {
+				if (system == null) {
+					system = group.openConnection();
+				}
+				DedupLog dedupLog = acknowledged ? getDedupLog(dtaq, library, partition.toString()) : null;
+				for (int i = 0; i < PARTITION_TURN && group.isRunning(); i++) {
+					DataQueueReadResult result = readKeyPartition(system, dtaq, library, partition, acknowledged, entryInfo);
+					if (!result.isFound()) {
+						break;
+					}
+					found = true;
+					if (!acknowledged) {
+						dispatchEntry(callback, result, dtaq);
+					} else if (!dispatchAcknowledged(callback, result.hasProperties() ? entryProperties(result) : null, result, dtaq, library, dedupLog, system)) {
+						// Other partitions get their turn before the failed entry is read again
+						break;
+					}
+				}
+			} catch (AS400TransportException e) {
+				if (!group.isRunning()) {
+					break;
+				}
+				logger.warn("DataQueue partition consumer connection issue ", e);
+				group.closeConnection(system);
+				system = null;
+				if (!group.pause(RECONNECT_WAIT_TIME)) {
+					break;
+				}
+			} catch (AS400DataQueueReadException e) {
+				logger.warn("DataQueue partition read error on " + partition, e);
+			} finally {
+				schedule.release(partition, found);
+			}
+		}
+		group.closeConnection(system);
+	}
+
+	// Exact keys and the outer ranges are one search on the host. An inner range peeks the lowest key from its lower
+	// bound and reads that key only if it is below the upper bound, comparing the padded key bytes as the host does.
+	private DataQueueReadResult readKeyPartition(AS400 system, String dtaq, String library, KeyPartitionSchedule.Partition partition, boolean peek, boolean entryInfo) throws AS400DataQueueReadException, AS400TransportException {
+		if (partition.isExact()) {
+			return readDataQueue(system, dtaq, library, partition.getKey(), SearchType.EQUAL, 0, peek, false, null, false, entryInfo, null);
+		}
+		if (partition.getLower() == null) {
+			return readDataQueue(system, dtaq, library, partition.getUpper(), SearchType.LESS_THAN, 0, peek, false, null, false, entryInfo, null);
+		}
+		if (partition.getUpper() == null) {
+			return readDataQueue(system, dtaq, library, partition.getLower(), SearchType.GREATER_THAN_OR_EQUAL, 0, peek, false, null, false, entryInfo, null);
+		}
+		DataQueueReadResult peeked = readDataQueue(system, dtaq, library, partition.getLower(), SearchType.GREATER_THAN_OR_EQUAL, 0, true, true, null, true, false, null);
+		if (!peeked.isFound()) {
+			return peeked;
+		}
+		String key;
+		try {
+			KeyedDataQueueHandle handle = connectionStrategy.getDataQueueCache(system).getKeyedDataQueue(system, constructDataQueue(dtaq, library));
+			byte[] upper = handle.getPaddedKey(partition.getUpper());
+			if (KeyPartitionSchedule.compareKeys((byte[]) peeked.getKey(), upper) >= 0) {
+				return DataQueueReadResult.empty();
+			}
+			key = handle.getKeyString(peeked.getEntry().getKey());
+		} catch (Exception e) {
+			throw new AS400DataQueueReadException("DataQueueRead key error: ", e);
+		}
+		return readDataQueue(system, dtaq, library, key, SearchType.EQUAL, 0, peek, false, null, false, entryInfo, null);
+	}
+
+	// Ranges are only disjoint and cover all keys if the split points ascend in the key order of the host, which depends
+	// on the CCSID and the key length of the queue
+	private void checkSplitPoints(String dtaq, String library, KeyPartitionSchedule schedule) throws AS400DataQueueReadException, AS400TransportException {
+		String dataQueue = constructDataQueue(dtaq, library);
+		AS400 system = borrowDataQueueSystem(true);
+		try {
+			final DataQueueCache.KeyedDataQueueHandle handle = connectionStrategy.getDataQueueCache(system).getKeyedDataQueue(system, dataQueue);
+			schedule.checkSplitPoints(new KeyPartitionSchedule.KeyEncoder() {
+				public byte[] encode(String key) throws UnsupportedEncodingException {
+					return handle.getPaddedKey(key);
+				}
+			});
+		} catch (IllegalArgumentException e) {
+			throw new AS400DataQueueReadException("DataQueue key split points of " + dataQueue + " error: ", e);
+		} catch (java.io.IOException e) {
+			connectionStrategy.discardSystem(system);
+			throw new AS400TransportException("DataQueueRead connection dropped error: ", e);
+		} catch (Exception e) {
+			throw new AS400DataQueueReadException("DataQueueRead can't check key split points of " + dataQueue + ": ", e);
+		} finally {
+			connectionStrategy.releaseSystem(system);
+		}
+	}
+
+	// Entry is already removed from the queue, so a failing flow is logged and the reader carries on
+	private void dispatchFanInEntry(SourceCallback callback, DataQueueReadResult result, FanInSchedule.Queue queue) {
+		try {
+			callback.process(result.getData(), fanInProperties(result, queue));
+		} catch (Exception e) {
+			logger.error("DataQueue fan-in listener failed to process entry from " + queue, e);
+		}
+	}
+
+	private Map<String, Object> fanInProperties(DataQueueReadResult result, FanInSchedule.Queue queue) {
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put(DATAQUEUE_NAME_PROPERTY, queue.getName());
+		properties.put(DATAQUEUE_LIBRARY_PROPERTY, queue.getLibrary());
+		putEntryProperties(properties, result);
+		return properties;
+	}
+
+	// Entry stays in the queue if the flow fails on it, the failure is logged and the entry read again later
+	//
+	// @return whether the entry was processed
+	private boolean dispatchAcknowledged(SourceCallback callback, Map<String, Object> properties, DataQueueReadResult result, String dtaq, String library, DedupLog dedupLog, AS400 system) throws AS400TransportException {
+		try {
+			processAcknowledged(callback, result.getData(), properties, result, dtaq, library, dedupLog, system);
+			return true;
+		} catch (AS400TransportException e) {
+			throw e;
+		} catch (Exception e) {
+			logger.error("DataQueue listener failed to process entry from " + constructDataQueue(dtaq, library) + ", it stays in the queue", e);
+			return false;
+		}
+	}
+
+	private interface DataQueueEntryHandler {
+		void handle(DataQueueReadResult result) throws InterruptedException;
+	}
+
+	// Entries with only a key get a singleton map, the full map is only built if entry info was asked for
+	private Map<String, Object> entryProperties(DataQueueReadResult result) {
+		if (result.getInfo() == null) {
+			return Collections.<String, Object>singletonMap(DATAQUEUE_KEY_PROPERTY, result.getKey());
+		}
+		Map<String, Object> properties = new HashMap<String, Object>();
+		putEntryProperties(properties, result);
+		return properties;
+	}
+
+	private void putEntryProperties(Map<String, Object> properties, DataQueueReadResult result) {
+		if (result.isKeyed()) {
+			properties.put(DATAQUEUE_KEY_PROPERTY, result.getKey());
+		}
+		if (result.getInfo() != null) {
+			result.getInfo().addProperties(properties);
+		}
+	}
+
+	private DataQueueReadResult connectAndRead(String dtaq, String library,
 			String dtaqKey, SearchType dtaqKeySearchType, int dtaqwaittime,
-			Boolean peek, int maxRetries) throws AS400DataQueueReadException, AS400TransportException {
-		Map<String,Object> result = null;
+			Boolean peek, boolean source) throws AS400DataQueueReadException, AS400TransportException {
+		return connectAndRead(dtaq, library, dtaqKey, dtaqKeySearchType, dtaqwaittime, peek, false, null, false, false, null, source);
+	}
+
+	private DataQueueReadResult connectAndRead(String dtaq, String library,
+			String dtaqKey, SearchType dtaqKeySearchType, int dtaqwaittime,
+			Boolean peek, boolean binary, Integer ccsid, boolean rawKey, boolean entryInfo, Integer enqueueTimestampPosition, boolean source) throws AS400DataQueueReadException, AS400TransportException {
+		DataQueueReadResult result = null;
 		long starttime = System.currentTimeMillis();
 		// Read for the period of up to MAX_WAIT_TIME seconds, up to max wait time or forever. Catch / reconnect automatically if connection is dropped, don't rely on Mule reconnection strategy
 		do { 
+			// Reconnecting happens in the background, not on this thread
+			AS400 system;
+			if (source) {
+				system = borrowPollingSystem(AS400.DATAQUEUE);
+				if (system == null) {
+					return DataQueueReadResult.empty();
+				}
+			} else {
+				system = borrowDataQueueSystem(false);
+			}
 			try {
-				connectionStrategy.validateOrReconnect(maxRetries, RECONNECT_WAIT_TIME); // Don't give up till reconnected, reconnect every 10 seconds
-				result = readDataQueue(dtaq, library, dtaqKey, dtaqKeySearchType, Math.min(dtaqwaittime, MAX_DQ_WAIT_TIME), peek);
+				result = readDataQueue(system, dtaq, library, dtaqKey, dtaqKeySearchType, Math.min(dtaqwaittime, MAX_DQ_WAIT_TIME), peek, binary, ccsid, rawKey, entryInfo, enqueueTimestampPosition);
 			} catch (AS400TransportException e) {
 				logger.warn("DataQueue connection issue ", e);
-				connectionStrategy.validateOrReconnect(maxRetries, RECONNECT_WAIT_TIME); // Don't give up till reconnected, reconnect every 10 seconds
+				connectionStrategy.discardSystem(system);
+			} finally {
+				connectionStrategy.releaseSystem(system);
 			}
-			} while ((result == null || !result.containsKey("readMessage")) 
-					&& (dtaqwaittime == -1 || System.currentTimeMillis() - starttime <= dtaqwaittime * 1000 ));
+			} while ((result == null || !result.isFound()) 
+					&& (dtaqwaittime == -1 || System.currentTimeMillis() - starttime < dtaqwaittime * 1000 ));
+		return result != null ? result : DataQueueReadResult.empty();
+	}
+
+	// One read of a polling source, with the wait adapted to whether the previous reads found entries
+	private DataQueueReadResult pollDataQueue(String dtaq, String library, String dtaqKey, SearchType dtaqKeySearchType,
+			Boolean peek, boolean binary, Integer ccsid, boolean rawKey, boolean entryInfo, Integer enqueueTimestampPosition, String sourceType, int minWait, int maxWait) throws AS400DataQueueReadException, AS400TransportException {
+		AdaptivePollWait pollWait = getPollWait(sourceType, dtaq, library, dtaqKey, minWait, maxWait);
+		DataQueueReadResult result = connectAndRead(dtaq, library, dtaqKey, dtaqKeySearchType, pollWait.getWait(), peek, binary, ccsid, rawKey, entryInfo, enqueueTimestampPosition, true);
+		pollWait.update(result.isFound());
 		return result;
 	}
 
+	// Sources of a different type or with other waits on the same queue and key each adapt their own wait
+	private AdaptivePollWait getPollWait(String sourceType, String dtaq, String library, String dtaqKey, int minWait, int maxWait) {
+		String dataQueue = constructDataQueue(dtaq, library);
+		String source = sourceType + " " + (dtaqKey == null ? dataQueue : dataQueue + "(" + dtaqKey + ")") + " " + minWait + "-" + maxWait;
+		AdaptivePollWait pollWait = pollWaits.get(source);
+		if (pollWait == null) {
+			pollWait = new AdaptivePollWait(minWait, maxWait);
+			AdaptivePollWait existing = pollWaits.putIfAbsent(source, pollWait);
+			if (existing != null) {
+				return existing;
+			}
+			connectionStrategy.getMetrics().dataQueue(dataQueue).setPollWait(pollWait);
+		}
+		return pollWait;
+	}
+
+	// Hand a peeked entry to the flow and remove it afterwards. Its hash stays in the dedup log from the end of
+	// processing until it is gone from the queue, so an entry that could not be removed is not processed again.
+	// The entry is removed over the connection of a listener consumer, or over a borrowed one for polling sources.
+	private void processAcknowledged(SourceCallback callback, Object payload, Map<String, Object> properties, DataQueueReadResult result, String dtaq, String library, DedupLog dedupLog, AS400 system) throws Exception {
+		HostDataQueueEntry entry = result.getEntry();
+		byte[] entryKey = entry.getKey();
+		byte[] hash = DedupLog.hash(entryKey, entry.getData(), entry.getSenderInformation());
+		if (dedupLog.contains(hash)) {
+			logger.info("Removing entry from " + dtaq + " that was processed before but not removed");
+		} else {
+			try {
+				if (properties != null) {
+					callback.process(payload, properties);
+				} else {
+					callback.process(payload);
+				}
+			} catch (Exception e) {
+				// The entry stays in the queue and is read again, pause so a failing entry doesn't keep the host busy
+				pause(ACKNOWLEDGE_RETRY_WAIT);
+				throw e;
+			}
+			dedupLog.add(hash);
+		}
+		boolean removed;
+		if (system != null) {
+			removed = removeProcessedEntry(system, dedupLog, dtaq, library, entryKey, hash);
+		} else {
+			system = borrowDataQueueSystem(true);
+			try {
+				removed = removeProcessedEntry(system, dedupLog, dtaq, library, entryKey, hash);
+			} catch (AS400TransportException e) {
+				connectionStrategy.discardSystem(system);
+				throw e;
+			} finally {
+				connectionStrategy.releaseSystem(system);
+			}
+		}
+		if (removed) {
+			dedupLog.remove(hash);
+		}
+	}
+
+	// Removing takes the first entry, or the first with the same key, which is the processed entry unless someone else read it in the meantime.
+	// An entry taken instead stays in the dedup log until it is back in the queue, and the processed entry keeps its hash
+	// there, so it is removed without processing it again once it is read.
+	//
+	// @return whether the processed entry is gone from the queue
+	private boolean removeProcessedEntry(AS400 system, DedupLog dedupLog, String dtaq, String library, byte[] entryKey, byte[] hash) throws AS400DataQueueReadException, AS400TransportException {
+		String dataQueue = constructDataQueue(dtaq, library);
+		DataQueueMetrics queueMetrics = connectionStrategy.getMetrics().dataQueue(dataQueue);
+		try {
+			DataQueueCache cache = connectionStrategy.getDataQueueCache(system);
+			returnTakenEntries(dedupLog, cache, system, dataQueue);
+			HostDataQueueEntry removed;
+			long start = System.nanoTime();
+			if (entryKey != null) {
+				removed = cache.getKeyedDataQueue(system, dataQueue).getQueue().read(entryKey, 0, SearchType.EQUAL.getSearchType());
+			} else {
+				removed = cache.getDataQueue(system, dataQueue).read(0);
+			}
+			queueMetrics.recordRead(false, System.nanoTime() - start, removed != null);
+			if (removed == null) {
+				logger.warn("Processed entry of " + dataQueue + " was already removed from the queue");
+				return true;
+			}
+			if (!Arrays.equals(hash, DedupLog.hash(entryKey, removed.getData(), removed.getSenderInformation()))) {
+				logger.warn("Processed entry of " + dataQueue + " was read by someone else, putting back the entry read instead");
+				dedupLog.take(entryKey, removed.getData());
+				returnTakenEntries(dedupLog, cache, system, dataQueue);
+				return false;
+			}
+			return true;
+		} catch (java.io.IOException e) {
+			throw new AS400TransportException("DataQueueRead connection dropped error: ", e);
+		} catch (Exception e) {
+			queueMetrics.recordReadFailure();
+			throw new AS400DataQueueReadException("DataQueueRead remove processed entry error: ", e);
+		}
+	}
+
+	// Write the entries taken by mistake back to the queue, including those left by a failed write back or a stop
+	private void returnTakenEntries(DedupLog dedupLog, DataQueueCache cache, AS400 system, String dataQueue) throws Exception {
+		for (DedupLog.TakenEntry taken : dedupLog.getTaken()) {
+			if (taken.getKey() != null) {
+				cache.getKeyedDataQueue(system, dataQueue).getQueue().write(taken.getKey(), taken.getData());
+			} else {
+				cache.getDataQueue(system, dataQueue).write(taken.getData());
+			}
+			dedupLog.returned(taken.getKey(), taken.getData());
+		}
+	}
+
+	// Removing after processing relies on the removing read taking the entry that was peeked, which a LIFO queue
+	// doesn't do once new entries come in. The queue order is retrieved once per queue.
+	//
+	// @return false if the connection is unavailable and the queue order is not known yet, the poll is skipped then
+	private boolean checkFifo(String dtaq, String library, String dtaqKey) throws AS400DataQueueReadException, AS400TransportException {
+		AS400 system = null;
+		if (!fifoQueues.containsKey(constructDataQueue(dtaq, library))) {
+			system = borrowPollingSystem(AS400.DATAQUEUE);
+			if (system == null) {
+				return false;
+			}
+		}
+		try {
+			checkFifo(system, dtaq, library, dtaqKey != null);
+		} finally {
+			connectionStrategy.releaseSystem(system);
+		}
+		return true;
+	}
+
+	// The pooled connection is only used if the queue order is not known yet
+	private void checkFifo(AS400 system, String dtaq, String library, boolean keyed) throws AS400DataQueueReadException, AS400TransportException {
+		String dataQueue = constructDataQueue(dtaq, library);
+		Boolean fifo = fifoQueues.get(dataQueue);
+		if (fifo == null) {
+			try {
+				DataQueueCache cache = connectionStrategy.getDataQueueCache(system);
+				fifo = keyed ? cache.getKeyedDataQueue(system, dataQueue).getQueue().isFIFO() : cache.getDataQueue(system, dataQueue).isFIFO();
+				fifoQueues.put(dataQueue, fifo);
+			} catch (java.io.IOException e) {
+				connectionStrategy.discardSystem(system);
+				throw new AS400TransportException("DataQueueRead connection dropped error: ", e);
+			} catch (Exception e) {
+				throw new AS400DataQueueReadException("DataQueueRead can't retrieve the attributes of " + dataQueue + ": ", e);
+			}
+		}
+		if (!fifo) {
+			throw new AS400DataQueueReadException("DataQueueRead Remove after Processing needs a FIFO data queue, " + dataQueue + " is LIFO");
+		}
+	}
+
+	private DedupLog getDedupLog(String dtaq, String library, String dtaqKey) throws AS400DataQueueReadException {
+		String directory = connectionStrategy.getDedupLogDirectory();
+		if (directory == null) {
+			directory = AS400ConnectionStrategy.getDefaultStateDirectory();
+		}
+		String name = connectionStrategy.getEndpoint() + "_" + library + "_" + dtaq + (dtaqKey == null ? "" : "_" + dtaqKey);
+		File file = new File(directory, name.replaceAll("[^A-Za-z0-9._-]", "_") + ".dedup");
+		DedupLog dedupLog = dedupLogs.get(file.getPath());
+		if (dedupLog == null) {
+			try {
+				dedupLog = DedupLog.open(file);
+			} catch (java.io.IOException e) {
+				throw new AS400DataQueueReadException("DataQueueRead can't open dedup log " + file + ": ", e);
+			}
+			DedupLog existing = dedupLogs.putIfAbsent(file.getPath(), dedupLog);
+			if (existing != null) {
+				dedupLog = existing;
+			}
+		}
+		return dedupLog;
+	}
+
+	private static void pause(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// Sources wait through an outage, processors fail fast while reconnect attempts keep failing
+	// A polling source waits up to SOURCE_RECONNECT_WAIT for the background reconnect. While the host stays down that wait
+	// runs out on every poll, the poll is skipped then and the outage only logged when it starts and ends.
+	//
+	// @return null if the connection is unavailable
+	private AS400 borrowPollingSystem(int service) {
+		try {
+			AS400 system = connectionStrategy.borrowSystem(service, SOURCE_RECONNECT_WAIT, false);
+			if (pollingOutage.compareAndSet(true, false)) {
+				logger.info("AS400 connection to " + connectionStrategy.getEndpoint() + " available again, polling sources resume");
+			}
+			return system;
+		} catch (AS400TransportException e) {
+			if (pollingOutage.compareAndSet(false, true)) {
+				logger.warn("AS400 connection to " + connectionStrategy.getEndpoint() + " unavailable, polling sources skip their polls until it is back", e);
+			}
+			return null;
+		}
+	}
+
+	private AS400 borrowDataQueueSystem(boolean source) throws AS400TransportException {
+		if (source) {
+			return connectionStrategy.borrowSystem(AS400.DATAQUEUE, SOURCE_RECONNECT_WAIT, false);
+		}
+		return connectionStrategy.borrowSystem(AS400.DATAQUEUE, connectionStrategy.getProcessorReconnectWait());
+	}
+
 	@Processor(friendlyName="Read Data Queue")
 	public String readDataQueueProcessor(@OutboundHeaders
-			Map<String, Object> outboundHeaders, @Placement (order=1) @FriendlyName("Data Queue") String dtaq,@Placement (order=2) String library, @Placement (order=3)@FriendlyName("Key")@Summary("Only for keyed data queues. If not specified, the data queue is not keyed.") @Optional String dtaqKey, @Placement (order=4)@FriendlyName("Key Search Type")@Summary("GE (Greater or Equal), GT (Greater Than), LE (Lesser or equal), LT, EQ (Equal), NE (Not Equal) Required if key is specified") @Optional SearchType dtaqKeySearchType, @Placement (order=5) @FriendlyName("Max Wait Time")@Summary("Defaults to -1 (wait till entry is retrieved).") @Default("-1") int dtaqwaittime, @Placement (order=6) @FriendlyName("Keep messages in Queue") @Default("false") Boolean peek) throws AS400DataQueueReadException, AS400TransportException {
+			Map<String, Object> outboundHeaders, @Placement (order=1) @FriendlyName("Data Queue") String dtaq,@Placement (order=2) String library, @Placement (order=3)@FriendlyName("Key")@Summary("Only for keyed data queues. If not specified, the data queue is not keyed.") @Optional String dtaqKey, @Placement (order=4)@FriendlyName("Key Search Type")@Summary("GE (Greater or Equal), GT (Greater Than), LE (Lesser or equal), LT, EQ (Equal), NE (Not Equal) Required if key is specified") @Optional SearchType dtaqKeySearchType, @Placement (order=5) @FriendlyName("Max Wait Time")@Summary("Defaults to -1 (wait till entry is retrieved).") @Default("-1") int dtaqwaittime, @Placement (order=6) @FriendlyName("Keep messages in Queue") @Default("false") Boolean peek, @Placement (order=7) @FriendlyName("Entry Info")@Summary("Adds the sender job, user and job number (for data queues created with SENDERID(*YES)), the read time and, if known, the enqueue time of the entry as message properties") @Default("false") boolean entryInfo, @Placement (order=8) @FriendlyName("Enqueue Timestamp Position")@Summary("Only with Entry Info. Position (starting at 1) of a timestamp (YYYY-MM-DD-HH.MM.SS.NNNNNN) the producer writes into the entry, used as the enqueue time and for the queue lag metric") @Optional Integer enqueueTimestampPosition) throws AS400DataQueueReadException, AS400TransportException {
 
-		Map<String,Object> result = connectAndRead(dtaq, library, dtaqKey, dtaqKeySearchType, dtaqwaittime, peek, MAX_PROCESSOR_RETRIES);
+		DataQueueReadResult result = connectAndRead(dtaq, library, dtaqKey, dtaqKeySearchType, dtaqwaittime, peek, false, null, false, entryInfo, enqueueTimestampPosition, false);
  
 		try{
-			if (result.containsKey("properties")){
-				Map <String, Object> outboundProperties = (Map<String,Object>) result.get("properties");
-				for (Map.Entry<String, Object> entry : outboundProperties.entrySet()) {
-					outboundHeaders.put(entry.getKey(), entry.getValue());
-				}
-				return (String) result.get("readMessage");
-			}else{
-				return (String) result.get("readMessage");
-			}
+			putEntryProperties(outboundHeaders, result);
+			return (String) result.getData();
 		}catch (Exception e){
 			if (e instanceof AS400DataQueueReadException){
 				throw (AS400DataQueueReadException) e;
@@ -124,132 +900,977 @@ public class AS400Connector {
 		}		
 	}
 
-	
-	private Map<String,Object> readDataQueue(String dtaq, String library, String dtaqKey, SearchType dtaqKeySearchType, int dtaqwaittime, Boolean peek) throws AS400DataQueueReadException, AS400TransportException {
+	@Processor(friendlyName="Read Data Queue Bytes")
+	public Object readDataQueueBytesProcessor(@OutboundHeaders
+			Map<String, Object> outboundHeaders, @Placement (order=1) @FriendlyName("Data Queue") String dtaq,@Placement (order=2) String library, @Placement (order=3)@FriendlyName("Key")@Summary("Only for keyed data queues. If not specified, the data queue is not keyed.") @Optional String dtaqKey, @Placement (order=4)@FriendlyName("Key Search Type")@Summary("GE (Greater or Equal), GT (Greater Than), LE (Lesser or equal), LT, EQ (Equal), NE (Not Equal) Required if key is specified") @Optional SearchType dtaqKeySearchType, @Placement (order=5) @FriendlyName("Max Wait Time")@Summary("Defaults to -1 (wait till entry is retrieved).") @Default("-1") int dtaqwaittime, @Placement (order=6) @FriendlyName("Keep messages in Queue") @Default("false") Boolean peek, @Placement (order=7) @FriendlyName("CCSID")@Summary("If specified, the entry is converted to text with this CCSID (without trimming) instead of being returned as bytes") @Optional Integer ccsid, @Placement (order=8) @FriendlyName("Raw Key")@Summary("Only for keyed data queues. Passes the entry key on as the bytes read from the queue, without conversion or trimming.") @Default("false") boolean rawKey, @Placement (order=9) @FriendlyName("Entry Info")@Summary("Adds the sender job, user and job number (for data queues created with SENDERID(*YES)), the read time and, if known, the enqueue time of the entry as message properties") @Default("false") boolean entryInfo, @Placement (order=10) @FriendlyName("Enqueue Timestamp Position")@Summary("Only with Entry Info. Position (starting at 1) of a timestamp (YYYY-MM-DD-HH.MM.SS.NNNNNN) the producer writes into the entry, used as the enqueue time and for the queue lag metric") @Optional Integer enqueueTimestampPosition) throws AS400DataQueueReadException, AS400TransportException {
+
+		DataQueueReadResult result = connectAndRead(dtaq, library, dtaqKey, dtaqKeySearchType, dtaqwaittime, peek, true, ccsid, rawKey, entryInfo, enqueueTimestampPosition, false);
+		putEntryProperties(outboundHeaders, result);
+		return result.getData();
+	}
+
+	@Processor(friendlyName="Read Data Queue Record")
+	public Map<String, Object> readDataQueueRecordProcessor(@OutboundHeaders
+			Map<String, Object> outboundHeaders, @Placement (order=1) @FriendlyName("Data Queue") String dtaq,@Placement (order=2) String library, @Placement (order=3)@FriendlyName("Key")@Summary("Only for keyed data queues. If not specified, the data queue is not keyed.") @Optional String dtaqKey, @Placement (order=4)@FriendlyName("Key Search Type")@Summary("GE (Greater or Equal), GT (Greater Than), LE (Lesser or equal), LT, EQ (Equal), NE (Not Equal) Required if key is specified") @Optional SearchType dtaqKeySearchType, @Placement (order=5) @FriendlyName("Max Wait Time")@Summary("Defaults to -1 (wait till entry is retrieved).") @Default("-1") int dtaqwaittime, @Placement (order=6) @FriendlyName("Keep messages in Queue") @Default("false") Boolean peek, @Placement (order=7) @FriendlyName("Record Format")@Summary("Inline record format, e.g. ORDER:CHAR(10);AMOUNT:PACKED(9,2);QTY:ZONED(5,0);LINE:BIN4") @Optional String recordFormat, @Placement (order=8) @FriendlyName("Record Format File")@Summary("LIBRARY/FILE whose record format describes the entries, used if no inline record format is given") @Optional String recordFormatFile, @Placement (order=9) @FriendlyName("Raw Key")@Summary("Only for keyed data queues. Passes the entry key on as the bytes read from the queue, without conversion or trimming.") @Default("false") boolean rawKey, @Placement (order=10) @FriendlyName("Entry Info")@Summary("Adds the sender job, user and job number (for data queues created with SENDERID(*YES)), the read time and, if known, the enqueue time of the entry as message properties") @Default("false") boolean entryInfo, @Placement (order=11) @FriendlyName("Enqueue Timestamp Position")@Summary("Only with Entry Info. Position (starting at 1) of a timestamp (YYYY-MM-DD-HH.MM.SS.NNNNNN) the producer writes into the entry, used as the enqueue time and for the queue lag metric") @Optional Integer enqueueTimestampPosition) throws AS400DataQueueReadException, AS400TransportException {
+
+		RecordConverter converter;
+		try {
+			converter = getRecordConverter(recordFormat, recordFormatFile);
+		} catch (AS400TransportException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new AS400DataQueueReadException("Record format error: ", e);
+		}
+		DataQueueReadResult result = connectAndRead(dtaq, library, dtaqKey, dtaqKeySearchType, dtaqwaittime, peek, true, null, rawKey, entryInfo, enqueueTimestampPosition, false);
+		if (!result.isFound()) {
+			return null;
+		}
+		putEntryProperties(outboundHeaders, result);
+		try {
+			return converter.decode((byte[]) result.getData());
+		} catch (Exception e) {
+			throw new AS400DataQueueReadException("DataQueueRead record conversion error: ", e);
+		}
+	}
+
+	@Processor(friendlyName="Read Data Queue Batch")
+	public List<DataQueueMessage> readDataQueueBatchProcessor(@Placement (order=1) @FriendlyName("Data Queue") String dtaq,@Placement (order=2) String library, @Placement (order=3)@FriendlyName("Key")@Summary("Only for keyed data queues. If not specified, the data queue is not keyed.") @Optional String dtaqKey, @Placement (order=4)@FriendlyName("Key Search Type")@Summary("GE (Greater or Equal), GT (Greater Than), LE (Lesser or equal), LT, EQ (Equal), NE (Not Equal) Required if key is specified") @Optional SearchType dtaqKeySearchType, @Placement (order=5) @FriendlyName("Max Wait Time")@Summary("Seconds to wait for the first entry. Defaults to -1 (wait till entry is retrieved).") @Default("-1") int dtaqwaittime, @Placement (order=6) @FriendlyName("Max Entries")@Summary("Maximum number of entries returned") @Default("100") int maxEntries, @Placement (order=7) @FriendlyName("Max Batch Wait Time")@Summary("Seconds to keep waiting for more entries once the first entry is read. Defaults to 0 (only take entries already in the queue).") @Default("0") int maxBatchWait) throws AS400DataQueueReadException, AS400TransportException {
+
+		return connectAndReadBatch(dtaq, library, dtaqKey, dtaqKeySearchType, dtaqwaittime, maxEntries, maxBatchWait, false);
+	}
+
+	// Block for the first entry like a single read, then keep reading on the same connection until maxEntries or maxBatchWait is reached
+	private List<DataQueueMessage> connectAndReadBatch(String dtaq, String library,
+			String dtaqKey, SearchType dtaqKeySearchType, int dtaqwaittime,
+			int maxEntries, int maxBatchWait, boolean source) throws AS400DataQueueReadException, AS400TransportException {
+		List<DataQueueMessage> batch = new ArrayList<DataQueueMessage>(Math.min(Math.max(maxEntries, 1), 1024));
+		DataQueueReadResult result = connectAndRead(dtaq, library, dtaqKey, dtaqKeySearchType, dtaqwaittime, false, source);
+		if (!result.isFound()) {
+			return batch;
+		}
+		batch.add(toDataQueueMessage(result));
+		long deadline = System.currentTimeMillis() + maxBatchWait * 1000L;
+		AS400 system = null;
+		try {
+			system = borrowDataQueueSystem(source);
+			while (batch.size() < maxEntries) {
+				// Data queue waits are whole seconds, anything less than a second left means take only what is already there
+				int waitTime = (int) Math.min((deadline - System.currentTimeMillis()) / 1000, MAX_DQ_WAIT_TIME);
+				result = readDataQueue(system, dtaq, library, dtaqKey, dtaqKeySearchType, Math.max(waitTime, 0), false);
+				if (result.isFound()) {
+					batch.add(toDataQueueMessage(result));
+				} else if (waitTime <= 0) {
+					break;
+				}
+			}
+		} catch (AS400TransportException e) {
+			// Hand over what was read so far, next read reconnects
+			logger.warn("DataQueue connection issue during batch read ", e);
+			connectionStrategy.discardSystem(system);
+		} catch (AS400DataQueueReadException e) {
+			// Without entries the error reaches the flow like a single read's, otherwise the entries in the batch are
+			// already off the queue and a failing later read must not lose them
+			if (batch.isEmpty()) {
+				throw e;
+			}
+			logger.warn("DataQueue read error during batch read, returning " + batch.size() + " entries read so far ", e);
+		} finally {
+			connectionStrategy.releaseSystem(system);
+		}
+		return batch;
+	}
+
+	private DataQueueMessage toDataQueueMessage(DataQueueReadResult result) {
+		return new DataQueueMessage((String) result.getData(), (String) result.getKey());
+	}
+
+	private DataQueueReadResult readDataQueue(AS400 system, String dtaq, String library, String dtaqKey, SearchType dtaqKeySearchType, int dtaqwaittime, Boolean peek) throws AS400DataQueueReadException, AS400TransportException {
+		return readDataQueue(system, dtaq, library, dtaqKey, dtaqKeySearchType, dtaqwaittime, peek, false, null, false, false, null);
+	}
+
+	private DataQueueReadResult readDataQueue(AS400 system, String dtaq, String library, String dtaqKey, SearchType dtaqKeySearchType, int dtaqwaittime, Boolean peek, boolean binary, Integer ccsid, boolean rawKey, boolean entryInfo, Integer enqueueTimestampPosition) throws AS400DataQueueReadException, AS400TransportException {
 		
-		AS400 system = connectionStrategy.getSystem();
 		// Verify connection
-		if (! system.isConnected()) {
+		if (system == null || ! system.isConnected()) {
 			logger.warn("System connection check failed when reading data queue!");
 			throw new AS400TransportException("DataQueueRead connection dropped error: ");
 		}
-		Map<String, Object> result = new HashMap<String, Object>();
+		DataQueueReadResult result = DataQueueReadResult.empty();
+		String dataQueue = constructDataQueue(dtaq, library);
+		DataQueueMetrics queueMetrics = connectionStrategy.getMetrics().dataQueue(dataQueue);
+		boolean completed = false;
 		
 		try {
-			String dataQueue = constructDataQueue(dtaq, library);
+			DataQueueCache cache = connectionStrategy.getDataQueueCache(system);
 		
 			if (dtaqKey != null) {
-				KeyedDataQueue kd = new KeyedDataQueue(system, dataQueue);
-				KeyedDataQueueEntry dqentry = null;
-				// Pad the key value to the full length of the key with blanks 
-				int keyLength = kd.getKeyLength();
-				dtaqKey = padString(dtaqKey, keyLength);
+				KeyedDataQueueHandle handle = cache.getKeyedDataQueue(system, dataQueue);
+				HostKeyedDataQueue kd = handle.getQueue();
+				HostDataQueueEntry dqentry = null;
+				// Key value padded to the full length of the key with blanks 
+				byte[] key = handle.getPaddedKey(dtaqKey);
+				long start = System.nanoTime();
 				if(peek){
-					dqentry = kd.peek(dtaqKey, dtaqwaittime,
+					dqentry = kd.peek(key, dtaqwaittime,
 							dtaqKeySearchType.getSearchType());
 				}else {
-					dqentry = kd.read(dtaqKey, dtaqwaittime,
+					dqentry = kd.read(key, dtaqwaittime,
 							dtaqKeySearchType.getSearchType());
 				}
+				queueMetrics.recordRead(peek, System.nanoTime() - start, dqentry != null);
 				if (dqentry != null) {
-					result.put("readMessage", dqentry.getString().trim());
-					result.put("properties", createProperties(dqentry.getKeyString().trim()));
+					result = DataQueueReadResult.of(entryData(system, dqentry, binary, ccsid), rawKey ? dqentry.getKey() : handle.getKeyString(dqentry.getKey()).trim(),
+							entryInfo ? entryInfo(system, dqentry, enqueueTimestampPosition, queueMetrics) : null, dqentry);
 				}
 
 			} else {
-				DataQueue dq = new DataQueue(system, dataQueue);
-				DataQueueEntry dqentry = null; 
+				HostDataQueue dq = cache.getDataQueue(system, dataQueue);
+				HostDataQueueEntry dqentry = null;
+				long start = System.nanoTime();
 				if(peek) {
 					dqentry = dq.peek(dtaqwaittime);
 				}else{
 					dqentry = dq.read(dtaqwaittime);
 				}
+				queueMetrics.recordRead(peek, System.nanoTime() - start, dqentry != null);
 				if (dqentry != null) {
-					result.put("readMessage", dqentry.getString().trim());
+					result = DataQueueReadResult.of(entryData(system, dqentry, binary, ccsid), null,
+							entryInfo ? entryInfo(system, dqentry, enqueueTimestampPosition, queueMetrics) : null, dqentry);
 				}
 			}
+			completed = true;
 			return result;
+		} catch (UnsupportedEncodingException e) {
+			throw new AS400DataQueueReadException("DataQueueRead unsupported CCSID error: ", e);
 		} catch (java.io.IOException e) {
 			throw new AS400TransportException("DataQueueRead connection dropped error: ", e);
 		}
 		catch (Exception e) {
 			throw new AS400DataQueueReadException("DataQueueRead error: ", e);
-		}		
+		} finally {
+			if (!completed) {
+				queueMetrics.recordReadFailure();
+			}
+		}
 	}
 	
-	// Pad string to the right with blanks up to given string length
-	private String padString(String inputString, int stringLength) {
-		String result = String.format("%1$-" + stringLength + "s", inputString);
-		if (result.length() > stringLength)
-			result = result.substring(0, stringLength);
-		return result;
+	// Raw mode passes the entry bytes on as they are, without conversion or trimming
+	private Object entryData(AS400 system, HostDataQueueEntry dqentry, boolean binary, Integer ccsid) throws UnsupportedEncodingException {
+		if (ccsid != null) {
+			return getCharConverter(system, ccsid).byteArrayToString(dqentry.getData());
+		}
+		if (binary) {
+			return dqentry.getData();
+		}
+		return getCharConverter(system, system.getCcsid()).byteArrayToString(dqentry.getData()).trim();
+	}
+
+	// The host does not return the enqueue time of an entry, it is only known if the producer puts a timestamp into the entry
+	private DataQueueEntryInfo entryInfo(AS400 system, HostDataQueueEntry dqentry, Integer enqueueTimestampPosition, DataQueueMetrics queueMetrics) throws UnsupportedEncodingException {
+		long dequeueTime = System.currentTimeMillis();
+		Date enqueueTime = null;
+		if (enqueueTimestampPosition != null) {
+			enqueueTime = DataQueueEntryInfo.parseTimestamp(dqentry.getData(), enqueueTimestampPosition, getCharConverter(system, system.getCcsid()));
+			if (enqueueTime != null) {
+				queueMetrics.recordLag(dequeueTime - enqueueTime.getTime());
+			} else if (logger.isDebugEnabled()) {
+				logger.debug("No enqueue timestamp at position " + enqueueTimestampPosition + " of entry from " + queueMetrics.getPath());
+			}
+		}
+		return DataQueueEntryInfo.of(dqentry.getSenderInformation(), enqueueTime, dequeueTime);
+	}
+
+	private byte[] entryBytes(AS400 system, Object dqEntry, Integer ccsid) throws UnsupportedEncodingException {
+		if (dqEntry instanceof byte[]) {
+			return (byte[]) dqEntry;
+		}
+		if (dqEntry instanceof ByteBuffer) {
+			ByteBuffer buffer = (ByteBuffer) dqEntry;
+			// Use the backing array directly if the buffer covers all of it
+			if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0 && buffer.remaining() == buffer.array().length) {
+				return buffer.array();
+			}
+			byte[] data = new byte[buffer.remaining()];
+			buffer.duplicate().get(data);
+			return data;
+		}
+		if (dqEntry instanceof String) {
+			return getCharConverter(system, ccsid != null ? ccsid : system.getCcsid()).stringToByteArray((String) dqEntry);
+		}
+		throw new IllegalArgumentException("Unsupported data entry type: " + (dqEntry == null ? "null" : dqEntry.getClass().getName()));
+	}
+
+	private CharConverter getCharConverter(AS400 system, int ccsid) throws UnsupportedEncodingException {
+		return connectionStrategy.getCharConverter(system, ccsid);
 	}
 
-	private Map<String, Object> createProperties(@NotNull final String key) {
-        Map<String, Object> properties = new HashMap<String, Object>();
-        properties.put("as400.dataqueue.key", key);
-        return properties;
-    }
 	
 	@Processor
-	public void writeDataQueue(@FriendlyName("Data Queue")@Placement (order=1)String dtaq,@Placement (order=2) String library,@FriendlyName("Data Entry")@Placement (order=3) String dqEntry,@FriendlyName("Key")@Placement (order=4) @Optional String dtaqKey) throws AS400DataQueueWriteException, AS400TransportException {
+	public void writeDataQueue(@FriendlyName("Data Queue")@Placement (order=1)String dtaq,@Placement (order=2) String library,@FriendlyName("Data Entry")@Placement (order=3) String dqEntry,@FriendlyName("Key")@Placement (order=4) @Optional String dtaqKey,@FriendlyName("Write Behind")@Summary("Append the entry to the local write-behind journal and return right away, the entry is written to the data queue in the background, also after a host outage or a restart. Needs one successful connect after the application starts, later outages are bridged by the journal.")@Placement (order=5) @Default("false") boolean writeBehind) throws AS400DataQueueWriteException, AS400TransportException {
 
-		
-		connectionStrategy.validateOrReconnect(MAX_PROCESSOR_RETRIES, RECONNECT_WAIT_TIME);
-		AS400 system = connectionStrategy.getSystem();
+		if (writeBehind) {
+			writeBehind(dtaq, library, dqEntry, dtaqKey);
+			return;
+		}
+		AS400 system = connectionStrategy.borrowSystem(AS400.DATAQUEUE, connectionStrategy.getProcessorReconnectWait());
+		String dataQueue = constructDataQueue(dtaq, library);
+		DataQueueMetrics queueMetrics = connectionStrategy.getMetrics().dataQueue(dataQueue);
+		long start = System.nanoTime();
+		boolean written = false;
 		try {
-			String dataQueue = constructDataQueue(dtaq, library);
+			DataQueueCache cache = connectionStrategy.getDataQueueCache(system);
 				if (dtaqKey != null) {
-					KeyedDataQueue kd = new KeyedDataQueue(system, dataQueue);
-					// Pad key value with blanks
-					int keyLength = kd.getKeyLength();
-					kd.write(padString(dtaqKey, keyLength), dqEntry);
+					KeyedDataQueueHandle handle = cache.getKeyedDataQueue(system, dataQueue);
+					// Key value padded with blanks, entry converted with the job CCSID like the string write does
+					handle.getQueue().write(handle.getPaddedKey(dtaqKey), getCharConverter(system, system.getCcsid()).stringToByteArray(dqEntry));
 				} else {
-					DataQueue dq = new DataQueue(system, dataQueue);
+					HostDataQueue dq = cache.getDataQueue(system, dataQueue);
 					dq.write(dqEntry);
 			}
+			written = true;
 		} catch (ConnectionDroppedException e) {
+			connectionStrategy.discardSystem(system);
 			throw new AS400TransportException("DataQueueWrite connection dropped error", e);
 		} catch (java.io.IOException e) {
+			connectionStrategy.discardSystem(system);
 			throw new AS400TransportException("DataQueueWrite ioexception error", e);
 		}
 
 		catch (Exception e) {
 			throw new AS400DataQueueWriteException("DataQueueWrite error", e);
+		} finally {
+			queueMetrics.recordWrite(System.nanoTime() - start, written);
+			connectionStrategy.releaseSystem(system);
 		}
 	}
 	
 
+	// The host is not touched, so the write neither waits for a reconnect nor fails during an outage
+	private void writeBehind(String dtaq, String library, String dqEntry, String dtaqKey) throws AS400DataQueueWriteException {
+		try {
+			if (!connectionStrategy.openWriteBehindJournal().append(new WriteBehindJournal.Entry(constructDataQueue(dtaq, library), dtaqKey, dqEntry))) {
+				throw new AS400DataQueueWriteException("DataQueueWrite write-behind journal full, " + connectionStrategy.getWriteBehindJournal().getBacklog() + " entries waiting for the host");
+			}
+		} catch (java.io.IOException e) {
+			throw new AS400DataQueueWriteException("DataQueueWrite write-behind journal error", e);
+		} catch (IllegalArgumentException e) {
+			throw new AS400DataQueueWriteException("DataQueueWrite write-behind journal error", e);
+		}
+	}
+
+	@Processor(friendlyName="Write Data Queue Bytes")
+	public void writeDataQueueBytes(@FriendlyName("Data Queue")@Placement (order=1)String dtaq,@Placement (order=2) String library,@FriendlyName("Data Entry")@Summary("Byte array or ByteBuffer written as is. Strings are converted with the CCSID.")@Placement (order=3) @Default("#[payload]") Object dqEntry,@FriendlyName("Key")@Placement (order=4) @Optional String dtaqKey,@FriendlyName("CCSID")@Summary("CCSID used to convert string entries, defaults to the job CCSID")@Placement (order=5) @Optional Integer ccsid) throws AS400DataQueueWriteException, AS400TransportException {
+
+		AS400 system = connectionStrategy.borrowSystem(AS400.DATAQUEUE, connectionStrategy.getProcessorReconnectWait());
+		String dataQueue = constructDataQueue(dtaq, library);
+		DataQueueMetrics queueMetrics = connectionStrategy.getMetrics().dataQueue(dataQueue);
+		long start = System.nanoTime();
+		boolean written = false;
+		try {
+			DataQueueCache cache = connectionStrategy.getDataQueueCache(system);
+			byte[] data = entryBytes(system, dqEntry, ccsid);
+			if (dtaqKey != null) {
+				KeyedDataQueueHandle handle = cache.getKeyedDataQueue(system, dataQueue);
+				// Key is always converted with the job CCSID, like the string key of writeDataQueue
+				handle.getQueue().write(handle.getPaddedKey(dtaqKey), data);
+			} else {
+				cache.getDataQueue(system, dataQueue).write(data);
+			}
+			written = true;
+		} catch (UnsupportedEncodingException e) {
+			throw new AS400DataQueueWriteException("DataQueueWrite unsupported CCSID error", e);
+		} catch (ConnectionDroppedException e) {
+			connectionStrategy.discardSystem(system);
+			throw new AS400TransportException("DataQueueWrite connection dropped error", e);
+		} catch (java.io.IOException e) {
+			connectionStrategy.discardSystem(system);
+			throw new AS400TransportException("DataQueueWrite ioexception error", e);
+		} catch (Exception e) {
+			throw new AS400DataQueueWriteException("DataQueueWrite error", e);
+		} finally {
+			queueMetrics.recordWrite(System.nanoTime() - start, written);
+			connectionStrategy.releaseSystem(system);
+		}
+	}
+
+	@Processor(friendlyName="Write Data Queue Record")
+	public void writeDataQueueRecord(@FriendlyName("Data Queue")@Placement (order=1)String dtaq,@Placement (order=2) String library,@FriendlyName("Record")@Summary("Map of field values, missing fields are written as blanks or zeros")@Placement (order=3) @Default("#[payload]") Map<String, Object> record,@FriendlyName("Key")@Placement (order=4) @Optional String dtaqKey,@FriendlyName("Record Format")@Summary("Inline record format, e.g. ORDER:CHAR(10);AMOUNT:PACKED(9,2);QTY:ZONED(5,0);LINE:BIN4")@Placement (order=5) @Optional String recordFormat,@FriendlyName("Record Format File")@Summary("LIBRARY/FILE whose record format describes the entries, used if no inline record format is given")@Placement (order=6) @Optional String recordFormatFile) throws AS400DataQueueWriteException, AS400TransportException {
+
+		byte[] data;
+		try {
+			data = getRecordConverter(recordFormat, recordFormatFile).encode(record);
+		} catch (AS400TransportException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new AS400DataQueueWriteException("DataQueueWrite record conversion error", e);
+		}
+		writeDataQueueBytes(dtaq, library, data, dtaqKey, null);
+	}
+
+	@Processor(friendlyName="Write Data Queue Bulk")
+	public List<DataQueueWriteResult> writeDataQueueBulk(@FriendlyName("Data Queue")@Placement (order=1)String dtaq,@Placement (order=2) String library,@FriendlyName("Data Entries")@Summary("Collection of entries. Elements can be strings, key/entry map entries or data queue messages.")@Placement (order=3) @Default("#[payload]") Collection<?> dqEntries,@FriendlyName("Key")@Summary("Key used for entries that don't carry their own key")@Placement (order=4) @Optional String dtaqKey) throws AS400TransportException {
+
+		AS400 system = connectionStrategy.borrowSystem(AS400.DATAQUEUE, connectionStrategy.getProcessorReconnectWait());
+		try {
+			return writeDataQueueEntries(system, constructDataQueue(dtaq, library), dqEntries, dtaqKey);
+		} finally {
+			connectionStrategy.releaseSystem(system);
+		}
+	}
+
+	private List<DataQueueWriteResult> writeDataQueueEntries(AS400 system, String dataQueue, Collection<?> dqEntries, String dtaqKey) {
+		DataQueueCache cache = null;
+		List<DataQueueWriteResult> results = new ArrayList<DataQueueWriteResult>(dqEntries.size());
+		HostDataQueue dq = null;
+		KeyedDataQueueHandle handle = null;
+		Exception connectionError = null;
+		DataQueueMetrics queueMetrics = connectionStrategy.getMetrics().dataQueue(dataQueue);
+		int index = 0;
+		for (Object item : dqEntries) {
+			String key = dtaqKey;
+			String entry;
+			if (item instanceof DataQueueMessage) {
+				DataQueueMessage message = (DataQueueMessage) item;
+				key = message.getKey() != null ? message.getKey() : dtaqKey;
+				entry = message.getEntry();
+			} else if (item instanceof Map.Entry) {
+				Map.Entry<?, ?> pair = (Map.Entry<?, ?>) item;
+				key = String.valueOf(pair.getKey());
+				entry = String.valueOf(pair.getValue());
+			} else {
+				entry = String.valueOf(item);
+			}
+			// Once the connection is gone the remaining entries are reported without trying to write them
+			if (connectionError != null) {
+				results.add(DataQueueWriteResult.failure(index++, key, "Not written, connection dropped: " + connectionError.getMessage()));
+				queueMetrics.recordWrite(0, false);
+				continue;
+			}
+			long start = System.nanoTime();
+			boolean written = false;
+			try {
+				if (cache == null) {
+					cache = connectionStrategy.getDataQueueCache(system);
+				}
+				if (key != null) {
+					if (handle == null) {
+						handle = cache.getKeyedDataQueue(system, dataQueue);
+					}
+					handle.getQueue().write(handle.getPaddedKey(key), getCharConverter(system, system.getCcsid()).stringToByteArray(entry));
+				} else {
+					if (dq == null) {
+						dq = cache.getDataQueue(system, dataQueue);
+					}
+					dq.write(entry);
+				}
+				written = true;
+				results.add(DataQueueWriteResult.success(index, key));
+			} catch (ConnectionDroppedException e) {
+				connectionError = e;
+				results.add(DataQueueWriteResult.failure(index, key, e.getMessage()));
+			} catch (java.io.IOException e) {
+				connectionError = e;
+				results.add(DataQueueWriteResult.failure(index, key, e.getMessage()));
+			} catch (Exception e) {
+				results.add(DataQueueWriteResult.failure(index, key, e.getMessage()));
+			}
+			queueMetrics.recordWrite(System.nanoTime() - start, written);
+			index++;
+		}
+		if (connectionError != null) {
+			logger.warn("DataQueueWrite connection dropped during bulk write to " + dataQueue, connectionError);
+			connectionStrategy.discardSystem(system);
+		}
+		return results;
+	}
+
+	@Processor(friendlyName="Read File Records")
+	public Iterator<Map<String, Object>> readFileRecords(@FriendlyName("File")@Summary("LIBRARY/FILE or IFS path of a physical or logical file")@Placement (order=1) String file,@FriendlyName("Member")@Summary("Member to read, defaults to the first member")@Placement (order=2) @Optional String member,@FriendlyName("Blocking Factor")@Summary("Records fetched from the host per request. Defaults to 0 (computed from the record length).")@Placement (order=3) @Default("0") int blockingFactor,@FriendlyName("Key")@Summary("Only for keyed files. Comma separated values of the leading key fields, if not specified the records are read in arrival sequence.")@Placement (order=4) @Optional String key,@FriendlyName("Key Search Type")@Summary("EQ (records with the key), GE or GT (records from the key to the end of the file)")@Placement (order=5) @Default("EQUAL") SearchType keySearchType) throws AS400FileReadException, AS400TransportException {
+
+		// The connection is held by the returned records iterator and handed back once it is read to the end, closed or
+		// left unread for the stream idle timeout
+		AS400 system = connectionStrategy.borrowSystem(AS400.RECORDACCESS, connectionStrategy.getProcessorReconnectWait());
+		boolean opened = false;
+		try {
+			String filePath = constructFile(file);
+			RecordFormat format = recordConverters.getRecordFormat(system, filePath);
+			String path = member == null ? filePath : filePath + "/" + member + ".MBR";
+			RecordFileReader reader = RecordFileReader.open(path, format, blockingFactor, key, keySearchType, connectionStrategy.leaseSystem(system, "record file " + path));
+			opened = true;
+			return reader;
+		} catch (java.io.IOException e) {
+			connectionStrategy.discardSystem(system);
+			throw new AS400TransportException("File read connection error: ", e);
+		} catch (Exception e) {
+			throw new AS400FileReadException("File read error: ", e);
+		} finally {
+			if (!opened) {
+				connectionStrategy.releaseSystem(system);
+			}
+		}
+	}
+
+	@Processor(friendlyName="Read IFS File")
+	public InputStream readIfsFile(@FriendlyName("Path")@Summary("Absolute IFS path of the file, e.g. /home/orders/in/order1.xml")@Placement (order=1) String path,@FriendlyName("Buffer Size")@Summary("Bytes read from the host per request")@Placement (order=2) @Default("262144") int bufferSize) throws AS400IfsException, AS400TransportException {
+
+		// The connection is held by the returned stream and handed back once it is read to the end or closed
+		AS400 system = connectionStrategy.borrowSystem(AS400.FILE, connectionStrategy.getProcessorReconnectWait());
+		boolean opened = false;
+		try {
+			InputStream stream = new ConnectionInputStream(new IFSFileInputStream(system, path, IFSFileInputStream.SHARE_WRITERS), Math.max(bufferSize, 1), "IFS file " + path, connectionStrategy.leaseSystem(system, "IFS file " + path));
+			opened = true;
+			return stream;
+		} catch (ConnectionDroppedException e) {
+			connectionStrategy.discardSystem(system);
+			throw new AS400TransportException("IFS read connection dropped error", e);
+		} catch (java.io.IOException e) {
+			connectionStrategy.discardSystem(system);
+			throw new AS400TransportException("IFS read ioexception error", e);
+		} catch (Exception e) {
+			throw new AS400IfsException("IFS read error: " + path, e);
+		} finally {
+			if (!opened) {
+				connectionStrategy.releaseSystem(system);
+			}
+		}
+	}
+
+	@Processor(friendlyName="Write IFS File")
+	public void writeIfsFile(@FriendlyName("Path")@Summary("Absolute IFS path of the file, e.g. /home/orders/out/order1.xml")@Placement (order=1) String path,@FriendlyName("Content")@Summary("Input stream, byte array or string. Streams are copied in chunks of the buffer size and closed.")@Placement (order=2) @Default("#[payload]") Object content,@FriendlyName("Append")@Summary("Append to the file instead of replacing it")@Placement (order=3) @Default("false") boolean append,@FriendlyName("CCSID")@Summary("If specified, a new file is tagged with this CCSID and strings are converted with it. Strings are written as UTF-8 otherwise.")@Placement (order=4) @Optional Integer ccsid,@FriendlyName("Buffer Size")@Summary("Bytes written to the host per request")@Placement (order=5) @Default("262144") int bufferSize) throws AS400IfsException, AS400TransportException {
+
+		AS400 system = connectionStrategy.borrowSystem(AS400.FILE, connectionStrategy.getProcessorReconnectWait());
+		try {
+			InputStream in = ifsContent(system, content, ccsid);
+			try {
+				IFSFileOutputStream out = ccsid == null ? new IFSFileOutputStream(system, path, IFSFileOutputStream.SHARE_ALL, append) : new IFSFileOutputStream(system, path, IFSFileOutputStream.SHARE_ALL, append, ccsid);
+				try {
+					byte[] buffer = new byte[Math.max(bufferSize, 1)];
+					int length;
+					while ((length = readFully(in, buffer)) > 0) {
+						out.write(buffer, 0, length);
+					}
+				} finally {
+					out.close();
+				}
+			} finally {
+				in.close();
+			}
+		} catch (UnsupportedEncodingException e) {
+			throw new AS400IfsException("IFS write unsupported CCSID error", e);
+		} catch (ConnectionDroppedException e) {
+			connectionStrategy.discardSystem(system);
+			throw new AS400TransportException("IFS write connection dropped error", e);
+		} catch (java.io.IOException e) {
+			connectionStrategy.discardSystem(system);
+			throw new AS400TransportException("IFS write ioexception error", e);
+		} catch (Exception e) {
+			throw new AS400IfsException("IFS write error: " + path, e);
+		} finally {
+			connectionStrategy.releaseSystem(system);
+		}
+	}
+
+	@Processor(friendlyName="List IFS Files")
+	public List<IfsFileInfo> listIfsFiles(@FriendlyName("Directory")@Summary("Absolute IFS path of the directory")@Placement (order=1) String directory,@FriendlyName("Pattern")@Summary("Name pattern with * and ? wildcards, e.g. *.csv. Applied by the host, only matching files are sent back.")@Placement (order=2) @Optional String pattern) throws AS400IfsException, AS400TransportException {
+
+		AS400 system = connectionStrategy.borrowSystem(AS400.FILE, connectionStrategy.getProcessorReconnectWait());
+		try {
+			return listIfsDirectory(system, directory, pattern, false);
+		} catch (ConnectionDroppedException e) {
+			connectionStrategy.discardSystem(system);
+			throw new AS400TransportException("IFS list connection dropped error", e);
+		} catch (java.io.IOException e) {
+			connectionStrategy.discardSystem(system);
+			throw new AS400TransportException("IFS list ioexception error", e);
+		} catch (Exception e) {
+			throw new AS400IfsException("IFS list error: " + directory, e);
+		} finally {
+			connectionStrategy.releaseSystem(system);
+		}
+	}
+
+	@Source(sourceStrategy = SourceStrategy.POLLING, pollingPeriod = 1)
+	public void listenIfsNewFiles(final SourceCallback callback, @FriendlyName("Directory")@Summary("Absolute IFS path of the directory")@Placement (order=1) String directory,@FriendlyName("Pattern")@Summary("Name pattern with * and ? wildcards, e.g. *.csv. Applied by the host, only matching files are sent back.")@Placement (order=2) @Optional String pattern,@FriendlyName("Poll Interval")@Summary("Seconds between listings of the directory")@Placement (order=3) @Default("10") int pollInterval,@FriendlyName("Min Age")@Summary("Seconds since the last change before a file is picked up, so files still being written are left alone")@Placement (order=4) @Default("0") int minAge,@FriendlyName("Include Existing Files")@Summary("Without a watermark, pick up the files already in the directory when the flow starts, otherwise only files that arrive later")@Placement (order=5) @Default("false") boolean includeExisting) throws AS400IfsException, AS400TransportException {
+
+		NewFileWatermark watermark = getIfsWatermark(directory, pattern, includeExisting);
+		List<IfsFileInfo> newFiles;
+		AS400 system = borrowPollingSystem(AS400.FILE);
+		if (system == null) {
+			return;
+		}
+		try {
+			newFiles = watermark.newFiles(listIfsDirectory(system, directory, pattern, true), System.currentTimeMillis() - minAge * 1000L);
+		} catch (ConnectionDroppedException e) {
+			connectionStrategy.discardSystem(system);
+			throw new AS400TransportException("IFS list connection dropped error", e);
+		} catch (java.io.IOException e) {
+			connectionStrategy.discardSystem(system);
+			throw new AS400TransportException("IFS list ioexception error", e);
+		} catch (Exception e) {
+			throw new AS400IfsException("IFS list error: " + directory, e);
+		} finally {
+			connectionStrategy.releaseSystem(system);
+		}
+		try {
+			for (IfsFileInfo file : newFiles) {
+				callback.process(file, Collections.<String, Object>singletonMap(IFS_PATH_PROPERTY, file.getPath()));
+				watermark.accept(file);
+			}
+		} catch (Exception e) {
+			throw new AS400IfsException("IFS new file processing error: " + directory, e);
+		} finally {
+			try {
+				watermark.save();
+			} catch (java.io.IOException e) {
+				logger.error("Can't save IFS watermark " + watermark.getFile(), e);
+			}
+		}
+		pause(Math.max(pollInterval, 0) * 1000L);
+	}
+
+	// Listed files come back with their attributes, reading them does not go to the host again
+	private List<IfsFileInfo> listIfsDirectory(AS400 system, String directory, String pattern, boolean filesOnly) throws Exception {
+		IFSFile[] files = pattern == null ? new IFSFile(system, directory).listFiles() : new IFSFile(system, directory).listFiles(pattern);
+		if (files == null) {
+			throw new IllegalArgumentException("Not a directory: " + directory);
+		}
+		List<IfsFileInfo> listing = new ArrayList<IfsFileInfo>(files.length);
+		for (IFSFile file : files) {
+			IfsFileInfo info = IfsFileInfo.of(file);
+			if (!filesOnly || !info.isDirectory()) {
+				listing.add(info);
+			}
+		}
+		return listing;
+	}
+
+	private NewFileWatermark getIfsWatermark(String directory, String pattern, boolean includeExisting) throws AS400IfsException {
+		String name = connectionStrategy.getEndpoint() + "_" + directory + (pattern == null ? "" : "_" + pattern);
+		File file = new File(AS400ConnectionStrategy.getDefaultStateDirectory(), name.replaceAll("[^A-Za-z0-9._-]", "_") + ".ifs");
+		NewFileWatermark watermark = ifsWatermarks.get(file.getPath());
+		if (watermark == null) {
+			try {
+				watermark = NewFileWatermark.open(file, includeExisting);
+			} catch (java.io.IOException e) {
+				throw new AS400IfsException("Can't open IFS watermark " + file + ": ", e);
+			}
+			NewFileWatermark existing = ifsWatermarks.putIfAbsent(file.getPath(), watermark);
+			if (existing != null) {
+				watermark = existing;
+			}
+		}
+		return watermark;
+	}
+
+	private InputStream ifsContent(AS400 system, Object content, Integer ccsid) throws UnsupportedEncodingException {
+		if (content instanceof InputStream) {
+			return (InputStream) content;
+		}
+		if (content instanceof byte[]) {
+			return new ByteArrayInputStream((byte[]) content);
+		}
+		if (content instanceof String) {
+			String text = (String) content;
+			return new ByteArrayInputStream(ccsid == null ? text.getBytes(Charset.forName("UTF-8")) : getCharConverter(system, ccsid).stringToByteArray(text));
+		}
+		throw new IllegalArgumentException("Unsupported IFS file content: " + (content == null ? "null" : content.getClass().getName()));
+	}
+
+	// Fill the buffer as far as the stream allows, so every write request to the host is a full buffer
+	private static int readFully(InputStream in, byte[] buffer) throws java.io.IOException {
+		int length = 0;
+		int read;
+		while (length < buffer.length && (read = in.read(buffer, length, buffer.length - length)) > 0) {
+			length += read;
+		}
+		return length;
+	}
+
+	@Processor(friendlyName="List Spooled Files")
+	public Iterator<SpooledFileInfo> listSpooledFiles(@FriendlyName("Output Queue")@Summary("LIBRARY/OUTQ to list, defaults to all output queues")@Placement (order=1) @Optional String outputQueue,@FriendlyName("User")@Summary("User profile whose spooled files are listed, *CURRENT or *ALL")@Placement (order=2) @Default("*ALL") String user,@FriendlyName("User Data")@Summary("Only spooled files with this user data")@Placement (order=3) @Optional String userData,@FriendlyName("Form Type")@Summary("Only spooled files with this form type")@Placement (order=4) @Optional String formType) throws AS400SpoolException, AS400TransportException {
+
+		// The connection is held by the returned iterator and handed back once it is read to the end or closed
+		AS400 system = connectionStrategy.borrowSystem(AS400.PRINT, connectionStrategy.getProcessorReconnectWait());
+		boolean opened = false;
+		try {
+			SpooledFileIterator files = SpooledFileIterator.open(spooledFileList(system, outputQueue, user, userData, formType, null, null), connectionStrategy.leaseSystem(system, "spooled file list"));
+			opened = true;
+			return files;
+		} catch (ConnectionDroppedException e) {
+			connectionStrategy.discardSystem(system);
+			throw new AS400TransportException("Spool list connection dropped error", e);
+		} catch (java.io.IOException e) {
+			connectionStrategy.discardSystem(system);
+			throw new AS400TransportException("Spool list ioexception error", e);
+		} catch (Exception e) {
+			throw new AS400SpoolException("Spool list error: " + (outputQueue == null ? user : outputQueue), e);
+		} finally {
+			if (!opened) {
+				connectionStrategy.releaseSystem(system);
+			}
+		}
+	}
+
+	@Processor(friendlyName="Read Spooled File")
+	public InputStream readSpooledFile(@FriendlyName("Job Name")@Placement (order=1) String jobName,@FriendlyName("Job User")@Placement (order=2) String jobUser,@FriendlyName("Job Number")@Placement (order=3) String jobNumber,@FriendlyName("Spooled File Name")@Placement (order=4) String name,@FriendlyName("Spooled File Number")@Placement (order=5) int number,@FriendlyName("Job System")@Summary("System the job ran on, together with the creation date and time it tells apart spooled files of the same job and number")@Placement (order=6) @Optional String jobSystem,@FriendlyName("Create Date")@Summary("Creation date as CYYMMDD, only with the job system")@Placement (order=7) @Optional String createDate,@FriendlyName("Create Time")@Summary("Creation time as HHMMSS, only with the job system")@Placement (order=8) @Optional String createTime,@FriendlyName("Format")@Summary("TEXT (converted to ASCII text on the host), RAW (the spooled data as stored, e.g. SCS or AFP) or TRANSFORMED (converted on the host by the workstation customizing object)")@Placement (order=9) @Default("TEXT") SpooledFileFormat format,@FriendlyName("Workstation Customizing Object")@Summary("IFS path of the workstation customizing object used by TEXT and TRANSFORMED, e.g. /QSYS.LIB/QCTXPDF.WSCST for PDF. Defaults to /QSYS.LIB/QWPDEFAULT.WSCST.")@Placement (order=10) @Optional String workstationCustomizingObject,@FriendlyName("Buffer Size")@Summary("Bytes read from the host per request")@Placement (order=11) @Default("262144") int bufferSize) throws AS400SpoolException, AS400TransportException {
+
+		// The connection is held by the returned stream and handed back once it is read to the end or closed
+		AS400 system = connectionStrategy.borrowSystem(AS400.PRINT, connectionStrategy.getProcessorReconnectWait());
+		String spooledFile = jobNumber + "/" + jobUser + "/" + jobName + " " + name + " " + number;
+		boolean opened = false;
+		try {
+			SpooledFile file = jobSystem == null ? new SpooledFile(system, name, number, jobName, jobUser, jobNumber) : new SpooledFile(system, name, number, jobName, jobUser, jobNumber, jobSystem, createDate, createTime);
+			InputStream stream = new ConnectionInputStream(spooledFileContent(file, format, workstationCustomizingObject), Math.max(bufferSize, 1), "spooled file " + spooledFile, connectionStrategy.leaseSystem(system, "spooled file " + spooledFile));
+			opened = true;
+			return stream;
+		} catch (ConnectionDroppedException e) {
+			connectionStrategy.discardSystem(system);
+			throw new AS400TransportException("Spool read connection dropped error", e);
+		} catch (java.io.IOException e) {
+			connectionStrategy.discardSystem(system);
+			throw new AS400TransportException("Spool read ioexception error", e);
+		} catch (Exception e) {
+			throw new AS400SpoolException("Spool read error: " + spooledFile, e);
+		} finally {
+			if (!opened) {
+				connectionStrategy.releaseSystem(system);
+			}
+		}
+	}
+
+	@Source(sourceStrategy = SourceStrategy.POLLING, pollingPeriod = 1)
+	public void listenSpooledFiles(final SourceCallback callback, @FriendlyName("Output Queue")@Summary("LIBRARY/OUTQ to watch")@Placement (order=1) String outputQueue,@FriendlyName("User")@Summary("User profile whose spooled files are picked up, *CURRENT or *ALL")@Placement (order=2) @Default("*ALL") String user,@FriendlyName("User Data")@Summary("Only spooled files with this user data")@Placement (order=3) @Optional String userData,@FriendlyName("Form Type")@Summary("Only spooled files with this form type")@Placement (order=4) @Optional String formType,@FriendlyName("Poll Interval")@Summary("Seconds between listings of the output queue")@Placement (order=5) @Default("10") int pollInterval,@FriendlyName("Include Existing Spooled Files")@Summary("Without a checkpoint, pick up the spooled files already in the output queue when the flow starts, otherwise only spooled files that arrive later")@Placement (order=6) @Default("false") boolean includeExisting) throws AS400SpoolException, AS400TransportException {
+
+		SpoolCheckpoint checkpoint = getSpoolCheckpoint(outputQueue, user, userData, formType, includeExisting);
+		List<SpooledFileInfo> newFiles;
+		AS400 system = borrowPollingSystem(AS400.PRINT);
+		if (system == null) {
+			return;
+		}
+		try {
+			// Only spooled files created from the checkpoint on are sent back by the host
+			SpooledFileList list = spooledFileList(system, outputQueue, user, userData, formType, checkpoint.getStartDate(), checkpoint.getStartTime());
+			list.setAttributesToRetrieve(SpooledFileInfo.LIST_ATTRIBUTES);
+			List<SpooledFileInfo> listing = new ArrayList<SpooledFileInfo>();
+			try {
+				list.openSynchronously();
+				for (int i = 0; i < list.size(); i++) {
+					listing.add(SpooledFileInfo.of((SpooledFile) list.getObject(i)));
+				}
+			} finally {
+				list.close();
+			}
+			newFiles = checkpoint.newFiles(listing);
+		} catch (ConnectionDroppedException e) {
+			connectionStrategy.discardSystem(system);
+			throw new AS400TransportException("Spool list connection dropped error", e);
+		} catch (java.io.IOException e) {
+			connectionStrategy.discardSystem(system);
+			throw new AS400TransportException("Spool list ioexception error", e);
+		} catch (Exception e) {
+			throw new AS400SpoolException("Spool list error: " + outputQueue, e);
+		} finally {
+			connectionStrategy.releaseSystem(system);
+		}
+		try {
+			for (SpooledFileInfo file : newFiles) {
+				callback.process(file, Collections.<String, Object>singletonMap(SPOOLED_FILE_PROPERTY, file.getId()));
+				checkpoint.accept(file);
+			}
+		} catch (Exception e) {
+			throw new AS400SpoolException("New spooled file processing error: " + outputQueue, e);
+		} finally {
+			try {
+				checkpoint.save();
+			} catch (java.io.IOException e) {
+				logger.error("Can't save spool checkpoint " + checkpoint.getFile(), e);
+			}
+		}
+		pause(Math.max(pollInterval, 0) * 1000L);
+	}
+
+	private SpooledFileList spooledFileList(AS400 system, String outputQueue, String user, String userData, String formType, String startDate, String startTime) throws Exception {
+		SpooledFileList list = new SpooledFileList(system);
+		list.setUserFilter(user == null ? "*ALL" : user);
+		if (outputQueue != null) {
+			list.setQueueFilter(constructOutputQueue(outputQueue));
+		}
+		if (userData != null) {
+			list.setUserDataFilter(userData);
+		}
+		if (formType != null) {
+			list.setFormTypeFilter(formType);
+		}
+		if (startDate != null) {
+			list.setStartDateFilter(startDate);
+			list.setStartTimeFilter(startTime);
+		}
+		return list;
+	}
+
+	private InputStream spooledFileContent(SpooledFile file, SpooledFileFormat format, String workstationCustomizingObject) throws Exception {
+		if (format == SpooledFileFormat.RAW) {
+			return file.getInputStream();
+		}
+		if (format == SpooledFileFormat.TRANSFORMED && workstationCustomizingObject == null) {
+			throw new IllegalArgumentException("TRANSFORMED needs a workstation customizing object");
+		}
+		PrintParameterList parameters = new PrintParameterList();
+		parameters.setParameter(PrintObject.ATTR_WORKSTATION_CUST_OBJECT, workstationCustomizingObject == null ? DEFAULT_WSCST : workstationCustomizingObject);
+		parameters.setParameter(PrintObject.ATTR_MFGTYPE, "*WSCST");
+		return file.getTransformedInputStream(parameters);
+	}
+
+	private SpoolCheckpoint getSpoolCheckpoint(String outputQueue, String user, String userData, String formType, boolean includeExisting) throws AS400SpoolException {
+		String name = connectionStrategy.getEndpoint() + "_" + outputQueue + "_" + user + (userData == null ? "" : "_" + userData) + (formType == null ? "" : "_" + formType);
+		File file = new File(AS400ConnectionStrategy.getDefaultStateDirectory(), name.replaceAll("[^A-Za-z0-9._-]", "_") + ".spool");
+		SpoolCheckpoint checkpoint = spoolCheckpoints.get(file.getPath());
+		if (checkpoint == null) {
+			try {
+				checkpoint = SpoolCheckpoint.open(file, includeExisting);
+			} catch (java.io.IOException e) {
+				throw new AS400SpoolException("Can't open spool checkpoint " + file + ": ", e);
+			}
+			SpoolCheckpoint existing = spoolCheckpoints.putIfAbsent(file.getPath(), checkpoint);
+			if (existing != null) {
+				checkpoint = existing;
+			}
+		}
+		return checkpoint;
+	}
+
+	// LIBRARY/OUTQ or a full IFS path
+	private String constructOutputQueue(String outputQueue) {
+		if (outputQueue.startsWith("/")) {
+			return outputQueue;
+		}
+		String[] parts = outputQueue.trim().split("/");
+		if (parts.length != 2) {
+			throw new IllegalArgumentException("Output queue must be given as LIBRARY/OUTQ: " + outputQueue);
+		}
+		return new StringBuilder(LIBRARY_BASE_PATH).append(parts[0]).append(".LIB/").append(parts[1]).append(".OUTQ").toString();
+	}
+
 	@Processor(friendlyName="Command Call")
-	public void commandCall(@FriendlyName("Command") String cmd) throws AS400CommandCallException, AS400TransportException {
+	public CommandResult commandCall(@FriendlyName("Command")@Placement (order=1) String cmd,@FriendlyName("Load Help")@Summary("Adds the help text to the returned messages. Help text is loaded from the host once per message and cached.")@Placement (order=2) @Default("false") boolean loadHelp,@FriendlyName("Fail on Error")@Summary("Throw an error if the command fails, otherwise the failed result is returned")@Placement (order=3) @Default("true") boolean failOnError) throws AS400CommandCallException, AS400TransportException {
 		
-		connectionStrategy.validateOrReconnect(MAX_PROCESSOR_RETRIES, RECONNECT_WAIT_TIME);
-		CommandCall command = connectionStrategy.getCommand();
-		try {
-			// Change job's inquiry message reply settings to auto-reply
-			command.run("CHGJOB INQMSGRPY(*DFT)");
-
-			// Now go ahead and run our command
-			if (command.run(cmd) != true) {
-				StringBuilder errorMessage =new StringBuilder();
-				errorMessage.append("Command call ended in error! Below are error message details:").append("\n");
-				// Get error messages
-				for (AS400Message em: command.getMessageList()){
-					errorMessage.append("ERROR text: " + em.getText()).append("\n");
-					em.load();
-					errorMessage.append("ERROR additional details: " + em.getHelp()).append("\n");
-				}
-				logger.error(errorMessage.toString());
-				throw new AS400CommandCallException(errorMessage.toString());
-			}		
+		AS400 system = connectionStrategy.borrowSystem(AS400.COMMAND, connectionStrategy.getProcessorReconnectWait());
+		try {
+			// Job attributes (inquiry message reply, library list, setup commands) are set once per job by the strategy
+			CommandCall command = connectionStrategy.getCommand(system);
+			CommandMetrics commandMetrics = connectionStrategy.getMetrics().command(cmd);
+			CommandResult result;
+			synchronized (command) {
+				long start = System.nanoTime();
+				boolean success = command.run(cmd);
+				commandMetrics.record(System.nanoTime() - start, success);
+				result = commandResult(cmd, success, command.getMessageList(), loadHelp);
+			}
+			if (!result.isSuccess() && failOnError) {
+				String errorMessage = "Command call ended in error! Below are error message details:\n" + commandErrors(result);
+				logger.error(errorMessage);
+				throw new AS400CommandCallException(errorMessage, result);
+			}
+			return result;
+		} catch (AS400CommandCallException e) {
+			throw e;
 		} catch (java.io.IOException e) {
+			connectionStrategy.discardSystem(system);
 			throw new AS400TransportException("CommandCall connection error: ", e);
 		}
 		catch(Exception e) {
 			throw new AS400CommandCallException("CommandCall error: ", e);
+		} finally {
+			connectionStrategy.releaseSystem(system);
+		}
+	}
+
+	// Help text is a host round trip per message, it is only loaded if asked for and then cached by message
+	private CommandResult commandResult(String cmd, boolean success, AS400Message[] messageList, boolean loadHelp) throws Exception {
+		List<CommandMessage> messages = new ArrayList<CommandMessage>(messageList.length);
+		for (AS400Message em : messageList) {
+			messages.add(CommandMessage.of(em, loadHelp ? messageHelp.getHelp(em) : null));
+		}
+		return new CommandResult(cmd, success, messages);
+	}
+
+	private static String commandErrors(CommandResult result) {
+		StringBuilder errorMessage = new StringBuilder();
+		for (CommandMessage message : result.getMessages()) {
+			errorMessage.append("ERROR ").append(message.getId()).append(": ").append(message.getText()).append("\n");
+			if (message.getHelp() != null) {
+				errorMessage.append("ERROR additional details: ").append(message.getHelp()).append("\n");
+			}
 		}
+		return errorMessage.toString();
 	}
 	
+	@Processor(friendlyName="Read Data Queue Async")
+	public Future<DataQueueMessage> readDataQueueAsync(@Placement (order=1) @FriendlyName("Data Queue") final String dtaq,@Placement (order=2) final String library, @Placement (order=3)@FriendlyName("Key")@Summary("Only for keyed data queues. If not specified, the data queue is not keyed.") @Optional final String dtaqKey, @Placement (order=4)@FriendlyName("Key Search Type")@Summary("GE (Greater or Equal), GT (Greater Than), LE (Lesser or equal), LT, EQ (Equal), NE (Not Equal) Required if key is specified") @Optional final SearchType dtaqKeySearchType, @Placement (order=5) @FriendlyName("Max Wait Time")@Summary("Seconds to wait for an entry, 0 to 30. Keep the timeout of Await Async Result at least this long, an entry read after the await gave up is not passed on.") @Default("30") final int dtaqwaittime, @Placement (order=6) @FriendlyName("Keep messages in Queue") @Default("false") final Boolean peek) throws AS400AsyncException {
+
+		// A read without an end would hold an I/O thread for good and could take an entry long after anyone waits for it
+		if (dtaqwaittime < 0 || dtaqwaittime > MAX_DQ_WAIT_TIME) {
+			throw new AS400AsyncException("Read Data Queue Async needs a Max Wait Time from 0 to " + MAX_DQ_WAIT_TIME + " seconds, got " + dtaqwaittime);
+		}
+		return submitAsync("Read Data Queue", new Callable<DataQueueMessage>() {
+			public DataQueueMessage call() throws Exception {
+				DataQueueReadResult result = connectAndRead(dtaq, library, dtaqKey, dtaqKeySearchType, dtaqwaittime, peek, false);
+				return result.isFound() ? new DataQueueMessage((String) result.getData(), (String) result.getKey()) : null;
+			}
+		});
+	}
+
+	@Processor(friendlyName="Write Data Queue Async")
+	public Future<Void> writeDataQueueAsync(@FriendlyName("Data Queue")@Placement (order=1) final String dtaq,@Placement (order=2) final String library,@FriendlyName("Data Entry")@Placement (order=3) final String dqEntry,@FriendlyName("Key")@Placement (order=4) @Optional final String dtaqKey) throws AS400AsyncException {
+
+		return submitAsync("Write Data Queue", new Callable<Void>() {
+			public Void call() throws Exception {
+				writeDataQueue(dtaq, library, dqEntry, dtaqKey, false);
+				return null;
+			}
+		});
+	}
+
+	@Processor(friendlyName="Command Call Async")
+	public Future<CommandResult> commandCallAsync(@FriendlyName("Command")@Placement (order=1) final String cmd,@FriendlyName("Load Help")@Summary("Adds the help text to the returned messages. Help text is loaded from the host once per message and cached.")@Placement (order=2) @Default("false") final boolean loadHelp,@FriendlyName("Fail on Error")@Summary("Throw an error if the command fails, otherwise the failed result is returned")@Placement (order=3) @Default("true") final boolean failOnError) throws AS400AsyncException {
+
+		return submitAsync("Command Call", new Callable<CommandResult>() {
+			public CommandResult call() throws Exception {
+				return commandCall(cmd, loadHelp, failOnError);
+			}
+		});
+	}
+
+	@Processor(friendlyName="Await Async Result")
+	public Object awaitAsyncResult(@FriendlyName("Async Result")@Summary("Result of an async operation, or a collection of them to wait for all")@Placement (order=1) @Default("#[payload]") Object result,@FriendlyName("Timeout")@Summary("Milliseconds to wait in total. Defaults to -1 (wait till all operations are done).")@Placement (order=2) @Default("-1") long timeout) throws AS400ConnectorException {
+
+		long deadline = timeout < 0 ? Long.MAX_VALUE : System.currentTimeMillis() + timeout;
+		if (result instanceof Collection) {
+			List<Object> results = new ArrayList<Object>(((Collection<?>) result).size());
+			for (Object element : (Collection<?>) result) {
+				results.add(awaitAsync(element, deadline));
+			}
+			return results;
+		}
+		return awaitAsync(result, deadline);
+	}
+
+	// A full executor rejects the operation right away, the flow decides whether to retry or run it synchronously
+	private <T> Future<T> submitAsync(String operation, Callable<T> call) throws AS400AsyncException {
+		try {
+			return connectionStrategy.getIoExecutor().submit(operation, call);
+		} catch (RejectedExecutionException e) {
+			throw new AS400AsyncException(operation + " rejected, async I/O threads busy and queue full", e);
+		}
+	}
+
+	// Operation errors are rethrown as they are, a timed out operation keeps running and can be awaited again
+	private static Object awaitAsync(Object result, long deadline) throws AS400ConnectorException {
+		if (!(result instanceof Future)) {
+			return result;
+		}
+		try {
+			long remaining = deadline == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(deadline - System.currentTimeMillis(), 0);
+			return ((Future<?>) result).get(remaining, TimeUnit.MILLISECONDS);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof AS400ConnectorException) {
+				throw (AS400ConnectorException) e.getCause();
+			}
+			throw new AS400AsyncException("Async operation error: ", e.getCause());
+		} catch (TimeoutException e) {
+			throw new AS400AsyncException("Async operation not done in time", e);
+		} catch (CancellationException e) {
+			throw new AS400AsyncException("Async operation cancelled", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AS400AsyncException("Interrupted while waiting for async operation", e);
+		}
+	}
+
+	// Converters are compiled once per record format. Inline formats only need the job CCSID of the data queue connection,
+	// the record format of a file is retrieved over record level access on first use. Errors other than connection
+	// errors are passed on for the caller to report as a read or write error.
+	private RecordConverter getRecordConverter(String recordFormat, String recordFormatFile) throws Exception {
+		String filePath = recordFormat == null ? constructFile(recordFormatFile) : null;
+		RecordConverter converter = recordConverters.get(recordFormat, filePath);
+		if (converter != null) {
+			return converter;
+		}
+		AS400 system = connectionStrategy.borrowSystem(recordFormat != null ? AS400.DATAQUEUE : AS400.RECORDACCESS, connectionStrategy.getProcessorReconnectWait());
+		try {
+			return recordConverters.compile(system, recordFormat, filePath);
+		} catch (java.io.IOException e) {
+			connectionStrategy.discardSystem(system);
+			throw new AS400TransportException("Record format retrieval connection error: ", e);
+		} finally {
+			connectionStrategy.releaseSystem(system);
+		}
+	}
+
+	// LIBRARY/FILE or a full IFS path
+	private String constructFile(String file) {
+		if (file == null || file.startsWith("/")) {
+			return file;
+		}
+		String[] parts = file.trim().split("/");
+		if (parts.length != 2) {
+			throw new IllegalArgumentException("File must be given as LIBRARY/FILE: " + file);
+		}
+		return new StringBuilder(LIBRARY_BASE_PATH).append(parts[0]).append(".LIB/").append(parts[1]).append(".FILE").toString();
+	}
+
+	@Processor(friendlyName="Program Call")
+	public Map<String, Object> programCall(@FriendlyName("Program")@Placement (order=1) String program,@Placement (order=2) @Default("*LIBL") String library,@FriendlyName("Parameters")@Summary("Parameter list, e.g. IN CUSTNO:CHAR(10) | OUT BALANCE:PACKED(11,2) | INOUT ADDRESS{STREET:CHAR(30);CITY:CHAR(20)}")@Placement (order=3) @Optional String parameters,@FriendlyName("Input Values")@Summary("Values of IN and INOUT parameters by name, structures as maps of field values")@Placement (order=4) @Default("#[payload]") Map<String, Object> inputs) throws AS400ProgramCallException, AS400TransportException {
+
+		AS400 system = connectionStrategy.borrowSystem(AS400.COMMAND, connectionStrategy.getProcessorReconnectWait());
+		try {
+			ProgramSignature signature = getProgramSignature(system, parameters);
+			ProgramParameter[] programParameters = signature.toProgramParameters(inputs);
+			ProgramCall programCall = connectionStrategy.getProgramCall(system);
+			synchronized (programCall) {
+				programCall.setProgram(constructProgram(program, library), programParameters);
+				if (!programCall.run()) {
+					StringBuilder errorMessage = new StringBuilder("Program call ended in error! Below are error message details:").append("\n");
+					for (AS400Message em : programCall.getMessageList()) {
+						errorMessage.append(em.getID()).append(": ").append(em.getText()).append("\n");
+					}
+					logger.error(errorMessage.toString());
+					throw new AS400ProgramCallException(errorMessage.toString());
+				}
+			}
+			return signature.toOutputs(programParameters);
+		} catch (AS400ProgramCallException e) {
+			throw e;
+		} catch (java.io.IOException e) {
+			connectionStrategy.discardSystem(system);
+			throw new AS400TransportException("ProgramCall connection error: ", e);
+		} catch (Exception e) {
+			throw new AS400ProgramCallException("ProgramCall error: ", e);
+		} finally {
+			connectionStrategy.releaseSystem(system);
+		}
+	}
+
+	// Converters of a parameter list are compiled once per job CCSID and shared by all calls with the same signature
+	private ProgramSignature getProgramSignature(AS400 system, String parameters) {
+		String descriptor = parameters == null ? "" : parameters.trim();
+		String key = system.getCcsid() + " " + descriptor;
+		ProgramSignature signature = programSignatures.get(key);
+		if (signature == null) {
+			signature = ProgramSignature.parse(system.getCcsid(), descriptor);
+			ProgramSignature existing = programSignatures.putIfAbsent(key, signature);
+			if (existing != null) {
+				signature = existing;
+			}
+		}
+		return signature;
+	}
+
+	private String constructProgram(String program, String library) {
+		String lib = library == null || "*LIBL".equalsIgnoreCase(library) ? "%LIBL%" : library;
+		return new StringBuilder(LIBRARY_BASE_PATH).append(lib).append(".LIB/").append(program).append(".PGM").toString();
+	}
+
 	private String constructDataQueue(String dtaq, String library){
 		String dataQueue = new StringBuilder(LIBRARY_BASE_PATH)
 				.append(library).append(".LIB/").append(dtaq)
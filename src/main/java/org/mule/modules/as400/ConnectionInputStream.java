@@ -0,0 +1,96 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.mule.modules.as400.strategy.ConnectionLease;
+
+/**
+ * Buffered stream over an IFS file or spooled file that hands back the connection it reads with once it is closed,
+ * read to the end or its lease expires. Every refill of the buffer is one read request to the host, so the buffer
+ * size sets the request size. A connection a read failed on is discarded instead of handed back.
+ */
+public class ConnectionInputStream extends BufferedInputStream {
+
+	private final String name;
+	private final ConnectionLease lease;
+	private boolean closed;
+
+	public ConnectionInputStream(InputStream in, int bufferSize, String name, ConnectionLease lease) {
+		super(in, bufferSize);
+		this.name = name;
+		this.lease = lease;
+		lease.setHolder(this);
+	}
+
+	@Override
+	public synchronized int read() throws IOException {
+		lease.touch();
+		try {
+			return closeAtEnd(super.read());
+		} catch (IOException e) {
+			// Includes ConnectionDroppedException
+			throw failed(e);
+		}
+	}
+
+	@Override
+	public synchronized int read(byte[] b, int off, int len) throws IOException {
+		lease.touch();
+		try {
+			return closeAtEnd(super.read(b, off, len));
+		} catch (IOException e) {
+			// Includes ConnectionDroppedException
+			throw failed(e);
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			super.close();
+		} catch (IOException e) {
+			// The file may still be open on the host, the connection can't go back to the pool
+			lease.failed();
+			throw e;
+		} finally {
+			lease.close();
+		}
+	}
+
+	/**
+	 * @return the IFS path or spooled file the stream reads
+	 */
+	public String getName() {
+		return name;
+	}
+
+	// Flows don't always close stream payloads, the connection is released as soon as the file is read
+	private int closeAtEnd(int result) throws IOException {
+		if (result == -1) {
+			close();
+		}
+		return result;
+	}
+
+	private IOException failed(IOException e) {
+		lease.failed();
+		try {
+			close();
+		} catch (IOException closeError) {
+			// Already failed, the read error is the one to report
+		}
+		return e;
+	}
+
+}
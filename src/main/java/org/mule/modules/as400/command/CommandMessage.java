@@ -0,0 +1,74 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.command;
+
+import java.io.Serializable;
+
+import com.ibm.as400.access.AS400Message;
+
+/**
+ * Message returned by a command call. The help text is only set if it was asked for.
+ */
+public class CommandMessage implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String id;
+	private final int severity;
+	private final int type;
+	private final String text;
+	private final String help;
+
+	public CommandMessage(String id, int severity, int type, String text, String help) {
+		this.id = id;
+		this.severity = severity;
+		this.type = type;
+		this.text = text;
+		this.help = help;
+	}
+
+	public static CommandMessage of(AS400Message message, String help) {
+		return new CommandMessage(message.getID(), message.getSeverity(), message.getType(), message.getText(), help);
+	}
+
+	/**
+	 * @return the message ID, e.g. CPF9801
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * @return the severity, 0 to 99
+	 */
+	public int getSeverity() {
+		return severity;
+	}
+
+	/**
+	 * @return the message type, one of the AS400Message type constants
+	 */
+	public int getType() {
+		return type;
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * @return the help text, null if not loaded
+	 */
+	public String getHelp() {
+		return help;
+	}
+
+	@Override
+	public String toString() {
+		return id + ": " + text;
+	}
+
+}
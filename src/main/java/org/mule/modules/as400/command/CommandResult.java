@@ -0,0 +1,73 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.command;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a command call with the messages the command sent back, successful or not.
+ */
+public class CommandResult implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String command;
+	private final boolean success;
+	private final List<CommandMessage> messages;
+
+	public CommandResult(String command, boolean success, List<CommandMessage> messages) {
+		this.command = command;
+		this.success = success;
+		this.messages = Collections.unmodifiableList(messages);
+	}
+
+	public String getCommand() {
+		return command;
+	}
+
+	public boolean isSuccess() {
+		return success;
+	}
+
+	public List<CommandMessage> getMessages() {
+		return messages;
+	}
+
+	/**
+	 * @return the highest severity of the messages, 0 if there are none
+	 */
+	public int getMaxSeverity() {
+		int severity = 0;
+		for (CommandMessage message : messages) {
+			severity = Math.max(severity, message.getSeverity());
+		}
+		return severity;
+	}
+
+	/**
+	 * @return true if a message with the ID was returned
+	 */
+	public boolean hasMessage(String id) {
+		for (CommandMessage message : messages) {
+			if (message.getId() != null && message.getId().equalsIgnoreCase(id)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder(command).append(success ? " completed" : " ended in error");
+		for (CommandMessage message : messages) {
+			text.append("\n").append(message);
+		}
+		return text.toString();
+	}
+
+}
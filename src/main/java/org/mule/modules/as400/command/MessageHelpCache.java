@@ -0,0 +1,57 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.command;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.ibm.as400.access.AS400Message;
+
+/**
+ * Help text of command messages by message ID. Loading the help of a message is a host round trip, with the cache a
+ * failure repeated over and over only loads it once. The help text has the substitution data of the message filled
+ * in, so the substitution data is part of the key next to the message ID and message file.
+ */
+public class MessageHelpCache {
+
+	private static final int MAX_CACHED_MESSAGES = 1024;
+	private static final Charset KEY_CHARSET = Charset.forName("ISO-8859-1");
+
+	private final ConcurrentMap<String, String> help = new ConcurrentHashMap<String, String>();
+
+	public String getHelp(AS400Message message) throws Exception {
+		if (message.getID() == null) {
+			message.load();
+			return message.getHelp();
+		}
+		String key = key(message);
+		String text = help.get(key);
+		if (text == null) {
+			message.load();
+			text = message.getHelp() == null ? "" : message.getHelp();
+			// Messages past the limit are loaded every time rather than evicting
+			if (help.size() < MAX_CACHED_MESSAGES) {
+				help.putIfAbsent(key, text);
+			}
+		}
+		return text;
+	}
+
+	public int size() {
+		return help.size();
+	}
+
+	private static String key(AS400Message message) {
+		byte[] substitution = message.getSubstitutionData();
+		StringBuilder key = new StringBuilder(message.getID()).append('/').append(message.getLibraryName()).append('/').append(message.getFileName());
+		if (substitution != null) {
+			key.append('/').append(new String(substitution, KEY_CHARSET));
+		}
+		return key.toString();
+	}
+
+}
@@ -0,0 +1,61 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.dataqueue;
+
+/**
+ * Wait time of a polling source's data queue reads. While entries are flowing the source reads with the minimum wait,
+ * back to back; every read that comes back empty doubles the wait up to the maximum, so an idle queue is read with
+ * long blocking waits instead of a stream of empty round trips. The first entry switches back to the minimum.
+ */
+public class AdaptivePollWait {
+
+	public enum Mode {
+		/**
+		 * Entries are flowing, reads use the minimum wait
+		 */
+		STREAMING,
+		/**
+		 * Reads came back empty, the wait is growing
+		 */
+		BACKING_OFF,
+		/**
+		 * The queue is idle, reads use the maximum wait
+		 */
+		IDLE
+	}
+
+	private final int minWait;
+	private final int maxWait;
+	// Only the source's polling thread updates the wait, monitoring reads it
+	private volatile int wait;
+
+	/**
+	 * @param minWait seconds to wait while entries are flowing, 0 for no wait
+	 * @param maxWait seconds to wait on an idle queue
+	 */
+	public AdaptivePollWait(int minWait, int maxWait) {
+		this.minWait = Math.max(minWait, 0);
+		this.maxWait = Math.max(maxWait, this.minWait);
+		this.wait = this.maxWait;
+	}
+
+	public int getWait() {
+		return wait;
+	}
+
+	public void update(boolean found) {
+		wait = found ? minWait : Math.min(maxWait, Math.max(1, wait * 2));
+	}
+
+	public Mode getMode() {
+		int current = wait;
+		if (current == maxWait) {
+			return Mode.IDLE;
+		}
+		return current == minWait ? Mode.STREAMING : Mode.BACKING_OFF;
+	}
+
+}
@@ -0,0 +1,117 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.dataqueue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.mule.modules.as400.exception.AS400TransportException;
+import org.mule.modules.as400.strategy.AS400ConnectionStrategy;
+
+import com.ibm.as400.access.AS400;
+
+/**
+ * Group of consumer threads owned by a listening message source. Each consumer opens its own dedicated host connection.
+ * The source thread blocks in {@link #awaitStop()} until Mule interrupts it; the group then closes all connections,
+ * which also unblocks consumers waiting in a data queue read.
+ */
+public class ConsumerGroup {
+
+	private static long STOP_WAIT_TIME = 5000;
+
+	private final String name;
+	private final AS400ConnectionStrategy connectionStrategy;
+	private final AtomicBoolean running = new AtomicBoolean(true);
+	private final List<Thread> threads = new ArrayList<Thread>();
+	private final Set<AS400> connections = Collections.newSetFromMap(new ConcurrentHashMap<AS400, Boolean>());
+
+	public ConsumerGroup(String name, AS400ConnectionStrategy connectionStrategy) {
+		this.name = name;
+		this.connectionStrategy = connectionStrategy;
+	}
+
+	public void start(Runnable consumer) {
+		Thread thread = new Thread(consumer, name + "-" + threads.size());
+		thread.setDaemon(true);
+		threads.add(thread);
+		thread.start();
+	}
+
+	public boolean isRunning() {
+		return running.get();
+	}
+
+	public AS400 openConnection() throws AS400TransportException {
+		AS400 system = connectionStrategy.openDedicatedSystem();
+		connections.add(system);
+		// Stopped while connecting, don't leak the connection
+		if (!running.get()) {
+			closeConnection(system);
+		}
+		return system;
+	}
+
+	public void closeConnection(AS400 system) {
+		if (system != null) {
+			connections.remove(system);
+			connectionStrategy.closeDedicatedSystem(system);
+		}
+	}
+
+	// Sleep between retries, returns false if the group is stopped meanwhile
+	public boolean pause(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		return running.get();
+	}
+
+	public void awaitStop() {
+		boolean interrupted = false;
+		try {
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			interrupted = true;
+		}
+		stop();
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public void stop() {
+		running.set(false);
+		for (AS400 system : connections) {
+			closeConnection(system);
+		}
+		for (Thread thread : threads) {
+			thread.interrupt();
+		}
+		long deadline = System.currentTimeMillis() + STOP_WAIT_TIME;
+		for (Thread thread : threads) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				break;
+			}
+			try {
+				thread.join(remaining);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+	}
+
+}
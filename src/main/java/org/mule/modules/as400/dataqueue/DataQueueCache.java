@@ -0,0 +1,156 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.dataqueue;
+
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mule.modules.as400.strategy.AS400Transport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ibm.as400.access.AS400;
+import com.ibm.as400.access.CharConverter;
+
+/**
+ * Per-connection cache of data queue objects and their attributes, keyed by the IFS path of the queue.
+ * Keyed queues keep their key length so it is only retrieved from the host once per connection.
+ * The cache has to be invalidated whenever the underlying AS400 system object is replaced.
+ */
+public class DataQueueCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(DataQueueCache.class);
+
+	private final AS400Transport transport;
+	private final ConcurrentMap<String, HostDataQueue> dataQueues = new ConcurrentHashMap<String, HostDataQueue>();
+	private final ConcurrentMap<String, KeyedDataQueueHandle> keyedDataQueues = new ConcurrentHashMap<String, KeyedDataQueueHandle>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public DataQueueCache(AS400Transport transport) {
+		this.transport = transport;
+	}
+
+	public HostDataQueue getDataQueue(AS400 system, String path) {
+		HostDataQueue dq = dataQueues.get(path);
+		if (dq != null && dq.getSystem() == system) {
+			hits.incrementAndGet();
+			return dq;
+		}
+		recordMiss(path);
+		dq = transport.createDataQueue(system, path);
+		dataQueues.put(path, dq);
+		return dq;
+	}
+
+	// Key length is a queue attribute and costs a host round trip, so it is fetched once together with the queue object
+	public KeyedDataQueueHandle getKeyedDataQueue(AS400 system, String path) throws Exception {
+		KeyedDataQueueHandle handle = keyedDataQueues.get(path);
+		if (handle != null && handle.getQueue().getSystem() == system) {
+			hits.incrementAndGet();
+			return handle;
+		}
+		recordMiss(path);
+		HostKeyedDataQueue kd = transport.createKeyedDataQueue(system, path);
+		handle = new KeyedDataQueueHandle(kd, kd.getKeyLength());
+		keyedDataQueues.put(path, handle);
+		return handle;
+	}
+
+	public void invalidate() {
+		dataQueues.clear();
+		keyedDataQueues.clear();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	private void recordMiss(String path) {
+		long missCount = misses.incrementAndGet();
+		if (logger.isDebugEnabled()) {
+			logger.debug("DataQueue cache miss for {} (hits={}, misses={})", path, hits.get(), missCount);
+		}
+	}
+
+	/**
+	 * Keyed data queue together with its cached key length and the padded, converted bytes of the keys used with it
+	 */
+	public static class KeyedDataQueueHandle {
+
+		// Keys usually come from configuration, beyond this many distinct keys they are converted on every use
+		private static final int MAX_CACHED_KEYS = 1024;
+
+		private final HostKeyedDataQueue queue;
+		private final int keyLength;
+		private final ConcurrentMap<String, byte[]> paddedKeys = new ConcurrentHashMap<String, byte[]>();
+		private volatile CharConverter keyConverter;
+
+		public KeyedDataQueueHandle(HostKeyedDataQueue queue, int keyLength) {
+			this.queue = queue;
+			this.keyLength = keyLength;
+		}
+
+		public HostKeyedDataQueue getQueue() {
+			return queue;
+		}
+
+		public int getKeyLength() {
+			return keyLength;
+		}
+
+		/**
+		 * Key padded with blanks to the key length of the queue and converted with the job CCSID. The returned array is
+		 * shared and must not be modified.
+		 */
+		public byte[] getPaddedKey(String key) throws UnsupportedEncodingException {
+			byte[] padded = paddedKeys.get(key);
+			if (padded == null) {
+				padded = getKeyConverter().stringToByteArray(padKey(key, keyLength));
+				if (paddedKeys.size() < MAX_CACHED_KEYS) {
+					paddedKeys.putIfAbsent(key, padded);
+				}
+			}
+			return padded;
+		}
+
+		/**
+		 * Key of an entry of the queue as text, converted with the job CCSID
+		 */
+		public String getKeyString(byte[] key) throws UnsupportedEncodingException {
+			return getKeyConverter().byteArrayToString(key);
+		}
+
+		private CharConverter getKeyConverter() throws UnsupportedEncodingException {
+			CharConverter converter = keyConverter;
+			if (converter == null) {
+				AS400 system = queue.getSystem();
+				converter = new CharConverter(system.getCcsid(), system);
+				keyConverter = converter;
+			}
+			return converter;
+		}
+
+		// Pad to the right with blanks, or cut off, to the given length
+		private static String padKey(String key, int length) {
+			if (key.length() >= length) {
+				return key.substring(0, length);
+			}
+			StringBuilder padded = new StringBuilder(length).append(key);
+			while (padded.length() < length) {
+				padded.append(' ');
+			}
+			return padded.toString();
+		}
+	}
+
+}
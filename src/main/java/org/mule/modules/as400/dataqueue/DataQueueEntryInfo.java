@@ -0,0 +1,166 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.dataqueue;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Map;
+
+import com.ibm.as400.access.CharConverter;
+
+/**
+ * Sender and timing information of a data queue entry, only collected if asked for. Sender fields are only set for
+ * data queues created with SENDERID(*YES). The host does not return when an entry was written, the enqueue time is
+ * only known if the producer puts a timestamp into the entry.
+ */
+public class DataQueueEntryInfo {
+
+	public static final String SENDER_JOB_PROPERTY = "as400.dataqueue.sender.job";
+	public static final String SENDER_USER_PROPERTY = "as400.dataqueue.sender.user";
+	public static final String SENDER_JOB_NUMBER_PROPERTY = "as400.dataqueue.sender.jobNumber";
+	public static final String SENDER_CURRENT_USER_PROPERTY = "as400.dataqueue.sender.currentUser";
+	public static final String ENQUEUE_TIME_PROPERTY = "as400.dataqueue.enqueueTime";
+	public static final String DEQUEUE_TIME_PROPERTY = "as400.dataqueue.dequeueTime";
+
+	// IBM i timestamp YYYY-MM-DD-HH.MM.SS.NNNNNN, fractions are optional
+	private static final int TIMESTAMP_LENGTH = 26;
+	private static final int TIMESTAMP_MIN_LENGTH = 19;
+
+	private final String senderJob;
+	private final String senderUser;
+	private final String senderJobNumber;
+	private final String senderCurrentUser;
+	private final Date enqueueTime;
+	private final Date dequeueTime;
+
+	private DataQueueEntryInfo(String senderJob, String senderUser, String senderJobNumber, String senderCurrentUser, Date enqueueTime, Date dequeueTime) {
+		this.senderJob = senderJob;
+		this.senderUser = senderUser;
+		this.senderJobNumber = senderJobNumber;
+		this.senderCurrentUser = senderCurrentUser;
+		this.enqueueTime = enqueueTime;
+		this.dequeueTime = dequeueTime;
+	}
+
+	/**
+	 * @param senderInformation sender information of the entry, job name (10), user (10), job number (6) and current user (10), null or blank if the queue does not keep it
+	 * @param enqueueTime time the producer put into the entry, null if unknown
+	 * @param dequeueTime time the connector read the entry
+	 */
+	public static DataQueueEntryInfo of(String senderInformation, Date enqueueTime, long dequeueTime) {
+		return new DataQueueEntryInfo(field(senderInformation, 0, 10), field(senderInformation, 10, 20), field(senderInformation, 20, 26),
+				field(senderInformation, 26, 36), enqueueTime, new Date(dequeueTime));
+	}
+
+	private static String field(String senderInformation, int start, int end) {
+		if (senderInformation == null || senderInformation.length() <= start) {
+			return null;
+		}
+		String value = senderInformation.substring(start, Math.min(end, senderInformation.length())).trim();
+		return value.isEmpty() ? null : value;
+	}
+
+	/**
+	 * Parse an IBM i timestamp in the local time zone. Only the digit positions are read, so ISO timestamps
+	 * (YYYY-MM-DD HH:MM:SS) are accepted as well.
+	 *
+	 * @return the time, null if the text is not a timestamp
+	 */
+	public static Date parseTimestamp(String text) {
+		if (text == null || text.length() < TIMESTAMP_MIN_LENGTH) {
+			return null;
+		}
+		try {
+			Calendar calendar = Calendar.getInstance();
+			calendar.clear();
+			calendar.setLenient(false);
+			calendar.set(digits(text, 0, 4), digits(text, 5, 7) - 1, digits(text, 8, 10), digits(text, 11, 13), digits(text, 14, 16), digits(text, 17, 19));
+			// Fractions may be cut short or blank padded, only milliseconds are kept
+			int end = text.length();
+			while (end > TIMESTAMP_MIN_LENGTH && text.charAt(end - 1) == ' ') {
+				end--;
+			}
+			int millis = 0;
+			for (int i = 20; i < 23; i++) {
+				millis = millis * 10 + (i < end ? digits(text, i, i + 1) : 0);
+			}
+			calendar.set(Calendar.MILLISECOND, millis);
+			return calendar.getTime();
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Parse the timestamp a producer put into an entry, the timestamp may be cut short by the end of the entry
+	 *
+	 * @param position 1-based position of the timestamp in the entry
+	 * @param converter converter for the CCSID of the entry
+	 * @return the time, null if there is no timestamp at the position
+	 */
+	public static Date parseTimestamp(byte[] data, int position, CharConverter converter) {
+		int offset = position - 1;
+		if (offset < 0 || offset >= data.length) {
+			return null;
+		}
+		return parseTimestamp(converter.byteArrayToString(data, offset, Math.min(TIMESTAMP_LENGTH, data.length - offset)));
+	}
+
+	private static int digits(String text, int start, int end) {
+		int value = 0;
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			if (c < '0' || c > '9') {
+				throw new IllegalArgumentException("Not a digit at " + i + ": " + text);
+			}
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
+
+	/**
+	 * Add the known fields as message properties
+	 */
+	public void addProperties(Map<String, Object> properties) {
+		put(properties, SENDER_JOB_PROPERTY, senderJob);
+		put(properties, SENDER_USER_PROPERTY, senderUser);
+		put(properties, SENDER_JOB_NUMBER_PROPERTY, senderJobNumber);
+		put(properties, SENDER_CURRENT_USER_PROPERTY, senderCurrentUser);
+		put(properties, ENQUEUE_TIME_PROPERTY, enqueueTime);
+		put(properties, DEQUEUE_TIME_PROPERTY, dequeueTime);
+	}
+
+	private static void put(Map<String, Object> properties, String name, Object value) {
+		if (value != null) {
+			properties.put(name, value);
+		}
+	}
+
+	public String getSenderJob() {
+		return senderJob;
+	}
+
+	public String getSenderUser() {
+		return senderUser;
+	}
+
+	public String getSenderJobNumber() {
+		return senderJobNumber;
+	}
+
+	public String getSenderCurrentUser() {
+		return senderCurrentUser;
+	}
+
+	public Date getEnqueueTime() {
+		return enqueueTime;
+	}
+
+	public Date getDequeueTime() {
+		return dequeueTime;
+	}
+
+}
@@ -0,0 +1,45 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.dataqueue;
+
+import java.io.Serializable;
+
+/**
+ * Single data queue entry as handed to the flow by the batch operations.
+ * The key is only set for entries read from keyed data queues.
+ */
+public class DataQueueMessage implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String entry;
+	private final String key;
+
+	public DataQueueMessage(String entry, String key) {
+		this.entry = entry;
+		this.key = key;
+	}
+
+	/**
+	 * @return the entry data
+	 */
+	public String getEntry() {
+		return entry;
+	}
+
+	/**
+	 * @return the entry key, null for non-keyed data queues
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	@Override
+	public String toString() {
+		return key == null ? entry : key + ":" + entry;
+	}
+
+}
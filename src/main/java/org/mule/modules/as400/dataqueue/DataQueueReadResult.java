@@ -0,0 +1,82 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.dataqueue;
+
+/**
+ * Outcome of a single data queue read. Reads that find nothing all share the same empty result, so idle polling
+ * does not allocate.
+ */
+public final class DataQueueReadResult {
+
+	private static final DataQueueReadResult EMPTY = new DataQueueReadResult(null, null, null, null);
+
+	private final Object data;
+	private final Object key;
+	private final DataQueueEntryInfo info;
+	private final HostDataQueueEntry entry;
+
+	private DataQueueReadResult(Object data, Object key, DataQueueEntryInfo info, HostDataQueueEntry entry) {
+		this.data = data;
+		this.key = key;
+		this.info = info;
+		this.entry = entry;
+	}
+
+	public static DataQueueReadResult empty() {
+		return EMPTY;
+	}
+
+	/**
+	 * @param data entry data, text, bytes or a record depending on the read mode
+	 * @param key entry key, trimmed text or the raw key bytes, null for non-keyed data queues
+	 */
+	public static DataQueueReadResult of(Object data, Object key) {
+		return new DataQueueReadResult(data, key, null, null);
+	}
+
+	/**
+	 * @param info sender and timing information, null if not asked for
+	 * @param entry the entry as read from the queue
+	 */
+	public static DataQueueReadResult of(Object data, Object key, DataQueueEntryInfo info, HostDataQueueEntry entry) {
+		return new DataQueueReadResult(data, key, info, entry);
+	}
+
+	public boolean isFound() {
+		return this != EMPTY;
+	}
+
+	public boolean isKeyed() {
+		return key != null;
+	}
+
+	/**
+	 * @return whether the entry comes with message properties, a key or entry information
+	 */
+	public boolean hasProperties() {
+		return key != null || info != null;
+	}
+
+	public Object getData() {
+		return data;
+	}
+
+	public Object getKey() {
+		return key;
+	}
+
+	public DataQueueEntryInfo getInfo() {
+		return info;
+	}
+
+	/**
+	 * @return the entry as read from the queue, with the raw data and key
+	 */
+	public HostDataQueueEntry getEntry() {
+		return entry;
+	}
+
+}
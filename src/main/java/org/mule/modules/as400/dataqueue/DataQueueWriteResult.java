@@ -0,0 +1,67 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.dataqueue;
+
+import java.io.Serializable;
+
+/**
+ * Outcome of writing a single entry as part of a bulk data queue write
+ */
+public class DataQueueWriteResult implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int index;
+	private final String key;
+	private final boolean success;
+	private final String errorMessage;
+
+	private DataQueueWriteResult(int index, String key, boolean success, String errorMessage) {
+		this.index = index;
+		this.key = key;
+		this.success = success;
+		this.errorMessage = errorMessage;
+	}
+
+	public static DataQueueWriteResult success(int index, String key) {
+		return new DataQueueWriteResult(index, key, true, null);
+	}
+
+	public static DataQueueWriteResult failure(int index, String key, String errorMessage) {
+		return new DataQueueWriteResult(index, key, false, errorMessage);
+	}
+
+	/**
+	 * @return position of the entry in the written collection
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return the entry key, null for non-keyed data queues
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	public boolean isSuccess() {
+		return success;
+	}
+
+	/**
+	 * @return the error message, null if the entry was written
+	 */
+	public String getErrorMessage() {
+		return errorMessage;
+	}
+
+	@Override
+	public String toString() {
+		return success ? "[" + index + "] written" : "[" + index + "] failed: " + errorMessage;
+	}
+
+}
@@ -0,0 +1,293 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.dataqueue;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Disk backed set of hashes of data queue entries that were processed but not yet removed from the queue. An entry
+ * is added once the flow is done with it and removed again once the entry is gone from the queue, so the log stays
+ * small and entries with the same content can come again later.
+ * <p>
+ * The log also keeps entries taken from the queue by mistake, together with their key and data, from before they are
+ * taken until they are written back, so an entry is not lost if the write back fails or the application stops.
+ * <p>
+ * Every change is appended to the log file and synced before returning. The file is compacted when it is opened and
+ * whenever enough changes have piled up.
+ * <p>
+ * Entries are told apart by their key, data and, for data queues created with SENDERID(*YES), sender job. The host
+ * keeps no position or enqueue time for an entry, so an identical entry from the same sender that comes in while an
+ * earlier one is still in the log counts as processed. That only happens if the earlier entry could not be removed
+ * right after it was processed, producers that need to tell such entries apart put a sequence number or timestamp
+ * into them.
+ */
+public class DedupLog {
+
+	private static final Logger logger = LoggerFactory.getLogger(DedupLog.class);
+
+	private static final int HASH_LENGTH = 32;
+	private static final byte ADDED = 1;
+	private static final byte REMOVED = 0;
+	private static final byte TAKEN = 2;
+	private static final byte RETURNED = 3;
+	private static final int COMPACT_AFTER = 1000;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final File file;
+	private final Set<ByteBuffer> hashes = new HashSet<ByteBuffer>();
+	private final Map<ByteBuffer, TakenEntry> taken = new LinkedHashMap<ByteBuffer, TakenEntry>();
+	private int records;
+
+	private DedupLog(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Open the log, creating the file and its directory if needed
+	 */
+	public static DedupLog open(File file) throws IOException {
+		File directory = file.getAbsoluteFile().getParentFile();
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Can't create dedup log directory " + directory);
+		}
+		DedupLog log = new DedupLog(file);
+		synchronized (log) {
+			log.replay();
+			log.compact();
+		}
+		return log;
+	}
+
+	/**
+	 * @return SHA-256 of the key (if any) and data of an entry
+	 */
+	public static byte[] hash(byte[] key, byte[] data) {
+		return hash(key, data, null);
+	}
+
+	/**
+	 * @return SHA-256 of the key (if any), data and sender information (if kept by the queue) of an entry
+	 */
+	public static byte[] hash(byte[] key, byte[] data, String senderInformation) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			if (key != null) {
+				digest.update(key);
+			}
+			digest.update(data);
+			if (senderInformation != null && senderInformation.length() > 0) {
+				digest.update(senderInformation.getBytes(UTF8));
+			}
+			return digest.digest();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 not available", e);
+		}
+	}
+
+	public synchronized boolean contains(byte[] hash) {
+		return hashes.contains(ByteBuffer.wrap(hash));
+	}
+
+	/**
+	 * Record a processed entry
+	 */
+	public synchronized void add(byte[] hash) throws IOException {
+		if (hashes.add(ByteBuffer.wrap(hash.clone()))) {
+			append(ADDED, hash);
+		}
+	}
+
+	/**
+	 * Forget an entry once it is removed from the queue
+	 */
+	public synchronized void remove(byte[] hash) throws IOException {
+		if (hashes.remove(ByteBuffer.wrap(hash))) {
+			append(REMOVED, hash);
+			if (records >= COMPACT_AFTER) {
+				compact();
+			}
+		}
+	}
+
+	/**
+	 * Record an entry taken from the queue by mistake, before it is written back
+	 */
+	public synchronized void take(byte[] key, byte[] data) throws IOException {
+		TakenEntry entry = new TakenEntry(key, data);
+		if (taken.put(ByteBuffer.wrap(hash(key, data)), entry) == null) {
+			append(taken(entry));
+		}
+	}
+
+	/**
+	 * Forget a taken entry once it is back in the queue
+	 */
+	public synchronized void returned(byte[] key, byte[] data) throws IOException {
+		byte[] hash = hash(key, data);
+		if (taken.remove(ByteBuffer.wrap(hash)) != null) {
+			append(record(RETURNED, hash));
+			if (records >= COMPACT_AFTER) {
+				compact();
+			}
+		}
+	}
+
+	/**
+	 * @return the taken entries not yet written back, in the order they were taken
+	 */
+	public synchronized List<TakenEntry> getTaken() {
+		return new ArrayList<TakenEntry>(taken.values());
+	}
+
+	public synchronized int size() {
+		return hashes.size();
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	// A record cut short by a crash is ignored, its entry was never confirmed as processed
+	private void replay() throws IOException {
+		if (!file.exists()) {
+			return;
+		}
+		InputStream in = new FileInputStream(file);
+		try {
+			DataInputStream data = new DataInputStream(in);
+			byte[] hash = new byte[HASH_LENGTH];
+			while (true) {
+				int type = data.read();
+				if (type < 0) {
+					break;
+				}
+				data.readFully(hash);
+				if (type == ADDED) {
+					hashes.add(ByteBuffer.wrap(hash.clone()));
+				} else if (type == REMOVED) {
+					hashes.remove(ByteBuffer.wrap(hash));
+				} else if (type == TAKEN) {
+					int keyLength = data.readInt();
+					byte[] key = null;
+					if (keyLength >= 0) {
+						key = new byte[keyLength];
+						data.readFully(key);
+					}
+					byte[] entryData = new byte[data.readInt()];
+					data.readFully(entryData);
+					taken.put(ByteBuffer.wrap(hash.clone()), new TakenEntry(key, entryData));
+				} else if (type == RETURNED) {
+					taken.remove(ByteBuffer.wrap(hash));
+				} else {
+					throw new IOException("Invalid record type " + type + " in dedup log " + file);
+				}
+			}
+		} catch (EOFException e) {
+			logger.warn("Ignoring incomplete last record of dedup log " + file);
+		} finally {
+			in.close();
+		}
+	}
+
+	private void append(byte type, byte[] hash) throws IOException {
+		append(record(type, hash));
+	}
+
+	private void append(byte[] record) throws IOException {
+		FileOutputStream out = new FileOutputStream(file, true);
+		try {
+			out.write(record);
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+		records++;
+	}
+
+	// Rewrite the log with only the current hashes and swap it in
+	private void compact() throws IOException {
+		File compacted = new File(file.getPath() + ".tmp");
+		FileOutputStream out = new FileOutputStream(compacted);
+		try {
+			for (ByteBuffer hash : hashes) {
+				out.write(record(ADDED, hash.array()));
+			}
+			for (TakenEntry entry : taken.values()) {
+				out.write(taken(entry));
+			}
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+		if (!compacted.renameTo(file) && !(file.delete() && compacted.renameTo(file))) {
+			throw new IOException("Can't replace dedup log " + file);
+		}
+		records = hashes.size() + taken.size();
+	}
+
+	private static byte[] record(byte type, byte[] hash) {
+		byte[] record = new byte[HASH_LENGTH + 1];
+		record[0] = type;
+		System.arraycopy(hash, 0, record, 1, HASH_LENGTH);
+		return record;
+	}
+
+	private static byte[] taken(TakenEntry entry) {
+		byte[] key = entry.getKey();
+		byte[] data = entry.getData();
+		ByteBuffer record = ByteBuffer.allocate(1 + HASH_LENGTH + 4 + (key == null ? 0 : key.length) + 4 + data.length);
+		record.put(TAKEN).put(hash(key, data));
+		if (key == null) {
+			record.putInt(-1);
+		} else {
+			record.putInt(key.length).put(key);
+		}
+		record.putInt(data.length).put(data);
+		return record.array();
+	}
+
+	/**
+	 * Key (null for a data queue without keys) and data of an entry taken from the queue
+	 */
+	public static class TakenEntry {
+
+		private final byte[] key;
+		private final byte[] data;
+
+		private TakenEntry(byte[] key, byte[] data) {
+			this.key = key;
+			this.data = data;
+		}
+
+		public byte[] getKey() {
+			return key;
+		}
+
+		public byte[] getData() {
+			return data;
+		}
+	}
+
+}
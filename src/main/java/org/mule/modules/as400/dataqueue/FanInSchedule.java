@@ -0,0 +1,135 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.dataqueue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Order in which one fan-in reader polls its data queues. Queues are read without waiting, one after the other; once
+ * a whole round comes back empty, one read of the next round waits on the host for an entry, starting short and
+ * doubling up to the max idle wait. The queues take turns at the waiting read. A busy queue is read back to back,
+ * while an idle reader costs one read per queue per idle wait.
+ * <p>
+ * The waiting read picks up an entry on its own queue right away; an entry on another queue waits for the end of the
+ * waiting read, so the max idle wait is also the longest delay before an entry on an idle reader is picked up.
+ * Waits below a second, which the host can't wait for, are slept before a read without waiting.
+ * <p>
+ * Round robin moves on to the next queue after every read. Prioritized starts over at the first queue after every
+ * entry, so a queue is only read when all queues before it are empty.
+ */
+public class FanInSchedule {
+
+	private static long MIN_IDLE_WAIT = 100;
+
+	/**
+	 * Data queue of a fan-in source
+	 */
+	public static class Queue {
+
+		private final String library;
+		private final String name;
+
+		public Queue(String library, String name) {
+			this.library = library;
+			this.name = name;
+		}
+
+		public String getLibrary() {
+			return library;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public String toString() {
+			return library + "/" + name;
+		}
+	}
+
+	private final List<Queue> queues;
+	private final boolean prioritized;
+	private final long maxIdleWait;
+	private int next;
+	private int emptyReads;
+	private long idleWait;
+	private int waitingQueue;
+
+	public FanInSchedule(List<Queue> queues, boolean prioritized, long maxIdleWait) {
+		if (queues.isEmpty()) {
+			throw new IllegalArgumentException("No data queues to read");
+		}
+		this.queues = queues;
+		this.prioritized = prioritized;
+		this.maxIdleWait = Math.max(maxIdleWait, 0);
+	}
+
+	/**
+	 * Parse a comma separated list of LIBRARY/DTAQ names, in priority order
+	 */
+	public static List<Queue> parse(String queues) {
+		List<Queue> parsed = new ArrayList<Queue>();
+		for (String queue : queues.split(",")) {
+			String[] parts = queue.trim().split("/");
+			if (parts.length != 2 || parts[0].trim().isEmpty() || parts[1].trim().isEmpty()) {
+				throw new IllegalArgumentException("Invalid data queue, expected LIBRARY/DTAQ: " + queue.trim());
+			}
+			parsed.add(new Queue(parts[0].trim(), parts[1].trim()));
+		}
+		return parsed;
+	}
+
+	/**
+	 * Split the queues over the readers, the queues of each reader keep their priority order
+	 */
+	public static List<List<Queue>> split(List<Queue> queues, int readers) {
+		int count = Math.max(Math.min(readers, queues.size()), 1);
+		List<List<Queue>> split = new ArrayList<List<Queue>>(count);
+		for (int i = 0; i < count; i++) {
+			split.add(new ArrayList<Queue>());
+		}
+		for (int i = 0; i < queues.size(); i++) {
+			split.get(i % count).add(queues.get(i));
+		}
+		return split;
+	}
+
+	public Queue next() {
+		return queues.get(next);
+	}
+
+	/**
+	 * Record the outcome of reading the current queue
+	 *
+	 * @return milliseconds the next read waits for an entry, 0 unless a whole round came back empty
+	 */
+	public long update(boolean found) {
+		if (found) {
+			emptyReads = 0;
+			idleWait = 0;
+			next = prioritized ? 0 : (next + 1) % queues.size();
+			return 0;
+		}
+		next = (next + 1) % queues.size();
+		if (++emptyReads < queues.size()) {
+			return 0;
+		}
+		// The waiting read counts as the first read of the next round
+		emptyReads = 0;
+		idleWait = Math.min(maxIdleWait, idleWait == 0 ? MIN_IDLE_WAIT : idleWait * 2);
+		next = waitingQueue;
+		waitingQueue = (waitingQueue + 1) % queues.size();
+		return idleWait;
+	}
+
+	public List<Queue> getQueues() {
+		return Collections.unmodifiableList(queues);
+	}
+
+}
@@ -0,0 +1,37 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.dataqueue;
+
+import com.ibm.as400.access.AS400;
+
+/**
+ * Data queue as the connector reads and writes it, created by the transport of the connection strategy. Waits are in
+ * seconds, -1 waits forever.
+ */
+public interface HostDataQueue {
+
+	AS400 getSystem();
+
+	/**
+	 * @return the first entry, null if none arrived in time
+	 */
+	HostDataQueueEntry read(int wait) throws Exception;
+
+	/**
+	 * @return the first entry, left on the queue, null if none arrived in time
+	 */
+	HostDataQueueEntry peek(int wait) throws Exception;
+
+	void write(byte[] data) throws Exception;
+
+	/**
+	 * Write text converted with the CCSID of the system
+	 */
+	void write(String data) throws Exception;
+
+	boolean isFIFO() throws Exception;
+
+}
@@ -0,0 +1,39 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.dataqueue;
+
+/**
+ * Entry as read from a data queue, with its data and key bytes as stored on the host
+ */
+public final class HostDataQueueEntry {
+
+	private final byte[] key;
+	private final byte[] data;
+	private final String senderInformation;
+
+	/**
+	 * @param key null for entries of non-keyed data queues
+	 * @param senderInformation sender job, user, job number and current user, empty unless the queue keeps them
+	 */
+	public HostDataQueueEntry(byte[] key, byte[] data, String senderInformation) {
+		this.key = key;
+		this.data = data;
+		this.senderInformation = senderInformation;
+	}
+
+	public byte[] getKey() {
+		return key;
+	}
+
+	public byte[] getData() {
+		return data;
+	}
+
+	public String getSenderInformation() {
+		return senderInformation;
+	}
+
+}
@@ -0,0 +1,38 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.dataqueue;
+
+import com.ibm.as400.access.AS400;
+
+/**
+ * Keyed data queue as the connector reads and writes it, created by the transport of the connection strategy. Keys
+ * are padded to the key length of the queue, waits are in seconds, -1 waits forever.
+ */
+public interface HostKeyedDataQueue {
+
+	AS400 getSystem();
+
+	/**
+	 * Key length of the queue, retrieved from the host
+	 */
+	int getKeyLength() throws Exception;
+
+	/**
+	 * @param searchType EQ, NE, LT, LE, GT or GE, how entry keys compare to the given key
+	 * @return the first matching entry, null if none arrived in time
+	 */
+	HostDataQueueEntry read(byte[] key, int wait, String searchType) throws Exception;
+
+	/**
+	 * @return the first matching entry, left on the queue, null if none arrived in time
+	 */
+	HostDataQueueEntry peek(byte[] key, int wait, String searchType) throws Exception;
+
+	void write(byte[] key, byte[] data) throws Exception;
+
+	boolean isFIFO() throws Exception;
+
+}
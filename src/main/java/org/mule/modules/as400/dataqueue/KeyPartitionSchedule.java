@@ -0,0 +1,214 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.dataqueue;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Hands the key partitions of a keyed data queue to the consumers of a partitioned listener. A consumer claims one
+ * partition at a time and owns it until it releases it, so entries of one key are never read or processed by two
+ * consumers at once and keep their queue order.
+ * <p>
+ * Partitions are not tied to a consumer: the ready partition read least recently goes to the next free consumer. A
+ * partition that comes back empty sits out for an idle wait, starting short and doubling up to the max idle wait, so
+ * consumers move on to the busy partitions and an idle partition costs one read per idle wait.
+ */
+public class KeyPartitionSchedule {
+
+	private static long MIN_IDLE_WAIT = 100;
+
+	/**
+	 * Either an exact key or a key range from a lower bound (inclusive) to an upper bound (exclusive). The first range
+	 * has no lower bound and the last range no upper bound.
+	 */
+	public static class Partition {
+
+		private final String key;
+		private final String lower;
+		private final String upper;
+		private boolean claimed;
+		private long readyAt;
+		private long lastClaimed;
+		private long idleWait;
+
+		private Partition(String key, String lower, String upper) {
+			this.key = key;
+			this.lower = lower;
+			this.upper = upper;
+		}
+
+		public boolean isExact() {
+			return key != null;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public String getLower() {
+			return lower;
+		}
+
+		public String getUpper() {
+			return upper;
+		}
+
+		@Override
+		public String toString() {
+			if (key != null) {
+				return "key " + key;
+			}
+			return "keys " + (lower == null ? "" : lower) + ".." + (upper == null ? "" : upper);
+		}
+	}
+
+	private final List<Partition> partitions;
+	private final long maxIdleWait;
+
+	public KeyPartitionSchedule(List<Partition> partitions, long maxIdleWait) {
+		if (partitions.isEmpty()) {
+			throw new IllegalArgumentException("No key partitions to read");
+		}
+		this.partitions = partitions;
+		this.maxIdleWait = Math.max(maxIdleWait, 0);
+	}
+
+	/**
+	 * One partition per key of a comma separated list of keys
+	 */
+	public static List<Partition> keys(String keys) {
+		List<Partition> partitions = new ArrayList<Partition>();
+		Set<String> seen = new HashSet<String>();
+		for (String key : keys.split(",")) {
+			key = key.trim();
+			if (key.isEmpty() || !seen.add(key)) {
+				throw new IllegalArgumentException("Empty or duplicate key: " + key);
+			}
+			partitions.add(new Partition(key, null, null));
+		}
+		return partitions;
+	}
+
+	/**
+	 * Key ranges between a comma separated list of split points, in ascending key order of the host. n split points
+	 * give n + 1 ranges covering all keys. The order can only be checked against the padded and converted keys of
+	 * the queue, which is up to the caller.
+	 */
+	public static List<Partition> ranges(String splitPoints) {
+		List<Partition> partitions = new ArrayList<Partition>();
+		String lower = null;
+		for (String splitPoint : splitPoints.split(",")) {
+			splitPoint = splitPoint.trim();
+			if (splitPoint.isEmpty() || splitPoint.equals(lower)) {
+				throw new IllegalArgumentException("Empty or duplicate split point: " + splitPoint);
+			}
+			partitions.add(new Partition(null, lower, splitPoint));
+			lower = splitPoint;
+		}
+		partitions.add(new Partition(null, lower, null));
+		return partitions;
+	}
+
+	/**
+	 * Claim the ready partition read least recently, waiting for one to become ready
+	 *
+	 * @return the claimed partition, null if none became ready within the wait
+	 */
+	public synchronized Partition claim(long maxWait) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + maxWait;
+		while (true) {
+			long now = System.currentTimeMillis();
+			Partition next = null;
+			long nextReadyAt = Long.MAX_VALUE;
+			for (Partition partition : partitions) {
+				if (partition.claimed) {
+					continue;
+				}
+				if (partition.readyAt <= now) {
+					if (next == null || partition.lastClaimed < next.lastClaimed) {
+						next = partition;
+					}
+				} else {
+					nextReadyAt = Math.min(nextReadyAt, partition.readyAt);
+				}
+			}
+			if (next != null) {
+				next.claimed = true;
+				next.lastClaimed = now;
+				return next;
+			}
+			long wait = Math.min(nextReadyAt, deadline) - now;
+			if (wait <= 0) {
+				return null;
+			}
+			wait(wait);
+		}
+	}
+
+	/**
+	 * Hand a partition back with the outcome of its reads
+	 *
+	 * @param found whether the reads found entries, otherwise the partition sits out its idle wait
+	 */
+	public synchronized void release(Partition partition, boolean found) {
+		partition.claimed = false;
+		if (found) {
+			partition.idleWait = 0;
+			partition.readyAt = 0;
+		} else {
+			partition.idleWait = Math.min(maxIdleWait, partition.idleWait == 0 ? MIN_IDLE_WAIT : partition.idleWait * 2);
+			partition.readyAt = System.currentTimeMillis() + partition.idleWait;
+		}
+		notifyAll();
+	}
+
+	public List<Partition> getPartitions() {
+		return Collections.unmodifiableList(partitions);
+	}
+
+	/**
+	 * Check that the split points of the ranges ascend in the key order of the host, the ranges are only disjoint and
+	 * cover all keys then
+	 *
+	 * @param encoder the padded and converted key of the queue for a split point
+	 * @throws IllegalArgumentException if a split point doesn't come after the one before it
+	 */
+	public void checkSplitPoints(KeyEncoder encoder) throws UnsupportedEncodingException {
+		Partition previous = null;
+		for (Partition partition : partitions) {
+			if (previous != null && partition.upper != null && compareKeys(encoder.encode(previous.upper), encoder.encode(partition.upper)) >= 0) {
+				throw new IllegalArgumentException("Key split points not in ascending key order of the host: " + previous.upper + ", " + partition.upper);
+			}
+			previous = partition;
+		}
+	}
+
+	/**
+	 * Compare keys byte by byte, unsigned, as the host compares the keys of a data queue
+	 */
+	public static int compareKeys(byte[] a, byte[] b) {
+		for (int i = 0; i < Math.min(a.length, b.length); i++) {
+			int result = (a[i] & 0xff) - (b[i] & 0xff);
+			if (result != 0) {
+				return result;
+			}
+		}
+		return a.length - b.length;
+	}
+
+	/**
+	 * Key as the bytes the host compares
+	 */
+	public interface KeyEncoder {
+		byte[] encode(String key) throws UnsupportedEncodingException;
+	}
+
+}
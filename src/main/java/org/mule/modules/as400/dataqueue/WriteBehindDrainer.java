@@ -0,0 +1,176 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.dataqueue;
+
+import java.io.IOException;
+
+import org.mule.modules.as400.dataqueue.DataQueueCache.KeyedDataQueueHandle;
+import org.mule.modules.as400.exception.AS400TransportException;
+import org.mule.modules.as400.metrics.DataQueueMetrics;
+import org.mule.modules.as400.strategy.AS400ConnectionStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ibm.as400.access.AS400;
+import com.ibm.as400.access.ConnectionDroppedException;
+import com.ibm.as400.access.IllegalObjectTypeException;
+import com.ibm.as400.access.ObjectDoesNotExistException;
+
+/**
+ * Background thread replaying the write-behind journal of a connection to the data queues, in journal order and in
+ * batches over one borrowed connection. While the host is unreachable the drainer waits for the reconnect and tries
+ * the same entry again.
+ * <p>
+ * An entry the host refuses for any other reason than a connection problem, e.g. a full data queue or missing
+ * authority, is tried again with a growing wait. If it still fails, or the data queue does not exist, the entry is
+ * moved to the dead-letter file of the journal so it doesn't hold up the entries behind it. An entry only leaves the
+ * journal once it is written to its data queue or to the dead-letter file.
+ */
+public class WriteBehindDrainer {
+
+	private static final Logger logger = LoggerFactory.getLogger(WriteBehindDrainer.class);
+
+	private static int BATCH_SIZE = 100;
+	private static long IDLE_WAIT = 1000;
+	private static long RETRY_WAIT = 10000;
+	private static int ENTRY_ATTEMPTS = 5;
+	private static long ENTRY_RETRY_WAIT = 1000;
+
+	private final WriteBehindJournal journal;
+	private final AS400ConnectionStrategy connectionStrategy;
+	private final Object lock = new Object();
+	private Thread thread;
+
+	public WriteBehindDrainer(WriteBehindJournal journal, AS400ConnectionStrategy connectionStrategy) {
+		this.journal = journal;
+		this.connectionStrategy = connectionStrategy;
+	}
+
+	public void start(String name) {
+		synchronized (lock) {
+			stop();
+			thread = new Thread(new Runnable() {
+				public void run() {
+					drain();
+				}
+			}, "as400-write-behind-" + name);
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	// A drain in progress finishes its current entry, the journal keeps everything not yet written
+	public void stop() {
+		synchronized (lock) {
+			if (thread != null) {
+				thread.interrupt();
+				thread = null;
+			}
+		}
+	}
+
+	private void drain() {
+		Thread current = Thread.currentThread();
+		while (!current.isInterrupted()) {
+			try {
+				if (journal.awaitEntries(IDLE_WAIT) && !drainBatch()) {
+					Thread.sleep(RETRY_WAIT);
+				}
+			} catch (InterruptedException e) {
+				break;
+			}
+		}
+	}
+
+	// Returns false if the batch stopped on a connection problem
+	private boolean drainBatch() {
+		final AS400 system;
+		try {
+			system = connectionStrategy.borrowSystem(AS400.DATAQUEUE, RETRY_WAIT, false);
+		} catch (AS400TransportException e) {
+			logger.warn("Write-behind journal waiting for the connection, " + journal.getBacklog() + " entries to drain");
+			return false;
+		}
+		try {
+			journal.drain(BATCH_SIZE, new WriteBehindJournal.EntryWriter() {
+				public void write(WriteBehindJournal.Entry entry) throws Exception {
+					writeEntry(system, entry);
+				}
+			});
+			return true;
+		} catch (ConnectionDroppedException e) {
+			connectionStrategy.discardSystem(system);
+			logger.warn("Write-behind drain connection dropped, " + journal.getBacklog() + " entries to drain", e);
+		} catch (IOException e) {
+			connectionStrategy.discardSystem(system);
+			logger.warn("Write-behind drain connection error, " + journal.getBacklog() + " entries to drain", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (Exception e) {
+			logger.error("Write-behind drain error, " + journal.getBacklog() + " entries to drain", e);
+		} finally {
+			connectionStrategy.releaseSystem(system);
+		}
+		return false;
+	}
+
+	// Connection problems end the batch with the entry still in the journal, refused entries are retried in place and
+	// then dead-lettered
+	private void writeEntry(AS400 system, WriteBehindJournal.Entry entry) throws Exception {
+		DataQueueMetrics queueMetrics = connectionStrategy.getMetrics().dataQueue(entry.getDataQueue());
+		long retryWait = ENTRY_RETRY_WAIT;
+		for (int attempt = 1;; attempt++) {
+			long start = System.nanoTime();
+			boolean written = false;
+			try {
+				DataQueueCache cache = connectionStrategy.getDataQueueCache(system);
+				if (entry.getKey() != null) {
+					KeyedDataQueueHandle handle = cache.getKeyedDataQueue(system, entry.getDataQueue());
+					handle.getQueue().write(handle.getPaddedKey(entry.getKey()), connectionStrategy.getCharConverter(system, system.getCcsid()).stringToByteArray(entry.getEntry()));
+				} else {
+					cache.getDataQueue(system, entry.getDataQueue()).write(entry.getEntry());
+				}
+				written = true;
+				connectionStrategy.getMetrics().recordWriteBehindDrained();
+				return;
+			} catch (ConnectionDroppedException e) {
+				throw e;
+			} catch (IOException e) {
+				throw e;
+			} catch (InterruptedException e) {
+				throw e;
+			} catch (Exception e) {
+				if (attempt < ENTRY_ATTEMPTS && !isPermanent(e)) {
+					logger.warn("Write-behind entry to " + entry.getDataQueue() + " refused, attempt " + attempt + " of " + ENTRY_ATTEMPTS + ", trying again in " + retryWait + " ms", e);
+					Thread.sleep(retryWait);
+					retryWait = Math.min(retryWait * 2, RETRY_WAIT);
+					continue;
+				}
+				deadLetter(entry, e);
+				return;
+			} finally {
+				queueMetrics.recordWrite(System.nanoTime() - start, written);
+			}
+		}
+	}
+
+	private void deadLetter(WriteBehindJournal.Entry entry, Exception cause) {
+		try {
+			journal.deadLetter(entry);
+		} catch (IOException e) {
+			// Not a connection problem, keep the drainer from discarding the connection; the entry stays in the journal
+			throw new IllegalStateException("Can't move write-behind entry to " + journal.getDeadLetterFile(), e);
+		}
+		connectionStrategy.getMetrics().recordWriteBehindDeadLettered();
+		logger.error("Write-behind entry moved to " + journal.getDeadLetterFile() + ", " + entry.getDataQueue() + (entry.getKey() == null ? "" : " key " + entry.getKey()) + ": " + entry.getEntry(), cause);
+	}
+
+	// Trying again won't help if the data queue isn't there
+	private static boolean isPermanent(Exception e) {
+		return e instanceof ObjectDoesNotExistException || e instanceof IllegalObjectTypeException;
+	}
+
+}
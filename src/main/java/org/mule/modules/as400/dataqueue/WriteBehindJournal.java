@@ -0,0 +1,514 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.dataqueue;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append only journal of data queue writes that are acknowledged before they reach the host. Entries are appended to
+ * memory mapped segment files and replayed in order by a drainer, which records how far it got in a position file, so
+ * entries survive a restart of the application. Segments are deleted once drained; the number of segments is bounded,
+ * a full journal rejects further entries.
+ * <p>
+ * Appends go to the mapped files without syncing, an entry is on disk once the operating system writes it out.
+ * Records carry a CRC, a record cut short by a crash ends the journal when it is opened again.
+ * <p>
+ * Entries the host keeps refusing are moved to a dead-letter file next to the segments, in the same record format,
+ * synced on every entry.
+ * <p>
+ * Mule may keep several connection strategy instances for the same connection, they share one journal per directory.
+ */
+public class WriteBehindJournal {
+
+	private static final Logger logger = LoggerFactory.getLogger(WriteBehindJournal.class);
+
+	private static int SEGMENT_SIZE = 4 * 1024 * 1024;
+	// Record length and CRC of the record body
+	private static final int HEADER_LENGTH = 8;
+	private static final String SEGMENT_SUFFIX = ".journal";
+	private static final String DEAD_LETTER_FILE = "journal.deadletter";
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final Map<String, WriteBehindJournal> journals = new HashMap<String, WriteBehindJournal>();
+
+	/**
+	 * Data queue write kept in the journal
+	 */
+	public static class Entry {
+
+		private final String dataQueue;
+		private final String key;
+		private final String entry;
+
+		public Entry(String dataQueue, String key, String entry) {
+			this.dataQueue = dataQueue;
+			this.key = key;
+			this.entry = entry;
+		}
+
+		/**
+		 * @return IFS path of the data queue
+		 */
+		public String getDataQueue() {
+			return dataQueue;
+		}
+
+		/**
+		 * @return the key, null for non-keyed data queues
+		 */
+		public String getKey() {
+			return key;
+		}
+
+		public String getEntry() {
+			return entry;
+		}
+	}
+
+	/**
+	 * Writes a drained entry to its data queue. An exception stops the drain, the entry stays in the journal.
+	 */
+	public interface EntryWriter {
+		void write(Entry entry) throws Exception;
+	}
+
+	private static class Segment {
+
+		private final long id;
+		private final File file;
+		private final MappedByteBuffer buffer;
+		private int end;
+
+		Segment(long id, File file, MappedByteBuffer buffer) {
+			this.id = id;
+			this.file = file;
+			this.buffer = buffer;
+		}
+	}
+
+	private final String path;
+	private final File directory;
+	private final int maxSegments;
+	private final RandomAccessFile lockFile;
+	private final FileLock lock;
+	private final RandomAccessFile positionFile;
+	private final Object drainLock = new Object();
+	private final TreeMap<Long, Segment> segments = new TreeMap<Long, Segment>();
+	private Segment writeSegment;
+	private long readSegment;
+	private int readOffset;
+	private long backlog;
+	private long backlogBytes;
+	private int references;
+
+	private WriteBehindJournal(String path, File directory, int maxSegments, RandomAccessFile lockFile, FileLock lock, RandomAccessFile positionFile) {
+		this.path = path;
+		this.directory = directory;
+		this.maxSegments = maxSegments;
+		this.lockFile = lockFile;
+		this.lock = lock;
+		this.positionFile = positionFile;
+	}
+
+	/**
+	 * Open the journal in a directory, or share the one already open. Every open needs a {@link #release()}.
+	 *
+	 * @param maxBytes disk space the segments may take, at least two segments are kept
+	 */
+	public static synchronized WriteBehindJournal open(File directory, long maxBytes) throws IOException {
+		String path = directory.getCanonicalPath();
+		WriteBehindJournal journal = journals.get(path);
+		if (journal == null) {
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new IOException("Can't create write-behind journal directory " + directory);
+			}
+			RandomAccessFile lockFile = new RandomAccessFile(new File(directory, "journal.lock"), "rw");
+			FileLock lock;
+			try {
+				lock = lockFile.getChannel().tryLock();
+			} catch (IOException e) {
+				lockFile.close();
+				throw e;
+			}
+			if (lock == null) {
+				lockFile.close();
+				throw new IOException("Write-behind journal " + directory + " is in use by another process");
+			}
+			int maxSegments = (int) Math.max(2, Math.min(Integer.MAX_VALUE, maxBytes / SEGMENT_SIZE));
+			journal = new WriteBehindJournal(path, directory, maxSegments, lockFile, lock, new RandomAccessFile(new File(directory, "journal.position"), "rw"));
+			try {
+				journal.recover();
+			} catch (IOException e) {
+				journal.close();
+				throw e;
+			}
+			journals.put(path, journal);
+		}
+		journal.references++;
+		return journal;
+	}
+
+	/**
+	 * @return true if the directory holds a journal, e.g. one left with a backlog by the last run
+	 */
+	public static boolean exists(File directory) {
+		File[] files = directory.listFiles(new FileFilter() {
+			public boolean accept(File file) {
+				return file.getName().endsWith(SEGMENT_SUFFIX);
+			}
+		});
+		return files != null && files.length > 0;
+	}
+
+	/**
+	 * Close the journal once the last user releases it
+	 */
+	public void release() {
+		synchronized (WriteBehindJournal.class) {
+			if (--references > 0) {
+				return;
+			}
+			journals.remove(path);
+		}
+		close();
+	}
+
+	/**
+	 * Append an entry, waking up a waiting drainer
+	 *
+	 * @return false if the journal is full
+	 */
+	public synchronized boolean append(Entry entry) throws IOException {
+		byte[] record = encode(entry);
+		if (record.length > SEGMENT_SIZE) {
+			throw new IllegalArgumentException("Entry too long for the write-behind journal: " + record.length + " bytes");
+		}
+		if (writeSegment.end + record.length > SEGMENT_SIZE) {
+			if (segments.size() >= maxSegments) {
+				return false;
+			}
+			writeSegment.buffer.force();
+			writeSegment = createSegment(writeSegment.id + 1);
+		}
+		ByteBuffer buffer = writeSegment.buffer.duplicate();
+		buffer.position(writeSegment.end);
+		buffer.put(record);
+		writeSegment.end += record.length;
+		backlog++;
+		backlogBytes += record.length;
+		notifyAll();
+		return true;
+	}
+
+	/**
+	 * Wait until there are entries to drain
+	 *
+	 * @return true if there are entries
+	 */
+	public synchronized boolean awaitEntries(long millis) throws InterruptedException {
+		if (backlog == 0) {
+			wait(millis);
+		}
+		return backlog > 0;
+	}
+
+	/**
+	 * Hand up to max entries in journal order to the writer. Drains of several callers run one after the other; the
+	 * position is saved once the batch is done or the writer fails.
+	 *
+	 * @return number of entries written
+	 */
+	public int drain(int max, EntryWriter writer) throws Exception {
+		synchronized (drainLock) {
+			int drained = 0;
+			try {
+				while (drained < max) {
+					int length;
+					Entry entry;
+					synchronized (this) {
+						if (!seekRecord()) {
+							break;
+						}
+						Segment segment = segments.get(readSegment);
+						length = HEADER_LENGTH + segment.buffer.getInt(readOffset);
+						entry = decode(segment.buffer, readOffset, length);
+					}
+					writer.write(entry);
+					synchronized (this) {
+						readOffset += length;
+						backlog--;
+						backlogBytes -= length;
+					}
+					drained++;
+				}
+			} finally {
+				if (drained > 0) {
+					synchronized (this) {
+						savePosition();
+						deleteDrainedSegments();
+					}
+				}
+			}
+			return drained;
+		}
+	}
+
+	/**
+	 * @return entries waiting to be drained
+	 */
+	public synchronized long getBacklog() {
+		return backlog;
+	}
+
+	/**
+	 * @return journal bytes of the entries waiting to be drained
+	 */
+	public synchronized long getBacklogBytes() {
+		return backlogBytes;
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Keep an entry the host refuses out of the way of the entries behind it. Call from the writer before returning
+	 * normally, so the entry leaves the journal only once it is on disk in the dead-letter file.
+	 */
+	public synchronized void deadLetter(Entry entry) throws IOException {
+		FileOutputStream out = new FileOutputStream(getDeadLetterFile(), true);
+		try {
+			out.write(encode(entry));
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+	}
+
+	public File getDeadLetterFile() {
+		return new File(directory, DEAD_LETTER_FILE);
+	}
+
+	/**
+	 * @return the entries in the dead-letter file of a journal directory, in the order they were moved there
+	 */
+	public static List<Entry> readDeadLetters(File directory) throws IOException {
+		List<Entry> entries = new ArrayList<Entry>();
+		File file = new File(directory, DEAD_LETTER_FILE);
+		if (!file.exists()) {
+			return entries;
+		}
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			ByteBuffer buffer = ByteBuffer.allocate((int) in.length());
+			in.getChannel().read(buffer, 0);
+			int end = scan(buffer);
+			for (int offset = 0; offset < end; offset += HEADER_LENGTH + buffer.getInt(offset)) {
+				entries.add(decode(buffer, offset, HEADER_LENGTH + buffer.getInt(offset)));
+			}
+		} finally {
+			in.close();
+		}
+		return entries;
+	}
+
+	// Move the read position to the next record, across segment ends, returns false at the end of the journal
+	private boolean seekRecord() {
+		Segment segment = segments.get(readSegment);
+		while (readOffset >= segment.end) {
+			Long next = segments.higherKey(readSegment);
+			if (next == null) {
+				return false;
+			}
+			readSegment = next;
+			readOffset = 0;
+			segment = segments.get(next);
+		}
+		return true;
+	}
+
+	private void recover() throws IOException {
+		long position = -1;
+		int offset = 0;
+		if (positionFile.length() >= 12) {
+			position = positionFile.readLong();
+			offset = positionFile.readInt();
+		}
+		File[] files = directory.listFiles(new FileFilter() {
+			public boolean accept(File file) {
+				return file.getName().endsWith(SEGMENT_SUFFIX);
+			}
+		});
+		for (File file : files == null ? new File[0] : files) {
+			String name = file.getName();
+			long id;
+			try {
+				id = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+			} catch (NumberFormatException e) {
+				logger.warn("Ignoring unknown file in write-behind journal: " + file);
+				continue;
+			}
+			Segment segment = new Segment(id, file, map(file));
+			segment.end = scan(segment.buffer);
+			segments.put(id, segment);
+		}
+		if (segments.isEmpty()) {
+			createSegment(Math.max(position, 0));
+		}
+		if (!segments.containsKey(position)) {
+			position = segments.firstKey();
+			offset = 0;
+		}
+		readSegment = position;
+		readOffset = offset;
+		deleteDrainedSegments();
+		for (Segment segment : segments.values()) {
+			int next = segment.id == readSegment ? readOffset : 0;
+			while (next < segment.end) {
+				int length = HEADER_LENGTH + segment.buffer.getInt(next);
+				backlog++;
+				backlogBytes += length;
+				next += length;
+			}
+		}
+		writeSegment = segments.lastEntry().getValue();
+		if (backlog > 0) {
+			logger.info("Write-behind journal " + directory + " opened with " + backlog + " entries to drain");
+		}
+	}
+
+	// End of the valid records of a segment, an empty or corrupt record ends it
+	private static int scan(ByteBuffer buffer) {
+		int offset = 0;
+		CRC32 crc = new CRC32();
+		while (offset + HEADER_LENGTH <= buffer.capacity()) {
+			int length = buffer.getInt(offset);
+			if (length <= 0 || offset + HEADER_LENGTH + length > buffer.capacity()) {
+				break;
+			}
+			byte[] body = new byte[length];
+			ByteBuffer record = buffer.duplicate();
+			record.position(offset + HEADER_LENGTH);
+			record.get(body);
+			crc.reset();
+			crc.update(body);
+			if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+				break;
+			}
+			offset += HEADER_LENGTH + length;
+		}
+		return offset;
+	}
+
+	private Segment createSegment(long id) throws IOException {
+		File file = new File(directory, String.format("%020d", id) + SEGMENT_SUFFIX);
+		Segment segment = new Segment(id, file, map(file));
+		segments.put(id, segment);
+		return segment;
+	}
+
+	private static MappedByteBuffer map(File file) throws IOException {
+		RandomAccessFile segment = new RandomAccessFile(file, "rw");
+		try {
+			// The mapping stays valid after the channel is closed
+			return segment.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+		} finally {
+			segment.close();
+		}
+	}
+
+	private void savePosition() throws IOException {
+		positionFile.seek(0);
+		positionFile.writeLong(readSegment);
+		positionFile.writeInt(readOffset);
+		positionFile.getFD().sync();
+	}
+
+	// Mapped segments are left to the garbage collector, deleting the file is enough to free the disk space
+	private void deleteDrainedSegments() {
+		while (segments.firstKey() < readSegment) {
+			Segment segment = segments.remove(segments.firstKey());
+			if (!segment.file.delete()) {
+				logger.warn("Can't delete drained write-behind journal segment " + segment.file);
+			}
+		}
+	}
+
+	private static byte[] encode(Entry entry) {
+		byte[] dataQueue = entry.getDataQueue().getBytes(UTF8);
+		byte[] key = entry.getKey() == null ? null : entry.getKey().getBytes(UTF8);
+		byte[] data = entry.getEntry().getBytes(UTF8);
+		int length = 4 + dataQueue.length + (key == null ? 0 : key.length) + data.length;
+		ByteBuffer record = ByteBuffer.allocate(HEADER_LENGTH + length);
+		record.putInt(length);
+		record.putInt(0);
+		record.putShort((short) dataQueue.length).put(dataQueue);
+		record.putShort((short) (key == null ? -1 : key.length));
+		if (key != null) {
+			record.put(key);
+		}
+		record.put(data);
+		CRC32 crc = new CRC32();
+		crc.update(record.array(), HEADER_LENGTH, length);
+		record.putInt(4, (int) crc.getValue());
+		return record.array();
+	}
+
+	private static Entry decode(ByteBuffer segment, int offset, int length) {
+		ByteBuffer record = segment.duplicate();
+		record.position(offset + HEADER_LENGTH);
+		record.limit(offset + length);
+		byte[] dataQueue = new byte[record.getShort()];
+		record.get(dataQueue);
+		short keyLength = record.getShort();
+		byte[] key = keyLength < 0 ? null : new byte[keyLength];
+		if (key != null) {
+			record.get(key);
+		}
+		byte[] data = new byte[record.remaining()];
+		record.get(data);
+		return new Entry(new String(dataQueue, UTF8), key == null ? null : new String(key, UTF8), new String(data, UTF8));
+	}
+
+	private void close() {
+		synchronized (this) {
+			for (Segment segment : segments.values()) {
+				segment.buffer.force();
+			}
+			segments.clear();
+		}
+		try {
+			positionFile.close();
+		} catch (IOException e) {
+			logger.warn("Can't close write-behind journal position file in " + directory, e);
+		}
+		try {
+			lock.release();
+			lockFile.close();
+		} catch (IOException e) {
+			logger.warn("Can't unlock write-behind journal " + directory, e);
+		}
+	}
+
+}
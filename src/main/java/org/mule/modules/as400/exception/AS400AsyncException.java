@@ -0,0 +1,15 @@
+package org.mule.modules.as400.exception;
+
+public class AS400AsyncException extends AS400ConnectorException {
+
+	private static final long serialVersionUID = 1L;
+
+	public AS400AsyncException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+	public AS400AsyncException(String message) {
+		super(message);
+	}
+
+}
@@ -1,15 +1,33 @@
 package org.mule.modules.as400.exception;
 
+import org.mule.modules.as400.command.CommandResult;
+
 public class AS400CommandCallException extends AS400ConnectorException {
 
 	private static final long serialVersionUID = 1L;
 
+	private final CommandResult result;
+
 	public AS400CommandCallException(String message, Throwable cause) {
 		super(message, cause);
+		this.result = null;
 	}
 
 	public AS400CommandCallException(String message) {
 		super(message);
+		this.result = null;
+	}
+
+	public AS400CommandCallException(String message, CommandResult result) {
+		super(message);
+		this.result = result;
+	}
+
+	/**
+	 * @return the result of the failed command, null if the command did not run
+	 */
+	public CommandResult getResult() {
+		return result;
 	}
 
 }
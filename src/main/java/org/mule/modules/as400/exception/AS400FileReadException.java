@@ -0,0 +1,15 @@
+package org.mule.modules.as400.exception;
+
+public class AS400FileReadException extends AS400ConnectorException {
+
+	private static final long serialVersionUID = 1L;
+
+	public AS400FileReadException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+	public AS400FileReadException(String message) {
+		super(message);
+	}
+
+}
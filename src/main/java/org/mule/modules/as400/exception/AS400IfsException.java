@@ -0,0 +1,15 @@
+package org.mule.modules.as400.exception;
+
+public class AS400IfsException extends AS400ConnectorException {
+
+	private static final long serialVersionUID = 1L;
+
+	public AS400IfsException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+	public AS400IfsException(String message) {
+		super(message);
+	}
+
+}
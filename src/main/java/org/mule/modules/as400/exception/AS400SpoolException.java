@@ -0,0 +1,15 @@
+package org.mule.modules.as400.exception;
+
+public class AS400SpoolException extends AS400ConnectorException {
+
+	private static final long serialVersionUID = 1L;
+
+	public AS400SpoolException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+	public AS400SpoolException(String message) {
+		super(message);
+	}
+
+}
@@ -0,0 +1,78 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.ifs;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Date;
+
+import com.ibm.as400.access.IFSFile;
+
+/**
+ * Attributes of an IFS file or directory as returned by the listing operations
+ */
+public class IfsFileInfo implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String path;
+	private final String name;
+	private final long size;
+	private final long lastModified;
+	private final boolean directory;
+
+	public IfsFileInfo(String path, String name, long size, long lastModified, boolean directory) {
+		this.path = path;
+		this.name = name;
+		this.size = size;
+		this.lastModified = lastModified;
+		this.directory = directory;
+	}
+
+	/**
+	 * Attributes of a listed file, the listing already returns them so this does not go to the host again
+	 */
+	public static IfsFileInfo of(IFSFile file) throws IOException {
+		boolean directory = file.isDirectory();
+		return new IfsFileInfo(file.getPath(), file.getName(), directory ? 0 : file.length(), file.lastModified(), directory);
+	}
+
+	/**
+	 * @return the full IFS path
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the size in bytes, 0 for directories
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	public Date getLastModified() {
+		return new Date(lastModified);
+	}
+
+	public long getLastModifiedMillis() {
+		return lastModified;
+	}
+
+	public boolean isDirectory() {
+		return directory;
+	}
+
+	@Override
+	public String toString() {
+		return path;
+	}
+
+}
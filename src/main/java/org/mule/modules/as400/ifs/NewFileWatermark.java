@@ -0,0 +1,169 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.ifs;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tracks how far a directory has been picked up by the new file poller: the highest modification time handed on and
+ * the files with exactly that time, so files sharing a timestamp are neither lost nor handed on twice.
+ * <p>
+ * The watermark is kept in a local file and rewritten after each poll that handed on files, so a restarted poller
+ * continues where it stopped. It only moves when a file is accepted, a file the flow fails on is offered again on the
+ * next poll.
+ * <p>
+ * Files are told apart by their modification time only. A file that arrives with a modification time older than the
+ * watermark, e.g. one moved, restored or copied with its original time, is never handed on, and a file that is
+ * modified again is handed on again.
+ */
+public class NewFileWatermark {
+
+	private static final Comparator<IfsFileInfo> BY_MODIFICATION = new Comparator<IfsFileInfo>() {
+		public int compare(IfsFileInfo a, IfsFileInfo b) {
+			int result = Long.compare(a.getLastModifiedMillis(), b.getLastModifiedMillis());
+			return result != 0 ? result : a.getPath().compareTo(b.getPath());
+		}
+	};
+
+	private final File file;
+	private final boolean includeExisting;
+	private boolean started;
+	private boolean loaded;
+	private long lastModified = Long.MIN_VALUE;
+	private final Set<String> seenAtLastModified = new HashSet<String>();
+	private boolean dirty;
+
+	private NewFileWatermark(File file, boolean includeExisting) {
+		this.file = file;
+		this.includeExisting = includeExisting;
+	}
+
+	/**
+	 * Open the watermark, creating its directory if needed
+	 *
+	 * @param includeExisting without a watermark file hand on the files already in the directory on the first poll,
+	 *            otherwise start after them
+	 */
+	public static NewFileWatermark open(File file, boolean includeExisting) throws IOException {
+		File directory = file.getAbsoluteFile().getParentFile();
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Can't create IFS watermark directory " + directory);
+		}
+		NewFileWatermark watermark = new NewFileWatermark(file, includeExisting);
+		watermark.load();
+		return watermark;
+	}
+
+	/**
+	 * Files of a listing past the watermark, oldest first. Files modified after settledBefore may still be written to,
+	 * they and all younger files are left for a later poll.
+	 */
+	public synchronized List<IfsFileInfo> newFiles(List<IfsFileInfo> listing, long settledBefore) {
+		List<IfsFileInfo> files = new ArrayList<IfsFileInfo>(listing);
+		Collections.sort(files, BY_MODIFICATION);
+		if (!started) {
+			started = true;
+			if (!loaded && !includeExisting) {
+				for (IfsFileInfo file : files) {
+					accept(file);
+				}
+				return Collections.emptyList();
+			}
+		}
+		List<IfsFileInfo> newFiles = new ArrayList<IfsFileInfo>();
+		for (IfsFileInfo file : files) {
+			if (file.getLastModifiedMillis() > settledBefore) {
+				break;
+			}
+			if (isNew(file)) {
+				newFiles.add(file);
+			}
+		}
+		return newFiles;
+	}
+
+	/**
+	 * Move the watermark past a file once it is handed on
+	 */
+	public synchronized void accept(IfsFileInfo file) {
+		if (file.getLastModifiedMillis() > lastModified) {
+			lastModified = file.getLastModifiedMillis();
+			seenAtLastModified.clear();
+		}
+		dirty |= seenAtLastModified.add(file.getPath());
+	}
+
+	/**
+	 * Write the watermark if it moved since it was last saved
+	 */
+	public synchronized void save() throws IOException {
+		if (!dirty) {
+			return;
+		}
+		File saved = new File(file.getPath() + ".tmp");
+		FileOutputStream out = new FileOutputStream(saved);
+		try {
+			Writer writer = new OutputStreamWriter(out, "UTF-8");
+			writer.write(lastModified + "\n");
+			for (String path : seenAtLastModified) {
+				writer.write(path + "\n");
+			}
+			writer.flush();
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+		if (!saved.renameTo(file) && !(file.delete() && saved.renameTo(file))) {
+			throw new IOException("Can't replace IFS watermark " + file);
+		}
+		dirty = false;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	private boolean isNew(IfsFileInfo file) {
+		return file.getLastModifiedMillis() > lastModified || (file.getLastModifiedMillis() == lastModified && !seenAtLastModified.contains(file.getPath()));
+	}
+
+	private void load() throws IOException {
+		if (!file.exists()) {
+			return;
+		}
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			String line = reader.readLine();
+			try {
+				lastModified = Long.parseLong(line);
+			} catch (NumberFormatException e) {
+				throw new IOException("Invalid IFS watermark " + file);
+			}
+			while ((line = reader.readLine()) != null) {
+				if (line.length() > 0) {
+					seenAtLastModified.add(line);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		loaded = true;
+	}
+
+}
@@ -0,0 +1,37 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency and failures of one command, identified by its command name (e.g. CRTDTAQ)
+ */
+public class CommandMetrics extends LatencyHistogram implements CommandMetricsMBean {
+
+	private final String name;
+	private final AtomicLong failures = new AtomicLong();
+
+	CommandMetrics(String name) {
+		this.name = name;
+	}
+
+	public void record(long nanos, boolean success) {
+		record(nanos);
+		if (!success) {
+			failures.incrementAndGet();
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getFailures() {
+		return failures.get();
+	}
+
+}
@@ -0,0 +1,350 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.metrics;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mule.modules.as400.dataqueue.WriteBehindJournal;
+import org.mule.modules.as400.strategy.AS400ConnectionStrategy;
+import org.mule.modules.as400.strategy.ReconnectScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ibm.as400.access.AS400ConnectionPool;
+
+/**
+ * Metrics of one endpoint and user. Mule may keep several connection strategy instances for the same connection, they
+ * all record into the same metrics, so there is one set of instruments per connection as users see it.
+ * <p>
+ * Queue and command instruments are created and exported on first use and then only looked up, recording itself
+ * only updates atomic counters and does not allocate.
+ */
+public class ConnectorMetrics implements ConnectorMetricsMBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(ConnectorMetrics.class);
+
+	// Commands are grouped by name, beyond this many names they are counted together
+	private static final int MAX_COMMANDS = 200;
+	private static final String OTHER_COMMANDS = "*OTHER";
+	// Window over which the write-behind drain rate is measured
+	private static final long DRAIN_RATE_WINDOW = 10000;
+
+	private static final ConcurrentMap<String, ConnectorMetrics> connections = new ConcurrentHashMap<String, ConnectorMetrics>();
+
+	private final String name;
+	private final Set<AS400ConnectionStrategy> strategies = new CopyOnWriteArraySet<AS400ConnectionStrategy>();
+	private final ConcurrentMap<String, DataQueueMetrics> dataQueues = new ConcurrentHashMap<String, DataQueueMetrics>();
+	private final ConcurrentMap<String, CommandMetrics> commands = new ConcurrentHashMap<String, CommandMetrics>();
+	private final List<MetricsExporter> exporters = new CopyOnWriteArrayList<MetricsExporter>();
+	private final AtomicLong writeBehindDrained = new AtomicLong();
+	private final AtomicLong writeBehindDeadLettered = new AtomicLong();
+	private final AtomicLong asyncUnawaitedResults = new AtomicLong();
+	private final AtomicLong asyncUnawaitedFailures = new AtomicLong();
+	private final Object drainRateLock = new Object();
+	private long drainRateWindowStart = System.currentTimeMillis();
+	private long drainRateWindowCount;
+	private double drainRate;
+
+	private ConnectorMetrics(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Metrics of the connection of the given strategy, they are exported once the first strategy attaches
+	 */
+	public static ConnectorMetrics forConnection(String endpoint, String userid) {
+		String name = endpoint + "/" + userid;
+		ConnectorMetrics metrics = connections.get(name);
+		if (metrics == null) {
+			metrics = new ConnectorMetrics(name);
+			ConnectorMetrics existing = connections.putIfAbsent(name, metrics);
+			if (existing != null) {
+				metrics = existing;
+			}
+		}
+		return metrics;
+	}
+
+	/**
+	 * Start reporting for a connected strategy. The first strategy decides where metrics are exported to.
+	 */
+	public synchronized void attach(AS400ConnectionStrategy strategy, boolean jmx, boolean micrometer) {
+		strategies.add(strategy);
+		if (strategies.size() > 1 || !exporters.isEmpty()) {
+			return;
+		}
+		if (jmx) {
+			exporters.add(new JmxExporter());
+		}
+		if (micrometer) {
+			try {
+				exporters.add(MicrometerExporter.forGlobalRegistry());
+			} catch (LinkageError e) {
+				logger.warn("Micrometer metrics enabled but Micrometer is not on the classpath", e);
+			}
+		}
+		for (MetricsExporter exporter : exporters) {
+			exporter.exportConnection(this);
+			for (DataQueueMetrics queue : dataQueues.values()) {
+				exporter.exportDataQueue(this, queue);
+			}
+			for (CommandMetrics command : commands.values()) {
+				exporter.exportCommand(this, command);
+			}
+		}
+	}
+
+	/**
+	 * Stop reporting for a disconnected strategy. Instruments are unregistered with the last strategy, so nothing is
+	 * left behind when the application is undeployed, values are kept for the next connect.
+	 */
+	public synchronized void detach(AS400ConnectionStrategy strategy) {
+		if (strategies.remove(strategy) && strategies.isEmpty()) {
+			for (MetricsExporter exporter : exporters) {
+				exporter.close();
+			}
+			exporters.clear();
+		}
+	}
+
+	public DataQueueMetrics dataQueue(String path) {
+		DataQueueMetrics queue = dataQueues.get(path);
+		if (queue == null) {
+			queue = register(path);
+		}
+		return queue;
+	}
+
+	private synchronized DataQueueMetrics register(String path) {
+		DataQueueMetrics queue = dataQueues.get(path);
+		if (queue == null) {
+			queue = new DataQueueMetrics(path);
+			dataQueues.put(path, queue);
+			for (MetricsExporter exporter : exporters) {
+				exporter.exportDataQueue(this, queue);
+			}
+		}
+		return queue;
+	}
+
+	/**
+	 * @param command command string, metrics are kept per command name (the part before the first blank or parenthesis)
+	 */
+	public CommandMetrics command(String command) {
+		String commandName = commandName(command);
+		CommandMetrics metrics = commands.get(commandName);
+		if (metrics == null) {
+			metrics = registerCommand(commandName);
+		}
+		return metrics;
+	}
+
+	private synchronized CommandMetrics registerCommand(String commandName) {
+		CommandMetrics metrics = commands.get(commandName);
+		if (metrics == null) {
+			if (commands.size() >= MAX_COMMANDS && !OTHER_COMMANDS.equals(commandName)) {
+				return registerCommand(OTHER_COMMANDS);
+			}
+			metrics = new CommandMetrics(commandName);
+			commands.put(commandName, metrics);
+			for (MetricsExporter exporter : exporters) {
+				exporter.exportCommand(this, metrics);
+			}
+		}
+		return metrics;
+	}
+
+	private static String commandName(String command) {
+		String trimmed = command.trim();
+		int end = 0;
+		while (end < trimmed.length() && !Character.isWhitespace(trimmed.charAt(end)) && trimmed.charAt(end) != '(') {
+			end++;
+		}
+		return trimmed.substring(0, end).toUpperCase();
+	}
+
+	public void recordWriteBehindDrained() {
+		writeBehindDrained.incrementAndGet();
+		synchronized (drainRateLock) {
+			drainRateWindowCount++;
+			updateDrainRate(System.currentTimeMillis());
+		}
+	}
+
+	public void recordWriteBehindDeadLettered() {
+		writeBehindDeadLettered.incrementAndGet();
+	}
+
+	public void recordAsyncUnawaited(boolean failed) {
+		(failed ? asyncUnawaitedFailures : asyncUnawaitedResults).incrementAndGet();
+	}
+
+	// Rate of the last full window, the window is closed by the next drained entry or read
+	private void updateDrainRate(long now) {
+		long elapsed = now - drainRateWindowStart;
+		if (elapsed >= DRAIN_RATE_WINDOW) {
+			drainRate = elapsed >= 2 * DRAIN_RATE_WINDOW ? 0 : drainRateWindowCount * 1000.0 / elapsed;
+			drainRateWindowStart = now;
+			drainRateWindowCount = 0;
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getConnections() {
+		return strategies.size();
+	}
+
+	public int getUnavailableConnections() {
+		int unavailable = 0;
+		for (AS400ConnectionStrategy strategy : strategies) {
+			if (strategy.getReconnectScheduler().getState() != ReconnectScheduler.State.CLOSED || !strategy.isHealthy()) {
+				unavailable++;
+			}
+		}
+		return unavailable;
+	}
+
+	public long getOutages() {
+		long outages = 0;
+		for (AS400ConnectionStrategy strategy : strategies) {
+			outages += strategy.getReconnectScheduler().getOutages();
+		}
+		return outages;
+	}
+
+	public long getReconnectAttempts() {
+		long attempts = 0;
+		for (AS400ConnectionStrategy strategy : strategies) {
+			attempts += strategy.getReconnectScheduler().getAttempts();
+		}
+		return attempts;
+	}
+
+	public long getFailedReconnectAttempts() {
+		long failures = 0;
+		for (AS400ConnectionStrategy strategy : strategies) {
+			failures += strategy.getReconnectScheduler().getFailedAttempts();
+		}
+		return failures;
+	}
+
+	public long getTotalOutageMillis() {
+		long total = 0;
+		for (AS400ConnectionStrategy strategy : strategies) {
+			ReconnectScheduler scheduler = strategy.getReconnectScheduler();
+			total += scheduler.getTotalOutageTime() + scheduler.getCurrentOutageDuration();
+		}
+		return total;
+	}
+
+	public long getHeartbeatChecks() {
+		long checks = 0;
+		for (AS400ConnectionStrategy strategy : strategies) {
+			checks += strategy.getHeartbeat().getChecks();
+		}
+		return checks;
+	}
+
+	public long getFailedHeartbeatChecks() {
+		long failures = 0;
+		for (AS400ConnectionStrategy strategy : strategies) {
+			failures += strategy.getHeartbeat().getFailedChecks();
+		}
+		return failures;
+	}
+
+	public int getPoolActiveConnections() {
+		int active = 0;
+		for (AS400ConnectionStrategy strategy : strategies) {
+			AS400ConnectionPool pool = strategy.getPool();
+			if (pool != null) {
+				active += pool.getActiveConnectionCount(strategy.getEndpoint(), strategy.getUserID());
+			}
+		}
+		return active;
+	}
+
+	public int getPoolAvailableConnections() {
+		int available = 0;
+		for (AS400ConnectionStrategy strategy : strategies) {
+			AS400ConnectionPool pool = strategy.getPool();
+			if (pool != null) {
+				available += pool.getAvailableConnectionCount(strategy.getEndpoint(), strategy.getUserID());
+			}
+		}
+		return available;
+	}
+
+	public long getDataQueueCacheHits() {
+		long hits = 0;
+		for (AS400ConnectionStrategy strategy : strategies) {
+			hits += strategy.getDataQueueCacheHits();
+		}
+		return hits;
+	}
+
+	// All strategies of a connection share the same journal
+	public long getWriteBehindBacklog() {
+		for (AS400ConnectionStrategy strategy : strategies) {
+			WriteBehindJournal journal = strategy.getWriteBehindJournal();
+			if (journal != null) {
+				return journal.getBacklog();
+			}
+		}
+		return 0;
+	}
+
+	public long getWriteBehindBacklogBytes() {
+		for (AS400ConnectionStrategy strategy : strategies) {
+			WriteBehindJournal journal = strategy.getWriteBehindJournal();
+			if (journal != null) {
+				return journal.getBacklogBytes();
+			}
+		}
+		return 0;
+	}
+
+	public long getWriteBehindDrained() {
+		return writeBehindDrained.get();
+	}
+
+	public double getWriteBehindDrainRate() {
+		synchronized (drainRateLock) {
+			updateDrainRate(System.currentTimeMillis());
+			return drainRate;
+		}
+	}
+
+	public long getWriteBehindDeadLettered() {
+		return writeBehindDeadLettered.get();
+	}
+
+	public long getAsyncUnawaitedResults() {
+		return asyncUnawaitedResults.get();
+	}
+
+	public long getAsyncUnawaitedFailures() {
+		return asyncUnawaitedFailures.get();
+	}
+
+	public long getDataQueueCacheMisses() {
+		long misses = 0;
+		for (AS400ConnectionStrategy strategy : strategies) {
+			misses += strategy.getDataQueueCacheMisses();
+		}
+		return misses;
+	}
+
+}
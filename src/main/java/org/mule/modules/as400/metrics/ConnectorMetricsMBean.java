@@ -0,0 +1,70 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.metrics;
+
+/**
+ * JMX view of the connections of one endpoint and user, summed over all connection strategy instances Mule keeps
+ * for them
+ */
+public interface ConnectorMetricsMBean {
+
+	int getConnections();
+
+	/**
+	 * @return connections that are lost or being reconnected
+	 */
+	int getUnavailableConnections();
+
+	long getOutages();
+
+	long getReconnectAttempts();
+
+	long getFailedReconnectAttempts();
+
+	long getTotalOutageMillis();
+
+	long getHeartbeatChecks();
+
+	long getFailedHeartbeatChecks();
+
+	int getPoolActiveConnections();
+
+	int getPoolAvailableConnections();
+
+	long getDataQueueCacheHits();
+
+	long getDataQueueCacheMisses();
+
+	/**
+	 * @return entries in the write-behind journal waiting to be written to the host
+	 */
+	long getWriteBehindBacklog();
+
+	long getWriteBehindBacklogBytes();
+
+	long getWriteBehindDrained();
+
+	/**
+	 * @return entries per second written from the write-behind journal, measured over 10 second windows
+	 */
+	double getWriteBehindDrainRate();
+
+	/**
+	 * @return entries moved from the write-behind journal to its dead-letter file because the host refused them
+	 */
+	long getWriteBehindDeadLettered();
+
+	/**
+	 * @return async operations that completed but whose result was never awaited
+	 */
+	long getAsyncUnawaitedResults();
+
+	/**
+	 * @return async operations that failed without anyone awaiting the failure
+	 */
+	long getAsyncUnawaitedFailures();
+
+}
@@ -0,0 +1,127 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mule.modules.as400.dataqueue.AdaptivePollWait;
+
+/**
+ * Read, peek and write metrics of one data queue
+ */
+public class DataQueueMetrics implements DataQueueMetricsMBean {
+
+	private final String path;
+	private final LatencyHistogram reads = new LatencyHistogram();
+	private final LatencyHistogram peeks = new LatencyHistogram();
+	private final LatencyHistogram writes = new LatencyHistogram();
+	private final LatencyHistogram lag = new LatencyHistogram();
+	private final AtomicLong entriesRead = new AtomicLong();
+	private final AtomicLong emptyPolls = new AtomicLong();
+	private final AtomicLong readFailures = new AtomicLong();
+	private final AtomicLong writeFailures = new AtomicLong();
+	private volatile AdaptivePollWait pollWait;
+
+	DataQueueMetrics(String path) {
+		this.path = path;
+	}
+
+	/**
+	 * @param found whether the read returned an entry, false for a wait that timed out
+	 */
+	public void recordRead(boolean peek, long nanos, boolean found) {
+		(peek ? peeks : reads).record(nanos);
+		if (found) {
+			entriesRead.incrementAndGet();
+		} else {
+			emptyPolls.incrementAndGet();
+		}
+	}
+
+	public void recordReadFailure() {
+		readFailures.incrementAndGet();
+	}
+
+	/**
+	 * @param millis time from the enqueue timestamp of an entry to its read, host and Mule clocks are assumed in sync
+	 */
+	public void recordLag(long millis) {
+		lag.record(TimeUnit.MILLISECONDS.toNanos(millis));
+	}
+
+	public void recordWrite(long nanos, boolean success) {
+		if (success) {
+			writes.record(nanos);
+		} else {
+			writeFailures.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Publish the wait of the source polling this queue
+	 */
+	public void setPollWait(AdaptivePollWait pollWait) {
+		this.pollWait = pollWait;
+	}
+
+	public int getPollWaitSeconds() {
+		AdaptivePollWait current = pollWait;
+		return current == null ? -1 : current.getWait();
+	}
+
+	public String getPollMode() {
+		AdaptivePollWait current = pollWait;
+		return current == null ? null : current.getMode().name();
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public LatencyHistogram getReads() {
+		return reads;
+	}
+
+	public LatencyHistogram getPeeks() {
+		return peeks;
+	}
+
+	public LatencyHistogram getWrites() {
+		return writes;
+	}
+
+	public LatencyHistogram getLag() {
+		return lag;
+	}
+
+	public long getEntriesRead() {
+		return entriesRead.get();
+	}
+
+	public long getEmptyPolls() {
+		return emptyPolls.get();
+	}
+
+	public double getHitRatio() {
+		long hits = entriesRead.get();
+		long polls = hits + emptyPolls.get();
+		return polls == 0 ? 0 : (double) hits / polls;
+	}
+
+	public long getEntriesWritten() {
+		return writes.getCount();
+	}
+
+	public long getReadFailures() {
+		return readFailures.get();
+	}
+
+	public long getWriteFailures() {
+		return writeFailures.get();
+	}
+
+}
@@ -0,0 +1,38 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.metrics;
+
+/**
+ * JMX view of the counters of one data queue. Latencies are published as separate histograms per operation.
+ */
+public interface DataQueueMetricsMBean {
+
+	long getEntriesRead();
+
+	long getEmptyPolls();
+
+	/**
+	 * @return share of reads and peeks that returned an entry
+	 */
+	double getHitRatio();
+
+	long getEntriesWritten();
+
+	long getReadFailures();
+
+	long getWriteFailures();
+
+	/**
+	 * @return current wait of the polling source reading this queue, -1 without a polling source
+	 */
+	int getPollWaitSeconds();
+
+	/**
+	 * @return STREAMING, BACKING_OFF or IDLE, null without a polling source
+	 */
+	String getPollMode();
+
+}
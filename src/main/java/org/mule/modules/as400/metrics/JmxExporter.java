@@ -0,0 +1,69 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registers metrics as MBeans in the platform MBean server under the org.mule.modules.as400 domain
+ */
+class JmxExporter implements MetricsExporter {
+
+	private static final Logger logger = LoggerFactory.getLogger(JmxExporter.class);
+
+	private static String DOMAIN = "org.mule.modules.as400";
+
+	private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+	private final List<ObjectName> registered = new CopyOnWriteArrayList<ObjectName>();
+
+	public void exportConnection(ConnectorMetrics connection) {
+		register(connection, "type=Connection,connection=" + ObjectName.quote(connection.getName()));
+	}
+
+	public void exportDataQueue(ConnectorMetrics connection, DataQueueMetrics queue) {
+		String name = "type=DataQueue,connection=" + ObjectName.quote(connection.getName()) + ",queue=" + ObjectName.quote(queue.getPath());
+		register(queue, name);
+		register(queue.getReads(), name + ",operation=read");
+		register(queue.getPeeks(), name + ",operation=peek");
+		register(queue.getWrites(), name + ",operation=write");
+		register(queue.getLag(), name + ",operation=lag");
+	}
+
+	public void exportCommand(ConnectorMetrics connection, CommandMetrics command) {
+		register(command, "type=Command,connection=" + ObjectName.quote(connection.getName()) + ",command=" + ObjectName.quote(command.getName()));
+	}
+
+	public void close() {
+		for (ObjectName name : registered) {
+			try {
+				server.unregisterMBean(name);
+			} catch (Exception e) {
+				logger.debug("Can't unregister MBean " + name, e);
+			}
+		}
+		registered.clear();
+	}
+
+	// Monitoring must never break the connector, failures are only logged
+	private void register(Object mbean, String properties) {
+		try {
+			ObjectName name = new ObjectName(DOMAIN + ":" + properties);
+			server.registerMBean(mbean, name);
+			registered.add(name);
+		} catch (Exception e) {
+			logger.warn("Can't register MBean " + DOMAIN + ":" + properties, e);
+		}
+	}
+
+}
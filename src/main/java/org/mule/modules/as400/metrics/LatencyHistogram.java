@@ -0,0 +1,90 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock and allocation free latency recorder. Durations are counted in power of two buckets of microseconds, so
+ * percentiles are accurate to a factor of two, which is enough to tell a host round trip from a cache hit.
+ */
+public class LatencyHistogram implements LatencyHistogramMBean {
+
+	private static final int BUCKETS = 40;
+	private static final double NANOS_PER_MILLI = 1000000.0;
+
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+	// Bucket i counts durations below 2^i microseconds (and at least 2^(i-1)), the last bucket has no upper bound
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		count.incrementAndGet();
+		totalNanos.addAndGet(nanos);
+		long max = maxNanos.get();
+		while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+			max = maxNanos.get();
+		}
+		long micros = nanos / 1000;
+		int bucket = micros == 0 ? 0 : 64 - Long.numberOfLeadingZeros(micros);
+		buckets.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getTotalNanos() {
+		return totalNanos.get();
+	}
+
+	public double getMeanMillis() {
+		long recorded = count.get();
+		return recorded == 0 ? 0 : totalNanos.get() / NANOS_PER_MILLI / recorded;
+	}
+
+	public double getMaxMillis() {
+		return maxNanos.get() / NANOS_PER_MILLI;
+	}
+
+	public double getMedianMillis() {
+		return getPercentileMillis(0.5);
+	}
+
+	public double getPercentile99Millis() {
+		return getPercentileMillis(0.99);
+	}
+
+	/**
+	 * @return upper bound of the bucket holding the given percentile (0 to 1), capped at the max recorded
+	 */
+	public double getPercentileMillis(double percentile) {
+		long total = 0;
+		long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+			total += counts[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(percentile * total);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank && i < BUCKETS - 1) {
+				return Math.min((1L << i) / 1000.0, getMaxMillis());
+			}
+		}
+		return getMaxMillis();
+	}
+
+}
@@ -0,0 +1,23 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.metrics;
+
+/**
+ * JMX view of a {@link LatencyHistogram}
+ */
+public interface LatencyHistogramMBean {
+
+	long getCount();
+
+	double getMeanMillis();
+
+	double getMaxMillis();
+
+	double getMedianMillis();
+
+	double getPercentile99Millis();
+
+}
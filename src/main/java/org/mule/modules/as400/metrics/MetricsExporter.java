@@ -0,0 +1,25 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.metrics;
+
+/**
+ * Publishes metrics to a monitoring system. Instruments are registered once per queue or command, the exporter
+ * reads their values when the monitoring system asks for them.
+ */
+interface MetricsExporter {
+
+	void exportConnection(ConnectorMetrics connection);
+
+	void exportDataQueue(ConnectorMetrics connection, DataQueueMetrics queue);
+
+	void exportCommand(ConnectorMetrics connection, CommandMetrics command);
+
+	/**
+	 * Remove everything this exporter registered
+	 */
+	void close();
+
+}
@@ -0,0 +1,187 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.metrics;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * Registers function based meters in a Micrometer registry. The meters read the connector's own counters when the
+ * registry publishes, so recording costs the same with or without Micrometer. Only loaded if Micrometer metrics are
+ * enabled, Micrometer is an optional dependency and the only part of the connector that needs Java 8: its function
+ * meters take java.util.function types, given here as anonymous classes. Meters are registered through the registry
+ * instead of the meter builders, which are static interface methods.
+ */
+class MicrometerExporter implements MetricsExporter {
+
+	private final MeterRegistry registry;
+	private final List<Meter> meters = new CopyOnWriteArrayList<Meter>();
+
+	MicrometerExporter(MeterRegistry registry) {
+		this.registry = registry;
+	}
+
+	static MicrometerExporter forGlobalRegistry() {
+		return new MicrometerExporter(Metrics.globalRegistry);
+	}
+
+	public void exportConnection(ConnectorMetrics connection) {
+		Tags tags = Tags.of("connection", connection.getName());
+		counter("as400.reconnect.attempts", tags, connection, new ToDoubleFunction<ConnectorMetrics>() {
+			public double applyAsDouble(ConnectorMetrics metrics) {
+				return metrics.getReconnectAttempts();
+			}
+		});
+		counter("as400.reconnect.failures", tags, connection, new ToDoubleFunction<ConnectorMetrics>() {
+			public double applyAsDouble(ConnectorMetrics metrics) {
+				return metrics.getFailedReconnectAttempts();
+			}
+		});
+		counter("as400.connection.outages", tags, connection, new ToDoubleFunction<ConnectorMetrics>() {
+			public double applyAsDouble(ConnectorMetrics metrics) {
+				return metrics.getOutages();
+			}
+		});
+		gauge("as400.connection.unavailable", tags, connection, new ToDoubleFunction<ConnectorMetrics>() {
+			public double applyAsDouble(ConnectorMetrics metrics) {
+				return metrics.getUnavailableConnections();
+			}
+		});
+		counter("as400.heartbeat.failures", tags, connection, new ToDoubleFunction<ConnectorMetrics>() {
+			public double applyAsDouble(ConnectorMetrics metrics) {
+				return metrics.getFailedHeartbeatChecks();
+			}
+		});
+		gauge("as400.pool.active", tags, connection, new ToDoubleFunction<ConnectorMetrics>() {
+			public double applyAsDouble(ConnectorMetrics metrics) {
+				return metrics.getPoolActiveConnections();
+			}
+		});
+		gauge("as400.pool.available", tags, connection, new ToDoubleFunction<ConnectorMetrics>() {
+			public double applyAsDouble(ConnectorMetrics metrics) {
+				return metrics.getPoolAvailableConnections();
+			}
+		});
+		gauge("as400.writebehind.backlog", tags, connection, new ToDoubleFunction<ConnectorMetrics>() {
+			public double applyAsDouble(ConnectorMetrics metrics) {
+				return metrics.getWriteBehindBacklog();
+			}
+		});
+		gauge("as400.writebehind.backlog.bytes", tags, connection, new ToDoubleFunction<ConnectorMetrics>() {
+			public double applyAsDouble(ConnectorMetrics metrics) {
+				return metrics.getWriteBehindBacklogBytes();
+			}
+		});
+		counter("as400.writebehind.drained", tags, connection, new ToDoubleFunction<ConnectorMetrics>() {
+			public double applyAsDouble(ConnectorMetrics metrics) {
+				return metrics.getWriteBehindDrained();
+			}
+		});
+		counter("as400.writebehind.deadlettered", tags, connection, new ToDoubleFunction<ConnectorMetrics>() {
+			public double applyAsDouble(ConnectorMetrics metrics) {
+				return metrics.getWriteBehindDeadLettered();
+			}
+		});
+		counter("as400.async.unawaited.results", tags, connection, new ToDoubleFunction<ConnectorMetrics>() {
+			public double applyAsDouble(ConnectorMetrics metrics) {
+				return metrics.getAsyncUnawaitedResults();
+			}
+		});
+		counter("as400.async.unawaited.failures", tags, connection, new ToDoubleFunction<ConnectorMetrics>() {
+			public double applyAsDouble(ConnectorMetrics metrics) {
+				return metrics.getAsyncUnawaitedFailures();
+			}
+		});
+	}
+
+	public void exportDataQueue(ConnectorMetrics connection, DataQueueMetrics queue) {
+		Tags tags = Tags.of("connection", connection.getName(), "queue", queue.getPath());
+		timer("as400.dataqueue.read", tags, queue.getReads());
+		timer("as400.dataqueue.peek", tags, queue.getPeeks());
+		timer("as400.dataqueue.write", tags, queue.getWrites());
+		timer("as400.dataqueue.lag", tags, queue.getLag());
+		counter("as400.dataqueue.entries.read", tags, queue, new ToDoubleFunction<DataQueueMetrics>() {
+			public double applyAsDouble(DataQueueMetrics metrics) {
+				return metrics.getEntriesRead();
+			}
+		});
+		counter("as400.dataqueue.empty.polls", tags, queue, new ToDoubleFunction<DataQueueMetrics>() {
+			public double applyAsDouble(DataQueueMetrics metrics) {
+				return metrics.getEmptyPolls();
+			}
+		});
+		counter("as400.dataqueue.failures", tags.and("operation", "read"), queue, new ToDoubleFunction<DataQueueMetrics>() {
+			public double applyAsDouble(DataQueueMetrics metrics) {
+				return metrics.getReadFailures();
+			}
+		});
+		counter("as400.dataqueue.failures", tags.and("operation", "write"), queue, new ToDoubleFunction<DataQueueMetrics>() {
+			public double applyAsDouble(DataQueueMetrics metrics) {
+				return metrics.getWriteFailures();
+			}
+		});
+		gauge("as400.dataqueue.poll.wait", tags, queue, new ToDoubleFunction<DataQueueMetrics>() {
+			public double applyAsDouble(DataQueueMetrics metrics) {
+				return metrics.getPollWaitSeconds();
+			}
+		});
+	}
+
+	public void exportCommand(ConnectorMetrics connection, CommandMetrics command) {
+		Tags tags = Tags.of("connection", connection.getName(), "command", command.getName());
+		timer("as400.command", tags, command);
+		counter("as400.command.failures", tags, command, new ToDoubleFunction<CommandMetrics>() {
+			public double applyAsDouble(CommandMetrics metrics) {
+				return metrics.getFailures();
+			}
+		});
+	}
+
+	public void close() {
+		for (Meter meter : meters) {
+			registry.remove(meter);
+		}
+		meters.clear();
+	}
+
+	private void timer(String name, Tags tags, LatencyHistogram histogram) {
+		meters.add(registry.more().timer(name, tags, histogram, new ToLongFunction<LatencyHistogram>() {
+			public long applyAsLong(LatencyHistogram latency) {
+				return latency.getCount();
+			}
+		}, new ToDoubleFunction<LatencyHistogram>() {
+			public double applyAsDouble(LatencyHistogram latency) {
+				return latency.getTotalNanos();
+			}
+		}, TimeUnit.NANOSECONDS));
+		gauge(name + ".max", tags, histogram, new ToDoubleFunction<LatencyHistogram>() {
+			public double applyAsDouble(LatencyHistogram latency) {
+				return latency.getMaxMillis();
+			}
+		});
+	}
+
+	private <T> void counter(String name, Tags tags, T source, ToDoubleFunction<T> value) {
+		meters.add(registry.more().counter(name, tags, source, value));
+	}
+
+	private <T> void gauge(String name, Tags tags, T source, ToDoubleFunction<T> value) {
+		registry.gauge(name, tags, source, value);
+		Meter gauge = registry.find(name).tags(tags).gauge();
+		if (gauge != null) {
+			meters.add(gauge);
+		}
+	}
+
+}
@@ -0,0 +1,129 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.program;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.mule.modules.as400.record.RecordConverter;
+import org.mule.modules.as400.record.RecordConverterCache;
+
+import com.ibm.as400.access.ProgramParameter;
+
+/**
+ * Compiled parameter list of a program. Parameters are separated by "|" and each one is declared with its usage,
+ * name and either a single field type or a structure of fields in record format syntax, e.g.
+ * {@code IN CUSTNO:CHAR(10) | OUT BALANCE:PACKED(11,2) | INOUT ADDRESS{STREET:CHAR(30);CITY:CHAR(20)}}.
+ * Converters are built once when the signature is parsed, for the CCSID of the job rather than a connection, so a
+ * signature outlives the connection it was parsed on; a call only encodes inputs and decodes outputs.
+ */
+public class ProgramSignature {
+
+	private static final Pattern PARAMETER = Pattern.compile("\\s*(IN|OUT|INOUT)\\s+(\\w+)\\s*(?::(.+?)|\\{(.+)\\})\\s*", Pattern.CASE_INSENSITIVE);
+
+	public enum Usage {
+		IN, OUT, INOUT
+	}
+
+	private final Parameter[] parameters;
+
+	private ProgramSignature(Parameter[] parameters) {
+		this.parameters = parameters;
+	}
+
+	/**
+	 * @param ccsid CCSID of the text fields
+	 */
+	public static ProgramSignature parse(int ccsid, String descriptor) {
+		if (descriptor == null || descriptor.trim().isEmpty()) {
+			return new ProgramSignature(new Parameter[0]);
+		}
+		String[] declarations = descriptor.trim().split("\\s*\\|\\s*");
+		Parameter[] parameters = new Parameter[declarations.length];
+		for (int i = 0; i < declarations.length; i++) {
+			Matcher matcher = PARAMETER.matcher(declarations[i]);
+			if (!matcher.matches()) {
+				throw new IllegalArgumentException("Invalid program parameter: " + declarations[i]);
+			}
+			Usage usage = Usage.valueOf(matcher.group(1).toUpperCase());
+			String name = matcher.group(2);
+			boolean structure = matcher.group(4) != null;
+			RecordConverter converter = RecordConverterCache.parse(ccsid, structure ? matcher.group(4) : name + ":" + matcher.group(3));
+			parameters[i] = new Parameter(name, usage, structure, converter);
+		}
+		return new ProgramSignature(parameters);
+	}
+
+	/**
+	 * Build the host parameter list for one call
+	 *
+	 * @param inputs input values by parameter name, structures as maps of field values
+	 */
+	public ProgramParameter[] toProgramParameters(Map<String, ?> inputs) {
+		ProgramParameter[] programParameters = new ProgramParameter[parameters.length];
+		for (int i = 0; i < parameters.length; i++) {
+			Parameter parameter = parameters[i];
+			int length = parameter.converter.getRecordLength();
+			switch (parameter.usage) {
+			case IN:
+				programParameters[i] = new ProgramParameter(parameter.encode(inputs));
+				break;
+			case OUT:
+				programParameters[i] = new ProgramParameter(length);
+				break;
+			default:
+				programParameters[i] = new ProgramParameter(parameter.encode(inputs), length);
+			}
+		}
+		return programParameters;
+	}
+
+	/**
+	 * @return output values of OUT and INOUT parameters by parameter name
+	 */
+	public Map<String, Object> toOutputs(ProgramParameter[] programParameters) {
+		Map<String, Object> outputs = new LinkedHashMap<String, Object>();
+		for (int i = 0; i < parameters.length; i++) {
+			Parameter parameter = parameters[i];
+			if (parameter.usage != Usage.IN) {
+				Map<String, Object> fields = parameter.converter.decode(programParameters[i].getOutputData());
+				outputs.put(parameter.name, parameter.structure ? fields : fields.get(parameter.name));
+			}
+		}
+		return outputs;
+	}
+
+	private static class Parameter {
+
+		private final String name;
+		private final Usage usage;
+		private final boolean structure;
+		private final RecordConverter converter;
+
+		Parameter(String name, Usage usage, boolean structure, RecordConverter converter) {
+			this.name = name;
+			this.usage = usage;
+			this.structure = structure;
+			this.converter = converter;
+		}
+
+		@SuppressWarnings("unchecked")
+		byte[] encode(Map<String, ?> inputs) {
+			Object value = inputs == null ? null : inputs.get(name);
+			if (structure) {
+				if (value != null && !(value instanceof Map)) {
+					throw new IllegalArgumentException("Structure parameter " + name + " needs a map of field values");
+				}
+				return converter.encode(value == null ? Collections.<String, Object> emptyMap() : (Map<String, ?>) value);
+			}
+			return converter.encode(Collections.singletonMap(name, value));
+		}
+	}
+
+}
@@ -0,0 +1,147 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.record;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.ibm.as400.access.AS400Bin2;
+import com.ibm.as400.access.AS400Bin4;
+import com.ibm.as400.access.AS400Bin8;
+import com.ibm.as400.access.AS400DataType;
+import com.ibm.as400.access.AS400PackedDecimal;
+import com.ibm.as400.access.AS400Text;
+import com.ibm.as400.access.AS400ZonedDecimal;
+import com.ibm.as400.access.FieldDescription;
+import com.ibm.as400.access.RecordFormat;
+
+/**
+ * Compiled converter between fixed layout records and field maps. Field offsets and data types are resolved once,
+ * decoding and encoding then work directly on the record bytes.
+ * Character fields are trimmed on decode and blank padded on encode. Numbers that don't fit their field are rejected on
+ * encode.
+ */
+public class RecordConverter {
+
+	private final String[] names;
+	private final AS400DataType[] types;
+	private final int[] offsets;
+	private final int recordLength;
+
+	public RecordConverter(String[] names, AS400DataType[] types) {
+		if (names.length != types.length) {
+			throw new IllegalArgumentException("Record format field names don't match field types");
+		}
+		this.names = names;
+		this.types = types;
+		this.offsets = new int[types.length];
+		int offset = 0;
+		for (int i = 0; i < types.length; i++) {
+			offsets[i] = offset;
+			offset += types[i].getByteLength();
+		}
+		this.recordLength = offset;
+	}
+
+	// Text fields of a retrieved record format hold the connection they were retrieved over, the converter gets its own
+	// text types with just the CCSID
+	public static RecordConverter fromRecordFormat(RecordFormat format) {
+		FieldDescription[] fields = format.getFieldDescriptions();
+		String[] names = new String[fields.length];
+		AS400DataType[] types = new AS400DataType[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			names[i] = fields[i].getFieldName();
+			types[i] = fields[i].getDataType();
+			if (types[i] instanceof AS400Text) {
+				AS400Text text = (AS400Text) types[i];
+				types[i] = new AS400Text(text.getByteLength(), text.getCcsid());
+			}
+		}
+		return new RecordConverter(names, types);
+	}
+
+	public Map<String, Object> decode(byte[] record) {
+		if (record.length < recordLength) {
+			throw new IllegalArgumentException("Record is " + record.length + " bytes, record format needs " + recordLength);
+		}
+		Map<String, Object> fields = new LinkedHashMap<String, Object>(names.length * 2);
+		for (int i = 0; i < types.length; i++) {
+			Object value = types[i].toObject(record, offsets[i]);
+			if (value instanceof String) {
+				value = trimRight((String) value);
+			}
+			fields.put(names[i], value);
+		}
+		return fields;
+	}
+
+	public byte[] encode(Map<String, ?> fields) {
+		byte[] record = new byte[recordLength];
+		for (int i = 0; i < types.length; i++) {
+			Object value = fields.get(names[i]);
+			try {
+				types[i].toBytes(toJavaValue(types[i], value), record, offsets[i]);
+			} catch (ArithmeticException e) {
+				throw new IllegalArgumentException("Value " + value + " doesn't fit field " + names[i], e);
+			}
+		}
+		return record;
+	}
+
+	public int getRecordLength() {
+		return recordLength;
+	}
+
+	public String[] getFieldNames() {
+		return names.clone();
+	}
+
+	static Object toJavaValue(AS400DataType type, Object value) {
+		if (type instanceof AS400Text) {
+			return value == null ? "" : value.toString();
+		}
+		if (type instanceof AS400PackedDecimal) {
+			return toBigDecimal(value, ((AS400PackedDecimal) type).getNumberOfDecimalPositions());
+		}
+		if (type instanceof AS400ZonedDecimal) {
+			return toBigDecimal(value, ((AS400ZonedDecimal) type).getNumberOfDecimalPositions());
+		}
+		if (type instanceof AS400Bin2) {
+			return value == null ? Short.valueOf((short) 0) : Short.valueOf(toNumber(value).shortValueExact());
+		}
+		if (type instanceof AS400Bin4) {
+			return value == null ? Integer.valueOf(0) : Integer.valueOf(toNumber(value).intValueExact());
+		}
+		if (type instanceof AS400Bin8) {
+			return value == null ? Long.valueOf(0) : Long.valueOf(toNumber(value).longValueExact());
+		}
+		return value == null ? type.getDefaultValue() : value;
+	}
+
+	// Scale is adjusted to the field, values that would need rounding are rejected
+	private static BigDecimal toBigDecimal(Object value, int decimals) {
+		if (value == null) {
+			return BigDecimal.ZERO.setScale(decimals);
+		}
+		BigDecimal decimal = value instanceof BigDecimal ? (BigDecimal) value : new BigDecimal(value.toString().trim());
+		return decimal.setScale(decimals);
+	}
+
+	// Values out of range or with a fraction fail with an ArithmeticException on the exact conversion
+	private static BigDecimal toNumber(Object value) {
+		return value instanceof BigDecimal ? (BigDecimal) value : new BigDecimal(value.toString().trim());
+	}
+
+	static String trimRight(String value) {
+		int end = value.length();
+		while (end > 0 && value.charAt(end - 1) == ' ') {
+			end--;
+		}
+		return end == value.length() ? value : value.substring(0, end);
+	}
+
+}
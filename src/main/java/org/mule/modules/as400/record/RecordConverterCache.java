@@ -0,0 +1,134 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.record;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.ibm.as400.access.AS400;
+import com.ibm.as400.access.AS400Bin2;
+import com.ibm.as400.access.AS400Bin4;
+import com.ibm.as400.access.AS400Bin8;
+import com.ibm.as400.access.AS400DataType;
+import com.ibm.as400.access.AS400FileRecordDescription;
+import com.ibm.as400.access.AS400PackedDecimal;
+import com.ibm.as400.access.AS400Text;
+import com.ibm.as400.access.AS400ZonedDecimal;
+import com.ibm.as400.access.RecordFormat;
+
+/**
+ * Compiles record format descriptors into {@link RecordConverter}s and keeps them for reuse.
+ * <p>
+ * Inline descriptors list the fields in record order, separated by semicolons, e.g.
+ * {@code ORDER:CHAR(10);AMOUNT:PACKED(9,2);QTY:ZONED(5,0);LINE:BIN4}. Supported types are CHAR(length),
+ * PACKED(digits,decimals), ZONED(digits,decimals), BIN2, BIN4 and BIN8.
+ * Host descriptors name a file whose first record format is retrieved from the system.
+ * <p>
+ * Text fields of compiled converters are bound to a CCSID rather than to the connection they were compiled on, so a
+ * converter keeps working once that connection is replaced.
+ */
+public class RecordConverterCache {
+
+	private static final Pattern FIELD = Pattern.compile("\\s*(\\w+)\\s*:\\s*(\\w+)\\s*(?:\\(\\s*(\\d+)\\s*(?:,\\s*(\\d+)\\s*)?\\))?\\s*");
+
+	private final ConcurrentMap<String, RecordConverter> converters = new ConcurrentHashMap<String, RecordConverter>();
+	private final ConcurrentMap<String, RecordFormat> formats = new ConcurrentHashMap<String, RecordFormat>();
+
+	/**
+	 * @return the compiled converter, null if it has not been compiled yet
+	 */
+	public RecordConverter get(String descriptor, String filePath) {
+		return converters.get(cacheKey(descriptor, filePath));
+	}
+
+	/**
+	 * Compile and cache a converter, either from an inline descriptor or from the record format of a file.
+	 *
+	 * @param filePath IFS path of the file, e.g. /QSYS.LIB/MYLIB.LIB/MYFILE.FILE
+	 */
+	public RecordConverter compile(AS400 system, String descriptor, String filePath) throws Exception {
+		RecordConverter converter;
+		if (descriptor != null) {
+			converter = parse(system.getCcsid(), descriptor);
+		} else {
+			converter = RecordConverter.fromRecordFormat(getRecordFormat(system, filePath));
+		}
+		RecordConverter existing = converters.putIfAbsent(cacheKey(descriptor, filePath), converter);
+		return existing != null ? existing : converter;
+	}
+
+	/**
+	 * Record format of a file, retrieved from the host on first use
+	 *
+	 * @param filePath IFS path of the file, e.g. /QSYS.LIB/MYLIB.LIB/MYFILE.FILE
+	 */
+	public RecordFormat getRecordFormat(AS400 system, String filePath) throws Exception {
+		RecordFormat format = formats.get(filePath);
+		if (format == null) {
+			RecordFormat[] retrieved = new AS400FileRecordDescription(system, filePath).retrieveRecordFormat();
+			if (retrieved == null || retrieved.length == 0) {
+				throw new IllegalArgumentException("No record format found for " + filePath);
+			}
+			format = retrieved[0];
+			RecordFormat existing = formats.putIfAbsent(filePath, format);
+			if (existing != null) {
+				format = existing;
+			}
+		}
+		return format;
+	}
+
+	private static String cacheKey(String descriptor, String filePath) {
+		if (descriptor == null && filePath == null) {
+			throw new IllegalArgumentException("Either an inline record format or a record format file is required");
+		}
+		return descriptor != null ? descriptor : "file:" + filePath;
+	}
+
+	/**
+	 * Compile an inline descriptor
+	 *
+	 * @param ccsid CCSID of the text fields
+	 */
+	public static RecordConverter parse(int ccsid, String descriptor) {
+		String[] fields = descriptor.trim().split("\\s*;\\s*");
+		String[] names = new String[fields.length];
+		AS400DataType[] types = new AS400DataType[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			Matcher matcher = FIELD.matcher(fields[i]);
+			if (!matcher.matches()) {
+				throw new IllegalArgumentException("Invalid record format field: " + fields[i]);
+			}
+			names[i] = matcher.group(1);
+			types[i] = dataType(ccsid, matcher.group(2).toUpperCase(), matcher.group(3), matcher.group(4), fields[i]);
+		}
+		return new RecordConverter(names, types);
+	}
+
+	private static AS400DataType dataType(int ccsid, String type, String length, String decimals, String field) {
+		if ("CHAR".equals(type) && length != null) {
+			return new AS400Text(Integer.parseInt(length), ccsid);
+		}
+		if (("PACKED".equals(type) || "ZONED".equals(type)) && length != null) {
+			int scale = decimals == null ? 0 : Integer.parseInt(decimals);
+			return "PACKED".equals(type) ? new AS400PackedDecimal(Integer.parseInt(length), scale)
+					: new AS400ZonedDecimal(Integer.parseInt(length), scale);
+		}
+		if ("BIN2".equals(type)) {
+			return new AS400Bin2();
+		}
+		if ("BIN4".equals(type)) {
+			return new AS400Bin4();
+		}
+		if ("BIN8".equals(type)) {
+			return new AS400Bin8();
+		}
+		throw new IllegalArgumentException("Unsupported record format field type: " + field);
+	}
+
+}
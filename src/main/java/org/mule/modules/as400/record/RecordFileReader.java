@@ -0,0 +1,191 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.record;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.mule.modules.as400.SearchType;
+import org.mule.modules.as400.strategy.ConnectionLease;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ibm.as400.access.AS400;
+import com.ibm.as400.access.AS400File;
+import com.ibm.as400.access.FieldDescription;
+import com.ibm.as400.access.KeyedFile;
+import com.ibm.as400.access.Record;
+import com.ibm.as400.access.RecordFormat;
+import com.ibm.as400.access.SequentialFile;
+
+/**
+ * Reads the records of a physical or logical file member through record level access, one block of records at a
+ * time, so files of any size can be streamed. Records are decoded into field maps with the record format of the file,
+ * character fields are trimmed like the data queue records.
+ * <p>
+ * The file and its connection stay open until all records are read, a read fails, the reader is closed or its lease
+ * expires. A connection a read failed on is discarded instead of handed back.
+ */
+public class RecordFileReader implements Iterator<Map<String, Object>>, Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(RecordFileReader.class);
+
+	private final AS400File file;
+	private final Object[] key;
+	private final int keySearchType;
+	private final String[] names;
+	private final ConnectionLease lease;
+	private Record next;
+	private boolean started;
+	private boolean closed;
+
+	private RecordFileReader(AS400File file, Object[] key, int keySearchType, String[] names, ConnectionLease lease) {
+		this.file = file;
+		this.key = key;
+		this.keySearchType = keySearchType;
+		this.names = names;
+		this.lease = lease;
+		lease.setHolder(this);
+	}
+
+	/**
+	 * Open a file member for reading.
+	 *
+	 * @param path IFS path of the file or member, e.g. /QSYS.LIB/MYLIB.LIB/MYFILE.FILE/MYMBR.MBR
+	 * @param blockingFactor records fetched per request, 0 to have it computed from the record length
+	 * @param key comma separated values of the leading key fields, null to read in arrival sequence
+	 * @param keySearchType EQUAL reads the records with the key, GREATER_THAN(_OR_EQUAL) from the key to the end
+	 * @param lease of the connection the file is read with, closed together with the reader
+	 */
+	public static RecordFileReader open(String path, RecordFormat format, int blockingFactor, String key, SearchType keySearchType, ConnectionLease lease) throws Exception {
+		AS400 system = lease.getSystem();
+		Object[] keyValues = key == null ? null : keyValues(format, key);
+		int searchType = key == null ? KeyedFile.KEY_EQ : keySearchType(keySearchType);
+		AS400File file = keyValues == null ? new SequentialFile(system, path) : new KeyedFile(system, path);
+		file.setRecordFormat(format);
+		file.open(AS400File.READ_ONLY, Math.max(blockingFactor, 0), AS400File.COMMIT_LOCK_LEVEL_NONE);
+		String[] names = new String[format.getNumberOfFields()];
+		FieldDescription[] fields = format.getFieldDescriptions();
+		for (int i = 0; i < names.length; i++) {
+			names[i] = fields[i].getFieldName();
+		}
+		return new RecordFileReader(file, keyValues, searchType, names, lease);
+	}
+
+	// Key values are converted to the types of the key fields, fewer values than key fields make a partial key
+	private static Object[] keyValues(RecordFormat format, String key) {
+		FieldDescription[] keyFields = format.getKeyFieldDescriptions();
+		String[] values = key.split(",");
+		if (keyFields == null || keyFields.length == 0) {
+			throw new IllegalArgumentException("File has no key fields, read it without a key");
+		}
+		if (values.length > keyFields.length) {
+			throw new IllegalArgumentException("Key has " + values.length + " values, the file has " + keyFields.length + " key fields");
+		}
+		Object[] keyValues = new Object[values.length];
+		for (int i = 0; i < values.length; i++) {
+			keyValues[i] = RecordConverter.toJavaValue(keyFields[i].getDataType(), values[i].trim());
+		}
+		return keyValues;
+	}
+
+	private static int keySearchType(SearchType searchType) {
+		if (searchType == null || searchType == SearchType.EQUAL) {
+			return KeyedFile.KEY_EQ;
+		}
+		if (searchType == SearchType.GREATER_THAN_OR_EQUAL) {
+			return KeyedFile.KEY_GE;
+		}
+		if (searchType == SearchType.GREATER_THAN) {
+			return KeyedFile.KEY_GT;
+		}
+		throw new IllegalArgumentException("Unsupported key search type for file reads: " + searchType.getSearchType() + ", use EQ, GE or GT");
+	}
+
+	public synchronized boolean hasNext() {
+		if (next == null && !closed) {
+			lease.touch();
+			try {
+				next = readRecord();
+			} catch (Exception e) {
+				// Includes ConnectionDroppedException
+				if (e instanceof IOException) {
+					lease.failed();
+				}
+				close();
+				throw new IllegalStateException("Record file read error: " + file.getPath(), e);
+			}
+			if (next == null) {
+				close();
+			}
+		}
+		return next != null;
+	}
+
+	public synchronized Map<String, Object> next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Record record = next;
+		next = null;
+		try {
+			return decode(record);
+		} catch (Exception e) {
+			close();
+			throw new IllegalStateException("Record file conversion error: " + file.getPath(), e);
+		}
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException("Records are read only");
+	}
+
+	public synchronized void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		next = null;
+		try {
+			file.close();
+		} catch (Exception e) {
+			// The file may still be open on the host, the connection can't go back to the pool
+			lease.failed();
+			logger.warn("Can't close record file " + file.getPath(), e);
+		} finally {
+			lease.close();
+		}
+	}
+
+	private Record readRecord() throws Exception {
+		if (key == null) {
+			return file.readNext();
+		}
+		KeyedFile keyedFile = (KeyedFile) file;
+		if (!started) {
+			started = true;
+			return keyedFile.read(key, keySearchType);
+		}
+		return keySearchType == KeyedFile.KEY_EQ ? keyedFile.readNextEqual(key) : keyedFile.readNext();
+	}
+
+	private Map<String, Object> decode(Record record) throws Exception {
+		Map<String, Object> fields = new LinkedHashMap<String, Object>(names.length * 2);
+		for (int i = 0; i < names.length; i++) {
+			Object value = record.getField(i);
+			if (value instanceof String) {
+				value = RecordConverter.trimRight((String) value);
+			}
+			fields.put(names[i], value);
+		}
+		return fields;
+	}
+
+}
@@ -0,0 +1,189 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.spool;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tracks how far an output queue has been picked up by the new spooled file poller: the newest creation time handed
+ * on and the spooled files created at exactly that time, which the host reports to the second only.
+ * <p>
+ * The checkpoint is kept in a local file and rewritten after each poll that handed on spooled files, so a restarted
+ * poller continues where it stopped. It only moves when a spooled file is accepted, a spooled file the flow fails on
+ * is offered again on the next poll.
+ */
+public class SpoolCheckpoint {
+
+	private static final Comparator<SpooledFileInfo> BY_CREATION = new Comparator<SpooledFileInfo>() {
+		public int compare(SpooledFileInfo a, SpooledFileInfo b) {
+			int result = a.getCreateTimestamp().compareTo(b.getCreateTimestamp());
+			return result != 0 ? result : a.getId().compareTo(b.getId());
+		}
+	};
+
+	private static final String OPEN = "*OPEN";
+
+	private final File file;
+	private final boolean includeExisting;
+	private boolean started;
+	private String timestamp;
+	private final Set<String> seenAtTimestamp = new HashSet<String>();
+	private boolean dirty;
+
+	private SpoolCheckpoint(File file, boolean includeExisting) {
+		this.file = file;
+		this.includeExisting = includeExisting;
+	}
+
+	/**
+	 * Open the checkpoint, creating its directory if needed
+	 *
+	 * @param includeExisting without a checkpoint file hand on the spooled files already in the queue on the first
+	 *            poll, otherwise start after them
+	 */
+	public static SpoolCheckpoint open(File file, boolean includeExisting) throws IOException {
+		File directory = file.getAbsoluteFile().getParentFile();
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Can't create spool checkpoint directory " + directory);
+		}
+		SpoolCheckpoint checkpoint = new SpoolCheckpoint(file, includeExisting);
+		checkpoint.load();
+		return checkpoint;
+	}
+
+	/**
+	 * @return creation date as CYYMMDD to start the list from, null to list all
+	 */
+	public synchronized String getStartDate() {
+		return timestamp == null ? null : timestamp.substring(0, 7);
+	}
+
+	/**
+	 * @return creation time as HHMMSS to start the list from, null to list all
+	 */
+	public synchronized String getStartTime() {
+		return timestamp == null ? null : timestamp.substring(7);
+	}
+
+	/**
+	 * Spooled files of a listing past the checkpoint, oldest first. A spooled file still open by its job and all
+	 * younger spooled files are left for a later poll.
+	 */
+	public synchronized List<SpooledFileInfo> newFiles(List<SpooledFileInfo> listing) {
+		List<SpooledFileInfo> files = new ArrayList<SpooledFileInfo>(listing);
+		Collections.sort(files, BY_CREATION);
+		if (!started) {
+			started = true;
+			if (timestamp == null && !includeExisting) {
+				for (SpooledFileInfo file : files) {
+					if (OPEN.equals(file.getStatus())) {
+						break;
+					}
+					accept(file);
+				}
+				return Collections.emptyList();
+			}
+		}
+		List<SpooledFileInfo> newFiles = new ArrayList<SpooledFileInfo>();
+		for (SpooledFileInfo file : files) {
+			if (OPEN.equals(file.getStatus())) {
+				break;
+			}
+			if (isNew(file)) {
+				newFiles.add(file);
+			}
+		}
+		return newFiles;
+	}
+
+	/**
+	 * Move the checkpoint past a spooled file once it is handed on
+	 */
+	public synchronized void accept(SpooledFileInfo file) {
+		String created = file.getCreateTimestamp();
+		if (created.length() != 13) {
+			return;
+		}
+		if (timestamp == null || created.compareTo(timestamp) > 0) {
+			timestamp = created;
+			seenAtTimestamp.clear();
+		}
+		dirty |= seenAtTimestamp.add(file.getId());
+	}
+
+	/**
+	 * Write the checkpoint if it moved since it was last saved
+	 */
+	public synchronized void save() throws IOException {
+		if (!dirty) {
+			return;
+		}
+		File saved = new File(file.getPath() + ".tmp");
+		FileOutputStream out = new FileOutputStream(saved);
+		try {
+			Writer writer = new OutputStreamWriter(out, "UTF-8");
+			writer.write(timestamp + "\n");
+			for (String id : seenAtTimestamp) {
+				writer.write(id + "\n");
+			}
+			writer.flush();
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+		if (!saved.renameTo(file) && !(file.delete() && saved.renameTo(file))) {
+			throw new IOException("Can't replace spool checkpoint " + file);
+		}
+		dirty = false;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	private boolean isNew(SpooledFileInfo file) {
+		if (timestamp == null) {
+			return true;
+		}
+		int result = file.getCreateTimestamp().compareTo(timestamp);
+		return result > 0 || (result == 0 && !seenAtTimestamp.contains(file.getId()));
+	}
+
+	private void load() throws IOException {
+		if (!file.exists()) {
+			return;
+		}
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			String line = reader.readLine();
+			if (line == null || line.length() != 13) {
+				throw new IOException("Invalid spool checkpoint " + file);
+			}
+			timestamp = line;
+			while ((line = reader.readLine()) != null) {
+				if (line.length() > 0) {
+					seenAtTimestamp.add(line);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+}
@@ -0,0 +1,26 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.spool;
+
+/**
+ * Form in which spooled file content is read
+ */
+public enum SpooledFileFormat {
+
+	/**
+	 * Transformed to ASCII text by the host print transform
+	 */
+	TEXT,
+	/**
+	 * The spooled data as stored, e.g. SCS or AFP
+	 */
+	RAW,
+	/**
+	 * Transformed by the host print transform with a given workstation customizing object, e.g. to PDF or TIFF
+	 */
+	TRANSFORMED
+
+}
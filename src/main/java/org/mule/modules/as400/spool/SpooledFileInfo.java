@@ -0,0 +1,159 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.spool;
+
+import java.io.Serializable;
+import java.util.Calendar;
+import java.util.Date;
+
+import com.ibm.as400.access.PrintObject;
+import com.ibm.as400.access.SpooledFile;
+
+/**
+ * Attributes of a spooled file as returned by the spooled file list. The job, name, number, job system and creation
+ * time identify the spooled file, e.g. to read its content.
+ */
+public class SpooledFileInfo implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Attributes retrieved with the list, so reading them does not go to the host again
+	 */
+	public static final int[] LIST_ATTRIBUTES = { PrintObject.ATTR_SPOOLFILE, PrintObject.ATTR_SPLFNUM, PrintObject.ATTR_JOBNAME, PrintObject.ATTR_JOBUSER, PrintObject.ATTR_JOBNUMBER, PrintObject.ATTR_JOBSYSTEM, PrintObject.ATTR_DATE, PrintObject.ATTR_TIME, PrintObject.ATTR_OUTPUT_QUEUE, PrintObject.ATTR_SPLFSTATUS, PrintObject.ATTR_USERDATA, PrintObject.ATTR_FORMTYPE, PrintObject.ATTR_PAGES };
+
+	private final String name;
+	private final int number;
+	private final String jobName;
+	private final String jobUser;
+	private final String jobNumber;
+	private final String jobSystem;
+	private final String createDate;
+	private final String createTime;
+	private final String outputQueue;
+	private final String status;
+	private final String userData;
+	private final String formType;
+	private final int pages;
+
+	public SpooledFileInfo(String name, int number, String jobName, String jobUser, String jobNumber, String jobSystem, String createDate, String createTime, String outputQueue, String status, String userData, String formType, int pages) {
+		this.name = name;
+		this.number = number;
+		this.jobName = jobName;
+		this.jobUser = jobUser;
+		this.jobNumber = jobNumber;
+		this.jobSystem = jobSystem;
+		this.createDate = createDate;
+		this.createTime = createTime;
+		this.outputQueue = outputQueue;
+		this.status = status;
+		this.userData = userData;
+		this.formType = formType;
+		this.pages = pages;
+	}
+
+	public static SpooledFileInfo of(SpooledFile file) throws Exception {
+		Integer pages = file.getIntegerAttribute(PrintObject.ATTR_PAGES);
+		return new SpooledFileInfo(file.getName(), file.getNumber(), file.getJobName(), file.getJobUser(), file.getJobNumber(), file.getStringAttribute(PrintObject.ATTR_JOBSYSTEM), file.getStringAttribute(PrintObject.ATTR_DATE), file.getStringAttribute(PrintObject.ATTR_TIME), file.getStringAttribute(PrintObject.ATTR_OUTPUT_QUEUE), file.getStringAttribute(PrintObject.ATTR_SPLFSTATUS), file.getStringAttribute(PrintObject.ATTR_USERDATA), file.getStringAttribute(PrintObject.ATTR_FORMTYPE), pages == null ? 0 : pages);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getNumber() {
+		return number;
+	}
+
+	public String getJobName() {
+		return jobName;
+	}
+
+	public String getJobUser() {
+		return jobUser;
+	}
+
+	public String getJobNumber() {
+		return jobNumber;
+	}
+
+	public String getJobSystem() {
+		return jobSystem;
+	}
+
+	/**
+	 * @return creation date as CYYMMDD
+	 */
+	public String getCreateDate() {
+		return createDate;
+	}
+
+	/**
+	 * @return creation time as HHMMSS
+	 */
+	public String getCreateTime() {
+		return createTime;
+	}
+
+	/**
+	 * @return creation date and time in the time zone of the Mule server, null if unknown
+	 */
+	public Date getCreated() {
+		if (createDate == null || createTime == null || createDate.length() != 7 || createTime.length() != 6) {
+			return null;
+		}
+		Calendar calendar = Calendar.getInstance();
+		calendar.clear();
+		calendar.set(1900 + (createDate.charAt(0) - '0') * 100 + Integer.parseInt(createDate.substring(1, 3)), Integer.parseInt(createDate.substring(3, 5)) - 1, Integer.parseInt(createDate.substring(5, 7)), Integer.parseInt(createTime.substring(0, 2)), Integer.parseInt(createTime.substring(2, 4)), Integer.parseInt(createTime.substring(4, 6)));
+		return calendar.getTime();
+	}
+
+	/**
+	 * @return IFS path of the output queue
+	 */
+	public String getOutputQueue() {
+		return outputQueue;
+	}
+
+	/**
+	 * @return status, e.g. *READY, *HELD or *WRITING
+	 */
+	public String getStatus() {
+		return status;
+	}
+
+	public String getUserData() {
+		return userData;
+	}
+
+	public String getFormType() {
+		return formType;
+	}
+
+	public int getPages() {
+		return pages;
+	}
+
+	/**
+	 * @return creation date and time as CYYMMDDHHMMSS, sorts in creation order
+	 */
+	public String getCreateTimestamp() {
+		return (createDate == null ? "" : createDate) + (createTime == null ? "" : createTime);
+	}
+
+	/**
+	 * @return job number/user/name, spooled file name and number, job system and creation time
+	 */
+	public String getId() {
+		return jobNumber + "/" + jobUser + "/" + jobName + "/" + name + "/" + number + "/" + jobSystem + "/" + getCreateTimestamp();
+	}
+
+	@Override
+	public String toString() {
+		return jobNumber + "/" + jobUser + "/" + jobName + " " + name + " " + number;
+	}
+
+}
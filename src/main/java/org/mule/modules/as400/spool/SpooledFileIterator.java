@@ -0,0 +1,118 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.spool;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.mule.modules.as400.strategy.ConnectionLease;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ibm.as400.access.SpooledFile;
+import com.ibm.as400.access.SpooledFileList;
+
+/**
+ * Iterates a spooled file list while the host is still building it. The list is opened asynchronously and each item
+ * is only waited for when the iteration gets to it, so the first spooled files are handed on before a long list is
+ * complete.
+ * <p>
+ * The list and its connection stay open until all spooled files are read, a read fails, the iterator is closed or its
+ * lease expires. A connection a read failed on is discarded instead of handed back.
+ */
+public class SpooledFileIterator implements Iterator<SpooledFileInfo>, Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(SpooledFileIterator.class);
+
+	private final SpooledFileList list;
+	private final ConnectionLease lease;
+	private int index;
+	private SpooledFileInfo next;
+	private boolean closed;
+
+	private SpooledFileIterator(SpooledFileList list, ConnectionLease lease) {
+		this.list = list;
+		this.lease = lease;
+		lease.setHolder(this);
+	}
+
+	/**
+	 * Start building a list with its filters set
+	 *
+	 * @param lease of the connection the list is built with, closed together with the iterator
+	 */
+	public static SpooledFileIterator open(SpooledFileList list, ConnectionLease lease) {
+		list.setAttributesToRetrieve(SpooledFileInfo.LIST_ATTRIBUTES);
+		list.openAsynchronously();
+		return new SpooledFileIterator(list, lease);
+	}
+
+	public synchronized boolean hasNext() {
+		if (next == null && !closed) {
+			lease.touch();
+			try {
+				next = readItem();
+			} catch (Exception e) {
+				// Includes ConnectionDroppedException
+				if (e instanceof IOException) {
+					lease.failed();
+				}
+				close();
+				throw new IllegalStateException("Spooled file list error", e);
+			}
+			if (next == null) {
+				close();
+			}
+		}
+		return next != null;
+	}
+
+	public synchronized SpooledFileInfo next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		SpooledFileInfo item = next;
+		next = null;
+		return item;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException("Spooled file lists are read only");
+	}
+
+	public synchronized void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		next = null;
+		try {
+			list.close();
+		} catch (Exception e) {
+			lease.failed();
+			logger.warn("Can't close spooled file list", e);
+		} finally {
+			lease.close();
+		}
+	}
+
+	// Waits for the next item unless the list is already complete
+	private SpooledFileInfo readItem() throws Exception {
+		if (index >= list.size()) {
+			if (list.isCompleted()) {
+				return null;
+			}
+			list.waitForItem(index + 1);
+			if (index >= list.size()) {
+				return null;
+			}
+		}
+		return SpooledFileInfo.of((SpooledFile) list.getObject(index++));
+	}
+
+}
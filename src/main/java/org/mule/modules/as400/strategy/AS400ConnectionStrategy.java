@@ -6,13 +6,20 @@
 package org.mule.modules.as400.strategy;
 
 import java.beans.PropertyVetoException;
+import java.io.File;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.net.UnknownHostException;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.mule.api.ConnectionException;
 import org.mule.api.ConnectionExceptionCode;
+import org.mule.api.annotations.Configurable;
 import org.mule.api.annotations.Connect;
 import org.mule.api.annotations.ConnectionIdentifier;
 import org.mule.api.annotations.Disconnect;
@@ -21,17 +28,28 @@ import org.mule.api.annotations.ValidateConnection;
 import org.mule.api.annotations.components.ConnectionManagement;
 import org.mule.api.annotations.display.FriendlyName;
 import org.mule.api.annotations.display.Password;
+import org.mule.api.annotations.display.Placement;
 import org.mule.api.annotations.display.Summary;
 import org.mule.api.annotations.param.ConnectionKey;
+import org.mule.api.annotations.param.Default;
 import org.mule.api.annotations.param.Optional;
+import org.mule.modules.as400.dataqueue.DataQueueCache;
+import org.mule.modules.as400.dataqueue.WriteBehindDrainer;
+import org.mule.modules.as400.dataqueue.WriteBehindJournal;
 import org.mule.modules.as400.exception.AS400CommandCallException;
+import org.mule.modules.as400.exception.AS400TransportException;
+import org.mule.modules.as400.metrics.ConnectorMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.ibm.as400.access.AS400;
+import com.ibm.as400.access.AS400ConnectionPool;
 import com.ibm.as400.access.AS400SecurityException;
+import com.ibm.as400.access.CharConverter;
 import com.ibm.as400.access.CommandCall;
-import com.ibm.as400.access.SocketProperties;
+import com.ibm.as400.access.ConnectionPoolEvent;
+import com.ibm.as400.access.ConnectionPoolListener;
+import com.ibm.as400.access.ProgramCall;
 
 /**
  * AS400 Connection Management
@@ -43,11 +61,253 @@ public class AS400ConnectionStrategy {
 
 	private static final Logger logger = LoggerFactory.getLogger(AS400ConnectionStrategy.class);
 	
-	private AS400 system;
+	private volatile AS400 system;
 	private CommandCall command;
+	private AS400Transport transport = new HostServerTransport();
+	private DataQueueCache dataQueueCache = new DataQueueCache(transport);
 	private String endpoint, userid, password, libraryList;
-	private long lastConnectionCheck;
-	private static long KEEPALIVE_PERIOD = 60000;
+	private static long POOL_CLEANUP_INTERVAL = 60000;
+
+	private AS400ConnectionPool pool;
+	// Per-connection state of pooled and dedicated connections. Contexts reference their connection, so they are removed
+	// explicitly: when the pool closes the connection, when it is discarded or closed, and on disconnect.
+	private final Map<AS400, ConnectionContext> connectionContexts = Collections.synchronizedMap(new HashMap<AS400, ConnectionContext>());
+	// Data queue cache counts of the contexts removed so far, so the totals of the connection don't go backwards
+	private final AtomicLong removedCacheHits = new AtomicLong();
+	private final AtomicLong removedCacheMisses = new AtomicLong();
+
+	/**
+	 * Borrow a connection from a pool for every operation instead of sharing one AS400 object
+	 */
+	@Configurable
+	@Optional
+	@Default("false")
+	@Placement(group = "Connection Pool", order = 1)
+	@FriendlyName("Use Connection Pool")
+	private boolean poolEnabled;
+
+	/**
+	 * Number of connections opened when connecting, each connected to the preconnect services
+	 */
+	@Configurable
+	@Optional
+	@Default("0")
+	@Placement(group = "Connection Pool", order = 2)
+	@FriendlyName("Min Pool Size")
+	private int poolMinSize;
+
+	/**
+	 * Maximum number of connections in the pool, -1 for no limit
+	 */
+	@Configurable
+	@Optional
+	@Default("10")
+	@Placement(group = "Connection Pool", order = 3)
+	@FriendlyName("Max Pool Size")
+	private int poolMaxSize;
+
+	/**
+	 * Milliseconds a pooled connection can stay idle before it is closed
+	 */
+	@Configurable
+	@Optional
+	@Default("300000")
+	@Placement(group = "Connection Pool", order = 4)
+	@FriendlyName("Max Idle Time")
+	private long poolMaxInactivity;
+
+	/**
+	 * Comma separated list of host services (DATAQUEUE, COMMAND) the initial pool connections are connected to
+	 */
+	@Configurable
+	@Optional
+	@Default("DATAQUEUE,COMMAND")
+	@Placement(group = "Connection Pool", order = 5)
+	@FriendlyName("Preconnect Services")
+	private String poolPreconnectServices;
+
+	/**
+	 * CL commands run once in every new command job, after the library list is set
+	 */
+	@Configurable
+	@Optional
+	@Placement(group = "Job Setup", order = 1)
+	@FriendlyName("Job Setup Commands")
+	private List<String> jobSetupCommands;
+
+	/**
+	 * Milliseconds before the second reconnect attempt, doubled after every failed attempt
+	 */
+	@Configurable
+	@Optional
+	@Default("1000")
+	@Placement(group = "Reconnection", order = 1)
+	@FriendlyName("Initial Reconnect Delay")
+	private long reconnectInitialDelay;
+
+	/**
+	 * Upper limit in milliseconds for the delay between reconnect attempts
+	 */
+	@Configurable
+	@Optional
+	@Default("60000")
+	@Placement(group = "Reconnection", order = 2)
+	@FriendlyName("Max Reconnect Delay")
+	private long reconnectMaxDelay;
+
+	/**
+	 * Milliseconds a processor waits for the first reconnect attempt after the connection was lost.
+	 * While reconnect attempts keep failing, processors fail right away.
+	 */
+	@Configurable
+	@Optional
+	@Default("5000")
+	@Placement(group = "Reconnection", order = 3)
+	@FriendlyName("Processor Reconnect Wait")
+	private long processorReconnectWait;
+
+	/**
+	 * Milliseconds between background connection checks, 0 disables them
+	 */
+	@Configurable
+	@Optional
+	@Default("60000")
+	@Placement(group = "Heartbeat", order = 1)
+	@FriendlyName("Heartbeat Period")
+	private long heartbeatPeriod;
+
+	/**
+	 * How to check hosts before IBM i 7.1: COMMAND runs a no-op command, SOCKET only checks the local sockets
+	 */
+	@Configurable
+	@Optional
+	@Default("COMMAND")
+	@Placement(group = "Heartbeat", order = 2)
+	@FriendlyName("Pre 7.1 Host Probe")
+	private LegacyHostProbe legacyHostProbe;
+
+	/**
+	 * Publish data queue, command and connection metrics as MBeans
+	 */
+	@Configurable
+	@Optional
+	@Default("true")
+	@Placement(group = "Metrics", order = 1)
+	@FriendlyName("JMX Metrics")
+	private boolean jmxMetricsEnabled;
+
+	/**
+	 * Publish data queue, command and connection metrics to the Micrometer global registry. Needs Micrometer on the
+	 * classpath.
+	 */
+	@Configurable
+	@Optional
+	@Default("false")
+	@Placement(group = "Metrics", order = 2)
+	@FriendlyName("Micrometer Metrics")
+	private boolean micrometerMetricsEnabled;
+
+	/**
+	 * Directory of the logs kept by sources that remove entries after processing. Defaults to .mule/as400 in the Mule
+	 * home, or the temporary directory outside of Mule.
+	 */
+	@Configurable
+	@Optional
+	@Placement(group = "Acknowledged Reads", order = 1)
+	@FriendlyName("Dedup Log Directory")
+	private String dedupLogDirectory;
+
+	/**
+	 * Threads running the async operations of this connection
+	 */
+	@Configurable
+	@Optional
+	@Default("8")
+	@Placement(group = "Async Operations", order = 1)
+	@FriendlyName("Async I/O Threads")
+	private int asyncThreads;
+
+	/**
+	 * Async operations waiting for a thread, further operations are rejected until the queue drains
+	 */
+	@Configurable
+	@Optional
+	@Default("100")
+	@Placement(group = "Async Operations", order = 2)
+	@FriendlyName("Async Queue Size")
+	private int asyncQueueSize;
+
+	/**
+	 * Milliseconds a streamed result (record reader, IFS or spooled file stream, spooled file list) can go without a
+	 * read before it is closed and its connection handed back, 0 to keep it until it is read to the end or closed
+	 */
+	@Configurable
+	@Optional
+	@Default("600000")
+	@Placement(group = "Streaming", order = 1)
+	@FriendlyName("Stream Idle Timeout")
+	private long streamIdleTimeout;
+
+	private final IoExecutor ioExecutor = new IoExecutor();
+	private final ConnectionLeases leases = new ConnectionLeases();
+
+	/**
+	 * Directory of the write-behind journals, each connection gets its own subdirectory. Defaults to .mule/as400 in the
+	 * Mule home, or the temporary directory outside of Mule.
+	 */
+	@Configurable
+	@Optional
+	@Placement(group = "Write Behind", order = 1)
+	@FriendlyName("Write Behind Directory")
+	private String writeBehindDirectory;
+
+	/**
+	 * Disk space in MB the write-behind journal of a connection may take, writes are rejected once it is full
+	 */
+	@Configurable
+	@Optional
+	@Default("256")
+	@Placement(group = "Write Behind", order = 2)
+	@FriendlyName("Write Behind Max Size")
+	private int writeBehindMaxSize;
+
+	private final Object writeBehindLock = new Object();
+	private volatile WriteBehindJournal writeBehindJournal;
+	private WriteBehindDrainer writeBehindDrainer;
+
+	private volatile ConnectorMetrics metrics;
+	// Set once connected, until disconnected
+	private volatile boolean open;
+
+	private final ConnectionHeartbeat heartbeat = new ConnectionHeartbeat(new ConnectionHeartbeat.Probe() {
+		public boolean isAlive() throws Exception {
+			AS400 current = system;
+			if (current == null) {
+				return false;
+			}
+			// OS 7.1 or higher - use isConnectionAlive
+			if (current.getVersion() > 6) {
+				return current.isConnectionAlive();
+			}
+			if (legacyHostProbe == LegacyHostProbe.SOCKET) {
+				return current.isConnected();
+			}
+			// Own command object, so the probe doesn't touch the message list of a running command
+			return transport.createCommandCall(current).run("CHGJOB");
+		}
+	}, new Runnable() {
+		public void run() {
+			logger.warn("AS400 connection check failed, reconnecting to " + endpoint + " in background");
+			reconnectScheduler.connectionLost();
+		}
+	});
+
+	private final ReconnectScheduler reconnectScheduler = new ReconnectScheduler(new ReconnectScheduler.Reconnector() {
+		public void reconnect() throws Exception {
+			closeConnection();
+			connect();
+		}
+	});
 	
 	@Connect
 	@TestConnectivity
@@ -59,7 +319,25 @@ public class AS400ConnectionStrategy {
 			setUserID(userid);
 			setPwd(password);
 			setLibraryList(libraryList);
+			reconnectScheduler.setName(endpoint);
+			reconnectScheduler.setInitialDelay(reconnectInitialDelay);
+			reconnectScheduler.setMaxDelay(reconnectMaxDelay);
 			connect();
+			heartbeat.start(endpoint, heartbeatPeriod);
+			// The drainer and the async operations record into the metrics, they have to be in place first
+			metrics = ConnectorMetrics.forConnection(endpoint, userid);
+			metrics.attach(this, jmxMetricsEnabled, micrometerMetricsEnabled);
+			ioExecutor.start(endpoint, asyncThreads, asyncQueueSize, metrics);
+			leases.start(endpoint, streamIdleTimeout);
+			// Entries left in the journal by the last run are drained without waiting for the next write
+			if (WriteBehindJournal.exists(getWriteBehindJournalDirectory())) {
+				try {
+					openWriteBehindJournal();
+				} catch (IOException e) {
+					logger.warn("Can't open write-behind journal " + getWriteBehindJournalDirectory(), e);
+				}
+			}
+			open = true;
 		} catch (UnknownHostException e) {
 			throw new ConnectionException(ConnectionExceptionCode.UNKNOWN_HOST,
 					e.getLocalizedMessage(), e.getMessage(), e.getCause());
@@ -82,25 +360,261 @@ public class AS400ConnectionStrategy {
 	}
 
 	public void connect() throws Exception {
-		setLastConnectionCheck(System.currentTimeMillis());
-		system = new AS400(endpoint, userid, password);
-		system.setGuiAvailable(false);
-		SocketProperties sp = new SocketProperties();
-		sp.setKeepAlive(true);
-		system.setSocketProperties(sp);
-		system.validateSignon();
-		command = new CommandCall(system);
-		// Set library list
+		// Cached queue objects and the command job context are bound to the previous system object
+		dataQueueCache.invalidate();
+		if (system != null) {
+			removeConnectionContext(system);
+		}
+		system = createSystem();
+		command = getCommand(system);
+		if (poolEnabled) {
+			createPool();
+		}
+		heartbeat.markHealthy();
+	}
+
+	private AS400 createSystem() throws Exception {
+		return transport.createSystem(endpoint, userid, password);
+	}
+
+	// Job attributes only need to be set once per command job: inquiry message auto-reply, library list and setup commands
+	private void initializeJob(CommandCall command) throws AS400CommandCallException {
 		try{
+			// Change job's inquiry message reply settings to auto-reply
+			command.run("CHGJOB INQMSGRPY(*DFT)");
 			if (libraryList != null) {
 				List<String> libs = Arrays.asList(libraryList.split("\\s*,\\s*"));
 				for (String lib : libs)
 				command.run("ADDLIBLE LIB(" + lib + ")");
 			}
+			if (jobSetupCommands != null) {
+				for (String setupCommand : jobSetupCommands) {
+					if (!command.run(setupCommand)) {
+						throw new AS400CommandCallException("Job setup command failed: " + setupCommand);
+					}
+				}
+			}
+		}catch (AS400CommandCallException e){
+			throw e;
 		}catch (Exception e){
 			throw new AS400CommandCallException("CommandCall error: ", e); 
 		}
+	}
+
+	private void createPool() throws Exception {
+		pool = new AS400ConnectionPool();
+		if (poolMaxSize != 0) {
+			pool.setMaxConnections(poolMaxSize);
+		}
+		pool.setMaxInactivity(poolMaxInactivity);
+		pool.setCleanupInterval(Math.min(POOL_CLEANUP_INTERVAL, Math.max(poolMaxInactivity, 1000)));
+		pool.setRunMaintenance(true);
+		pool.addConnectionPoolListener(new ConnectionPoolListener() {
+			public void connectionExpired(ConnectionPoolEvent event) {
+				removeConnectionContext((AS400) event.getSource());
+			}
+
+			public void connectionCreated(ConnectionPoolEvent event) {
+			}
+
+			public void connectionPoolClosed(ConnectionPoolEvent event) {
+			}
+
+			public void connectionReleased(ConnectionPoolEvent event) {
+			}
+
+			public void connectionReturned(ConnectionPoolEvent event) {
+			}
+
+			public void maintenanceThreadRun(ConnectionPoolEvent event) {
+			}
+		});
+		// Borrow all initial connections before returning them, otherwise the pool hands back the same one
+		AS400[] initial = new AS400[poolMinSize];
+		try {
+			for (int i = 0; i < poolMinSize; i++) {
+				initial[i] = pool.getConnection(endpoint, userid, password);
+				for (int service : parseServices(poolPreconnectServices)) {
+					initial[i].connectService(service);
+					if (service == AS400.COMMAND) {
+						getCommand(initial[i]);
+					}
+				}
+			}
+		} finally {
+			for (AS400 pooled : initial) {
+				if (pooled != null) {
+					pool.returnConnectionToPool(pooled);
+				}
+			}
+		}
+	}
+
+	private static int[] parseServices(String services) {
+		if (services == null || services.trim().isEmpty()) {
+			return new int[0];
+		}
+		String[] names = services.trim().split("\\s*,\\s*");
+		int[] result = new int[names.length];
+		for (int i = 0; i < names.length; i++) {
+			if ("DATAQUEUE".equalsIgnoreCase(names[i])) {
+				result[i] = AS400.DATAQUEUE;
+			} else if ("COMMAND".equalsIgnoreCase(names[i])) {
+				result[i] = AS400.COMMAND;
+			} else {
+				throw new IllegalArgumentException("Unsupported preconnect service: " + names[i]);
+			}
+		}
+		return result;
+	}
+
+	private void removeConnectionContext(AS400 connection) {
+		ConnectionContext context = connectionContexts.remove(connection);
+		if (context != null) {
+			addRemovedCacheCounts(context.getDataQueueCache());
+		}
+	}
+
+	private void removeConnectionContexts() {
+		synchronized (connectionContexts) {
+			for (ConnectionContext context : connectionContexts.values()) {
+				addRemovedCacheCounts(context.getDataQueueCache());
+			}
+			connectionContexts.clear();
+		}
+	}
+
+	private void addRemovedCacheCounts(DataQueueCache cache) {
+		removedCacheHits.addAndGet(cache.getHits());
+		removedCacheMisses.addAndGet(cache.getMisses());
+	}
+
+	private ConnectionContext getConnectionContext(AS400 connection) {
+		synchronized (connectionContexts) {
+			ConnectionContext context = connectionContexts.get(connection);
+			if (context == null) {
+				context = new ConnectionContext(connection, transport);
+				connectionContexts.put(connection, context);
+			}
+			return context;
+		}
+	}
+
+	/**
+	 * Get a connection for a single operation. Without pooling this validates the shared connection, with pooling a
+	 * connection to the given service is borrowed from the pool. Fails if the connection is being re-established.
+	 * Every borrowed connection has to be handed back with {@link #releaseSystem(AS400)}.
+	 *
+	 * @param service the AS400 service constant the connection is used for
+	 * @param maxWait milliseconds to wait for a reconnect in progress
+	 */
+	public AS400 borrowSystem(int service, long maxWait) throws AS400TransportException {
+		return borrowSystem(service, maxWait, true);
+	}
+
+	// Message sources don't fail fast, they keep waiting for the connection instead of polling a broken one
+	public AS400 borrowSystem(int service, long maxWait, boolean failFast) throws AS400TransportException {
+		validateOrReconnect(maxWait, failFast);
+		if (!poolEnabled || pool == null) {
+			return system;
+		}
+		try {
+			return pool.getConnection(endpoint, userid, password, service);
+		} catch (Exception e) {
+			throw new AS400TransportException("Can't get pooled connection to " + endpoint, e);
+		}
+	}
+
+	public void releaseSystem(AS400 borrowed) {
+		if (borrowed != null && borrowed != system && pool != null) {
+			pool.returnConnectionToPool(borrowed);
+		}
+	}
+
+	// A connection failed in use: reconnect the shared connection in the background, or drop the services of a
+	// pooled connection so the pool reconnects it on next use
+	public void discardSystem(AS400 borrowed) {
+		if (borrowed != null && borrowed == system) {
+			logger.warn("AS400 connection to " + endpoint + " failed in use");
+			heartbeat.markUnhealthy();
+		} else if (borrowed != null) {
+			borrowed.disconnectAllServices();
+			removeConnectionContext(borrowed);
+		}
+	}
+
+	/**
+	 * Hand a borrowed connection over to a streaming result that outlives the operation. Closing the lease releases
+	 * the connection instead of {@link #releaseSystem(AS400)}.
+	 *
+	 * @param name what the result reads, for the log
+	 */
+	public ConnectionLease leaseSystem(AS400 borrowed, String name) {
+		return leases.lease(this, borrowed, name);
+	}
+
+	/**
+	 * Open a connection outside of the pool for a long running consumer. It has to be closed with
+	 * {@link #closeDedicatedSystem(AS400)}.
+	 */
+	public AS400 openDedicatedSystem() throws AS400TransportException {
+		try {
+			AS400 dedicated = createSystem();
+			getConnectionContext(dedicated);
+			return dedicated;
+		} catch (Exception e) {
+			throw new AS400TransportException("Can't open dedicated connection to " + endpoint, e);
+		}
+	}
+
+	public void closeDedicatedSystem(AS400 dedicated) {
+		if (dedicated != null) {
+			dedicated.disconnectAllServices();
+			removeConnectionContext(dedicated);
+		}
+	}
+
+	/**
+	 * Command call of the given connection, with its command job initialized. The job is initialized again if the
+	 * command service was disconnected, as jt400 then starts a new job on next use.
+	 */
+	public CommandCall getCommand(AS400 connection) throws AS400CommandCallException {
+		ConnectionContext context = getConnectionContext(connection);
+		synchronized (context) {
+			CommandCall contextCommand = context.getCommand() != null ? context.getCommand() : context.createCommand();
+			if (!context.isJobInitialized() || !connection.isConnected(AS400.COMMAND)) {
+				context.setJobInitialized(false);
+				initializeJob(contextCommand);
+				context.setJobInitialized(true);
+			}
+			return contextCommand;
+		}
+	}
+
+	/**
+	 * Program call object reused for all calls over the given connection. Callers synchronize on it for the
+	 * duration of a call since its program and parameters are set per call.
+	 */
+	public ProgramCall getProgramCall(AS400 borrowed) throws AS400CommandCallException {
+		// Programs run in the command job, make sure it is initialized first
+		getCommand(borrowed);
+		return getConnectionContext(borrowed).getProgramCall();
+	}
 
+	// Converters may fetch their tables over the connection, so they are kept and dropped with it
+	public CharConverter getCharConverter(AS400 borrowed, int ccsid) throws UnsupportedEncodingException {
+		return getConnectionContext(borrowed).getCharConverter(ccsid);
+	}
+
+	public DataQueueCache getDataQueueCache(AS400 borrowed) {
+		if (borrowed == system) {
+			return dataQueueCache;
+		}
+		return getConnectionContext(borrowed).getDataQueueCache();
+	}
+
+	public AS400ConnectionPool getPool() {
+		return pool;
 	}
 	public CommandCall getCommand() {
 		return command;
@@ -110,61 +624,108 @@ public class AS400ConnectionStrategy {
 		this.command = command;
 	}
 
+	public DataQueueCache getDataQueueCache() {
+		return dataQueueCache;
+	}
+
+	/**
+	 * Data queue cache hits of the shared connection and of all pooled and dedicated connections, including those
+	 * closed since
+	 */
+	public long getDataQueueCacheHits() {
+		long hits = dataQueueCache.getHits() + removedCacheHits.get();
+		synchronized (connectionContexts) {
+			for (ConnectionContext context : connectionContexts.values()) {
+				hits += context.getDataQueueCache().getHits();
+			}
+		}
+		return hits;
+	}
+
+	public long getDataQueueCacheMisses() {
+		long misses = dataQueueCache.getMisses() + removedCacheMisses.get();
+		synchronized (connectionContexts) {
+			for (ConnectionContext context : connectionContexts.values()) {
+				misses += context.getDataQueueCache().getMisses();
+			}
+		}
+		return misses;
+	}
+
+	public AS400Transport getTransport() {
+		return transport;
+	}
+
+	// Takes effect on the next connect. Pooled connections are opened by the jt400 pool and always use the host servers
+	public void setTransport(AS400Transport transport) {
+		this.transport = transport;
+		addRemovedCacheCounts(dataQueueCache);
+		this.dataQueueCache = new DataQueueCache(transport);
+	}
+
 	@Disconnect
 	public void disconnect() {
+		open = false;
+		heartbeat.stop();
+		ioExecutor.stop();
+		leases.stop();
+		closeWriteBehindJournal();
+		reconnectScheduler.cancel();
+		closeConnection();
+		if (metrics != null) {
+			metrics.detach(this);
+		}
+	}
+
+	private void closeConnection() {
 		if(system !=null){
 			system.disconnectAllServices();
 			system = null;
 		}
+		if (pool != null) {
+			pool.close();
+			pool = null;
+		}
+		removeConnectionContexts();
+		dataQueueCache.invalidate();
 	}
 
+	// DevKit replaces a strategy that fails validation by connecting a new one, which can't succeed while the host is
+	// down. Once connected the strategy stays valid through an outage: the background reconnect restores the
+	// connection, processors fail fast meanwhile and write-behind writes keep going to the journal.
 	@ValidateConnection
 	public boolean isConnected() {
-		boolean connected = (system != null); 
-		if (connected) {
-			// Connected longer than keepalive period? run a remote command to "ping" the server
-			long currentTime = System.currentTimeMillis();
-			if (currentTime - getLastConnectionCheck() > KEEPALIVE_PERIOD) {
-				try {
-					// OS 7.1 or higher - use isConnectionAlive
-					if (system.getVersion() > 6) {
-						connected = system.isConnectionAlive();
-					// OS 6.1 and earlier - use a command / keepalive period
-					} else {
-						getCommand().run("CHGJOB");
-						connected = true;
-					}
-				} catch (Exception e) {
-					connected = false;
-					logger.warn("AS400 connection check: Can't reconnect to " + endpoint, e);
-				}
-				setLastConnectionCheck(System.currentTimeMillis());
-			}
-		}	
-		return connected;
+		return open;
 	}
 
-	// Validate and reconnect. Retry for specified number of times or forever if retries = -1
-	public void validateOrReconnect(int numberRetry, long waitTime) {
-		int retries = 0;
-		while (!isConnected() && (numberRetry < 0 || retries++ < numberRetry)) {
-			try {
-				disconnect();
-				connect();
-			} catch (Exception e) {
-				logger.warn("AS400 connector: Can't reconnect to " + endpoint, e);
-				if (waitTime > 0)
-					try {
-						wait(waitTime);
-					} catch (InterruptedException ie) {}
-			}
+	/**
+	 * @return true if the connection is established and passed its last check. Only reads the state published by the
+	 *         heartbeat, the request path never waits for a host round trip.
+	 */
+	public boolean isHealthy() {
+		return system != null && heartbeat.isHealthy();
+	}
+
+	// Validate the connection and hand a lost one to the background reconnect. Waits up to maxWait for a reconnect in
+	// progress; fail fast callers don't wait while reconnect attempts keep failing
+	public void validateOrReconnect(long maxWait, boolean failFast) throws AS400TransportException {
+		if (reconnectScheduler.getState() == ReconnectScheduler.State.CLOSED && !isHealthy()) {
+			logger.warn("AS400 connection check failed, reconnecting to " + endpoint + " in background");
+			reconnectScheduler.connectionLost();
+		}
+		if (!reconnectScheduler.awaitConnected(maxWait, failFast)) {
+			throw new AS400TransportException("AS400 connection to " + endpoint + " unavailable, reconnect in progress (" + reconnectScheduler.getState() + ")");
 		}
+	}
 
+	public ReconnectScheduler getReconnectScheduler() {
+		return reconnectScheduler;
 	}
 	
 	@ConnectionIdentifier
 	public String connectionId() {
-		return system.getUserId();
+		AS400 current = system;
+		return current != null ? current.getUserId() : userid;
 	}
 	
 	/**
@@ -214,11 +775,226 @@ public class AS400ConnectionStrategy {
 	}
 
 	public long getLastConnectionCheck() {
-		return lastConnectionCheck;
+		return heartbeat.getLastCheck();
 	}
 
+	/**
+	 * @deprecated connection checks are run by the heartbeat, this only sets the time it reports as its last check
+	 */
+	@Deprecated
 	public void setLastConnectionCheck(long lastConnectionCheck) {
-		this.lastConnectionCheck = lastConnectionCheck;
+		heartbeat.setLastCheck(lastConnectionCheck);
+	}
+
+	public ConnectionHeartbeat getHeartbeat() {
+		return heartbeat;
+	}
+
+	public ConnectorMetrics getMetrics() {
+		return metrics;
+	}
+
+	public boolean getJmxMetricsEnabled() {
+		return jmxMetricsEnabled;
+	}
+
+	public void setJmxMetricsEnabled(boolean jmxMetricsEnabled) {
+		this.jmxMetricsEnabled = jmxMetricsEnabled;
+	}
+
+	public boolean getMicrometerMetricsEnabled() {
+		return micrometerMetricsEnabled;
+	}
+
+	public void setMicrometerMetricsEnabled(boolean micrometerMetricsEnabled) {
+		this.micrometerMetricsEnabled = micrometerMetricsEnabled;
+	}
+
+	/**
+	 * @return the write-behind journal of this connection, opened and drained from the first call on
+	 */
+	public WriteBehindJournal openWriteBehindJournal() throws IOException {
+		synchronized (writeBehindLock) {
+			if (writeBehindJournal == null) {
+				long maxBytes = (writeBehindMaxSize > 0 ? writeBehindMaxSize : 256) * 1024L * 1024L;
+				WriteBehindJournal journal = WriteBehindJournal.open(getWriteBehindJournalDirectory(), maxBytes);
+				writeBehindDrainer = new WriteBehindDrainer(journal, this);
+				writeBehindDrainer.start(endpoint);
+				writeBehindJournal = journal;
+			}
+			return writeBehindJournal;
+		}
+	}
+
+	/**
+	 * @return the write-behind journal, null if it is not open
+	 */
+	public WriteBehindJournal getWriteBehindJournal() {
+		return writeBehindJournal;
+	}
+
+	private void closeWriteBehindJournal() {
+		synchronized (writeBehindLock) {
+			if (writeBehindJournal != null) {
+				writeBehindDrainer.stop();
+				writeBehindJournal.release();
+				writeBehindDrainer = null;
+				writeBehindJournal = null;
+			}
+		}
+	}
+
+	private File getWriteBehindJournalDirectory() {
+		String directory = writeBehindDirectory != null ? writeBehindDirectory : getDefaultStateDirectory();
+		return new File(directory, (endpoint + "_" + userid).replaceAll("[^A-Za-z0-9._-]", "_") + ".writebehind");
+	}
+
+	/**
+	 * @return directory for state kept on disk, .mule/as400 in the Mule home or the temporary directory outside of Mule
+	 */
+	public static String getDefaultStateDirectory() {
+		String muleHome = System.getProperty("mule.home");
+		return muleHome != null ? new File(muleHome, ".mule/as400").getPath() : new File(System.getProperty("java.io.tmpdir"), "mule-as400").getPath();
+	}
+
+	public String getWriteBehindDirectory() {
+		return writeBehindDirectory;
+	}
+
+	public void setWriteBehindDirectory(String writeBehindDirectory) {
+		this.writeBehindDirectory = writeBehindDirectory;
+	}
+
+	public int getWriteBehindMaxSize() {
+		return writeBehindMaxSize;
+	}
+
+	public void setWriteBehindMaxSize(int writeBehindMaxSize) {
+		this.writeBehindMaxSize = writeBehindMaxSize;
+	}
+
+	public IoExecutor getIoExecutor() {
+		return ioExecutor;
+	}
+
+	public int getAsyncThreads() {
+		return asyncThreads;
+	}
+
+	public void setAsyncThreads(int asyncThreads) {
+		this.asyncThreads = asyncThreads;
+	}
+
+	public int getAsyncQueueSize() {
+		return asyncQueueSize;
+	}
+
+	public void setAsyncQueueSize(int asyncQueueSize) {
+		this.asyncQueueSize = asyncQueueSize;
+	}
+
+	public long getStreamIdleTimeout() {
+		return streamIdleTimeout;
+	}
+
+	public void setStreamIdleTimeout(long streamIdleTimeout) {
+		this.streamIdleTimeout = streamIdleTimeout;
+	}
+
+	public String getDedupLogDirectory() {
+		return dedupLogDirectory;
+	}
+
+	public void setDedupLogDirectory(String dedupLogDirectory) {
+		this.dedupLogDirectory = dedupLogDirectory;
+	}
+
+	public long getHeartbeatPeriod() {
+		return heartbeatPeriod;
+	}
+
+	public void setHeartbeatPeriod(long heartbeatPeriod) {
+		this.heartbeatPeriod = heartbeatPeriod;
+	}
+
+	public LegacyHostProbe getLegacyHostProbe() {
+		return legacyHostProbe;
+	}
+
+	public void setLegacyHostProbe(LegacyHostProbe legacyHostProbe) {
+		this.legacyHostProbe = legacyHostProbe;
 	}
 	
-}
\ No newline at end of file
+	public List<String> getJobSetupCommands() {
+		return jobSetupCommands;
+	}
+
+	public void setJobSetupCommands(List<String> jobSetupCommands) {
+		this.jobSetupCommands = jobSetupCommands;
+	}
+
+	public long getReconnectInitialDelay() {
+		return reconnectInitialDelay;
+	}
+
+	public void setReconnectInitialDelay(long reconnectInitialDelay) {
+		this.reconnectInitialDelay = reconnectInitialDelay;
+	}
+
+	public long getReconnectMaxDelay() {
+		return reconnectMaxDelay;
+	}
+
+	public void setReconnectMaxDelay(long reconnectMaxDelay) {
+		this.reconnectMaxDelay = reconnectMaxDelay;
+	}
+
+	public long getProcessorReconnectWait() {
+		return processorReconnectWait;
+	}
+
+	public void setProcessorReconnectWait(long processorReconnectWait) {
+		this.processorReconnectWait = processorReconnectWait;
+	}
+
+	public boolean getPoolEnabled() {
+		return poolEnabled;
+	}
+
+	public void setPoolEnabled(boolean poolEnabled) {
+		this.poolEnabled = poolEnabled;
+	}
+
+	public int getPoolMinSize() {
+		return poolMinSize;
+	}
+
+	public void setPoolMinSize(int poolMinSize) {
+		this.poolMinSize = poolMinSize;
+	}
+
+	public int getPoolMaxSize() {
+		return poolMaxSize;
+	}
+
+	public void setPoolMaxSize(int poolMaxSize) {
+		this.poolMaxSize = poolMaxSize;
+	}
+
+	public long getPoolMaxInactivity() {
+		return poolMaxInactivity;
+	}
+
+	public void setPoolMaxInactivity(long poolMaxInactivity) {
+		this.poolMaxInactivity = poolMaxInactivity;
+	}
+
+	public String getPoolPreconnectServices() {
+		return poolPreconnectServices;
+	}
+
+	public void setPoolPreconnectServices(String poolPreconnectServices) {
+		this.poolPreconnectServices = poolPreconnectServices;
+	}
+
+}
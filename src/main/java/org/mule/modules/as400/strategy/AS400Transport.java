@@ -0,0 +1,32 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.strategy;
+
+import org.mule.modules.as400.dataqueue.HostDataQueue;
+import org.mule.modules.as400.dataqueue.HostKeyedDataQueue;
+
+import com.ibm.as400.access.AS400;
+import com.ibm.as400.access.CommandCall;
+
+/**
+ * Creates the objects the connector talks to the host with. The default {@link HostServerTransport} connects to the
+ * IBM i host servers; other implementations can stand in for a host, e.g. to benchmark the connector. Program calls,
+ * IFS, spooled files and record level access always go to the host servers.
+ */
+public interface AS400Transport {
+
+	/**
+	 * Create a signed on system object
+	 */
+	AS400 createSystem(String endpoint, String userid, String password) throws Exception;
+
+	HostDataQueue createDataQueue(AS400 system, String path);
+
+	HostKeyedDataQueue createKeyedDataQueue(AS400 system, String path);
+
+	CommandCall createCommandCall(AS400 system);
+
+}
@@ -0,0 +1,80 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.strategy;
+
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.mule.modules.as400.dataqueue.DataQueueCache;
+
+import com.ibm.as400.access.AS400;
+import com.ibm.as400.access.CharConverter;
+import com.ibm.as400.access.CommandCall;
+import com.ibm.as400.access.ProgramCall;
+
+/**
+ * State kept next to an AS400 connection: its data queue cache, its character converters, its command call and
+ * whether its command job has been initialized. The command call is created on first use so connections only used
+ * for data queues don't start a command job.
+ */
+class ConnectionContext {
+
+	private final AS400 system;
+	private final AS400Transport transport;
+	private final DataQueueCache dataQueueCache;
+	private final ConcurrentMap<Integer, CharConverter> charConverters = new ConcurrentHashMap<Integer, CharConverter>();
+	private CommandCall command;
+	private ProgramCall programCall;
+	private boolean jobInitialized;
+
+	ConnectionContext(AS400 system, AS400Transport transport) {
+		this.system = system;
+		this.transport = transport;
+		this.dataQueueCache = new DataQueueCache(transport);
+	}
+
+	DataQueueCache getDataQueueCache() {
+		return dataQueueCache;
+	}
+
+	CharConverter getCharConverter(int ccsid) throws UnsupportedEncodingException {
+		CharConverter converter = charConverters.get(ccsid);
+		if (converter == null) {
+			converter = new CharConverter(ccsid, system);
+			CharConverter existing = charConverters.putIfAbsent(ccsid, converter);
+			if (existing != null) {
+				converter = existing;
+			}
+		}
+		return converter;
+	}
+
+	CommandCall getCommand() {
+		return command;
+	}
+
+	CommandCall createCommand() {
+		command = transport.createCommandCall(system);
+		return command;
+	}
+
+	boolean isJobInitialized() {
+		return jobInitialized;
+	}
+
+	void setJobInitialized(boolean jobInitialized) {
+		this.jobInitialized = jobInitialized;
+	}
+
+	synchronized ProgramCall getProgramCall() {
+		if (programCall == null) {
+			programCall = new ProgramCall(system);
+		}
+		return programCall;
+	}
+
+}
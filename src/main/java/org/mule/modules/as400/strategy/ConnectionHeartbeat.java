@@ -0,0 +1,141 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.strategy;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Probes the connection on a background thread and publishes the outcome, so callers only read a volatile flag
+ * instead of paying for a host round trip. A failed probe marks the connection unhealthy and reports it once.
+ */
+public class ConnectionHeartbeat {
+
+	private static final Logger logger = LoggerFactory.getLogger(ConnectionHeartbeat.class);
+
+	/**
+	 * Checks the connection, a false result or an exception means it is lost
+	 */
+	public interface Probe {
+		boolean isAlive() throws Exception;
+	}
+
+	private final Probe probe;
+	private final Runnable onFailure;
+	private final Object lock = new Object();
+
+	private volatile boolean healthy = true;
+	private volatile long lastCheck;
+	private ScheduledExecutorService executor;
+
+	private final AtomicLong checks = new AtomicLong();
+	private final AtomicLong failedChecks = new AtomicLong();
+
+	public ConnectionHeartbeat(Probe probe, Runnable onFailure) {
+		this.probe = probe;
+		this.onFailure = onFailure;
+	}
+
+	/**
+	 * Start probing every period milliseconds. A period of 0 or less disables the heartbeat, the connection then
+	 * counts as healthy until a failure is reported.
+	 */
+	public void start(final String name, long period) {
+		synchronized (lock) {
+			stop();
+			if (period <= 0) {
+				return;
+			}
+			executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "as400-heartbeat-" + name);
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			executor.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					check();
+				}
+			}, period, period, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	public void stop() {
+		synchronized (lock) {
+			if (executor != null) {
+				executor.shutdownNow();
+				executor = null;
+			}
+		}
+	}
+
+	private void check() {
+		// Nothing to probe until the connection is back
+		if (!healthy) {
+			return;
+		}
+		checks.incrementAndGet();
+		boolean alive;
+		try {
+			alive = probe.isAlive();
+		} catch (Exception e) {
+			logger.warn("AS400 connection check failed", e);
+			alive = false;
+		}
+		lastCheck = System.currentTimeMillis();
+		if (!alive) {
+			failedChecks.incrementAndGet();
+			markUnhealthy();
+		}
+	}
+
+	/**
+	 * Report a lost connection, runs the failure handler the first time only
+	 */
+	public void markUnhealthy() {
+		boolean report;
+		synchronized (lock) {
+			report = healthy;
+			healthy = false;
+		}
+		if (report) {
+			onFailure.run();
+		}
+	}
+
+	public void markHealthy() {
+		lastCheck = System.currentTimeMillis();
+		healthy = true;
+	}
+
+	public boolean isHealthy() {
+		return healthy;
+	}
+
+	public long getLastCheck() {
+		return lastCheck;
+	}
+
+	void setLastCheck(long lastCheck) {
+		this.lastCheck = lastCheck;
+	}
+
+	public long getChecks() {
+		return checks.get();
+	}
+
+	public long getFailedChecks() {
+		return failedChecks.get();
+	}
+
+}
@@ -0,0 +1,108 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.strategy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ibm.as400.access.AS400;
+
+/**
+ * A borrowed connection held by a streaming result after the operation returned it, e.g. a record reader or a file
+ * stream. Closing the lease hands the connection back, or discards it once a read failed on it.
+ * <p>
+ * Once the result holding the connection is set, the lease is watched: a result that is not read for the stream
+ * idle timeout is closed, which also closes the lease, so a flow that neither reads a result to the end nor closes it
+ * doesn't keep the connection for good.
+ */
+public class ConnectionLease implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(ConnectionLease.class);
+
+	private final ConnectionLeases leases;
+	private final AS400ConnectionStrategy strategy;
+	private final AS400 system;
+	private final String name;
+	private final AtomicBoolean closed = new AtomicBoolean();
+	private volatile boolean failed;
+	private volatile long lastUsed = System.currentTimeMillis();
+	private volatile Closeable holder;
+
+	ConnectionLease(ConnectionLeases leases, AS400ConnectionStrategy strategy, AS400 system, String name) {
+		this.leases = leases;
+		this.strategy = strategy;
+		this.system = system;
+		this.name = name;
+	}
+
+	/**
+	 * Start watching the lease
+	 *
+	 * @param holder the result holding the connection, closed when the lease expires
+	 */
+	public void setHolder(Closeable holder) {
+		this.holder = holder;
+		lastUsed = System.currentTimeMillis();
+		leases.add(this);
+	}
+
+	/**
+	 * Record a read, the idle timeout starts over
+	 */
+	public void touch() {
+		lastUsed = System.currentTimeMillis();
+	}
+
+	/**
+	 * A read failed on the connection, discard it instead of handing it back
+	 */
+	public void failed() {
+		failed = true;
+	}
+
+	public AS400 getSystem() {
+		return system;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void close() {
+		if (!closed.compareAndSet(false, true)) {
+			return;
+		}
+		leases.remove(this);
+		if (failed) {
+			strategy.discardSystem(system);
+		}
+		strategy.releaseSystem(system);
+	}
+
+	boolean isIdleSince(long time) {
+		return lastUsed < time;
+	}
+
+	// Closing the holder closes the lease, the lease is closed anyway in case the holder fails to
+	void expire(String reason) {
+		logger.warn("Closing " + name + " " + reason + ", read streamed results to the end or close them");
+		Closeable current = holder;
+		try {
+			if (current != null) {
+				current.close();
+			}
+		} catch (IOException e) {
+			logger.warn("Can't close " + name, e);
+		} finally {
+			close();
+		}
+	}
+
+}
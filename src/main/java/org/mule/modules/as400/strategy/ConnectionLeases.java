@@ -0,0 +1,103 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.strategy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.ibm.as400.access.AS400;
+
+/**
+ * The connection leases of streaming results of a connection. A background check expires the leases that were not
+ * used for the idle timeout, stopping expires all leases left.
+ */
+public class ConnectionLeases {
+
+	// Upper limit for the time between two checks
+	private static long MAX_CHECK_PERIOD = 30000;
+
+	private final Set<ConnectionLease> leases = Collections.newSetFromMap(new ConcurrentHashMap<ConnectionLease, Boolean>());
+	private final Object lock = new Object();
+	private ScheduledExecutorService executor;
+
+	/**
+	 * Start checking the leases. An idle timeout of 0 or less disables the check, leases are then only closed by
+	 * their results or when stopping.
+	 */
+	public void start(final String name, final long idleTimeout) {
+		synchronized (lock) {
+			stop();
+			if (idleTimeout <= 0) {
+				return;
+			}
+			executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "as400-leases-" + name);
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			long period = Math.min(Math.max(idleTimeout / 2, 1), MAX_CHECK_PERIOD);
+			executor.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					expireIdle(idleTimeout);
+				}
+			}, period, period, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	public void stop() {
+		synchronized (lock) {
+			if (executor != null) {
+				executor.shutdownNow();
+				executor = null;
+			}
+		}
+		for (ConnectionLease lease : new ArrayList<ConnectionLease>(leases)) {
+			lease.expire("on disconnect");
+		}
+	}
+
+	/**
+	 * Lease a borrowed connection to a streaming result, it is watched once the result is set as its holder
+	 */
+	public ConnectionLease lease(AS400ConnectionStrategy strategy, AS400 system, String name) {
+		return new ConnectionLease(this, strategy, system, name);
+	}
+
+	public int size() {
+		return leases.size();
+	}
+
+	void add(ConnectionLease lease) {
+		leases.add(lease);
+	}
+
+	void remove(ConnectionLease lease) {
+		leases.remove(lease);
+	}
+
+	private void expireIdle(long idleTimeout) {
+		long idleSince = System.currentTimeMillis() - idleTimeout;
+		List<ConnectionLease> idle = new ArrayList<ConnectionLease>();
+		for (ConnectionLease lease : leases) {
+			if (lease.isIdleSince(idleSince)) {
+				idle.add(lease);
+			}
+		}
+		for (ConnectionLease lease : idle) {
+			lease.expire("after " + idleTimeout + " ms without a read");
+		}
+	}
+
+}
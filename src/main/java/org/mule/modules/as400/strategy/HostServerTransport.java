@@ -0,0 +1,121 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.strategy;
+
+import org.mule.modules.as400.dataqueue.HostDataQueue;
+import org.mule.modules.as400.dataqueue.HostDataQueueEntry;
+import org.mule.modules.as400.dataqueue.HostKeyedDataQueue;
+
+import com.ibm.as400.access.AS400;
+import com.ibm.as400.access.CommandCall;
+import com.ibm.as400.access.DataQueue;
+import com.ibm.as400.access.DataQueueEntry;
+import com.ibm.as400.access.KeyedDataQueue;
+import com.ibm.as400.access.KeyedDataQueueEntry;
+import com.ibm.as400.access.SocketProperties;
+
+/**
+ * Transport to the IBM i host servers
+ */
+public class HostServerTransport implements AS400Transport {
+
+	public AS400 createSystem(String endpoint, String userid, String password) throws Exception {
+		AS400 newSystem = new AS400(endpoint, userid, password);
+		newSystem.setGuiAvailable(false);
+		SocketProperties sp = new SocketProperties();
+		sp.setKeepAlive(true);
+		newSystem.setSocketProperties(sp);
+		newSystem.validateSignon();
+		return newSystem;
+	}
+
+	public HostDataQueue createDataQueue(AS400 system, String path) {
+		return new HostServerDataQueue(new DataQueue(system, path));
+	}
+
+	public HostKeyedDataQueue createKeyedDataQueue(AS400 system, String path) {
+		return new HostServerKeyedDataQueue(new KeyedDataQueue(system, path));
+	}
+
+	public CommandCall createCommandCall(AS400 system) {
+		return new CommandCall(system);
+	}
+
+	private static class HostServerDataQueue implements HostDataQueue {
+
+		private final DataQueue queue;
+
+		HostServerDataQueue(DataQueue queue) {
+			this.queue = queue;
+		}
+
+		public AS400 getSystem() {
+			return queue.getSystem();
+		}
+
+		public HostDataQueueEntry read(int wait) throws Exception {
+			return toEntry(queue.read(wait));
+		}
+
+		public HostDataQueueEntry peek(int wait) throws Exception {
+			return toEntry(queue.peek(wait));
+		}
+
+		public void write(byte[] data) throws Exception {
+			queue.write(data);
+		}
+
+		public void write(String data) throws Exception {
+			queue.write(data);
+		}
+
+		public boolean isFIFO() throws Exception {
+			return queue.isFIFO();
+		}
+
+		private static HostDataQueueEntry toEntry(DataQueueEntry entry) {
+			return entry == null ? null : new HostDataQueueEntry(null, entry.getData(), entry.getSenderInformation());
+		}
+	}
+
+	private static class HostServerKeyedDataQueue implements HostKeyedDataQueue {
+
+		private final KeyedDataQueue queue;
+
+		HostServerKeyedDataQueue(KeyedDataQueue queue) {
+			this.queue = queue;
+		}
+
+		public AS400 getSystem() {
+			return queue.getSystem();
+		}
+
+		public int getKeyLength() throws Exception {
+			return queue.getKeyLength();
+		}
+
+		public HostDataQueueEntry read(byte[] key, int wait, String searchType) throws Exception {
+			return toEntry(queue.read(key, wait, searchType));
+		}
+
+		public HostDataQueueEntry peek(byte[] key, int wait, String searchType) throws Exception {
+			return toEntry(queue.peek(key, wait, searchType));
+		}
+
+		public void write(byte[] key, byte[] data) throws Exception {
+			queue.write(key, data);
+		}
+
+		public boolean isFIFO() throws Exception {
+			return queue.isFIFO();
+		}
+
+		private static HostDataQueueEntry toEntry(KeyedDataQueueEntry entry) {
+			return entry == null ? null : new HostDataQueueEntry(entry.getKey(), entry.getData(), entry.getSenderInformation());
+		}
+	}
+
+}
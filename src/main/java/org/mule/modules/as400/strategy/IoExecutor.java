@@ -0,0 +1,188 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.strategy;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.mule.modules.as400.metrics.ConnectorMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded thread pool running the async operations of a connection, so slow host calls wait on these threads instead
+ * of flow threads. Once all threads are busy and the queue is full, further operations are rejected right away
+ * rather than piling up.
+ * <p>
+ * An operation whose result or failure nobody picked up, e.g. a read that was still waiting when its await timed
+ * out, is logged and counted once it has been done for a while, and at the latest when the executor stops.
+ */
+public class IoExecutor {
+
+	private static final Logger logger = LoggerFactory.getLogger(IoExecutor.class);
+
+	private static long KEEP_ALIVE_TIME = 60000;
+	// How long a finished operation waits to be awaited before it is reported
+	private static long UNAWAITED_AFTER = 300000;
+
+	private final Object lock = new Object();
+	private ThreadPoolExecutor executor;
+	private final Set<Operation<?>> unawaited = Collections.newSetFromMap(new ConcurrentHashMap<Operation<?>, Boolean>());
+	private volatile ConnectorMetrics metrics;
+
+	public void start(final String name, int threads, int queueSize, ConnectorMetrics metrics) {
+		synchronized (lock) {
+			stop();
+			this.metrics = metrics;
+			final AtomicInteger count = new AtomicInteger();
+			executor = new ThreadPoolExecutor(Math.max(threads, 1), Math.max(threads, 1), KEEP_ALIVE_TIME, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(Math.max(queueSize, 1)), new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "as400-io-" + name + "-" + count.getAndIncrement());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			executor.allowCoreThreadTimeOut(true);
+		}
+	}
+
+	// Running operations are interrupted, operations blocked in a host read end when the connection is closed
+	public void stop() {
+		synchronized (lock) {
+			if (executor != null) {
+				executor.shutdownNow();
+				executor = null;
+			}
+		}
+		reportUnawaited(Long.MAX_VALUE);
+	}
+
+	/**
+	 * @param name operation name for the log
+	 * @throws RejectedExecutionException if all threads are busy and the queue is full, or the executor is stopped
+	 */
+	public <T> Future<T> submit(String name, Callable<T> operation) {
+		ThreadPoolExecutor current;
+		synchronized (lock) {
+			current = executor;
+		}
+		if (current == null) {
+			throw new RejectedExecutionException("Async I/O executor not started");
+		}
+		reportUnawaited(UNAWAITED_AFTER);
+		Operation<T> task = new Operation<T>(name, operation);
+		current.execute(task);
+		return task;
+	}
+
+	public int getActiveCount() {
+		synchronized (lock) {
+			return executor == null ? 0 : executor.getActiveCount();
+		}
+	}
+
+	public int getQueuedCount() {
+		synchronized (lock) {
+			return executor == null ? 0 : executor.getQueue().size();
+		}
+	}
+
+	private void reportUnawaited(long doneFor) {
+		long now = System.currentTimeMillis();
+		for (Operation<?> operation : unawaited) {
+			if (now - operation.doneAt >= doneFor && unawaited.remove(operation)) {
+				operation.report();
+			}
+		}
+	}
+
+	// Counts as awaited once get() handed out the result or the failure, a get() that timed out doesn't
+	private class Operation<T> extends FutureTask<T> {
+
+		private final String name;
+		private volatile boolean awaited;
+		private volatile long doneAt;
+
+		Operation(String name, Callable<T> callable) {
+			super(callable);
+			this.name = name;
+		}
+
+		@Override
+		protected void done() {
+			doneAt = System.currentTimeMillis();
+			if (!isCancelled()) {
+				unawaited.add(this);
+				if (awaited) {
+					unawaited.remove(this);
+				}
+			}
+		}
+
+		@Override
+		public T get() throws InterruptedException, ExecutionException {
+			try {
+				return super.get();
+			} finally {
+				if (isDone()) {
+					awaited();
+				}
+			}
+		}
+
+		@Override
+		public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+			try {
+				return super.get(timeout, unit);
+			} finally {
+				if (isDone()) {
+					awaited();
+				}
+			}
+		}
+
+		private void awaited() {
+			awaited = true;
+			unawaited.remove(this);
+		}
+
+		private void report() {
+			ConnectorMetrics current = metrics;
+			try {
+				T result = super.get();
+				if (current != null) {
+					current.recordAsyncUnawaited(false);
+				}
+				if (result != null) {
+					logger.warn("Result of async " + name + " was never awaited and is dropped: " + result);
+				}
+			} catch (ExecutionException e) {
+				if (current != null) {
+					current.recordAsyncUnawaited(true);
+				}
+				logger.warn("Async " + name + " failed and was never awaited", e.getCause());
+			} catch (CancellationException e) {
+				// Cancelled by whoever held the future
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,23 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.strategy;
+
+/**
+ * How the heartbeat checks hosts before IBM i 7.1, which don't answer a connection ping
+ */
+public enum LegacyHostProbe {
+
+	/**
+	 * Run a no-op command (CHGJOB without parameters), one round trip to the command server
+	 */
+	COMMAND,
+
+	/**
+	 * Only check that the local sockets are still connected, no host round trip
+	 */
+	SOCKET
+
+}
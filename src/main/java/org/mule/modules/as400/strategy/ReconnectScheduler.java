@@ -0,0 +1,230 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.strategy;
+
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reconnects a lost connection on a background thread with exponential backoff and jitter, so callers never
+ * block for the whole outage. Acts as a circuit breaker for callers:
+ * <ul>
+ * <li>CLOSED: connection is usable</li>
+ * <li>RECONNECTING: connection was lost, the first reconnect attempt is running; callers may wait for it</li>
+ * <li>OPEN: reconnect attempts are failing, callers fail fast until an attempt succeeds</li>
+ * </ul>
+ * The background thread only exists during an outage.
+ */
+public class ReconnectScheduler {
+
+	private static final Logger logger = LoggerFactory.getLogger(ReconnectScheduler.class);
+
+	public enum State {
+		CLOSED, RECONNECTING, OPEN
+	}
+
+	/**
+	 * Re-establishes the connection, throws if the attempt failed
+	 */
+	public interface Reconnector {
+		void reconnect() throws Exception;
+	}
+
+	private final Reconnector reconnector;
+	private final Random random = new Random();
+	private final Object lock = new Object();
+
+	private long initialDelay = 1000;
+	private long maxDelay = 60000;
+
+	private volatile String name = "";
+	private volatile State state = State.CLOSED;
+	private ScheduledExecutorService executor;
+	private int attempt;
+	private long outageStart;
+
+	private final AtomicLong outages = new AtomicLong();
+	private final AtomicLong attempts = new AtomicLong();
+	private final AtomicLong failedAttempts = new AtomicLong();
+	private final AtomicLong totalOutageTime = new AtomicLong();
+	private volatile long lastOutageDuration;
+
+	public ReconnectScheduler(Reconnector reconnector) {
+		this.reconnector = reconnector;
+	}
+
+	/**
+	 * Report a lost connection. Starts the background reconnect unless it is already running.
+	 */
+	public void connectionLost() {
+		synchronized (lock) {
+			if (state != State.CLOSED) {
+				return;
+			}
+			state = State.RECONNECTING;
+			attempt = 0;
+			outageStart = System.currentTimeMillis();
+			outages.incrementAndGet();
+			executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "as400-reconnect-" + name);
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			schedule(0);
+		}
+	}
+
+	/**
+	 * Wait for the connection to come back. While the circuit is OPEN a fail fast caller returns immediately.
+	 *
+	 * @return true if the connection is usable
+	 */
+	public boolean awaitConnected(long maxWait, boolean failFast) {
+		if (state == State.CLOSED) {
+			return true;
+		}
+		long deadline = System.currentTimeMillis() + maxWait;
+		synchronized (lock) {
+			try {
+				while (state == State.RECONNECTING || (!failFast && state == State.OPEN)) {
+					long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0) {
+						break;
+					}
+					lock.wait(remaining);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return state == State.CLOSED;
+		}
+	}
+
+	/**
+	 * Stop reconnecting, e.g. when the connection is closed on purpose
+	 */
+	public void cancel() {
+		synchronized (lock) {
+			if (executor != null) {
+				executor.shutdownNow();
+				executor = null;
+			}
+			if (state != State.CLOSED) {
+				endOutage();
+			}
+		}
+	}
+
+	private void schedule(long delay) {
+		executor.schedule(new Runnable() {
+			public void run() {
+				tryReconnect();
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	private void tryReconnect() {
+		attempts.incrementAndGet();
+		try {
+			reconnector.reconnect();
+		} catch (Exception e) {
+			failedAttempts.incrementAndGet();
+			synchronized (lock) {
+				if (executor == null) {
+					return;
+				}
+				attempt++;
+				state = State.OPEN;
+				lock.notifyAll();
+				long delay = nextDelay(attempt);
+				logger.warn("AS400 connector: Can't reconnect to " + name + " (attempt " + attempt + "), next attempt in " + delay + " ms", e);
+				schedule(delay);
+			}
+			return;
+		}
+		synchronized (lock) {
+			if (executor == null) {
+				return;
+			}
+			logger.info("AS400 connector: Reconnected to " + name + " after " + (System.currentTimeMillis() - outageStart) + " ms");
+			executor.shutdown();
+			executor = null;
+			endOutage();
+		}
+	}
+
+	private void endOutage() {
+		lastOutageDuration = System.currentTimeMillis() - outageStart;
+		totalOutageTime.addAndGet(lastOutageDuration);
+		state = State.CLOSED;
+		lock.notifyAll();
+	}
+
+	// Exponential backoff capped at maxDelay, randomized between half and the full delay
+	private long nextDelay(int failures) {
+		long delay = initialDelay << Math.min(failures - 1, 30);
+		if (delay <= 0 || delay > maxDelay) {
+			delay = maxDelay;
+		}
+		long half = delay / 2;
+		return half + (long) (random.nextDouble() * (delay - half));
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	public long getOutages() {
+		return outages.get();
+	}
+
+	public long getAttempts() {
+		return attempts.get();
+	}
+
+	public long getFailedAttempts() {
+		return failedAttempts.get();
+	}
+
+	/**
+	 * @return duration of the ongoing outage in milliseconds, 0 if connected
+	 */
+	public long getCurrentOutageDuration() {
+		synchronized (lock) {
+			return state == State.CLOSED ? 0 : System.currentTimeMillis() - outageStart;
+		}
+	}
+
+	public long getLastOutageDuration() {
+		return lastOutageDuration;
+	}
+
+	public long getTotalOutageTime() {
+		return totalOutageTime.get();
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public void setInitialDelay(long initialDelay) {
+		this.initialDelay = Math.max(initialDelay, 1);
+	}
+
+	public void setMaxDelay(long maxDelay) {
+		this.maxDelay = Math.max(maxDelay, 1);
+	}
+
+}
@@ -0,0 +1,108 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.dataqueue;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class AdaptivePollWaitTest {
+
+	@Test
+	public void startsIdle() {
+		AdaptivePollWait pollWait = new AdaptivePollWait(2, 30);
+		assertEquals(30, pollWait.getWait());
+		assertEquals(AdaptivePollWait.Mode.IDLE, pollWait.getMode());
+	}
+
+	@Test
+	public void entryStartsStreamingAndEmptyReadsBackOff() {
+		AdaptivePollWait pollWait = new AdaptivePollWait(2, 30);
+		pollWait.update(true);
+		assertEquals(2, pollWait.getWait());
+		assertEquals(AdaptivePollWait.Mode.STREAMING, pollWait.getMode());
+		pollWait.update(true);
+		assertEquals(AdaptivePollWait.Mode.STREAMING, pollWait.getMode());
+
+		pollWait.update(false);
+		assertEquals(4, pollWait.getWait());
+		assertEquals(AdaptivePollWait.Mode.BACKING_OFF, pollWait.getMode());
+
+		// One entry while backing off goes straight back to the minimum
+		pollWait.update(true);
+		assertEquals(2, pollWait.getWait());
+		assertEquals(AdaptivePollWait.Mode.STREAMING, pollWait.getMode());
+	}
+
+	@Test
+	public void doublingIsCappedAtMaxWait() {
+		AdaptivePollWait pollWait = new AdaptivePollWait(3, 30);
+		pollWait.update(true);
+		assertEquals(Arrays.asList(6, 12, 24, 30, 30), emptyReads(pollWait, 5));
+		assertEquals(AdaptivePollWait.Mode.IDLE, pollWait.getMode());
+	}
+
+	@Test
+	public void zeroMinWaitBacksOffFromOneSecond() {
+		AdaptivePollWait pollWait = new AdaptivePollWait(0, 30);
+		pollWait.update(true);
+		assertEquals(0, pollWait.getWait());
+		assertEquals(AdaptivePollWait.Mode.STREAMING, pollWait.getMode());
+
+		pollWait.update(false);
+		assertEquals(1, pollWait.getWait());
+		assertEquals(AdaptivePollWait.Mode.BACKING_OFF, pollWait.getMode());
+		assertEquals(Arrays.asList(2, 4, 8, 16, 30), emptyReads(pollWait, 5));
+		assertEquals(AdaptivePollWait.Mode.IDLE, pollWait.getMode());
+	}
+
+	@Test
+	public void equalWaitsNeverChange() {
+		AdaptivePollWait pollWait = new AdaptivePollWait(5, 5);
+		assertEquals(5, pollWait.getWait());
+		pollWait.update(true);
+		assertEquals(5, pollWait.getWait());
+		assertEquals(Arrays.asList(5, 5), emptyReads(pollWait, 2));
+		// The wait is the maximum, there is nothing to back off to
+		assertEquals(AdaptivePollWait.Mode.IDLE, pollWait.getMode());
+	}
+
+	@Test
+	public void zeroWaitsNeverWait() {
+		AdaptivePollWait pollWait = new AdaptivePollWait(0, 0);
+		assertEquals(0, pollWait.getWait());
+		assertEquals(Arrays.asList(0, 0), emptyReads(pollWait, 2));
+		pollWait.update(true);
+		assertEquals(0, pollWait.getWait());
+	}
+
+	@Test
+	public void invalidWaitsAreCorrected() {
+		// A negative minimum doesn't wait, a maximum below the minimum is raised to it
+		AdaptivePollWait pollWait = new AdaptivePollWait(-1, 10);
+		pollWait.update(true);
+		assertEquals(0, pollWait.getWait());
+
+		pollWait = new AdaptivePollWait(10, 2);
+		assertEquals(10, pollWait.getWait());
+		pollWait.update(true);
+		assertEquals(10, pollWait.getWait());
+	}
+
+	private static List<Integer> emptyReads(AdaptivePollWait pollWait, int reads) {
+		List<Integer> waits = new ArrayList<Integer>();
+		for (int i = 0; i < reads; i++) {
+			pollWait.update(false);
+			waits.add(pollWait.getWait());
+		}
+		return waits;
+	}
+
+}
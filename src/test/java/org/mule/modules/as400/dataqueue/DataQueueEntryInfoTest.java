@@ -0,0 +1,111 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.dataqueue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.ibm.as400.access.CharConverter;
+
+public class DataQueueEntryInfoTest {
+
+	private static final int EBCDIC = 37;
+
+	@Test
+	public void ibmTimestampIsParsedInLocalTime() {
+		assertEquals(time(2015, 3, 14, 9, 26, 53, 589), DataQueueEntryInfo.parseTimestamp("2015-03-14-09.26.53.589793"));
+	}
+
+	@Test
+	public void fractionsAreOptional() {
+		assertEquals(time(2015, 3, 14, 9, 26, 53, 0), DataQueueEntryInfo.parseTimestamp("2015-03-14-09.26.53"));
+		assertEquals(time(2015, 3, 14, 9, 26, 53, 500), DataQueueEntryInfo.parseTimestamp("2015-03-14-09.26.53.5  "));
+	}
+
+	@Test
+	public void isoTimestampIsAccepted() {
+		assertEquals(time(2015, 3, 14, 9, 26, 53, 0), DataQueueEntryInfo.parseTimestamp("2015-03-14 09:26:53"));
+		assertEquals(time(2015, 3, 14, 9, 26, 53, 123), DataQueueEntryInfo.parseTimestamp("2015-03-14T09:26:53.123"));
+	}
+
+	@Test
+	public void badTimestampIsNull() {
+		String[] texts = { null, "", "2015-03-14", "2015-03-14-09.26.5", "2015-03-14-09.26.5x", "20150314092653000000000000",
+				"ORDER 1001 2015-03-14-09.26.53", "2015-13-14-09.26.53", "2015-02-30-09.26.53", "2015-03-14-25.26.53",
+				"2015-03-14-09.26.53.5x9" };
+		for (String text : texts) {
+			assertNull(text, DataQueueEntryInfo.parseTimestamp(text));
+		}
+	}
+
+	@Test
+	public void positionInEntryIsOneBased() throws Exception {
+		byte[] entry = ebcdic("ORDER1001 2015-03-14-09.26.53.589793 DATA");
+		assertEquals(time(2015, 3, 14, 9, 26, 53, 589), DataQueueEntryInfo.parseTimestamp(entry, 11, converter()));
+		// One off either way is no timestamp
+		assertNull(DataQueueEntryInfo.parseTimestamp(entry, 10, converter()));
+		assertNull(DataQueueEntryInfo.parseTimestamp(entry, 12, converter()));
+
+		assertEquals(time(2015, 3, 14, 9, 26, 53, 0), DataQueueEntryInfo.parseTimestamp(ebcdic("2015-03-14-09.26.53"), 1, converter()));
+	}
+
+	@Test
+	public void timestampCutShortByEntryEnd() throws Exception {
+		// Fractions past the end of the entry are left out, a timestamp without seconds is no timestamp
+		byte[] entry = ebcdic("ORDER1001 2015-03-14-09.26.53.58");
+		assertEquals(time(2015, 3, 14, 9, 26, 53, 580), DataQueueEntryInfo.parseTimestamp(entry, 11, converter()));
+		entry = ebcdic("ORDER1001 2015-03-14-09.26.5");
+		assertNull(DataQueueEntryInfo.parseTimestamp(entry, 11, converter()));
+	}
+
+	@Test
+	public void positionOutsideEntryIsNull() throws Exception {
+		byte[] entry = ebcdic("2015-03-14-09.26.53");
+		assertNull(DataQueueEntryInfo.parseTimestamp(entry, 0, converter()));
+		assertNull(DataQueueEntryInfo.parseTimestamp(entry, -5, converter()));
+		assertNull(DataQueueEntryInfo.parseTimestamp(entry, entry.length + 1, converter()));
+		assertNull(DataQueueEntryInfo.parseTimestamp(new byte[0], 1, converter()));
+	}
+
+	@Test
+	public void senderInformationIsSplitIntoFields() {
+		DataQueueEntryInfo info = DataQueueEntryInfo.of("QPADEV0001QUSER     123456QSECOFR   ", null, 1000);
+		assertEquals("QPADEV0001", info.getSenderJob());
+		assertEquals("QUSER", info.getSenderUser());
+		assertEquals("123456", info.getSenderJobNumber());
+		assertEquals("QSECOFR", info.getSenderCurrentUser());
+
+		// Queues without sender information only have the dequeue time
+		Map<String, Object> properties = new HashMap<String, Object>();
+		DataQueueEntryInfo.of("    ", null, 1000).addProperties(properties);
+		assertEquals(1, properties.size());
+		assertEquals(new Date(1000), properties.get(DataQueueEntryInfo.DEQUEUE_TIME_PROPERTY));
+	}
+
+	private static Date time(int year, int month, int day, int hour, int minute, int second, int millis) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.clear();
+		calendar.set(year, month - 1, day, hour, minute, second);
+		calendar.set(Calendar.MILLISECOND, millis);
+		return calendar.getTime();
+	}
+
+	private static CharConverter converter() throws Exception {
+		return new CharConverter(EBCDIC);
+	}
+
+	private static byte[] ebcdic(String text) throws Exception {
+		return text.getBytes("Cp037");
+	}
+
+}
@@ -0,0 +1,219 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.dataqueue;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DedupLogTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	// Type byte and SHA-256
+	private static final int HASH_RECORD = 33;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void processedEntriesSurviveReopen() throws Exception {
+		File file = new File(folder.newFolder("dedup"), "orders.dedup");
+		DedupLog log = DedupLog.open(file);
+		log.add(hash("first"));
+		log.add(hash("second"));
+		log.add(hash("third"));
+		log.remove(hash("second"));
+
+		log = DedupLog.open(file);
+		assertEquals(2, log.size());
+		assertTrue(log.contains(hash("first")));
+		assertFalse(log.contains(hash("second")));
+		assertTrue(log.contains(hash("third")));
+	}
+
+	@Test
+	public void missingDirectoryIsCreated() throws Exception {
+		File file = new File(folder.getRoot(), "state/dedup/orders.dedup");
+		DedupLog log = DedupLog.open(file);
+		log.add(hash("first"));
+		assertTrue(file.isFile());
+	}
+
+	@Test
+	public void tornLastRecordIsIgnored() throws Exception {
+		File file = new File(folder.newFolder("dedup"), "orders.dedup");
+		DedupLog log = DedupLog.open(file);
+		log.add(hash("confirmed"));
+		log.add(hash("torn"));
+
+		// A crash in the middle of the last append leaves part of its hash
+		truncate(file, file.length() - 10);
+		log = DedupLog.open(file);
+		assertEquals(1, log.size());
+		assertTrue(log.contains(hash("confirmed")));
+		assertFalse(log.contains(hash("torn")));
+
+		// The reopened log is compacted, new records don't follow the torn one
+		log.add(hash("after crash"));
+		log = DedupLog.open(file);
+		assertEquals(2, log.size());
+		assertTrue(log.contains(hash("after crash")));
+	}
+
+	@Test
+	public void openCompactsRemovedEntries() throws Exception {
+		File file = new File(folder.newFolder("dedup"), "orders.dedup");
+		DedupLog log = DedupLog.open(file);
+		for (int i = 0; i < 10; i++) {
+			log.add(hash("entry " + i));
+		}
+		for (int i = 0; i < 9; i++) {
+			log.remove(hash("entry " + i));
+		}
+		assertEquals(19 * HASH_RECORD, file.length());
+
+		log = DedupLog.open(file);
+		assertEquals(HASH_RECORD, file.length());
+		assertTrue(log.contains(hash("entry 9")));
+		assertFalse(new File(file.getPath() + ".tmp").exists());
+	}
+
+	@Test
+	public void manyChangesAreCompacted() throws Exception {
+		File file = new File(folder.newFolder("dedup"), "orders.dedup");
+		DedupLog log = DedupLog.open(file);
+		log.add(hash("kept"));
+		for (int i = 0; i < 1000; i++) {
+			log.add(hash("entry " + i));
+			log.remove(hash("entry " + i));
+		}
+		// Far less than the 2001 records appended
+		assertTrue("log not compacted: " + file.length(), file.length() < 1000 * HASH_RECORD);
+
+		log = DedupLog.open(file);
+		assertEquals(1, log.size());
+		assertTrue(log.contains(hash("kept")));
+	}
+
+	@Test
+	public void takenEntriesAreKeptUntilReturned() throws Exception {
+		File file = new File(folder.newFolder("dedup"), "orders.dedup");
+		DedupLog log = DedupLog.open(file);
+		log.add(hash("processed"));
+		log.take(bytes("KEY1"), bytes("taken keyed"));
+		log.take(null, bytes("taken"));
+
+		log = DedupLog.open(file);
+		List<DedupLog.TakenEntry> taken = log.getTaken();
+		assertEquals(2, taken.size());
+		assertArrayEquals(bytes("KEY1"), taken.get(0).getKey());
+		assertArrayEquals(bytes("taken keyed"), taken.get(0).getData());
+		assertNull(taken.get(1).getKey());
+		assertArrayEquals(bytes("taken"), taken.get(1).getData());
+		// Taken entries are not processed entries
+		assertEquals(1, log.size());
+
+		log.returned(bytes("KEY1"), bytes("taken keyed"));
+		log = DedupLog.open(file);
+		taken = log.getTaken();
+		assertEquals(1, taken.size());
+		assertArrayEquals(bytes("taken"), taken.get(0).getData());
+
+		log.returned(null, bytes("taken"));
+		log = DedupLog.open(file);
+		assertTrue(log.getTaken().isEmpty());
+		assertTrue(log.contains(hash("processed")));
+		assertEquals(HASH_RECORD, file.length());
+	}
+
+	@Test
+	public void takingTheSameEntryTwiceKeepsOne() throws Exception {
+		File file = new File(folder.newFolder("dedup"), "orders.dedup");
+		DedupLog log = DedupLog.open(file);
+		log.take(null, bytes("taken"));
+		log.take(null, bytes("taken"));
+		assertEquals(1, log.getTaken().size());
+
+		// Returning an entry that was never taken changes nothing
+		log.returned(null, bytes("other"));
+		assertEquals(1, DedupLog.open(file).getTaken().size());
+	}
+
+	@Test
+	public void tornTakenRecordIsIgnored() throws Exception {
+		File file = new File(folder.newFolder("dedup"), "orders.dedup");
+		DedupLog log = DedupLog.open(file);
+		log.take(null, bytes("confirmed"));
+		log.take(bytes("KEY1"), bytes("torn"));
+
+		truncate(file, file.length() - 2);
+		log = DedupLog.open(file);
+		List<DedupLog.TakenEntry> taken = log.getTaken();
+		assertEquals(1, taken.size());
+		assertArrayEquals(bytes("confirmed"), taken.get(0).getData());
+	}
+
+	@Test
+	public void invalidRecordFailsOpen() throws Exception {
+		File file = new File(folder.newFolder("dedup"), "orders.dedup");
+		DedupLog.open(file).add(hash("entry"));
+		// Overwrite the type of the first record
+		RandomAccessFile content = new RandomAccessFile(file, "rw");
+		try {
+			content.write(9);
+		} finally {
+			content.close();
+		}
+		try {
+			DedupLog.open(file);
+			throw new AssertionError("invalid record type accepted");
+		} catch (IOException e) {
+			// expected, the log is not silently dropped
+		}
+	}
+
+	@Test
+	public void identityCoversKeyDataAndSender() {
+		byte[] data = bytes("entry");
+		assertArrayEquals(DedupLog.hash(null, data), DedupLog.hash(null, data, null));
+		// Queues without SENDERID(*YES) have empty sender information
+		assertArrayEquals(DedupLog.hash(null, data), DedupLog.hash(null, data, ""));
+		assertFalse(Arrays.equals(DedupLog.hash(null, data), DedupLog.hash(bytes("KEY1"), data)));
+		assertFalse(Arrays.equals(DedupLog.hash(null, data, "JOB1      USER1     000001"), DedupLog.hash(null, data, "JOB2      USER1     000002")));
+		assertEquals(32, DedupLog.hash(null, data).length);
+	}
+
+	private static byte[] hash(String data) {
+		return DedupLog.hash(null, bytes(data));
+	}
+
+	private static byte[] bytes(String text) {
+		return text.getBytes(UTF8);
+	}
+
+	private static void truncate(File file, long length) throws IOException {
+		RandomAccessFile content = new RandomAccessFile(file, "rw");
+		try {
+			content.setLength(length);
+		} finally {
+			content.close();
+		}
+	}
+
+}
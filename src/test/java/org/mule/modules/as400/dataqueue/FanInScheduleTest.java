@@ -0,0 +1,173 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.dataqueue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class FanInScheduleTest {
+
+	private static final long MAX_IDLE_WAIT = 1000;
+
+	@Test
+	public void roundRobinTakesTurns() {
+		FanInSchedule schedule = schedule(false, "A", "B", "C");
+		List<String> read = new ArrayList<String>();
+		for (int i = 0; i < 6; i++) {
+			read.add(schedule.next().getName());
+			assertEquals(0, schedule.update(true));
+		}
+		assertEquals(Arrays.asList("A", "B", "C", "A", "B", "C"), read);
+	}
+
+	@Test
+	public void oneWaitPerIdleRound() {
+		FanInSchedule schedule = schedule(false, "A", "B", "C");
+		List<Long> waits = new ArrayList<Long>();
+		for (int i = 0; i < 12; i++) {
+			waits.add(schedule.update(false));
+		}
+		// The waiting read is the first read of the next round, the wait doubles every idle round
+		assertEquals(Arrays.asList(0L, 0L, 100L, 0L, 0L, 200L, 0L, 0L, 400L, 0L, 0L, 800L), waits);
+	}
+
+	@Test
+	public void idleWaitIsCapped() {
+		FanInSchedule schedule = schedule(false, "A");
+		long wait = 0;
+		for (int i = 0; i < 10; i++) {
+			wait = schedule.update(false);
+		}
+		assertEquals(MAX_IDLE_WAIT, wait);
+	}
+
+	@Test
+	public void queuesTakeTurnsAtTheWaitingRead() {
+		FanInSchedule schedule = schedule(false, "A", "B", "C");
+		List<String> waiting = new ArrayList<String>();
+		for (int round = 0; round < 4; round++) {
+			for (int i = 0; i < 2; i++) {
+				assertEquals(0, schedule.update(false));
+			}
+			assertTrue(schedule.update(false) > 0);
+			waiting.add(schedule.next().getName());
+		}
+		assertEquals(Arrays.asList("A", "B", "C", "A"), waiting);
+	}
+
+	@Test
+	public void entryEndsIdleWait() {
+		FanInSchedule schedule = schedule(false, "A", "B");
+		schedule.update(false);
+		assertEquals(100, schedule.update(false));
+		schedule.update(false);
+		assertEquals(200, schedule.update(false));
+
+		assertEquals(0, schedule.update(true));
+		// Back to a full round without waiting, then the shortest wait again
+		assertEquals(0, schedule.update(false));
+		assertEquals(100, schedule.update(false));
+	}
+
+	@Test
+	public void busyQueueDoesNotStarveOthers() {
+		FanInSchedule schedule = schedule(false, "BUSY", "QUIET");
+		List<String> read = new ArrayList<String>();
+		for (int i = 0; i < 6; i++) {
+			FanInSchedule.Queue queue = schedule.next();
+			read.add(queue.getName());
+			assertEquals(0, schedule.update(queue.getName().equals("BUSY")));
+		}
+		assertEquals(Arrays.asList("BUSY", "QUIET", "BUSY", "QUIET", "BUSY", "QUIET"), read);
+	}
+
+	@Test
+	public void prioritizedReadsLaterQueuesOnlyWhenEarlierAreEmpty() {
+		FanInSchedule schedule = schedule(true, "HIGH", "LOW");
+		List<String> read = new ArrayList<String>();
+		// HIGH has two entries, LOW one
+		int high = 2;
+		int low = 1;
+		for (int i = 0; i < 5; i++) {
+			FanInSchedule.Queue queue = schedule.next();
+			read.add(queue.getName());
+			boolean found;
+			if (queue.getName().equals("HIGH")) {
+				found = high-- > 0;
+			} else {
+				found = low-- > 0;
+			}
+			schedule.update(found);
+		}
+		assertEquals(Arrays.asList("HIGH", "HIGH", "HIGH", "LOW", "HIGH"), read);
+	}
+
+	@Test
+	public void parseKeepsPriorityOrder() {
+		List<FanInSchedule.Queue> queues = FanInSchedule.parse(" ORDERS/IN , RETURNS/IN,ORDERS/RUSH ");
+		assertEquals(3, queues.size());
+		assertEquals("ORDERS/IN", queues.get(0).toString());
+		assertEquals("RETURNS", queues.get(1).getLibrary());
+		assertEquals("RUSH", queues.get(2).getName());
+	}
+
+	@Test
+	public void parseRejectsQueueWithoutLibrary() {
+		for (String queues : new String[] { "ORDERS/IN,RUSH", "ORDERS/", "/IN", "ORDERS/IN/X" }) {
+			try {
+				FanInSchedule.parse(queues);
+				throw new AssertionError("accepted " + queues);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void splitSharesQueuesOverReaders() {
+		List<List<FanInSchedule.Queue>> shares = FanInSchedule.split(FanInSchedule.parse("L/A,L/B,L/C,L/D,L/E"), 2);
+		assertEquals(2, shares.size());
+		assertEquals(Arrays.asList("A", "C", "E"), names(shares.get(0)));
+		assertEquals(Arrays.asList("B", "D"), names(shares.get(1)));
+
+		// No reader without queues, and at least one reader
+		assertEquals(2, FanInSchedule.split(FanInSchedule.parse("L/A,L/B"), 5).size());
+		assertEquals(1, FanInSchedule.split(FanInSchedule.parse("L/A,L/B"), 0).size());
+	}
+
+	@Test
+	public void scheduleNeedsQueues() {
+		try {
+			new FanInSchedule(new ArrayList<FanInSchedule.Queue>(), false, MAX_IDLE_WAIT);
+			throw new AssertionError("schedule without queues");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	private static FanInSchedule schedule(boolean prioritized, String... names) {
+		List<FanInSchedule.Queue> queues = new ArrayList<FanInSchedule.Queue>();
+		for (String name : names) {
+			queues.add(new FanInSchedule.Queue("LIB", name));
+		}
+		return new FanInSchedule(queues, prioritized, MAX_IDLE_WAIT);
+	}
+
+	private static List<String> names(List<FanInSchedule.Queue> queues) {
+		List<String> names = new ArrayList<String>();
+		for (FanInSchedule.Queue queue : queues) {
+			names.add(queue.getName());
+		}
+		return names;
+	}
+
+}
@@ -0,0 +1,190 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.dataqueue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class KeyPartitionScheduleTest {
+
+	private static final long MAX_IDLE_WAIT = 1000;
+	private static final int KEY_LENGTH = 10;
+
+	// Keys as a data queue with a key length of 10 and an EBCDIC job CCSID compares them
+	private static final KeyPartitionSchedule.KeyEncoder EBCDIC = new KeyPartitionSchedule.KeyEncoder() {
+		public byte[] encode(String key) throws UnsupportedEncodingException {
+			StringBuilder padded = new StringBuilder(key);
+			while (padded.length() < KEY_LENGTH) {
+				padded.append(' ');
+			}
+			return padded.toString().getBytes("Cp037");
+		}
+	};
+
+	@Test
+	public void splitPointsGiveRangesCoveringAllKeys() {
+		List<KeyPartitionSchedule.Partition> partitions = KeyPartitionSchedule.ranges(" G, N ,T");
+		assertEquals(4, partitions.size());
+		assertBounds(partitions.get(0), null, "G");
+		assertBounds(partitions.get(1), "G", "N");
+		assertBounds(partitions.get(2), "N", "T");
+		assertBounds(partitions.get(3), "T", null);
+		assertEquals("keys ..G", partitions.get(0).toString());
+		assertEquals("keys T..", partitions.get(3).toString());
+	}
+
+	@Test
+	public void singleSplitPointGivesTwoRanges() {
+		List<KeyPartitionSchedule.Partition> partitions = KeyPartitionSchedule.ranges("M");
+		assertEquals(2, partitions.size());
+		assertBounds(partitions.get(0), null, "M");
+		assertBounds(partitions.get(1), "M", null);
+	}
+
+	@Test
+	public void emptyOrRepeatedSplitPointIsRejected() {
+		for (String splitPoints : new String[] { "G,,N", "G,G", "", " " }) {
+			try {
+				KeyPartitionSchedule.ranges(splitPoints);
+				throw new AssertionError("accepted " + splitPoints);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void keysGiveExactPartitions() {
+		List<KeyPartitionSchedule.Partition> partitions = KeyPartitionSchedule.keys("EU, US,APAC");
+		assertEquals(3, partitions.size());
+		assertTrue(partitions.get(0).isExact());
+		assertEquals("US", partitions.get(1).getKey());
+		assertNull(partitions.get(2).getLower());
+		assertNull(partitions.get(2).getUpper());
+		assertEquals("key APAC", partitions.get(2).toString());
+	}
+
+	@Test
+	public void emptyOrDuplicateKeyIsRejected() {
+		for (String keys : new String[] { "EU,,US", "EU,US,EU", "" }) {
+			try {
+				KeyPartitionSchedule.keys(keys);
+				throw new AssertionError("accepted " + keys);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void ascendingSplitPointsPass() throws Exception {
+		new KeyPartitionSchedule(KeyPartitionSchedule.ranges("G,N,T"), MAX_IDLE_WAIT).checkSplitPoints(EBCDIC);
+		new KeyPartitionSchedule(KeyPartitionSchedule.ranges("A,Z,0,9"), MAX_IDLE_WAIT).checkSplitPoints(EBCDIC);
+	}
+
+	@Test
+	public void splitPointsOutOfOrderAreRejected() throws Exception {
+		try {
+			new KeyPartitionSchedule(KeyPartitionSchedule.ranges("G,T,N"), MAX_IDLE_WAIT).checkSplitPoints(EBCDIC);
+			throw new AssertionError("split points out of order accepted");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().endsWith("T, N"));
+		}
+	}
+
+	@Test
+	public void splitPointsAreCheckedInHostKeyOrder() throws Exception {
+		// Ascending in ASCII, but digits sort after letters in EBCDIC
+		KeyPartitionSchedule schedule = new KeyPartitionSchedule(KeyPartitionSchedule.ranges("5,K"), MAX_IDLE_WAIT);
+		try {
+			schedule.checkSplitPoints(EBCDIC);
+			throw new AssertionError("split points out of host key order accepted");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void keysCompareUnsigned() {
+		assertTrue(KeyPartitionSchedule.compareKeys(new byte[] { 0x7f }, new byte[] { (byte) 0x80 }) < 0);
+		assertTrue(KeyPartitionSchedule.compareKeys(new byte[] { (byte) 0xf9 }, new byte[] { (byte) 0xc1 }) > 0);
+		assertEquals(0, KeyPartitionSchedule.compareKeys(new byte[] { 1, 2 }, new byte[] { 1, 2 }));
+		assertTrue(KeyPartitionSchedule.compareKeys(new byte[] { 1 }, new byte[] { 1, 0 }) < 0);
+	}
+
+	@Test
+	public void claimedPartitionIsNotHandedOutTwice() throws Exception {
+		KeyPartitionSchedule schedule = new KeyPartitionSchedule(KeyPartitionSchedule.keys("A,B,C"), MAX_IDLE_WAIT);
+		Set<String> claimed = new HashSet<String>();
+		for (int i = 0; i < 3; i++) {
+			assertTrue(claimed.add(schedule.claim(0).getKey()));
+		}
+		assertNull(schedule.claim(0));
+	}
+
+	@Test
+	public void leastRecentlyReadPartitionComesFirst() throws Exception {
+		KeyPartitionSchedule schedule = new KeyPartitionSchedule(KeyPartitionSchedule.keys("A,B,C"), MAX_IDLE_WAIT);
+		List<String> read = new ArrayList<String>();
+		for (int i = 0; i < 6; i++) {
+			KeyPartitionSchedule.Partition partition = schedule.claim(0);
+			read.add(partition.getKey());
+			schedule.release(partition, true);
+			// Claim times are in milliseconds
+			Thread.sleep(2);
+		}
+		assertEquals(Arrays.asList("A", "B", "C", "A", "B", "C"), read);
+	}
+
+	@Test
+	public void emptyPartitionSitsOut() throws Exception {
+		KeyPartitionSchedule schedule = new KeyPartitionSchedule(KeyPartitionSchedule.keys("IDLE,BUSY"), MAX_IDLE_WAIT);
+		KeyPartitionSchedule.Partition idle = schedule.claim(0);
+		assertEquals("IDLE", idle.getKey());
+		schedule.release(idle, false);
+
+		// Only the busy partition is ready until the idle wait is over
+		for (int i = 0; i < 3; i++) {
+			KeyPartitionSchedule.Partition partition = schedule.claim(0);
+			assertEquals("BUSY", partition.getKey());
+			schedule.release(partition, true);
+		}
+		long start = System.currentTimeMillis();
+		KeyPartitionSchedule.Partition busy = schedule.claim(0);
+		KeyPartitionSchedule.Partition next = schedule.claim(MAX_IDLE_WAIT);
+		assertEquals("IDLE", next.getKey());
+		assertFalse(next == busy);
+		assertTrue(System.currentTimeMillis() - start < MAX_IDLE_WAIT);
+	}
+
+	@Test
+	public void scheduleNeedsPartitions() {
+		try {
+			new KeyPartitionSchedule(new ArrayList<KeyPartitionSchedule.Partition>(), MAX_IDLE_WAIT);
+			throw new AssertionError("schedule without partitions");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	private static void assertBounds(KeyPartitionSchedule.Partition partition, String lower, String upper) {
+		assertFalse(partition.isExact());
+		assertEquals(lower, partition.getLower());
+		assertEquals(upper, partition.getUpper());
+	}
+
+}
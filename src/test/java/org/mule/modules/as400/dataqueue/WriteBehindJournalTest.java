@@ -0,0 +1,283 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.dataqueue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WriteBehindJournalTest {
+
+	private static final String DATA_QUEUE = "/QSYS.LIB/ORDERS.LIB/IN.DTAQ";
+	private static final long MAX_BYTES = 256L * 1024 * 1024;
+	// Segments are 4 MB, two of these fit in one
+	private static final int LARGE_ENTRY = 1024 * 1024 + 512 * 1024;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final List<WriteBehindJournal> opened = new ArrayList<WriteBehindJournal>();
+
+	@After
+	public void releaseJournals() {
+		for (WriteBehindJournal journal : opened) {
+			journal.release();
+		}
+	}
+
+	@Test
+	public void entriesSurviveReopen() throws Exception {
+		File directory = folder.newFolder("journal");
+		WriteBehindJournal journal = WriteBehindJournal.open(directory, MAX_BYTES);
+		append(journal, "first", "second");
+		assertTrue(journal.append(new WriteBehindJournal.Entry(DATA_QUEUE, "KEY1", "keyed")));
+		journal.release();
+
+		assertTrue(WriteBehindJournal.exists(directory));
+		journal = open(directory);
+		assertEquals(3, journal.getBacklog());
+		List<WriteBehindJournal.Entry> drained = drainAll(journal);
+		assertEquals(Arrays.asList("first", "second", "keyed"), texts(drained));
+		assertNull(drained.get(0).getKey());
+		assertEquals("KEY1", drained.get(2).getKey());
+		assertEquals(DATA_QUEUE, drained.get(2).getDataQueue());
+		assertEquals(0, journal.getBacklog());
+		assertEquals(0, journal.getBacklogBytes());
+	}
+
+	@Test
+	public void reopenContinuesAtSavedPosition() throws Exception {
+		File directory = folder.newFolder("journal");
+		WriteBehindJournal journal = WriteBehindJournal.open(directory, MAX_BYTES);
+		append(journal, "1", "2", "3", "4", "5");
+		assertEquals(2, journal.drain(2, new Collector()));
+		journal.release();
+
+		journal = open(directory);
+		assertEquals(3, journal.getBacklog());
+		assertEquals(Arrays.asList("3", "4", "5"), texts(drainAll(journal)));
+	}
+
+	@Test
+	public void failedWriteKeepsEntry() throws Exception {
+		File directory = folder.newFolder("journal");
+		WriteBehindJournal journal = open(directory);
+		append(journal, "1", "2", "3");
+		final Collector collector = new Collector();
+		try {
+			journal.drain(10, new WriteBehindJournal.EntryWriter() {
+				public void write(WriteBehindJournal.Entry entry) throws Exception {
+					if (entry.getEntry().equals("2")) {
+						throw new IOException("connection lost");
+					}
+					collector.write(entry);
+				}
+			});
+		} catch (IOException e) {
+			// expected, the drain stops at the failing entry
+		}
+		assertEquals(Arrays.asList("1"), texts(collector.entries));
+		assertEquals(2, journal.getBacklog());
+		assertEquals(Arrays.asList("2", "3"), texts(drainAll(journal)));
+	}
+
+	@Test
+	public void tornRecordEndsJournal() throws Exception {
+		File directory = folder.newFolder("journal");
+		WriteBehindJournal journal = WriteBehindJournal.open(directory, MAX_BYTES);
+		append(journal, "intact one", "intact two", "torn three");
+		journal.release();
+
+		// A crash in the middle of the last append leaves a record whose CRC doesn't match
+		corrupt(segmentFiles(directory)[0], "torn three");
+		journal = open(directory);
+		assertEquals(2, journal.getBacklog());
+
+		// New entries go where the torn record was
+		append(journal, "after crash");
+		assertEquals(Arrays.asList("intact one", "intact two", "after crash"), texts(drainAll(journal)));
+	}
+
+	@Test
+	public void tornRecordAfterDrainedEntries() throws Exception {
+		File directory = folder.newFolder("journal");
+		WriteBehindJournal journal = WriteBehindJournal.open(directory, MAX_BYTES);
+		append(journal, "drained", "torn");
+		assertEquals(1, journal.drain(1, new Collector()));
+		journal.release();
+
+		corrupt(segmentFiles(directory)[0], "torn");
+		journal = open(directory);
+		assertEquals(0, journal.getBacklog());
+		append(journal, "next");
+		assertEquals(Arrays.asList("next"), texts(drainAll(journal)));
+	}
+
+	@Test
+	public void segmentsRollOverAndAreDeletedOnceDrained() throws Exception {
+		File directory = folder.newFolder("journal");
+		WriteBehindJournal journal = WriteBehindJournal.open(directory, MAX_BYTES);
+		for (int i = 0; i < 5; i++) {
+			assertTrue(journal.append(new WriteBehindJournal.Entry(DATA_QUEUE, null, large(i))));
+		}
+		assertEquals(3, segmentFiles(directory).length);
+
+		// Drain past the first segment, then reopen in the middle of the second
+		assertEquals(3, journal.drain(3, new Collector()));
+		assertEquals(2, segmentFiles(directory).length);
+		journal.release();
+
+		journal = open(directory);
+		assertEquals(2, journal.getBacklog());
+		List<WriteBehindJournal.Entry> drained = drainAll(journal);
+		assertEquals(Arrays.asList(large(3), large(4)), texts(drained));
+		assertEquals(1, segmentFiles(directory).length);
+	}
+
+	@Test
+	public void fullJournalRejectsEntriesUntilDrained() throws Exception {
+		File directory = folder.newFolder("journal");
+		// Rounds up to the minimum of two segments
+		WriteBehindJournal journal = open(directory, 0);
+		int appended = 0;
+		while (journal.append(new WriteBehindJournal.Entry(DATA_QUEUE, null, large(appended)))) {
+			appended++;
+			assertTrue("journal never fills up", appended < 100);
+		}
+		assertEquals(4, appended);
+		assertEquals(2, segmentFiles(directory).length);
+		assertEquals(4, journal.getBacklog());
+
+		// Draining into the second segment frees the first for a new one
+		assertEquals(3, journal.drain(3, new Collector()));
+		assertTrue(journal.append(new WriteBehindJournal.Entry(DATA_QUEUE, null, large(appended))));
+		assertEquals(Arrays.asList(large(3), large(appended)), texts(drainAll(journal)));
+	}
+
+	@Test
+	public void deadLettersAreKeptInOrder() throws Exception {
+		File directory = folder.newFolder("journal");
+		WriteBehindJournal journal = open(directory);
+		assertTrue(WriteBehindJournal.readDeadLetters(directory).isEmpty());
+		journal.deadLetter(new WriteBehindJournal.Entry(DATA_QUEUE, null, "refused"));
+		journal.deadLetter(new WriteBehindJournal.Entry(DATA_QUEUE, "KEY1", "refused keyed"));
+
+		List<WriteBehindJournal.Entry> deadLetters = WriteBehindJournal.readDeadLetters(directory);
+		assertEquals(Arrays.asList("refused", "refused keyed"), texts(deadLetters));
+		assertEquals("KEY1", deadLetters.get(1).getKey());
+		// Dead letters are not journal segments
+		assertEquals(0, journal.getBacklog());
+	}
+
+	@Test
+	public void secondOpenSharesJournal() throws Exception {
+		File directory = folder.newFolder("journal");
+		WriteBehindJournal first = open(directory);
+		WriteBehindJournal second = open(directory);
+		assertTrue(first == second);
+		append(first, "shared");
+		assertEquals(1, second.getBacklog());
+	}
+
+	@Test
+	public void emptyDirectoryHasNoJournal() throws Exception {
+		assertFalse(WriteBehindJournal.exists(folder.newFolder("empty")));
+	}
+
+	private WriteBehindJournal open(File directory) throws IOException {
+		return open(directory, MAX_BYTES);
+	}
+
+	private WriteBehindJournal open(File directory, long maxBytes) throws IOException {
+		WriteBehindJournal journal = WriteBehindJournal.open(directory, maxBytes);
+		opened.add(journal);
+		return journal;
+	}
+
+	private static void append(WriteBehindJournal journal, String... entries) throws IOException {
+		for (String entry : entries) {
+			assertTrue(journal.append(new WriteBehindJournal.Entry(DATA_QUEUE, null, entry)));
+		}
+	}
+
+	private static List<WriteBehindJournal.Entry> drainAll(WriteBehindJournal journal) throws Exception {
+		Collector collector = new Collector();
+		while (journal.drain(100, collector) > 0) {
+		}
+		return collector.entries;
+	}
+
+	private static List<String> texts(List<WriteBehindJournal.Entry> entries) {
+		List<String> texts = new ArrayList<String>();
+		for (WriteBehindJournal.Entry entry : entries) {
+			texts.add(entry.getEntry());
+		}
+		return texts;
+	}
+
+	private static String large(int index) {
+		char[] data = new char[LARGE_ENTRY];
+		Arrays.fill(data, (char) ('a' + index % 26));
+		return new String(data);
+	}
+
+	private static File[] segmentFiles(File directory) {
+		File[] files = directory.listFiles();
+		List<File> segments = new ArrayList<File>();
+		for (File file : files) {
+			if (file.getName().endsWith(".journal")) {
+				segments.add(file);
+			}
+		}
+		File[] sorted = segments.toArray(new File[segments.size()]);
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	// Flip the first byte of the given entry text in the segment file
+	private static void corrupt(File segment, String text) throws IOException {
+		byte[] pattern = text.getBytes(Charset.forName("UTF-8"));
+		RandomAccessFile file = new RandomAccessFile(segment, "rw");
+		try {
+			byte[] content = new byte[(int) Math.min(file.length(), 64 * 1024)];
+			file.readFully(content);
+			for (int i = 0; i + pattern.length <= content.length; i++) {
+				if (Arrays.equals(Arrays.copyOfRange(content, i, i + pattern.length), pattern)) {
+					file.seek(i);
+					file.write(content[i] ^ 0xff);
+					return;
+				}
+			}
+		} finally {
+			file.close();
+		}
+		throw new AssertionError("Entry not found in segment: " + text);
+	}
+
+	private static class Collector implements WriteBehindJournal.EntryWriter {
+
+		private final List<WriteBehindJournal.Entry> entries = new ArrayList<WriteBehindJournal.Entry>();
+
+		public void write(WriteBehindJournal.Entry entry) {
+			entries.add(entry);
+		}
+	}
+
+}
@@ -0,0 +1,165 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.ifs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class NewFileWatermarkTest {
+
+	private static final long SETTLED = Long.MAX_VALUE;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void reopenedWatermarkContinuesWhereItStopped() throws Exception {
+		File file = new File(folder.newFolder("ifs"), "inbox.watermark");
+		NewFileWatermark watermark = NewFileWatermark.open(file, true);
+		List<IfsFileInfo> listing = listing(file("/in/a", 100), file("/in/b", 200));
+		for (IfsFileInfo newFile : watermark.newFiles(listing, SETTLED)) {
+			watermark.accept(newFile);
+		}
+		watermark.save();
+
+		watermark = NewFileWatermark.open(file, true);
+		listing.add(file("/in/c", 300));
+		assertEquals(Arrays.asList("/in/c"), paths(watermark.newFiles(listing, SETTLED)));
+	}
+
+	@Test
+	public void filesSharingTheWatermarkTimeAreKept() throws Exception {
+		File file = new File(folder.newFolder("ifs"), "inbox.watermark");
+		NewFileWatermark watermark = NewFileWatermark.open(file, true);
+		watermark.newFiles(listing(file("/in/a", 100)), SETTLED);
+		watermark.accept(file("/in/a", 100));
+		watermark.save();
+
+		// A second file with the same time arrives after the restart, the first one is not handed on again
+		watermark = NewFileWatermark.open(file, true);
+		List<IfsFileInfo> listing = listing(file("/in/a", 100), file("/in/b", 100));
+		assertEquals(Arrays.asList("/in/b"), paths(watermark.newFiles(listing, SETTLED)));
+	}
+
+	@Test
+	public void unacceptedFileIsOfferedAgainAfterReopen() throws Exception {
+		File file = new File(folder.newFolder("ifs"), "inbox.watermark");
+		NewFileWatermark watermark = NewFileWatermark.open(file, true);
+		List<IfsFileInfo> listing = listing(file("/in/a", 100), file("/in/b", 200));
+		assertEquals(2, watermark.newFiles(listing, SETTLED).size());
+		// The flow failed on b
+		watermark.accept(file("/in/a", 100));
+		watermark.save();
+
+		watermark = NewFileWatermark.open(file, true);
+		assertEquals(Arrays.asList("/in/b"), paths(watermark.newFiles(listing, SETTLED)));
+	}
+
+	@Test
+	public void existingFilesAreSkippedWithoutWatermarkFile() throws Exception {
+		File file = new File(folder.newFolder("ifs"), "inbox.watermark");
+		NewFileWatermark watermark = NewFileWatermark.open(file, false);
+		List<IfsFileInfo> listing = listing(file("/in/a", 100), file("/in/b", 200));
+		assertTrue(watermark.newFiles(listing, SETTLED).isEmpty());
+		watermark.save();
+
+		// Once the watermark is saved the skipped files stay skipped, new ones are handed on
+		watermark = NewFileWatermark.open(file, false);
+		listing.add(file("/in/c", 300));
+		assertEquals(Arrays.asList("/in/c"), paths(watermark.newFiles(listing, SETTLED)));
+	}
+
+	@Test
+	public void existingFilesAreHandedOnIfIncluded() throws Exception {
+		NewFileWatermark watermark = NewFileWatermark.open(new File(folder.getRoot(), "inbox.watermark"), true);
+		List<IfsFileInfo> listing = listing(file("/in/b", 200), file("/in/a", 100));
+		// Oldest first
+		assertEquals(Arrays.asList("/in/a", "/in/b"), paths(watermark.newFiles(listing, SETTLED)));
+	}
+
+	@Test
+	public void unsettledFilesWaitForLaterPoll() throws Exception {
+		NewFileWatermark watermark = NewFileWatermark.open(new File(folder.getRoot(), "inbox.watermark"), true);
+		List<IfsFileInfo> listing = listing(file("/in/a", 100), file("/in/b", 200), file("/in/c", 300));
+		assertEquals(Arrays.asList("/in/a"), paths(watermark.newFiles(listing, 150)));
+	}
+
+	@Test
+	public void unchangedWatermarkIsNotWritten() throws Exception {
+		File file = new File(folder.newFolder("ifs"), "inbox.watermark");
+		NewFileWatermark watermark = NewFileWatermark.open(file, true);
+		watermark.save();
+		assertFalse(file.exists());
+
+		watermark.accept(file("/in/a", 100));
+		watermark.save();
+		assertTrue(file.delete());
+		// Accepting the same file again doesn't move the watermark
+		watermark.accept(file("/in/a", 100));
+		watermark.save();
+		assertFalse(file.exists());
+		assertFalse(new File(file.getPath() + ".tmp").exists());
+	}
+
+	@Test
+	public void missingDirectoryIsCreated() throws Exception {
+		File file = new File(folder.getRoot(), "state/ifs/inbox.watermark");
+		NewFileWatermark watermark = NewFileWatermark.open(file, true);
+		watermark.accept(file("/in/a", 100));
+		watermark.save();
+		assertTrue(file.isFile());
+	}
+
+	@Test
+	public void invalidWatermarkFailsOpen() throws Exception {
+		File file = new File(folder.newFolder("ifs"), "inbox.watermark");
+		write(file, "not a time\n/in/a\n");
+		try {
+			NewFileWatermark.open(file, true);
+			throw new AssertionError("invalid watermark accepted");
+		} catch (IOException e) {
+			// expected, the poller doesn't start over silently
+		}
+	}
+
+	private static IfsFileInfo file(String path, long lastModified) {
+		return new IfsFileInfo(path, path.substring(path.lastIndexOf('/') + 1), 10, lastModified, false);
+	}
+
+	private static List<IfsFileInfo> listing(IfsFileInfo... files) {
+		return new ArrayList<IfsFileInfo>(Arrays.asList(files));
+	}
+
+	private static List<String> paths(List<IfsFileInfo> files) {
+		List<String> paths = new ArrayList<String>();
+		for (IfsFileInfo file : files) {
+			paths.add(file.getPath());
+		}
+		return paths;
+	}
+
+	private static void write(File file, String content) throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+
+}
@@ -0,0 +1,49 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class ConnectorMetricsTest {
+
+	@Test
+	public void commandsAreGroupedByName() {
+		ConnectorMetrics metrics = ConnectorMetrics.forConnection("grouping", "USER");
+		CommandMetrics command = metrics.command("CRTLIB LIB(ORDERS)");
+		assertEquals("CRTLIB", command.getName());
+		assertSame(command, metrics.command("  crtlib LIB(RETURNS) TEXT('Returns')"));
+		assertSame(command, metrics.command("CRTLIB"));
+		assertEquals("DLTLIB", metrics.command("dltlib(ORDERS)").getName());
+	}
+
+	@Test
+	public void namesBeyondCapAreCountedAsOther() {
+		ConnectorMetrics metrics = ConnectorMetrics.forConnection("capped", "USER");
+		for (int i = 0; i < 200; i++) {
+			assertEquals("CMD" + i, metrics.command("CMD" + i + " PARM(X)").getName());
+		}
+		CommandMetrics other = metrics.command("CMD200");
+		assertEquals("*OTHER", other.getName());
+		assertSame(other, metrics.command("CMD201 PARM(Y)"));
+
+		// Names seen before the cap keep their own metrics
+		assertEquals("CMD0", metrics.command("CMD0").getName());
+		assertNotSame(other, metrics.command("CMD199"));
+	}
+
+	@Test
+	public void sameConnectionSharesMetrics() {
+		ConnectorMetrics metrics = ConnectorMetrics.forConnection("shared", "USER");
+		assertSame(metrics, ConnectorMetrics.forConnection("shared", "USER"));
+		assertNotSame(metrics, ConnectorMetrics.forConnection("shared", "OTHER"));
+		assertEquals("shared/USER", metrics.getName());
+	}
+
+}
@@ -0,0 +1,83 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.metrics;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	private static final long MICRO = 1000;
+	private static final long MILLI = 1000000;
+
+	@Test
+	public void emptyHistogramIsZero() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMeanMillis(), 0);
+		assertEquals(0, histogram.getMaxMillis(), 0);
+		assertEquals(0, histogram.getMedianMillis(), 0);
+		assertEquals(0, histogram.getPercentile99Millis(), 0);
+	}
+
+	@Test
+	public void countTotalMeanAndMax() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(2 * MILLI);
+		histogram.record(4 * MILLI);
+		histogram.record(-5);
+		assertEquals(3, histogram.getCount());
+		assertEquals(6 * MILLI, histogram.getTotalNanos());
+		assertEquals(2, histogram.getMeanMillis(), 0.0001);
+		assertEquals(4, histogram.getMaxMillis(), 0);
+	}
+
+	@Test
+	public void bucketsArePowersOfTwoMicroseconds() {
+		// 1023 us is the top of the bucket below 1024 us, 1024 us starts the bucket below 2048 us
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(1023 * MICRO);
+		histogram.record(1024 * MICRO);
+		histogram.record(5 * MILLI);
+		assertEquals(1.024, histogram.getPercentileMillis(0.33), 0);
+		assertEquals(2.048, histogram.getPercentileMillis(0.66), 0);
+	}
+
+	@Test
+	public void subMicrosecondDurationsShareFirstBucket() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(0);
+		histogram.record(999);
+		histogram.record(-1);
+		histogram.record(MILLI);
+		assertEquals(0.001, histogram.getPercentileMillis(0.75), 0);
+		assertEquals(1, histogram.getPercentileMillis(1), 0);
+	}
+
+	@Test
+	public void percentileIsUpperBoundOfItsBucket() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < 100; i++) {
+			histogram.record(3 * MICRO);
+		}
+		histogram.record(10 * MILLI);
+		// 3 us falls in the bucket below 4 us
+		assertEquals(0.004, histogram.getMedianMillis(), 0);
+		assertEquals(0.004, histogram.getPercentile99Millis(), 0);
+		// The top bucket is capped at the max recorded
+		assertEquals(10, histogram.getPercentileMillis(1), 0);
+	}
+
+	@Test
+	public void longDurationsAreCountedInLastBucket() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(Long.MAX_VALUE);
+		assertEquals(1, histogram.getCount());
+		assertEquals(histogram.getMaxMillis(), histogram.getMedianMillis(), 0);
+	}
+
+}
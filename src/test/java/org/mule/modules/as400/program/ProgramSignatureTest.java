@@ -0,0 +1,148 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.program;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.mule.modules.as400.record.RecordConverter;
+import org.mule.modules.as400.record.RecordConverterCache;
+
+import com.ibm.as400.access.ProgramParameter;
+
+public class ProgramSignatureTest {
+
+	private static final int EBCDIC = 37;
+	private static final String CUSTOMER = "IN CUSTNO:CHAR(10) | OUT BALANCE:PACKED(11,2) | INOUT ADDRESS{STREET:CHAR(30);CITY:CHAR(20)}";
+
+	@Test
+	public void usageDecidesInputAndOutputData() {
+		ProgramParameter[] parameters = ProgramSignature.parse(EBCDIC, CUSTOMER).toProgramParameters(inputs());
+		assertEquals(3, parameters.length);
+
+		// IN sends its value, OUT only reserves room for the output, INOUT does both
+		assertArrayEquals(encode("CUSTNO:CHAR(10)", "CUSTNO", "C42"), parameters[0].getInputData());
+		assertEquals(0, parameters[0].getOutputDataLength());
+		assertNull(parameters[1].getInputData());
+		assertEquals(6, parameters[1].getOutputDataLength());
+		assertEquals(50, parameters[2].getInputData().length);
+		assertEquals(50, parameters[2].getOutputDataLength());
+	}
+
+	@Test
+	public void structureIsEncodedFromFieldMap() {
+		ProgramParameter[] parameters = ProgramSignature.parse(EBCDIC, CUSTOMER).toProgramParameters(inputs());
+		Map<String, Object> address = RecordConverterCache.parse(EBCDIC, "STREET:CHAR(30);CITY:CHAR(20)").decode(
+				parameters[2].getInputData());
+		assertEquals("1 Main St", address.get("STREET"));
+		assertEquals("Springfield", address.get("CITY"));
+	}
+
+	@Test
+	public void outputsAreDecodedByParameterName() {
+		ProgramSignature signature = ProgramSignature.parse(EBCDIC, CUSTOMER);
+		ProgramParameter[] parameters = signature.toProgramParameters(inputs());
+		Map<String, Object> address = new HashMap<String, Object>();
+		address.put("STREET", "2 High St");
+		address.put("CITY", "Shelbyville");
+		ProgramParameter[] returned = { parameters[0], returned(encode("BALANCE:PACKED(11,2)", "BALANCE", "-17.25")),
+				returned(RecordConverterCache.parse(EBCDIC, "STREET:CHAR(30);CITY:CHAR(20)").encode(address)) };
+
+		Map<String, Object> outputs = signature.toOutputs(returned);
+		// IN parameters have no output
+		assertEquals(Arrays.asList("BALANCE", "ADDRESS"), Arrays.asList(outputs.keySet().toArray()));
+		assertEquals(new BigDecimal("-17.25"), outputs.get("BALANCE"));
+		assertEquals(address, outputs.get("ADDRESS"));
+	}
+
+	@Test
+	public void usageIsCaseInsensitive() {
+		ProgramParameter[] parameters = ProgramSignature.parse(EBCDIC, "in CUSTNO:CHAR(10)|Out BALANCE:PACKED(11,2)")
+				.toProgramParameters(inputs());
+		assertEquals(2, parameters.length);
+		assertEquals(6, parameters[1].getOutputDataLength());
+	}
+
+	@Test
+	public void emptyDescriptorHasNoParameters() {
+		assertEquals(0, ProgramSignature.parse(EBCDIC, null).toProgramParameters(null).length);
+		assertEquals(0, ProgramSignature.parse(EBCDIC, " ").toProgramParameters(null).length);
+	}
+
+	@Test
+	public void missingInputsAreBlanksAndZeros() {
+		ProgramParameter[] parameters = ProgramSignature.parse(EBCDIC, CUSTOMER).toProgramParameters(null);
+		assertArrayEquals(encode("CUSTNO:CHAR(10)", "CUSTNO", ""), parameters[0].getInputData());
+		assertEquals(50, parameters[2].getInputData().length);
+	}
+
+	@Test
+	public void structureNeedsFieldMap() {
+		Map<String, Object> inputs = new HashMap<String, Object>();
+		inputs.put("ADDRESS", "1 Main St");
+		try {
+			ProgramSignature.parse(EBCDIC, "IN ADDRESS{STREET:CHAR(30)}").toProgramParameters(inputs);
+			throw new AssertionError("structure encoded from a string");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("ADDRESS"));
+		}
+	}
+
+	@Test
+	public void malformedDescriptorIsRejected() {
+		String[] descriptors = { "CUSTNO:CHAR(10)", "BOTH CUSTNO:CHAR(10)", "IN :CHAR(10)", "IN CUSTNO", "IN CUSTNO:",
+				"IN CUSTNO:CHAR(10) || OUT BALANCE:PACKED(11,2)", "IN ADDRESS{STREET:CHAR(30)", "IN ADDRESS{}",
+				"IN CUSTNO:VARCHAR(10)",
+				// Structures don't nest
+				"INOUT ORDER{NO:CHAR(10);ADDRESS{STREET:CHAR(30)}}" };
+		for (String descriptor : descriptors) {
+			try {
+				ProgramSignature.parse(EBCDIC, descriptor);
+				throw new AssertionError("accepted " + descriptor);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	private static Map<String, Object> inputs() {
+		Map<String, Object> address = new HashMap<String, Object>();
+		address.put("STREET", "1 Main St");
+		address.put("CITY", "Springfield");
+		Map<String, Object> inputs = new HashMap<String, Object>();
+		inputs.put("CUSTNO", "C42");
+		inputs.put("ADDRESS", address);
+		return inputs;
+	}
+
+	private static byte[] encode(String descriptor, String name, Object value) {
+		RecordConverter converter = RecordConverterCache.parse(EBCDIC, descriptor);
+		Map<String, Object> fields = new HashMap<String, Object>();
+		fields.put(name, value);
+		return converter.encode(fields);
+	}
+
+	// Parameter as the host returns it from a call
+	private static ProgramParameter returned(final byte[] outputData) {
+		return new ProgramParameter(outputData.length) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public byte[] getOutputData() {
+				return outputData;
+			}
+		};
+	}
+
+}
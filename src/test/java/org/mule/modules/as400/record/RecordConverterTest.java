@@ -0,0 +1,153 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.record;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class RecordConverterTest {
+
+	private static final int EBCDIC = 37;
+	private static final String ORDER_LINE = "ORDER:CHAR(10);AMOUNT:PACKED(9,2);QTY:ZONED(5,0);LINE:BIN4;FLAGS:BIN2;SEQ:BIN8";
+
+	@Test
+	public void descriptorGivesFieldsInRecordOrder() {
+		RecordConverter converter = RecordConverterCache.parse(EBCDIC, ORDER_LINE);
+		assertEquals(Arrays.asList("ORDER", "AMOUNT", "QTY", "LINE", "FLAGS", "SEQ"), Arrays.asList(converter.getFieldNames()));
+		// 10 characters, 9 packed digits in 5 bytes, 5 zoned digits, 4, 2 and 8 byte binaries
+		assertEquals(34, converter.getRecordLength());
+	}
+
+	@Test
+	public void descriptorAllowsBlanksAndLowerCaseTypes() {
+		RecordConverter converter = RecordConverterCache.parse(EBCDIC, " ORDER : char ( 10 ) ; AMOUNT:packed(9, 2) ;LINE:bin4 ");
+		assertEquals(Arrays.asList("ORDER", "AMOUNT", "LINE"), Arrays.asList(converter.getFieldNames()));
+		assertEquals(19, converter.getRecordLength());
+
+		// Decimals default to none
+		assertEquals(3, RecordConverterCache.parse(EBCDIC, "QTY:PACKED(5)").getRecordLength());
+	}
+
+	@Test
+	public void malformedDescriptorIsRejected() {
+		String[] descriptors = { "ORDER CHAR(10)", "ORDER:CHAR", "ORDER:VARCHAR(10)", "AMOUNT:PACKED", "AMOUNT:PACKED(9,2",
+				"ORDER:CHAR(10);;LINE:BIN4", "ORDER:CHAR(x)", "" };
+		for (String descriptor : descriptors) {
+			try {
+				RecordConverterCache.parse(EBCDIC, descriptor);
+				throw new AssertionError("accepted " + descriptor);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void encodedRecordDecodesToSameFields() {
+		RecordConverter converter = RecordConverterCache.parse(EBCDIC, ORDER_LINE);
+		Map<String, Object> fields = new HashMap<String, Object>();
+		fields.put("ORDER", "A-1001");
+		fields.put("AMOUNT", new BigDecimal("-1234.5"));
+		fields.put("QTY", "42");
+		fields.put("LINE", Integer.valueOf(7));
+		fields.put("FLAGS", Short.valueOf((short) -1));
+		fields.put("SEQ", Long.valueOf(Long.MAX_VALUE));
+
+		byte[] record = converter.encode(fields);
+		assertEquals(converter.getRecordLength(), record.length);
+		// Character fields are blank padded on the host
+		assertEquals(0x40, record[9] & 0xff);
+
+		Map<String, Object> decoded = converter.decode(record);
+		assertEquals("A-1001", decoded.get("ORDER"));
+		assertEquals(new BigDecimal("-1234.50"), decoded.get("AMOUNT"));
+		assertEquals(new BigDecimal("42"), decoded.get("QTY"));
+		assertEquals(Integer.valueOf(7), decoded.get("LINE"));
+		assertEquals(Short.valueOf((short) -1), decoded.get("FLAGS"));
+		assertEquals(Long.valueOf(Long.MAX_VALUE), decoded.get("SEQ"));
+		assertArrayEquals(record, converter.encode(decoded));
+	}
+
+	@Test
+	public void missingFieldsEncodeAsBlanksAndZeros() {
+		RecordConverter converter = RecordConverterCache.parse(EBCDIC, ORDER_LINE);
+		Map<String, Object> decoded = converter.decode(converter.encode(new HashMap<String, Object>()));
+		assertEquals("", decoded.get("ORDER"));
+		assertEquals(new BigDecimal("0.00"), decoded.get("AMOUNT"));
+		assertEquals(Integer.valueOf(0), decoded.get("LINE"));
+		assertEquals(Short.valueOf((short) 0), decoded.get("FLAGS"));
+	}
+
+	@Test
+	public void binaryValuesOutOfRangeAreRejected() {
+		assertRejected("FLAGS:BIN2", "FLAGS", Integer.valueOf(Short.MAX_VALUE + 1));
+		assertRejected("FLAGS:BIN2", "FLAGS", Integer.valueOf(Short.MIN_VALUE - 1));
+		assertRejected("LINE:BIN4", "LINE", Long.valueOf(Integer.MAX_VALUE + 1L));
+		assertRejected("LINE:BIN4", "LINE", "-2147483649");
+		assertRejected("SEQ:BIN8", "SEQ", "9223372036854775808");
+
+		// A fraction doesn't fit a binary field either
+		assertRejected("LINE:BIN4", "LINE", new BigDecimal("1.5"));
+
+		// The limits themselves fit
+		RecordConverter converter = RecordConverterCache.parse(EBCDIC, "FLAGS:BIN2;LINE:BIN4");
+		Map<String, Object> fields = new HashMap<String, Object>();
+		fields.put("FLAGS", Integer.valueOf(Short.MIN_VALUE));
+		fields.put("LINE", "2147483647");
+		Map<String, Object> decoded = converter.decode(converter.encode(fields));
+		assertEquals(Short.valueOf(Short.MIN_VALUE), decoded.get("FLAGS"));
+		assertEquals(Integer.valueOf(Integer.MAX_VALUE), decoded.get("LINE"));
+	}
+
+	@Test
+	public void decimalsThatNeedRoundingAreRejected() {
+		assertRejected("AMOUNT:PACKED(9,2)", "AMOUNT", new BigDecimal("1.234"));
+		assertRejected("QTY:ZONED(5,0)", "QTY", "0.5");
+	}
+
+	@Test
+	public void shortRecordIsRejected() {
+		RecordConverter converter = RecordConverterCache.parse(EBCDIC, ORDER_LINE);
+		try {
+			converter.decode(new byte[converter.getRecordLength() - 1]);
+			throw new AssertionError("short record decoded");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void cacheNeedsDescriptorOrFile() {
+		RecordConverterCache cache = new RecordConverterCache();
+		assertNull(cache.get(ORDER_LINE, null));
+		try {
+			cache.get(null, null);
+			throw new AssertionError("no record format accepted");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	private static void assertRejected(String descriptor, String name, Object value) {
+		Map<String, Object> fields = new HashMap<String, Object>();
+		fields.put(name, value);
+		try {
+			RecordConverterCache.parse(EBCDIC, descriptor).encode(fields);
+			throw new AssertionError(value + " accepted for " + descriptor);
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+}
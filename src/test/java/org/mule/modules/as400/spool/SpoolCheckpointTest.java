@@ -0,0 +1,149 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.spool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SpoolCheckpointTest {
+
+	private static final String READY = "*READY";
+	private static final String OPEN = "*OPEN";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void reopenedCheckpointContinuesWhereItStopped() throws Exception {
+		File file = new File(folder.newFolder("spool"), "prt01.checkpoint");
+		SpoolCheckpoint checkpoint = SpoolCheckpoint.open(file, true);
+		List<SpooledFileInfo> listing = listing(spooled("INVOICE", 1, "1150314", "092653"), spooled("INVOICE", 2, "1150314", "101500"));
+		for (SpooledFileInfo newFile : checkpoint.newFiles(listing)) {
+			checkpoint.accept(newFile);
+		}
+		checkpoint.save();
+
+		checkpoint = SpoolCheckpoint.open(file, true);
+		// The next list starts at the checkpoint
+		assertEquals("1150314", checkpoint.getStartDate());
+		assertEquals("101500", checkpoint.getStartTime());
+		listing.add(spooled("INVOICE", 3, "1150315", "080000"));
+		assertEquals(Arrays.asList(3), numbers(checkpoint.newFiles(listing)));
+	}
+
+	@Test
+	public void spooledFilesCreatedInTheSameSecondAreKept() throws Exception {
+		File file = new File(folder.newFolder("spool"), "prt01.checkpoint");
+		SpoolCheckpoint checkpoint = SpoolCheckpoint.open(file, true);
+		checkpoint.newFiles(listing(spooled("INVOICE", 1, "1150314", "092653")));
+		checkpoint.accept(spooled("INVOICE", 1, "1150314", "092653"));
+		checkpoint.save();
+
+		checkpoint = SpoolCheckpoint.open(file, true);
+		List<SpooledFileInfo> listing = listing(spooled("INVOICE", 1, "1150314", "092653"), spooled("INVOICE", 2, "1150314", "092653"));
+		assertEquals(Arrays.asList(2), numbers(checkpoint.newFiles(listing)));
+	}
+
+	@Test
+	public void unacceptedSpooledFileIsOfferedAgainAfterReopen() throws Exception {
+		File file = new File(folder.newFolder("spool"), "prt01.checkpoint");
+		SpoolCheckpoint checkpoint = SpoolCheckpoint.open(file, true);
+		List<SpooledFileInfo> listing = listing(spooled("INVOICE", 1, "1150314", "092653"), spooled("INVOICE", 2, "1150314", "101500"));
+		assertEquals(2, checkpoint.newFiles(listing).size());
+		// The flow failed on the second one
+		checkpoint.accept(spooled("INVOICE", 1, "1150314", "092653"));
+		checkpoint.save();
+
+		checkpoint = SpoolCheckpoint.open(file, true);
+		assertEquals(Arrays.asList(2), numbers(checkpoint.newFiles(listing)));
+	}
+
+	@Test
+	public void existingSpooledFilesAreSkippedWithoutCheckpointFile() throws Exception {
+		File file = new File(folder.newFolder("spool"), "prt01.checkpoint");
+		SpoolCheckpoint checkpoint = SpoolCheckpoint.open(file, false);
+		assertNull(checkpoint.getStartDate());
+		List<SpooledFileInfo> listing = listing(spooled("INVOICE", 1, "1150314", "092653"), spooled("INVOICE", 2, "1150314", "101500"));
+		assertTrue(checkpoint.newFiles(listing).isEmpty());
+		checkpoint.save();
+
+		checkpoint = SpoolCheckpoint.open(file, false);
+		listing.add(spooled("INVOICE", 3, "1150315", "080000"));
+		assertEquals(Arrays.asList(3), numbers(checkpoint.newFiles(listing)));
+	}
+
+	@Test
+	public void openSpooledFileHoldsBackYoungerOnes() throws Exception {
+		SpoolCheckpoint checkpoint = SpoolCheckpoint.open(new File(folder.getRoot(), "prt01.checkpoint"), true);
+		List<SpooledFileInfo> listing = listing(spooled("INVOICE", 3, "1150314", "110000"), spooled("INVOICE", 1, "1150314", "092653"));
+		listing.add(new SpooledFileInfo("INVOICE", 2, "BILLING", "QUSER", "123456", "SYS1", "1150314", "101500", "PRT01", OPEN, "", "*STD", 0));
+		// Oldest first, stopping at the spooled file still being written
+		assertEquals(Arrays.asList(1), numbers(checkpoint.newFiles(listing)));
+	}
+
+	@Test
+	public void missingDirectoryIsCreated() throws Exception {
+		File file = new File(folder.getRoot(), "state/spool/prt01.checkpoint");
+		SpoolCheckpoint checkpoint = SpoolCheckpoint.open(file, true);
+		checkpoint.accept(spooled("INVOICE", 1, "1150314", "092653"));
+		checkpoint.save();
+		assertTrue(file.isFile());
+		assertFalse(new File(file.getPath() + ".tmp").exists());
+	}
+
+	@Test
+	public void invalidCheckpointFailsOpen() throws Exception {
+		File file = new File(folder.newFolder("spool"), "prt01.checkpoint");
+		for (String content : new String[] { "", "115031409265\n", "11503140926533\n" }) {
+			write(file, content);
+			try {
+				SpoolCheckpoint.open(file, true);
+				throw new AssertionError("invalid checkpoint accepted: " + content);
+			} catch (IOException e) {
+				// expected, the poller doesn't start over silently
+			}
+		}
+	}
+
+	private static SpooledFileInfo spooled(String name, int number, String createDate, String createTime) {
+		return new SpooledFileInfo(name, number, "BILLING", "QUSER", "123456", "SYS1", createDate, createTime, "PRT01", READY, "", "*STD", 1);
+	}
+
+	private static List<SpooledFileInfo> listing(SpooledFileInfo... files) {
+		return new ArrayList<SpooledFileInfo>(Arrays.asList(files));
+	}
+
+	private static List<Integer> numbers(List<SpooledFileInfo> files) {
+		List<Integer> numbers = new ArrayList<Integer>();
+		for (SpooledFileInfo file : files) {
+			numbers.add(file.getNumber());
+		}
+		return numbers;
+	}
+
+	private static void write(File file, String content) throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+
+}
@@ -0,0 +1,253 @@
+/**
+ * (c) 2003-2015 MuleSoft, Inc. The software in this package is published under the terms of the CPAL v1.0 license,
+ * a copy of which has been included with this distribution in the LICENSE.md file.
+ */
+
+package org.mule.modules.as400.strategy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mule.modules.as400.dataqueue.HostDataQueue;
+import org.mule.modules.as400.dataqueue.HostKeyedDataQueue;
+import org.mule.modules.as400.exception.AS400TransportException;
+
+import com.ibm.as400.access.AS400;
+import com.ibm.as400.access.AS400Message;
+import com.ibm.as400.access.CommandCall;
+
+public class ReconnectSchedulerTest {
+
+	private static final long INITIAL_DELAY = 20;
+	private static final long MAX_DELAY = 80;
+	private static final long TIMEOUT = 5000;
+
+	private final FlakyHost host = new FlakyHost();
+	private final AS400ConnectionStrategy strategy = new AS400ConnectionStrategy();
+	private ReconnectScheduler scheduler;
+
+	@Before
+	public void connect() throws Exception {
+		strategy.setTransport(host);
+		strategy.setEndpoint("flaky");
+		strategy.setUserID("USER");
+		strategy.setPwd("secret");
+		scheduler = strategy.getReconnectScheduler();
+		scheduler.setName("flaky");
+		scheduler.setInitialDelay(INITIAL_DELAY);
+		scheduler.setMaxDelay(MAX_DELAY);
+		strategy.connect();
+	}
+
+	@After
+	public void cancel() {
+		scheduler.cancel();
+	}
+
+	@Test
+	public void connectedCircuitIsClosed() throws Exception {
+		assertEquals(ReconnectScheduler.State.CLOSED, scheduler.getState());
+		assertTrue(strategy.isHealthy());
+		strategy.validateOrReconnect(0, true);
+		assertEquals(0, scheduler.getOutages());
+	}
+
+	@Test
+	public void failingReconnectOpensCircuit() throws Exception {
+		host.setDown(true);
+		scheduler.connectionLost();
+		assertTrue(scheduler.getState() != ReconnectScheduler.State.CLOSED);
+
+		// Waits out the first attempt, then the circuit is open
+		assertFalse(scheduler.awaitConnected(TIMEOUT, true));
+		assertEquals(ReconnectScheduler.State.OPEN, scheduler.getState());
+		assertFalse(strategy.isHealthy());
+		assertTrue(scheduler.getFailedAttempts() >= 1);
+		assertTrue(scheduler.getCurrentOutageDuration() >= 0);
+	}
+
+	@Test
+	public void openCircuitFailsFast() throws Exception {
+		host.setDown(true);
+		scheduler.connectionLost();
+		scheduler.awaitConnected(TIMEOUT, true);
+		assertEquals(ReconnectScheduler.State.OPEN, scheduler.getState());
+
+		long start = System.currentTimeMillis();
+		try {
+			strategy.validateOrReconnect(TIMEOUT, true);
+			throw new AssertionError("open circuit let a fail fast caller through");
+		} catch (AS400TransportException e) {
+			// expected, without waiting for the next attempt
+		}
+		assertTrue(System.currentTimeMillis() - start < TIMEOUT / 2);
+
+		// Callers that don't fail fast wait up to their max wait
+		start = System.currentTimeMillis();
+		assertFalse(scheduler.awaitConnected(MAX_DELAY, false));
+		assertTrue(System.currentTimeMillis() - start >= MAX_DELAY - 5);
+	}
+
+	@Test
+	public void attemptsBackOff() throws Exception {
+		host.setDown(true);
+		scheduler.connectionLost();
+		while (host.getAttempts().size() < 5) {
+			Thread.sleep(10);
+		}
+		List<Long> attempts = host.getAttempts();
+		// The first attempt runs right away, then the delays double from the initial delay up to the max delay. A
+		// delay is randomized between half and all of its nominal value.
+		long[] minimumGaps = { INITIAL_DELAY / 2, INITIAL_DELAY, 2 * INITIAL_DELAY, MAX_DELAY / 2 };
+		for (int i = 0; i < minimumGaps.length; i++) {
+			long gap = attempts.get(i + 1) - attempts.get(i);
+			assertTrue("attempt " + (i + 2) + " after " + gap + " ms", gap >= minimumGaps[i] - 2);
+		}
+		assertEquals(1, scheduler.getOutages());
+		assertTrue(scheduler.getAttempts() >= 5);
+	}
+
+	@Test
+	public void recoversOnceHostIsBack() throws Exception {
+		host.setDown(true);
+		scheduler.connectionLost();
+		scheduler.awaitConnected(TIMEOUT, true);
+		assertEquals(ReconnectScheduler.State.OPEN, scheduler.getState());
+
+		host.setDown(false);
+		assertTrue(scheduler.awaitConnected(TIMEOUT, false));
+		assertEquals(ReconnectScheduler.State.CLOSED, scheduler.getState());
+		assertTrue(strategy.isHealthy());
+		strategy.validateOrReconnect(0, true);
+
+		assertEquals(1, scheduler.getOutages());
+		assertEquals(scheduler.getAttempts() - 1, scheduler.getFailedAttempts());
+		assertEquals(0, scheduler.getCurrentOutageDuration());
+		assertTrue(scheduler.getLastOutageDuration() > 0);
+		assertEquals(scheduler.getLastOutageDuration(), scheduler.getTotalOutageTime());
+	}
+
+	@Test
+	public void lossDuringOutageIsOneOutage() throws Exception {
+		host.setDown(true);
+		scheduler.connectionLost();
+		scheduler.connectionLost();
+		scheduler.awaitConnected(TIMEOUT, true);
+		scheduler.connectionLost();
+		assertEquals(1, scheduler.getOutages());
+
+		host.setDown(false);
+		assertTrue(scheduler.awaitConnected(TIMEOUT, false));
+		scheduler.connectionLost();
+		assertEquals(2, scheduler.getOutages());
+		assertTrue(scheduler.awaitConnected(TIMEOUT, false));
+	}
+
+	@Test
+	public void cancelEndsOutage() throws Exception {
+		host.setDown(true);
+		scheduler.connectionLost();
+		scheduler.awaitConnected(TIMEOUT, true);
+		scheduler.cancel();
+		assertEquals(ReconnectScheduler.State.CLOSED, scheduler.getState());
+
+		// No attempts after the cancel
+		int attempts = host.getAttempts().size();
+		Thread.sleep(2 * MAX_DELAY);
+		assertEquals(attempts, host.getAttempts().size());
+	}
+
+	// Stand-in for a host that can go down, sign on fails while it is down
+	private static class FlakyHost implements AS400Transport {
+
+		private volatile boolean down;
+		private final List<Long> attempts = new ArrayList<Long>();
+
+		public AS400 createSystem(String endpoint, String userid, String password) throws Exception {
+			synchronized (attempts) {
+				attempts.add(System.currentTimeMillis());
+			}
+			if (down) {
+				throw new IOException("Host " + endpoint + " down");
+			}
+			return new FlakySystem(endpoint, userid, password);
+		}
+
+		public HostDataQueue createDataQueue(AS400 system, String path) {
+			throw new UnsupportedOperationException();
+		}
+
+		public HostKeyedDataQueue createKeyedDataQueue(AS400 system, String path) {
+			throw new UnsupportedOperationException();
+		}
+
+		public CommandCall createCommandCall(AS400 system) {
+			return new SucceedingCommandCall(system);
+		}
+
+		void setDown(boolean down) {
+			this.down = down;
+		}
+
+		// Sign on attempts after the first connect
+		List<Long> getAttempts() {
+			synchronized (attempts) {
+				return new ArrayList<Long>(attempts.subList(1, attempts.size()));
+			}
+		}
+	}
+
+	private static class FlakySystem extends AS400 {
+
+		private static final long serialVersionUID = 1L;
+
+		private volatile boolean connected = true;
+
+		FlakySystem(String endpoint, String userid, String password) {
+			super(endpoint, userid, password);
+		}
+
+		@Override
+		public boolean isConnected() {
+			return connected;
+		}
+
+		@Override
+		public boolean isConnected(int service) {
+			return connected;
+		}
+
+		@Override
+		public void disconnectAllServices() {
+			connected = false;
+		}
+	}
+
+	private static class SucceedingCommandCall extends CommandCall {
+
+		private static final long serialVersionUID = 1L;
+
+		SucceedingCommandCall(AS400 system) {
+			super(system);
+		}
+
+		@Override
+		public boolean run(String command) {
+			return true;
+		}
+
+		@Override
+		public AS400Message[] getMessageList() {
+			return new AS400Message[0];
+		}
+	}
+
+}